@@ -0,0 +1,499 @@
+/*
+ * Copyright (c) 2023 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ */
+
+package org.mmarini.hilbert.apps;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import net.sourceforge.argparse4j.ArgumentParsers;
+import net.sourceforge.argparse4j.impl.Arguments;
+import net.sourceforge.argparse4j.inf.ArgumentParser;
+import net.sourceforge.argparse4j.inf.ArgumentParserException;
+import net.sourceforge.argparse4j.inf.Namespace;
+import org.mmarini.hilbert.Messages;
+import org.mmarini.hilbert.model.*;
+import org.mmarini.yaml.Utils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static java.lang.String.format;
+import static org.mmarini.yaml.Utils.objectMapper;
+
+/**
+ * Runs the simulation in batch mode
+ * <p>
+ * It loads only the model, serde and output classes, so it runs on display-less nodes
+ * without touching AWT or Swing.
+ * </p>
+ */
+public class Batch {
+    private static final Logger logger = LoggerFactory.getLogger(Batch.class);
+
+    static ArgumentParser createParser() {
+        ArgumentParser parser = ArgumentParsers.newFor(Batch.class.getName()).build()
+                .defaultHelp(true)
+                .version(Messages.getString("Hilbert.version"))
+                .description("Run a batch session of simulation.");
+        parser.addArgument("-v", "--version")
+                .action(Arguments.version())
+                .help("show current version");
+        parser.addArgument("-r", "--rules")
+                .setDefault("rules.yml")
+                .help("specify rules yaml file");
+        parser.addArgument("-s", "--status")
+                .setDefault("status.yml")
+                .help("specify status yaml file");
+        parser.addArgument("-k", "--kpis")
+                .required(false)
+                .help("specify kpis file (csv or binary with .bin extension)");
+        parser.addArgument("-o", "--output")
+                .setDefault("output.yml")
+                .help("specify output yaml file");
+        parser.addArgument("-n", "--number")
+                .setDefault(10000L)
+                .type(Long.class)
+                .help("specify the maximum number of iterations");
+        parser.addArgument("--replicas")
+                .setDefault(1)
+                .type(Integer.class)
+                .help("specify the number of Monte Carlo replicas");
+        parser.addArgument("--threads")
+                .setDefault(Runtime.getRuntime().availableProcessors())
+                .type(Integer.class)
+                .help("specify the number of threads running the replicas");
+        parser.addArgument("--stats")
+                .setDefault("stats.csv")
+                .help("specify the ensemble statistics file (csv or binary with .bin extension)");
+        parser.addArgument("--quantiles")
+                .setDefault("0.05,0.5,0.95")
+                .help("specify the comma separated quantiles of ensemble statistics");
+        parser.addArgument("-c", "--checkpoint")
+                .required(false)
+                .help("specify checkpoint file");
+        parser.addArgument("--checkpoint-steps")
+                .setDefault(1000000L)
+                .type(Long.class)
+                .help("specify the number of steps between checkpoints (0 to disable)");
+        parser.addArgument("--checkpoint-seconds")
+                .setDefault(0d)
+                .type(Double.class)
+                .help("specify the seconds between checkpoints (0 to disable)");
+        parser.addArgument("--resume")
+                .action(Arguments.storeTrue())
+                .help("resume the run from the checkpoint file");
+        parser.addArgument("-e", "--events")
+                .required(false)
+                .help("specify binary events file");
+        parser.addArgument("--event-log")
+                .action(Arguments.storeTrue())
+                .help("log the events at info level");
+        parser.addArgument("--event-counts")
+                .action(Arguments.storeTrue())
+                .help("log the event counts at the end of run");
+        parser.addArgument("--event-sampling")
+                .setDefault(1)
+                .type(Integer.class)
+                .help("specify the number of events by written or logged event of each type");
+        parser.addArgument("--event-rate")
+                .setDefault(0d)
+                .type(Double.class)
+                .help("specify the maximum number of written or logged events per second (0 if unlimited)");
+        return parser;
+    }
+
+    /**
+     * The application entry point
+     *
+     * @param args the command line arguments
+     */
+    public static void main(String[] args) {
+        ArgumentParser parser = createParser();
+        try {
+            Namespace parsedArgs = parser.parseArgs(args);
+            new Batch().run(parsedArgs);
+        } catch (ArgumentParserException ex) {
+            parser.handleError(ex);
+            System.exit(1);
+        } catch (IOException ex) {
+            logger.atError().setCause(ex).log();
+            System.exit(1);
+        }
+    }
+
+    private long coldStartMillis;
+
+    /**
+     * Returns the time from the jvm start to the completion of first step in millis (-1 if no step)
+     */
+    public long getColdStartMillis() {
+        return coldStartMillis;
+    }
+
+    /**
+     * Runs the batch simulation and returns the final status
+     *
+     * @param parsedArgs the parsed argument
+     * @throws IOException in case of error
+     */
+    public Status run(Namespace parsedArgs) throws IOException {
+        // The interactive application parser has no ensemble options
+        Integer replicasArg = parsedArgs.getInt("replicas");
+        int replicas = replicasArg != null ? replicasArg : 1;
+        if (replicas <= 0) {
+            throw new IllegalArgumentException(format("Replicas must be positive (%d)", replicas));
+        }
+        if (replicas > 1) {
+            return runEnsemble(parsedArgs);
+        }
+        String rulesFile = parsedArgs.getString("rules");
+        logger.atInfo().log("Loading {} ...", rulesFile);
+        JsonNode rules = Utils.fromFile(rulesFile);
+        String engine = RulesSerde.loadEngine(rules);
+        if (RulesSerde.MEAN_FIELD_ENGINE.equals(engine) || RulesSerde.AGENT_ENGINE.equals(engine)
+                || RulesSerde.COHORT_ENGINE.equals(engine)) {
+            return runSimple(parsedArgs, rules);
+        }
+        HilbertKernel kernel = RulesSerde.kernelFromJson(rules, 0, 0);
+        Termination termination = RulesSerde.loadTermination(rules);
+        // The interactive application parser has no checkpoint options
+        String checkpointFilename = parsedArgs.getString("checkpoint");
+        File checkpointFile = checkpointFilename != null ? new File(checkpointFilename) : null;
+        boolean resume = Boolean.TRUE.equals(parsedArgs.getBoolean("resume"));
+        if (resume && checkpointFile == null) {
+            throw new IllegalArgumentException("Resume requires the checkpoint file");
+        }
+        // The events before the checkpoint would be lost and the rate limit depends on the wall clock
+        if (resume && parsedArgs.getString("events") != null) {
+            throw new IllegalArgumentException("The events file cannot be resumed");
+        }
+        long checkpointSteps = checkpointFile != null ? parsedArgs.getLong("checkpoint_steps") : 0;
+        long checkpointNanos = checkpointFile != null
+                ? (long) (parsedArgs.getDouble("checkpoint_seconds") * 1e9)
+                : 0;
+
+        StatusBuffer buffer;
+        Checkpoint checkpoint = null;
+        if (resume) {
+            logger.atInfo().log("Resuming from {} ...", checkpointFile);
+            checkpoint = Checkpoint.read(checkpointFile);
+            if (checkpoint.getRulesHash() != rules.hashCode()) {
+                throw new IllegalArgumentException(format("Checkpoint %s does not match the rules %s", checkpointFile, rulesFile));
+            }
+            buffer = new StatusBuffer();
+            checkpoint.restore(kernel, termination, buffer);
+            logger.atInfo().log("Resumed at step {}", kernel.getStep());
+        } else {
+            String statusFile = parsedArgs.getString("status");
+            logger.atInfo().log("Loading {} ...", statusFile);
+            // The kernel updates the status in place without allocating objects
+            buffer = StatusBuffer.of(StatusSerde.fromFile(statusFile, Sectors.fromJson(rules)));
+        }
+
+        long n = parsedArgs.getLong("number");
+        logger.atInfo().log("Running {} iterations ...", n);
+        double[] kpis = kernel.getKpiSchema().newRow();
+        String kpisFilename = parsedArgs.getString("kpis");
+        if (kpisFilename != null) {
+            logger.atInfo().log("Writing kpi on {}", kpisFilename);
+        }
+        coldStartMillis = -1;
+        long first = kernel.getStep();
+        long lastCheckpointStep = first;
+        long lastCheckpointTime = System.nanoTime();
+        // The interactive application parser has no event options
+        String eventsFilename = parsedArgs.getString("events");
+        boolean eventLog = Boolean.TRUE.equals(parsedArgs.getBoolean("event_log"));
+        CounterEventSink eventCounter = Boolean.TRUE.equals(parsedArgs.getBoolean("event_counts"))
+                ? new CounterEventSink() : null;
+        try (BinaryEventSink eventFile = eventsFilename != null ? BinaryEventSink.create(eventsFilename) : null;
+             KpiWriter kpiWriter = kpisFilename == null ? null
+                     : checkpoint != null ? KpiWriter.append(kpisFilename, kernel.getKpiSchema(), checkpoint.getKpiOffset())
+                     : KpiWriter.create(kpisFilename, kernel.getKpiSchema())) {
+            kernel.setEventSink(createEventSink(parsedArgs, eventFile, eventLog, eventCounter));
+            for (long i = first; i < n && !termination.isTerminated(); i++) {
+                if (logger.isDebugEnabled()) {
+                    logger.atDebug().log("Step {} Population {} Technology {}",
+                            i,
+                            buffer.getPopulation(),
+                            buffer.getTechnology());
+                }
+                kernel.step(buffer, kpis);
+                if (kpiWriter != null) {
+                    kpiWriter.write(kpis);
+                }
+                termination.test(buffer);
+                if (i == first) {
+                    // Measures after the first step so the management classes do not add to the measure
+                    coldStartMillis = ManagementFactory.getRuntimeMXBean().getUptime();
+                    logger.atInfo().log("Cold start to first step {} ms", coldStartMillis);
+                }
+                if (checkpointFile != null
+                        && ((checkpointSteps > 0 && i + 1 - lastCheckpointStep >= checkpointSteps)
+                        || (checkpointNanos > 0 && System.nanoTime() - lastCheckpointTime >= checkpointNanos))) {
+                    writeCheckpoint(checkpointFile, rules.hashCode(), kernel, termination, buffer, kpiWriter);
+                    lastCheckpointStep = i + 1;
+                    lastCheckpointTime = System.nanoTime();
+                }
+            }
+        }
+        if (eventCounter != null) {
+            for (EventType type : EventType.values()) {
+                logger.atInfo().log("{} events {} total {}", type, eventCounter.getCount(type), eventCounter.getSum(type));
+            }
+        }
+        Status status = buffer.toStatus();
+        if (termination.isTerminated()) {
+            logger.atInfo().log("Terminated by {} at step {}", termination.getReason(), kernel.getStep());
+        }
+        objectMapper.writeValue(new File(parsedArgs.getString("output")),
+                toJson(status, kernel.getStep(), termination.getReason()));
+        logger.atInfo().log("Completed");
+        return status;
+    }
+
+    /**
+     * Runs the Monte Carlo ensemble writing the per step statistics and returns the final status of first replica
+     * The output has the final status, the step and the termination reason of each replica
+     *
+     * @param parsedArgs the parsed argument
+     * @throws IOException in case of error
+     */
+    Status runEnsemble(Namespace parsedArgs) throws IOException {
+        int replicas = parsedArgs.getInt("replicas");
+        int threads = parsedArgs.getInt("threads");
+        if (threads <= 0) {
+            throw new IllegalArgumentException(format("Threads must be positive (%d)", threads));
+        }
+        if (parsedArgs.getString("checkpoint") != null || Boolean.TRUE.equals(parsedArgs.getBoolean("resume"))) {
+            throw new IllegalArgumentException(format("The ensemble of %d replicas has no checkpoints", replicas));
+        }
+        if (parsedArgs.getString("events") != null) {
+            throw new IllegalArgumentException(format("The ensemble of %d replicas has no events", replicas));
+        }
+        double[] quantiles = Arrays.stream(parsedArgs.getString("quantiles").split(","))
+                .map(String::trim)
+                .filter(text -> !text.isEmpty())
+                .mapToDouble(Double::parseDouble)
+                .toArray();
+        String rulesFile = parsedArgs.getString("rules");
+        logger.atInfo().log("Loading {} ...", rulesFile);
+        JsonNode rules = Utils.fromFile(rulesFile);
+        String statusFile = parsedArgs.getString("status");
+        logger.atInfo().log("Loading {} ...", statusFile);
+        Status status = StatusSerde.fromFile(statusFile, Sectors.fromJson(rules));
+        String engine = RulesSerde.loadEngine(rules);
+        if (RulesSerde.MEAN_FIELD_ENGINE.equals(engine)) {
+            throw new IllegalArgumentException(format("The mean field engine is deterministic and runs a single replica (%d)", replicas));
+        }
+        if (RulesSerde.AGENT_ENGINE.equals(engine) || RulesSerde.COHORT_ENGINE.equals(engine)) {
+            throw new IllegalArgumentException(format("The %s engine runs a single replica (%d)", engine, replicas));
+        }
+        // The batch kernels have not the poisson cache kpis
+        boolean columns = RulesSerde.STOCHASTIC_ENGINE.equals(engine) && !rules.has("poissonCache");
+        List<HilbertKernel> kernels = columns ? null : RulesSerde.kernelsFromJson(rules, replicas);
+        List<Termination> terminations = IntStream.range(0, replicas)
+                .mapToObj(i -> RulesSerde.loadTermination(rules))
+                .collect(Collectors.toList());
+
+        long n = parsedArgs.getLong("number");
+        logger.atInfo().log("Running {} replicas of {} iterations on {} threads ...", replicas, n, threads);
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            Ensemble ensemble = columns
+                    ? Ensemble.ofColumns(RulesSerde.ensembleKernelsFromJson(rules, replicas, threads),
+                    terminations, status, quantiles, pool, Ensemble.DEFAULT_BLOCK_SIZE)
+                    : new Ensemble(kernels, terminations, status, quantiles, pool, Ensemble.DEFAULT_BLOCK_SIZE);
+            String statsFilename = parsedArgs.getString("stats");
+            logger.atInfo().log("Writing statistics on {}", statsFilename);
+            try (KpiWriter writer = KpiWriter.create(statsFilename, ensemble.getStatsSchema())) {
+                ensemble.run(n, writer);
+            }
+            if (ensemble.isTerminated()) {
+                logger.atInfo().log("All replicas terminated at step {}", ensemble.getStep());
+            }
+            ObjectNode output = objectMapper.createObjectNode();
+            output.put("version", StatusSerde.VERSION);
+            ArrayNode replicasNode = output.putArray("replicas");
+            for (int i = 0; i < replicas; i++) {
+                Termination termination = ensemble.getTermination(i);
+                long step = termination.isTerminated() ? ensemble.getTerminationStep(i) : ensemble.getStep();
+                replicasNode.add(toJson(ensemble.getStatus(i).toStatus(), step, termination.getReason()));
+            }
+            objectMapper.writeValue(new File(parsedArgs.getString("output")), output);
+            logger.atInfo().log("Completed");
+            return ensemble.getStatus(0).toStatus();
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Runs the mean field, agent or cohort engine writing the kpis and returns the final status
+     * The engines have neither checkpoints nor event sinks
+     *
+     * @param parsedArgs the parsed argument
+     * @param rules      the rules
+     * @throws IOException in case of error
+     */
+    Status runSimple(Namespace parsedArgs, JsonNode rules) throws IOException {
+        String engine = RulesSerde.loadEngine(rules);
+        boolean meanField = RulesSerde.MEAN_FIELD_ENGINE.equals(engine);
+        boolean agent = RulesSerde.AGENT_ENGINE.equals(engine);
+        if (parsedArgs.getString("checkpoint") != null || parsedArgs.getString("events") != null) {
+            throw new IllegalArgumentException(format("The %s engine has neither checkpoints nor events", engine));
+        }
+        MeanFieldKernel meanFieldKernel = meanField ? RulesSerde.meanFieldKernelFromJson(rules) : null;
+        AgentKernel agentKernel = agent ? RulesSerde.agentKernelFromJson(rules) : null;
+        StepKernel kernel = meanField ? meanFieldKernel
+                : agent ? agentKernel
+                : RulesSerde.cohortKernelFromJson(rules);
+        Termination termination = RulesSerde.loadTermination(rules);
+        String statusFile = parsedArgs.getString("status");
+        logger.atInfo().log("Loading {} ...", statusFile);
+        StatusBuffer buffer = StatusBuffer.of(StatusSerde.fromFile(statusFile, Sectors.fromJson(rules)));
+
+        long n = parsedArgs.getLong("number");
+        if (meanField) {
+            logger.atInfo().log("Integrating {} intervals of {} with tolerance {} ...",
+                    n, meanFieldKernel.getInterval(), meanFieldKernel.getTolerance());
+        } else {
+            logger.atInfo().log("Running {} iterations of {} engine ...", n, engine);
+        }
+        double[] kpis = kernel.getKpiSchema().newRow();
+        String kpisFilename = parsedArgs.getString("kpis");
+        if (kpisFilename != null) {
+            logger.atInfo().log("Writing kpi on {}", kpisFilename);
+        }
+        coldStartMillis = -1;
+        long steps = 0;
+        long startTime = System.nanoTime();
+        try (KpiWriter kpiWriter = kpisFilename != null ? KpiWriter.create(kpisFilename, kernel.getKpiSchema()) : null) {
+            for (long i = 0; i < n && !termination.isTerminated(); i++) {
+                kernel.step(buffer, kpis);
+                steps++;
+                if (kpiWriter != null) {
+                    kpiWriter.write(kpis);
+                }
+                termination.test(buffer);
+                if (i == 0) {
+                    coldStartMillis = ManagementFactory.getRuntimeMXBean().getUptime();
+                    logger.atInfo().log("Cold start to first step {} ms", coldStartMillis);
+                }
+            }
+        }
+        if (meanField) {
+            logger.atInfo().log("Rates evaluated {} times", meanFieldKernel.getEvaluations());
+        } else if (agent && agentKernel.getAgentSteps() > 0) {
+            double millis = (System.nanoTime() - startTime) / 1e6;
+            logger.atInfo().log("{} individual steps, {} ms by step by million individuals",
+                    agentKernel.getAgentSteps(), millis * 1e6 / agentKernel.getAgentSteps());
+        }
+        Status status = buffer.toStatus();
+        if (termination.isTerminated()) {
+            logger.atInfo().log("Terminated by {} at step {}", termination.getReason(), steps);
+        }
+        objectMapper.writeValue(new File(parsedArgs.getString("output")),
+                toJson(status, steps, termination.getReason()));
+        logger.atInfo().log("Completed");
+        return status;
+    }
+
+    /**
+     * Returns the event sink of the run or null if none
+     * The written and logged events are sampled and rate limited, the counted events are not
+     *
+     * @param parsedArgs   the parsed arguments
+     * @param eventFile    the binary event file or null if none
+     * @param eventLog     true if the events are logged
+     * @param eventCounter the event counter or null if none
+     */
+    private EventSink createEventSink(Namespace parsedArgs, BinaryEventSink eventFile, boolean eventLog, CounterEventSink eventCounter) {
+        List<EventSink> sinks = new ArrayList<>();
+        if (eventFile != null || eventLog) {
+            EventSink output = eventFile != null && eventLog
+                    ? EventSink.of(eventFile, new Slf4jEventSink())
+                    : eventFile != null ? eventFile : new Slf4jEventSink();
+            int sampling = parsedArgs.getInt("event_sampling");
+            double rate = parsedArgs.getDouble("event_rate");
+            sinks.add(sampling > 1 || rate > 0 ? new ThrottledEventSink(output, sampling, rate) : output);
+        }
+        if (eventCounter != null) {
+            sinks.add(eventCounter);
+        }
+        return sinks.isEmpty() ? null : EventSink.of(sinks.toArray(EventSink[]::new));
+    }
+
+    /**
+     * Writes the checkpoint of the run
+     *
+     * @param file        the checkpoint file
+     * @param rulesHash   the hash of rules
+     * @param kernel      the kernel
+     * @param termination the termination
+     * @param status      the status
+     * @param kpiWriter   the kpi writer or null if none
+     * @throws IOException in case of error
+     */
+    private void writeCheckpoint(File file, int rulesHash, HilbertKernel kernel, Termination termination,
+                                 StatusBuffer status, KpiWriter kpiWriter) throws IOException {
+        long kpiOffset = 0;
+        if (kpiWriter != null) {
+            // The kpi rows must be in the file before the checkpoint refers to them
+            kpiWriter.flush();
+            kpiOffset = kpiWriter.getOffset();
+        }
+        Checkpoint.of(rulesHash, kernel, termination, status, kpiOffset).write(file);
+        logger.atInfo().log("Checkpoint at step {}", kernel.getStep());
+    }
+
+    /**
+     * Returns the json node of the final status of a run
+     *
+     * @param status the final status
+     * @param step   the final step
+     * @param reason the termination reason or null if not terminated
+     */
+    static ObjectNode toJson(Status status, long step, String reason) {
+        ObjectNode node = (ObjectNode) StatusSerde.toJson(status);
+        node.put("step", step);
+        if (reason != null) {
+            node.put("termination", reason);
+        }
+        return node;
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2023 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ */
+
+package org.mmarini.hilbert.apps;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import net.sourceforge.argparse4j.ArgumentParsers;
+import net.sourceforge.argparse4j.impl.Arguments;
+import net.sourceforge.argparse4j.inf.ArgumentParser;
+import net.sourceforge.argparse4j.inf.ArgumentParserException;
+import net.sourceforge.argparse4j.inf.Namespace;
+import org.mmarini.hilbert.Messages;
+import org.mmarini.hilbert.model.KpiWriter;
+import org.mmarini.hilbert.model.RegionModel;
+import org.mmarini.hilbert.model.Sectors;
+import org.mmarini.hilbert.model.StatusSerde;
+import org.mmarini.yaml.Utils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+
+import static java.lang.String.format;
+
+/**
+ * Runs the simulation of a grid of regions with migration in a single jvm
+ */
+public class Regions {
+    private static final Logger logger = LoggerFactory.getLogger(Regions.class);
+
+    static ArgumentParser createParser() {
+        ArgumentParser parser = ArgumentParsers.newFor(Regions.class.getName()).build()
+                .defaultHelp(true)
+                .version(Messages.getString("Hilbert.version"))
+                .description("Run a simulation of regions with migration.");
+        parser.addArgument("-v", "--version")
+                .action(Arguments.version())
+                .help("show current version");
+        parser.addArgument("-r", "--rules")
+                .setDefault("rules.yml")
+                .help("specify rules yaml file");
+        parser.addArgument("-s", "--status")
+                .setDefault("status.yml")
+                .help("specify status yaml file of each region");
+        parser.addArgument("-g", "--regions")
+                .setDefault("regions.yml")
+                .help("specify regions yaml file");
+        parser.addArgument("-k", "--kpis")
+                .help("specify kpis file of steps (csv or binary with .bin extension)");
+        parser.addArgument("-o", "--output")
+                .setDefault("regions.csv")
+                .help("specify final regions file (csv or binary with .bin extension)");
+        parser.addArgument("-n", "--number")
+                .setDefault(10000L)
+                .type(Long.class)
+                .help("specify the number of iterations");
+        parser.addArgument("--threads")
+                .setDefault(Runtime.getRuntime().availableProcessors())
+                .type(Integer.class)
+                .help("specify the number of threads running the regions");
+        return parser;
+    }
+
+    /**
+     * The application entry point
+     *
+     * @param args the command line arguments
+     */
+    public static void main(String[] args) {
+        ArgumentParser parser = createParser();
+        try {
+            Namespace parsedArgs = parser.parseArgs(args);
+            new Regions().run(parsedArgs);
+        } catch (ArgumentParserException ex) {
+            parser.handleError(ex);
+            System.exit(1);
+        } catch (IOException ex) {
+            logger.atError().setCause(ex).log();
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Runs the regions
+     *
+     * @param parsedArgs the parsed argument
+     * @throws IOException in case of error
+     */
+    public void run(Namespace parsedArgs) throws IOException {
+        int threads = parsedArgs.getInt("threads");
+        if (threads <= 0) {
+            throw new IllegalArgumentException(format("Threads must be positive (%d)", threads));
+        }
+        String regionsFile = parsedArgs.getString("regions");
+        logger.atInfo().log("Loading {} ...", regionsFile);
+        JsonNode spec = Utils.fromFile(regionsFile);
+        String rulesFile = parsedArgs.getString("rules");
+        logger.atInfo().log("Loading {} ...", rulesFile);
+        JsonNode rules = Utils.fromFile(rulesFile);
+        String statusFile = parsedArgs.getString("status");
+        logger.atInfo().log("Loading {} ...", statusFile);
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            RegionModel model = RegionModel.fromJson(spec, rules, StatusSerde.fromFile(statusFile, Sectors.fromJson(rules)), pool, RegionModel.DEFAULT_BLOCK_SIZE);
+            long n = parsedArgs.getLong("number");
+            logger.atInfo().log("Running {} regions for {} iterations on {} threads ...",
+                    model.getWidth() * model.getHeight(), n, threads);
+            String kpisFilename = parsedArgs.getString("kpis");
+            double[] kpis = model.getKpiSchema().newRow();
+            long t0 = System.nanoTime();
+            try (KpiWriter kpiWriter = kpisFilename != null ? KpiWriter.create(kpisFilename, model.getKpiSchema()) : null) {
+                for (long i = 0; i < n; i++) {
+                    model.step(kpis);
+                    if (kpiWriter != null) {
+                        kpiWriter.write(kpis);
+                    }
+                }
+            }
+            logger.atInfo().log("Run in {} ms", (System.nanoTime() - t0) / 1000000);
+            String output = parsedArgs.getString("output");
+            logger.atInfo().log("Writing regions on {}", output);
+            try (KpiWriter writer = KpiWriter.create(output, model.getRegionSchema())) {
+                model.writeRegions(writer);
+            }
+        } finally {
+            pool.shutdown();
+        }
+        logger.atInfo().log("Completed");
+    }
+}
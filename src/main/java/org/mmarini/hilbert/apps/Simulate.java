@@ -49,10 +49,8 @@ import javax.swing.filechooser.FileNameExtensionFilter;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.time.Duration;
-import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.function.Function;
@@ -65,30 +63,6 @@ import static org.mmarini.swing.SwingUtils.*;
  * Simulates the society
  */
 public class Simulate {
-    public static final List<String> KPI_NAMES = List.of(
-            "population",
-            "technology",
-            "deathsO",
-            "lambdaO",
-            "maxPopO",
-            "popO",
-            "deathsS",
-            "births",
-            "kf",
-            "kfPop",
-            "kfRes",
-            "lambdaS",
-            "lambdaB",
-            "deltaTR",
-            "lambdaR",
-            "deltaTE",
-            "lambdaE",
-            "ke",
-            "deathsH",
-            "kh",
-            "lifeExpectancy",
-            "lambdaH"
-    );
     public static final int WIDTH = 1200;
     public static final int HEIGHT = 800;
     private static final Logger logger = LoggerFactory.getLogger(Simulate.class);
@@ -109,10 +83,10 @@ public class Simulate {
                 .help("specify status yaml file");
         parser.addArgument("-k", "--kpis")
                 .required(false)
-                .help("specify kpis csv file");
+                .help("specify kpis file (csv or binary with .bin extension)");
         parser.addArgument("-b", "--batch")
                 .action(Arguments.storeTrue())
-                .help("specify batch mode");
+                .help("specify batch mode (see Batch)");
         parser.addArgument("-o", "--output")
                 .setDefault("output.yml")
                 .help("specify output yaml file");
@@ -132,10 +106,18 @@ public class Simulate {
         ArgumentParser parser = createParser();
         try {
             Namespace parsedArgs = parser.parseArgs(args);
-            new Simulate().run(parsedArgs);
+            if (parsedArgs.getBoolean("batch")) {
+                // Runs without building the user interface
+                new Batch().run(parsedArgs);
+            } else {
+                new Simulate().run(parsedArgs);
+            }
         } catch (ArgumentParserException ex) {
             parser.handleError(ex);
             System.exit(1);
+        } catch (IOException ex) {
+            logger.atError().setCause(ex).log();
+            System.exit(1);
         }
     }
 
@@ -154,7 +136,6 @@ public class Simulate {
     private final JFileChooser loadRulesPanel;
     private Status status;
     private Function<Status, Tuple2<Status, Supplier<Map<String, Number>>>> engine;
-    private CSVWriter kpiWriter;
 
     /**
      * Create the simulation app
@@ -384,16 +365,6 @@ public class Simulate {
             String rulesFile = parsedArgs.getString("rules");
             logger.atInfo().log("Loading {} ...", rulesFile);
             this.engine = RulesSerde.fromFile(rulesFile);
-            this.kpiWriter = null;
-            String kpisFilename = parsedArgs.getString("kpis");
-            if (kpisFilename != null) {
-                logger.atInfo().log("Writing kpi on {}", kpisFilename);
-                try {
-                    kpiWriter = CSVWriter.create(kpisFilename, KPI_NAMES);
-                } catch (FileNotFoundException e) {
-                    logger.atError().setCause(e).log();
-                }
-            }
         } catch (IOException e) {
             logger.atError().setCause(e).log();
             throw new RuntimeException(e);
@@ -470,49 +441,7 @@ public class Simulate {
      */
     private void run(Namespace parsedArgs) {
         init(parsedArgs);
-        if (parsedArgs.getBoolean("batch")) {
-            runBatch(parsedArgs);
-        } else {
-            runInteractive();
-        }
-    }
-
-    /**
-     * Runs batch simulator
-     *
-     * @param parsedArgs the parsed argument
-     */
-    private void runBatch(Namespace parsedArgs) {
-        try {
-            long n = parsedArgs.getLong("number");
-            logger.atInfo().log("Running {} iterations ...", n);
-            for (long i = 0; i < n && status.getPopulation() > 0; i++) {
-                logger.atInfo().log("Step {} Population {} Technology {}",
-                        i,
-                        status.getPopulation(),
-                        status.getTechnology());
-                Tuple2<Status, Supplier<Map<String, Number>>> next = engine.apply(status);
-                if (kpiWriter != null) {
-                    kpiWriter.write(next._2.get());
-                }
-                status = next._1;
-                logger.atDebug().log("Post engine {}", status);
-            }
-            if (status.getPopulation() == 0) {
-                logger.atInfo().log("The population became extinct");
-            }
-            StatusSerde.write(new File(parsedArgs.getString("output")), status);
-            if (kpiWriter != null) {
-                try {
-                    kpiWriter.close();
-                } catch (IOException e) {
-                    logger.atError().setCause(e).log();
-                }
-            }
-            logger.atInfo().log("Completed");
-        } catch (IOException e) {
-            logger.atError().setCause(e).log();
-        }
+        runInteractive();
     }
 
     /**
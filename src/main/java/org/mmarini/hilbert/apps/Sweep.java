@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2023 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ */
+
+package org.mmarini.hilbert.apps;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import net.sourceforge.argparse4j.ArgumentParsers;
+import net.sourceforge.argparse4j.impl.Arguments;
+import net.sourceforge.argparse4j.inf.ArgumentParser;
+import net.sourceforge.argparse4j.inf.ArgumentParserException;
+import net.sourceforge.argparse4j.inf.Namespace;
+import org.mmarini.hilbert.Messages;
+import org.mmarini.hilbert.model.KpiWriter;
+import org.mmarini.hilbert.model.ParameterSweep;
+import org.mmarini.yaml.Utils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+
+import static java.lang.String.format;
+
+/**
+ * Runs the simulation over a parameter sweep in a single jvm
+ */
+public class Sweep {
+    private static final Logger logger = LoggerFactory.getLogger(Sweep.class);
+
+    static ArgumentParser createParser() {
+        ArgumentParser parser = ArgumentParsers.newFor(Sweep.class.getName()).build()
+                .defaultHelp(true)
+                .version(Messages.getString("Hilbert.version"))
+                .description("Run a parameter sweep of simulation.");
+        parser.addArgument("-v", "--version")
+                .action(Arguments.version())
+                .help("show current version");
+        parser.addArgument("-r", "--rules")
+                .setDefault("rules.yml")
+                .help("specify rules yaml file");
+        parser.addArgument("-s", "--status")
+                .setDefault("status.yml")
+                .help("specify status yaml file");
+        parser.addArgument("-w", "--sweep")
+                .setDefault("sweep.yml")
+                .help("specify sweep yaml file");
+        parser.addArgument("-o", "--output")
+                .setDefault("sweep.csv")
+                .help("specify summary file (csv or binary with .bin extension)");
+        parser.addArgument("-n", "--number")
+                .setDefault(10000L)
+                .type(Long.class)
+                .help("specify the maximum number of iterations of each point");
+        parser.addArgument("--threads")
+                .setDefault(Runtime.getRuntime().availableProcessors())
+                .type(Integer.class)
+                .help("specify the number of threads running the points");
+        return parser;
+    }
+
+    /**
+     * The application entry point
+     *
+     * @param args the command line arguments
+     */
+    public static void main(String[] args) {
+        ArgumentParser parser = createParser();
+        try {
+            Namespace parsedArgs = parser.parseArgs(args);
+            new Sweep().run(parsedArgs);
+        } catch (ArgumentParserException ex) {
+            parser.handleError(ex);
+            System.exit(1);
+        } catch (IOException ex) {
+            logger.atError().setCause(ex).log();
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Runs the parameter sweep
+     *
+     * @param parsedArgs the parsed argument
+     * @throws IOException in case of error
+     */
+    public void run(Namespace parsedArgs) throws IOException {
+        int threads = parsedArgs.getInt("threads");
+        if (threads <= 0) {
+            throw new IllegalArgumentException(format("Threads must be positive (%d)", threads));
+        }
+        String sweepFile = parsedArgs.getString("sweep");
+        logger.atInfo().log("Loading {} ...", sweepFile);
+        JsonNode spec = Utils.fromFile(sweepFile);
+        String rulesFile = parsedArgs.getString("rules");
+        logger.atInfo().log("Loading {} ...", rulesFile);
+        JsonNode rules = Utils.fromFile(rulesFile);
+        String statusFile = parsedArgs.getString("status");
+        logger.atInfo().log("Loading {} ...", statusFile);
+        JsonNode status = Utils.fromFile(statusFile);
+        ParameterSweep sweep = ParameterSweep.fromJson(spec, rules, status);
+
+        long n = parsedArgs.getLong("number");
+        logger.atInfo().log("Running {} points of {} iterations on {} threads ...", sweep.getPoints().length, n, threads);
+        String output = parsedArgs.getString("output");
+        logger.atInfo().log("Writing summary on {}", output);
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try (KpiWriter writer = KpiWriter.create(output, sweep.getSummarySchema())) {
+            sweep.run(n, pool, writer);
+        } finally {
+            pool.shutdown();
+        }
+        logger.atInfo().log("Completed");
+    }
+}
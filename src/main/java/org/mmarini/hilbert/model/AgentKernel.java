@@ -0,0 +1,506 @@
+/*
+ * Copyright (c) 2023 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ */
+
+package org.mmarini.hilbert.model;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static java.lang.Math.*;
+import static java.lang.String.format;
+import static org.mmarini.hilbert.model.HilbertRules.deaths;
+
+/**
+ * Computes the hilbert rules on the individuals of the society
+ * <p>
+ * Each individual has an age, an occupation and an education state in the primitive columns of
+ * {@link AgentPopulation}.
+ * The natural deaths depend on the age: the mortality grows exponentially with the age (Gompertz law)
+ * doubling every mortality doubling time, and its level is solved at each step so that the expected
+ * lifetime is the life expectancy of the health rule.
+ * The death probabilities are tabulated by age class of the time interval and each individual is tested
+ * against 32 random bits of a block of random values, so the loop over the individuals has neither calls nor allocations
+ * and it ages the survivors in the same pass.
+ * </p>
+ * <p>
+ * The over settlement and starvation deaths are drawn as in {@link HilbertKernel} and remove random individuals,
+ * the newborns take the occupation by the population preferences and are educated with the probability ke
+ * of the education rule.
+ * The occupations count the farmers, researchers, educators and doctors of the rules and
+ * the technology loss is drawn by the uneducated individuals.
+ * The removed individuals are replaced by the last ones (swap remove) to keep the columns compact.
+ * The individuals are created from the status population when it differs from the kernel individuals
+ * (e.g. at the first step), with the stationary age distribution of the mortality and the expected occupations.
+ * </p>
+ */
+public class AgentKernel implements StepKernel {
+    public static final List<String> AGENT_KPI_NAMES = List.of(
+            "meanAge",
+            "educated"
+    );
+    public static final double DEFAULT_MORTALITY_DOUBLING_TIME = 8;
+    private static final int BLOCK_SIZE = 4096;
+    private static final int MAX_AGE_CLASSES = 1 << 20;
+    private static final double MIN_SURVIVAL = 1e-12;
+
+    private final RandomSource[] randoms;
+    private final RandomSource overSettlementRandom;
+    private final RandomSource foodProductionRandom;
+    private final RandomSource healthRandom;
+    private final RandomSource researchRandom;
+    private final RandomSource educationRandom;
+    private final KpiSchema kpiSchema;
+    private final int meanAgeSlot;
+    private final int educatedSlot;
+    private AgentPopulation agents;
+    private final boolean binomialDeaths;
+    private final double dt;
+    private final double mortalityGrowth;
+    private final double resources;
+    private final double minTechnology;
+    private final double maxTechnology;
+    private final double settlementDensity;
+    private final double settlementDeathTimeConstant;
+    private final double foodProductivity;
+    private final double foodDemand;
+    private final double foodDeathTimeConstant;
+    private final double foodBirthTimeConstant;
+    private final double healthProductivity;
+    private final double healthDemand;
+    private final double minimumLifeExpectancy;
+    private final double maximumLifeExpectancy;
+    private final double researchProductivity;
+    private final double researchCost;
+    private final double researchQuantum;
+    private final double educationProductivity;
+    private final double educationDemand;
+    private final double educationTimeConstant;
+    private final long[] randomBits;
+    private double[] occupationFractions;
+    private double[] shares;
+    private final double[] naturalDeaths;
+    private double[] deathProbabilities;
+    private long[] deathThresholds;
+    private int ageClasses;
+    private int[] deadIndices;
+    private long step;
+    private long agentSteps;
+
+    /**
+     * Creates the kernel
+     *
+     * @param randoms               the random sources by rule stream (RulesSerde stream indices)
+     * @param step                  the initial step
+     * @param binomialDeaths        true if over settlement and starvation deaths have binomial distribution
+     * @param dt                    the time interval
+     * @param mortalityDoublingTime the age interval doubling the mortality
+     * @param parameters            the rule parameters
+     */
+    AgentKernel(List<RandomSource> randoms, long step, boolean binomialDeaths,
+                double dt, double mortalityDoublingTime, RuleParameters parameters) {
+        if (!(dt > 0)) {
+            throw new IllegalArgumentException(format("Time interval must be positive (%g)", dt));
+        }
+        if (!(mortalityDoublingTime > 0)) {
+            throw new IllegalArgumentException(format("Mortality doubling time must be positive (%g)", mortalityDoublingTime));
+        }
+        if (!(parameters.getMinimumLifeExpectancy() > 0)) {
+            throw new IllegalArgumentException(format("Minimum life expectancy must be positive (%g)", parameters.getMinimumLifeExpectancy()));
+        }
+        this.randoms = randoms.toArray(RandomSource[]::new);
+        this.overSettlementRandom = randoms.get(RulesSerde.OVER_SETTLEMENT_STREAM);
+        this.foodProductionRandom = randoms.get(RulesSerde.FOOD_PRODUCTION_STREAM);
+        this.healthRandom = randoms.get(RulesSerde.HEALTH_STREAM);
+        this.researchRandom = randoms.get(RulesSerde.RESEARCH_STREAM);
+        this.educationRandom = randoms.get(RulesSerde.EDUCATION_STREAM);
+        this.kpiSchema = KpiSchema.of(Stream.concat(HilbertKernel.KPI_NAMES.stream(), AGENT_KPI_NAMES.stream())
+                .collect(Collectors.toList()));
+        this.meanAgeSlot = kpiSchema.indexOf(AGENT_KPI_NAMES.get(0));
+        this.educatedSlot = kpiSchema.indexOf(AGENT_KPI_NAMES.get(1));
+        this.agents = new AgentPopulation(0);
+        this.step = step;
+        this.binomialDeaths = binomialDeaths;
+        this.dt = dt;
+        this.mortalityGrowth = log(2) / mortalityDoublingTime;
+        this.resources = parameters.getResources();
+        this.minTechnology = parameters.getMinTechnology();
+        this.maxTechnology = parameters.getMaxTechnology();
+        this.settlementDensity = parameters.getSettlementDensity();
+        this.settlementDeathTimeConstant = parameters.getSettlementDeathTimeConstant();
+        this.foodProductivity = parameters.getFoodProductivity();
+        this.foodDemand = parameters.getFoodDemand();
+        this.foodDeathTimeConstant = parameters.getFoodDeathTimeConstant();
+        this.foodBirthTimeConstant = parameters.getFoodBirthTimeConstant();
+        this.healthProductivity = parameters.getHealthProductivity();
+        this.healthDemand = parameters.getHealthDemand();
+        this.minimumLifeExpectancy = parameters.getMinimumLifeExpectancy();
+        this.maximumLifeExpectancy = parameters.getMaximumLifeExpectancy();
+        this.researchProductivity = parameters.getResearchProductivity();
+        this.researchCost = parameters.getResearchCost();
+        this.researchQuantum = parameters.getResearchQuantum();
+        this.educationProductivity = parameters.getEducationProductivity();
+        this.educationDemand = parameters.getEducationDemand();
+        this.educationTimeConstant = parameters.getEducationTimeConstant();
+        this.randomBits = new long[BLOCK_SIZE / 2];
+        this.occupationFractions = new double[AgentPopulation.INACTIVE];
+        this.shares = new double[0];
+        this.naturalDeaths = new double[2];
+        this.deathProbabilities = new double[0];
+        this.deathThresholds = new long[0];
+        this.deadIndices = new int[BLOCK_SIZE];
+    }
+
+    /**
+     * Tabulates the death probabilities in the time interval by age class (age / dt)
+     * The last class has death probability 1
+     *
+     * @param lifeExpectancy the life expectancy
+     */
+    private void computeDeathProbabilities(double lifeExpectancy) {
+        double a0 = ExtMath.gompertzMortality(lifeExpectancy, mortalityGrowth);
+        // Cumulated mortality of the class k is a0 / b exp(b k dt) (exp(b dt) - 1)
+        double hazard0 = a0 / mortalityGrowth * expm1(mortalityGrowth * dt);
+        double growth = exp(mortalityGrowth * dt);
+        int n = 0;
+        double hazard = hazard0;
+        double survival = 1;
+        while (n < MAX_AGE_CLASSES - 1 && survival > MIN_SURVIVAL) {
+            if (n >= deathProbabilities.length) {
+                deathProbabilities = Arrays.copyOf(deathProbabilities, max(64, n * 2));
+            }
+            double p = -expm1(-hazard);
+            deathProbabilities[n++] = p;
+            survival *= 1 - p;
+            hazard *= growth;
+        }
+        if (n >= deathProbabilities.length) {
+            deathProbabilities = Arrays.copyOf(deathProbabilities, n + 1);
+        }
+        deathProbabilities[n++] = 1;
+        ageClasses = n;
+        if (deathThresholds.length < n) {
+            deathThresholds = new long[deathProbabilities.length];
+        }
+        for (int i = 0; i < n; i++) {
+            deathThresholds[i] = round(deathProbabilities[i] * 0x1p32);
+        }
+    }
+
+    /**
+     * Creates the individuals with the stationary age distribution of the death probabilities
+     *
+     * @param population          the number of individuals
+     * @param occupationFractions the cumulated fractions of occupations
+     * @param ke                  the education factor
+     */
+    private void createAgents(int population, double[] occupationFractions, double ke) {
+        // The stationary density of age classes is the survival
+        double[] cumulated = new double[ageClasses];
+        double survival = 1;
+        double total = 0;
+        for (int i = 0; i < ageClasses; i++) {
+            total += survival;
+            cumulated[i] = total;
+            survival *= 1 - deathProbabilities[i];
+        }
+        agents.clear();
+        agents.ensureCapacity(population);
+        for (int i = 0; i < population; i++) {
+            double u = healthRandom.nextDouble() * total;
+            int k = Arrays.binarySearch(cumulated, u);
+            k = min(k >= 0 ? k : -k - 1, ageClasses - 1);
+            float age = (float) ((k + healthRandom.nextDouble()) * dt);
+            agents.add(age, occupation(foodProductionRandom.nextDouble(), occupationFractions),
+                    educationRandom.nextDouble() < ke);
+        }
+    }
+
+    /**
+     * Returns the number of simulated individuals by step summed over the steps
+     */
+    public long getAgentSteps() {
+        return agentSteps;
+    }
+
+    /**
+     * Returns the individuals
+     */
+    public AgentPopulation getAgents() {
+        return agents;
+    }
+
+    @Override
+    public KpiSchema getKpiSchema() {
+        return kpiSchema;
+    }
+
+    /**
+     * Returns the current step
+     */
+    public long getStep() {
+        return step;
+    }
+
+    /**
+     * Returns the occupation by uniform value
+     * The last occupation has the remaining fraction
+     *
+     * @param u                   the uniform value
+     * @param occupationFractions the cumulated fractions of occupations
+     */
+    private static int occupation(double u, double[] occupationFractions) {
+        int i = 0;
+        while (i < occupationFractions.length && u >= occupationFractions[i]) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Removes random individuals
+     *
+     * @param random the random source
+     * @param n      the number of individuals to remove
+     * @return the number of removed individuals
+     */
+    private int removeRandom(RandomSource random, long n) {
+        int removed = (int) min(n, agents.getSize());
+        for (int i = 0; i < removed; i++) {
+            agents.remove((int) (random.nextDouble() * agents.getSize()));
+        }
+        return removed;
+    }
+
+    /**
+     * Removes the individuals dying by age and ages the survivors
+     * Writes the expected deaths and the sum of ages of the tested individuals
+     * Each individual is tested with 32 bits of the random values against the integer thresholds of death probabilities
+     *
+     * @param result the expected deaths and the sum of ages
+     * @return the number of deaths
+     */
+    private int removeNaturalDeaths(double[] result) {
+        float[] ages = agents.getAges();
+        double[] probabilities = deathProbabilities;
+        long[] thresholds = deathThresholds;
+        long[] bits = randomBits;
+        float invDt = (float) (1 / dt);
+        float fdt = (float) dt;
+        int last = ageClasses - 1;
+        int size = agents.getSize();
+        int dead = 0;
+        double expected = 0;
+        double sumAges = 0;
+        for (int from = 0; from < size; from += BLOCK_SIZE) {
+            int n = min(BLOCK_SIZE, size - from);
+            for (int j = 0; j < (n + 1) / 2; j++) {
+                bits[j] = healthRandom.nextLong();
+            }
+            if (dead + n > deadIndices.length) {
+                deadIndices = Arrays.copyOf(deadIndices, max(deadIndices.length * 2, dead + n));
+            }
+            int[] indices = deadIndices;
+            for (int j = 0; j < n; j++) {
+                int i = from + j;
+                float age = ages[i];
+                int k = min((int) (age * invDt), last);
+                long u = (bits[j >> 1] >>> ((j & 1) << 5)) & 0xffffffffL;
+                expected += probabilities[k];
+                sumAges += age;
+                ages[i] = age + fdt;
+                // Branch free append of the dead indices
+                indices[dead] = i;
+                dead += u < thresholds[k] ? 1 : 0;
+            }
+        }
+        agents.removeAll(deadIndices, dead);
+        result[0] = expected;
+        result[1] = sumAges;
+        return dead;
+    }
+
+    /**
+     * Sets the current step
+     *
+     * @param step the step
+     */
+    public void setStep(long step) {
+        this.step = step;
+    }
+
+    @Override
+    public void step(StatusBuffer status, double[] kpis) {
+        // Positions the generators at the current step
+        for (RandomSource random : randoms) {
+            random.setStep(step);
+        }
+        step++;
+
+        double technology = status.technology;
+
+        // Computes the shared values as the stochastic kernel does
+        Sectors sectors = status.sectors;
+        double[] occupationPrefs = status.occupationPrefs;
+        int occupationCount = occupationPrefs.length;
+        if (occupationFractions.length != occupationCount - 1) {
+            occupationFractions = new double[occupationCount - 1];
+        }
+        if (shares.length != status.resourcePrefs.length) {
+            shares = new double[status.resourcePrefs.length];
+        }
+        double popTot = 0;
+        for (int i = 0; i < occupationCount; i++) {
+            popTot += exp(occupationPrefs[i]);
+            if (i < occupationCount - 1) {
+                occupationFractions[i] = popTot;
+            }
+        }
+        for (int i = 0; i < occupationCount - 1; i++) {
+            occupationFractions[i] /= popTot;
+        }
+        status.resources(shares);
+        double foodRatio = shares[sectors.getFood()];
+        double researchRatio = shares[sectors.getResearch()];
+        double educationRatio = shares[sectors.getEducation()];
+        double healthRatio = shares[sectors.getHealth()];
+        double settlementRatio = shares[sectors.getSettlement()];
+
+        double efficiency = -expm1(-technology);
+
+        // Creates the individuals if the status has been changed
+        if (status.population > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(format("Too many individuals (%d)", status.population));
+        }
+        int population = (int) status.population;
+        if (agents.getOccupations() != occupationCount) {
+            agents = new AgentPopulation(population, occupationCount);
+        }
+        if (population != agents.getSize()) {
+            if (population > 0) {
+                double doctors = exp(occupationPrefs[sectors.getDoctor()]) / popTot * population;
+                double educators = exp(occupationPrefs[sectors.getEducator()]) / popTot * population;
+                double kh = efficiency * min(doctors * healthProductivity, resources * healthRatio) / population / healthDemand;
+                double ke = efficiency * min(educators * educationProductivity / population, educationRatio * resources) / educationDemand;
+                computeDeathProbabilities((maximumLifeExpectancy - minimumLifeExpectancy) * min(kh, 1) + minimumLifeExpectancy);
+                createAgents(population, occupationFractions, min(max(ke, 0), 1));
+            } else {
+                agents.clear();
+            }
+        }
+        double farmers = agents.getOccupationCount(sectors.getFarmer());
+        double researchers = agents.getOccupationCount(sectors.getResearcher());
+        double educators = agents.getOccupationCount(sectors.getEducator());
+        double doctors = agents.getOccupationCount(sectors.getDoctor());
+        int uneducated = population - agents.getEducatedCount();
+
+        // Over settlement rule
+        double maxPopO = settlementRatio * resources * settlementDensity / settlementDeathTimeConstant * dt;
+        double popO = population / settlementDeathTimeConstant * dt;
+        double lambdaO = max(0, popO - maxPopO);
+
+        // Food production rule
+        double kfPop = efficiency * foodProductivity * farmers / population / foodDemand;
+        double kfRes = efficiency * foodRatio * resources / population / foodDemand;
+        double kf = min(kfPop, kfRes);
+        double lambdaS = max(0, population * (1 - kf)) * dt / foodDeathTimeConstant;
+        double lambdaB = max(0, population * (kf - 1)) * dt / foodBirthTimeConstant;
+
+        // Health rule by age
+        double kh = efficiency * min(doctors * healthProductivity, resources * healthRatio) / population / healthDemand;
+        double lifeExpectancy = (maximumLifeExpectancy - minimumLifeExpectancy) * min(kh, 1) + minimumLifeExpectancy;
+        if (population > 0) {
+            computeDeathProbabilities(lifeExpectancy);
+        }
+
+        // Research rule
+        double lambdaR = efficiency * min(researchers * researchProductivity, researchRatio * resources) * dt / researchCost;
+
+        // Education rule by uneducated individuals
+        double ke = efficiency * min(educators * educationProductivity / population, educationRatio * resources) / educationDemand;
+        double lambdaE = uneducated * dt / educationTimeConstant;
+
+        // Draws the changes
+        int deathsH = population > 0 ? -removeNaturalDeaths(naturalDeaths) : 0;
+        double lambdaH = population > 0 ? naturalDeaths[0] : 0;
+        double meanAge = population > 0 ? naturalDeaths[1] / population : 0;
+        int deathsO = -removeRandom(overSettlementRandom, -deaths(overSettlementRandom, binomialDeaths, population, lambdaO));
+        int deathsS = -removeRandom(foodProductionRandom, -deaths(foodProductionRandom, binomialDeaths, population, lambdaS));
+        long births = lambdaB > 0 ? foodProductionRandom.nextPoisson(lambdaB) : 0;
+        long researchSteps = lambdaR > 0 ? researchRandom.nextPoisson(lambdaR) : 0;
+        double deltaTR = researchSteps * researchQuantum;
+        long ne = lambdaE > 0 ? educationRandom.nextPoisson(lambdaE) : 0;
+        double deltaTE = -technology * min((double) ne / population, 1);
+
+        // Adds the newborns (the survivors have been aged by the natural deaths)
+        agents.ensureCapacity(agents.getSize() + births);
+        double educatedProbability = min(max(ke, 0), 1);
+        for (int i = 0; i < births; i++) {
+            agents.add(0f, occupation(foodProductionRandom.nextDouble(), occupationFractions),
+                    educationRandom.nextDouble() < educatedProbability);
+        }
+        agentSteps += population;
+
+        // Sums the changes (0 + value normalizes the negative zeros as Status.sum does)
+        double newTechnology = 0d + technology;
+        if (researchSteps != 0) {
+            newTechnology += deltaTR;
+        }
+        newTechnology += deltaTE;
+        status.population = agents.getSize();
+        status.technology = min(max(minTechnology, newTechnology), maxTechnology);
+        StatusBuffer.center(occupationPrefs);
+        StatusBuffer.center(status.resourcePrefs);
+
+        // Writes the kpis
+        kpis[HilbertKernel.POPULATION_KPI] = population;
+        kpis[HilbertKernel.TECHNOLOGY_KPI] = technology;
+        kpis[HilbertKernel.DEATHS_O_KPI] = deathsO;
+        kpis[HilbertKernel.LAMBDA_O_KPI] = lambdaO;
+        kpis[HilbertKernel.MAX_POP_O_KPI] = maxPopO;
+        kpis[HilbertKernel.POP_O_KPI] = popO;
+        kpis[HilbertKernel.DEATHS_S_KPI] = deathsS;
+        kpis[HilbertKernel.BIRTHS_KPI] = births;
+        kpis[HilbertKernel.KF_KPI] = kf;
+        kpis[HilbertKernel.KF_POP_KPI] = kfPop;
+        kpis[HilbertKernel.KF_RES_KPI] = kfRes;
+        kpis[HilbertKernel.LAMBDA_S_KPI] = lambdaS;
+        kpis[HilbertKernel.LAMBDA_B_KPI] = lambdaB;
+        kpis[HilbertKernel.DELTA_TR_KPI] = deltaTR;
+        kpis[HilbertKernel.LAMBDA_R_KPI] = lambdaR;
+        kpis[HilbertKernel.DELTA_TE_KPI] = deltaTE;
+        kpis[HilbertKernel.LAMBDA_E_KPI] = lambdaE;
+        kpis[HilbertKernel.KE_KPI] = ke;
+        kpis[HilbertKernel.DEATHS_H_KPI] = deathsH;
+        kpis[HilbertKernel.KH_KPI] = kh;
+        kpis[HilbertKernel.LIFE_EXPECTANCY_KPI] = lifeExpectancy;
+        kpis[HilbertKernel.LAMBDA_H_KPI] = lambdaH;
+        kpis[meanAgeSlot] = meanAge;
+        kpis[educatedSlot] = population > 0 ? (double) (population - uneducated) / population : 0;
+    }
+}
@@ -0,0 +1,248 @@
+/*
+ * Copyright (c) 2023 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ */
+
+package org.mmarini.hilbert.model;
+
+import java.util.Arrays;
+
+import static java.lang.String.format;
+
+/**
+ * Holds the individuals of a society in primitive columns
+ * <p>
+ * The age, the occupation and the education state of each individual are the elements at the same index
+ * of the columns, so there is no object by individual (6 bytes by individual).
+ * The removed individuals are replaced by the last one (swap remove), so the columns stay compact
+ * and the order of individuals is not preserved.
+ * The counts of occupations and educated individuals are updated at each change.
+ * </p>
+ */
+public class AgentPopulation {
+    public static final int FARMER = 0;
+    public static final int RESEARCHER = 1;
+    public static final int EDUCATOR = 2;
+    public static final int DOCTOR = 3;
+    public static final int INACTIVE = 4;
+    public static final int OCCUPATIONS = 5;
+    private static final int MIN_CAPACITY = 16;
+
+    private final int[] occupationCounts;
+    private float[] ages;
+    private byte[] occupations;
+    private byte[] educated;
+    private int size;
+    private int educatedCount;
+
+    /**
+     * Creates the population
+     *
+     * @param capacity the initial capacity
+     */
+    public AgentPopulation(int capacity) {
+        this(capacity, OCCUPATIONS);
+    }
+
+    /**
+     * Creates the population
+     *
+     * @param capacity    the initial capacity
+     * @param occupations the number of occupations
+     */
+    public AgentPopulation(int capacity, int occupations) {
+        if (!(occupations > 0 && occupations <= Byte.MAX_VALUE)) {
+            throw new IllegalArgumentException(format("Occupations must be between 1 and %d (%d)",
+                    Byte.MAX_VALUE, occupations));
+        }
+        int n = Math.max(capacity, MIN_CAPACITY);
+        this.ages = new float[n];
+        this.occupations = new byte[n];
+        this.educated = new byte[n];
+        this.occupationCounts = new int[occupations];
+    }
+
+    /**
+     * Adds an individual
+     *
+     * @param age        the age
+     * @param occupation the occupation
+     * @param isEducated true if educated
+     */
+    public void add(float age, int occupation, boolean isEducated) {
+        if (size == ages.length) {
+            grow(size + 1);
+        }
+        ages[size] = age;
+        occupations[size] = (byte) occupation;
+        educated[size] = (byte) (isEducated ? 1 : 0);
+        occupationCounts[occupation]++;
+        if (isEducated) {
+            educatedCount++;
+        }
+        size++;
+    }
+
+    /**
+     * Adds the age to all the individuals
+     *
+     * @param dt the age increment
+     */
+    public void age(float dt) {
+        float[] ages = this.ages;
+        for (int i = 0; i < size; i++) {
+            ages[i] += dt;
+        }
+    }
+
+    /**
+     * Removes all the individuals
+     */
+    public void clear() {
+        size = 0;
+        educatedCount = 0;
+        Arrays.fill(occupationCounts, 0);
+    }
+
+    /**
+     * Ensures the capacity of columns
+     *
+     * @param capacity the capacity
+     */
+    public void ensureCapacity(long capacity) {
+        if (capacity > ages.length) {
+            grow(capacity);
+        }
+    }
+
+    /**
+     * Returns the age of an individual
+     *
+     * @param index the index
+     */
+    public float getAge(int index) {
+        return ages[index];
+    }
+
+    /**
+     * Returns the age column (the first size elements are valid)
+     */
+    float[] getAges() {
+        return ages;
+    }
+
+    /**
+     * Returns the number of educated individuals
+     */
+    public int getEducatedCount() {
+        return educatedCount;
+    }
+
+    /**
+     * Returns the occupation of an individual
+     *
+     * @param index the index
+     */
+    public int getOccupation(int index) {
+        return occupations[index];
+    }
+
+    /**
+     * Returns the number of occupations
+     */
+    public int getOccupations() {
+        return occupationCounts.length;
+    }
+
+    /**
+     * Returns the number of individuals with an occupation
+     *
+     * @param occupation the occupation
+     */
+    public int getOccupationCount(int occupation) {
+        return occupationCounts[occupation];
+    }
+
+    /**
+     * Returns the number of individuals
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Grows the columns by half of capacity at least
+     *
+     * @param capacity the minimum capacity
+     */
+    private void grow(long capacity) {
+        long newCapacity = Math.max(capacity, ages.length + (long) (ages.length >> 1));
+        if (newCapacity > Integer.MAX_VALUE - 8) {
+            if (capacity > Integer.MAX_VALUE - 8) {
+                throw new IllegalArgumentException(format("Too many individuals (%d)", capacity));
+            }
+            newCapacity = Integer.MAX_VALUE - 8;
+        }
+        ages = Arrays.copyOf(ages, (int) newCapacity);
+        occupations = Arrays.copyOf(occupations, (int) newCapacity);
+        educated = Arrays.copyOf(educated, (int) newCapacity);
+    }
+
+    /**
+     * Returns true if an individual is educated
+     *
+     * @param index the index
+     */
+    public boolean isEducated(int index) {
+        return educated[index] != 0;
+    }
+
+    /**
+     * Removes an individual replacing it with the last one
+     *
+     * @param index the index
+     */
+    public void remove(int index) {
+        occupationCounts[occupations[index]]--;
+        educatedCount -= educated[index];
+        int last = --size;
+        ages[index] = ages[last];
+        occupations[index] = occupations[last];
+        educated[index] = educated[last];
+    }
+
+    /**
+     * Removes the individuals at the ascending indices
+     * The individuals are removed from the highest index, so the lower indices stay valid
+     *
+     * @param indices the ascending indices
+     * @param n       the number of indices
+     */
+    public void removeAll(int[] indices, int n) {
+        for (int i = n - 1; i >= 0; i--) {
+            remove(indices[i]);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2023 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ */
+
+package org.mmarini.hilbert.model;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+
+/**
+ * Writes the events in binary format
+ * <p>
+ * The file contains the magic number "HEVT", the version (int), the number of event types (int),
+ * the type names (modified UTF-8) and the event records with the type ordinal (byte),
+ * the step (long) and the value (double) in big endian.
+ * </p>
+ */
+public class BinaryEventSink implements EventSink, Closeable {
+    public static final int MAGIC = 0x48455654;
+    public static final int VERSION = 1;
+    public static final int RECORD_SIZE = 1 + Long.BYTES + Double.BYTES;
+
+    /**
+     * Returns the binary sink to file
+     *
+     * @param filename the filename
+     * @throws IOException in case of error
+     */
+    public static BinaryEventSink create(String filename) throws IOException {
+        return new BinaryEventSink(new BufferedOutputStream(new FileOutputStream(filename)));
+    }
+
+    private final OutputStream out;
+    private final ByteBuffer buffer;
+
+    /**
+     * Creates the binary sink
+     *
+     * @param out the output stream
+     * @throws IOException in case of error
+     */
+    public BinaryEventSink(OutputStream out) throws IOException {
+        this.out = out;
+        this.buffer = ByteBuffer.allocate(RECORD_SIZE);
+        DataOutputStream header = new DataOutputStream(out);
+        header.writeInt(MAGIC);
+        header.writeInt(VERSION);
+        header.writeInt(EventType.values().length);
+        for (EventType type : EventType.values()) {
+            header.writeUTF(type.name());
+        }
+        header.flush();
+    }
+
+    @Override
+    public void accept(EventType type, long step, double value) {
+        buffer.clear();
+        buffer.put((byte) type.ordinal());
+        buffer.putLong(step);
+        buffer.putDouble(value);
+        try {
+            out.write(buffer.array(), 0, RECORD_SIZE);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
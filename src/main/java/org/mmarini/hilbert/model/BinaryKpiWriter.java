@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2023 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ */
+
+package org.mmarini.hilbert.model;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+
+/**
+ * Writes the kpi rows in binary format
+ * <p>
+ * The file contains the magic number "HKPI", the version (int), the number of columns (int),
+ * the column names (modified UTF-8) and the rows of big endian doubles.
+ * The rows are written without formatting the values, so recording the kpis of each step
+ * costs much less than the csv format.
+ * </p>
+ */
+public class BinaryKpiWriter implements KpiWriter {
+    public static final String EXTENSION = ".bin";
+    public static final int MAGIC = 0x484b5049;
+    public static final int VERSION = 1;
+
+    /**
+     * Returns the binary writer to file
+     *
+     * @param filename the filename
+     * @param schema   the kpi schema
+     * @throws IOException in case of error
+     */
+    public static BinaryKpiWriter create(String filename, KpiSchema schema) throws IOException {
+        return new BinaryKpiWriter(new BufferedOutputStream(new FileOutputStream(filename)), schema);
+    }
+
+    /**
+     * Returns the binary writer appending the rows to a stream without header
+     *
+     * @param out    the output stream
+     * @param schema the kpi schema
+     * @param offset the offset of stream
+     */
+    static BinaryKpiWriter append(OutputStream out, KpiSchema schema, long offset) {
+        return new BinaryKpiWriter(new BufferedOutputStream(out), schema.size(), offset);
+    }
+
+    private final OutputStream out;
+    private final ByteBuffer buffer;
+    private long offset;
+
+    /**
+     * Creates the binary writer
+     *
+     * @param out    the output stream
+     * @param schema the kpi schema
+     * @throws IOException in case of error
+     */
+    public BinaryKpiWriter(OutputStream out, KpiSchema schema) throws IOException {
+        this.out = out;
+        this.buffer = ByteBuffer.allocate(schema.size() * Double.BYTES);
+        DataOutputStream header = new DataOutputStream(out);
+        header.writeInt(MAGIC);
+        header.writeInt(VERSION);
+        header.writeInt(schema.size());
+        for (String name : schema.getNames()) {
+            header.writeUTF(name);
+        }
+        header.flush();
+        this.offset = header.size();
+    }
+
+    /**
+     * Creates the binary writer without header
+     *
+     * @param out     the output stream
+     * @param columns the number of columns
+     * @param offset  the offset of stream
+     */
+    private BinaryKpiWriter(OutputStream out, int columns, long offset) {
+        this.out = out;
+        this.buffer = ByteBuffer.allocate(columns * Double.BYTES);
+        this.offset = offset;
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public long getOffset() {
+        return offset;
+    }
+
+    @Override
+    public void write(double[] row) throws IOException {
+        buffer.clear();
+        for (int i = 0; i < buffer.capacity() / Double.BYTES; i++) {
+            buffer.putDouble(row[i]);
+        }
+        out.write(buffer.array(), 0, buffer.capacity());
+        offset += buffer.capacity();
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2023 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ */
+
+package org.mmarini.hilbert.model;
+
+import java.util.Arrays;
+
+import static java.lang.String.format;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Draws the random values from a ring buffer filled in background by a {@link RandomProducer}
+ * <p>
+ * The ring is a lock-free single producer, single consumer queue: the producer thread is the only writer
+ * of the tail index, the consumer thread is the only writer of the head index.
+ * The values are the raw 64 bit values of the delegated random source in the same order
+ * and the uniform doubles are derived from them by the delegated source ({@link RandomSource#toDouble(long)}),
+ * so the buffered values are the same of the unbuffered source.
+ * The state of the delegated source runs ahead of the consumer, so the exported state holds
+ * the values pending in the ring before the state of the delegated source;
+ * the producer is paused while the state is exported or changed.
+ * Only sequential sources can be buffered: the source cannot be positioned at a step.
+ * </p>
+ */
+public class BufferedRandom implements RandomSource {
+    private final RandomSource random;
+    private final RandomProducer producer;
+    private final long[] ring;
+    private final int mask;
+    private volatile long head;
+    private volatile long tail;
+    private long cachedTail;
+    private long cachedHead;
+
+    /**
+     * Creates the buffered random
+     *
+     * @param random   the delegated random source
+     * @param producer the producer
+     * @param capacity the capacity of ring buffer (power of 2)
+     */
+    BufferedRandom(RandomSource random, RandomProducer producer, int capacity) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException(format("Capacity must be a power of 2 (%d)", capacity));
+        }
+        this.random = requireNonNull(random);
+        this.producer = requireNonNull(producer);
+        this.ring = new long[capacity];
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * Fills the ring buffer with the available values (called by the producer thread)
+     * Returns true if any value has been produced
+     *
+     * @param maxValues the maximum number of values
+     */
+    synchronized boolean fill(int maxValues) {
+        long t = tail;
+        long free = ring.length - (t - cachedHead);
+        if (free <= 0) {
+            cachedHead = head;
+            free = ring.length - (t - cachedHead);
+            if (free <= 0) {
+                return false;
+            }
+        }
+        int n = (int) Math.min(free, maxValues);
+        for (int i = 0; i < n; i++) {
+            ring[(int) (t + i) & mask] = random.nextLong();
+        }
+        tail = t + n;
+        return true;
+    }
+
+    /**
+     * Returns the state with the number of pending values, the pending values and the state of delegated source
+     */
+    @Override
+    public synchronized long[] getState() {
+        long h = head;
+        int n = (int) (tail - h);
+        long[] state = random.getState();
+        long[] result = new long[1 + n + state.length];
+        result[0] = n;
+        for (int i = 0; i < n; i++) {
+            result[1 + i] = ring[(int) (h + i) & mask];
+        }
+        System.arraycopy(state, 0, result, 1 + n, state.length);
+        return result;
+    }
+
+    /**
+     * Sets the state returned by getState
+     *
+     * @param state the status returned by getState
+     */
+    @Override
+    public void setState(long[] state) {
+        if (state.length == 0 || state[0] < 0 || state[0] > ring.length || state[0] >= state.length) {
+            throw new IllegalArgumentException(format("Invalid buffered random state (%d)", state.length));
+        }
+        int n = (int) state[0];
+        synchronized (this) {
+            random.setState(Arrays.copyOfRange(state, 1 + n, state.length));
+            long h = head;
+            for (int i = 0; i < n; i++) {
+                ring[(int) (h + i) & mask] = state[1 + i];
+            }
+            tail = h + n;
+            cachedTail = tail;
+            cachedHead = h;
+        }
+        producer.ensureRunning();
+    }
+
+    /**
+     * Returns true if the ring buffer is full
+     */
+    boolean isFull() {
+        return tail - head >= ring.length;
+    }
+
+    @Override
+    public double nextDouble() {
+        return random.toDouble(nextLong());
+    }
+
+    @Override
+    public double toDouble(long value) {
+        return random.toDouble(value);
+    }
+
+    @Override
+    public long nextLong() {
+        long h = head;
+        if (h >= cachedTail) {
+            cachedTail = tail;
+            while (h >= cachedTail) {
+                // Empty buffer: waits for the producer
+                producer.ensureRunning();
+                Thread.onSpinWait();
+                cachedTail = tail;
+            }
+        }
+        long result = ring[(int) h & mask];
+        head = h + 1;
+        return result;
+    }
+}
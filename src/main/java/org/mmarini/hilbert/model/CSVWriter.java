@@ -8,7 +8,7 @@ import java.util.stream.Collectors;
 /**
  * Writes a csv file
  */
-public class CSVWriter implements Closeable {
+public class CSVWriter implements KpiWriter {
 
     /**
      * Returns the csv writer to file
@@ -21,6 +21,28 @@ public class CSVWriter implements Closeable {
         return create(new File(filename), colNames);
     }
 
+    /**
+     * Returns the csv writer of kpi schema to file
+     *
+     * @param filename the filename
+     * @param schema   the kpi schema
+     * @throws FileNotFoundException in caso of error
+     */
+    public static CSVWriter create(String filename, KpiSchema schema) throws FileNotFoundException {
+        return create(new File(filename), schema.getNames());
+    }
+
+
+    /**
+     * Returns the csv writer appending the rows to a stream without header
+     *
+     * @param out    the output stream
+     * @param schema the kpi schema
+     * @param offset the offset of stream
+     */
+    static CSVWriter append(OutputStream out, KpiSchema schema, long offset) {
+        return new CSVWriter(new PrintWriter(new OutputStreamWriter(out)), schema.getNames(), offset);
+    }
 
     /**
      * Returns the csv writer to file
@@ -35,6 +57,9 @@ public class CSVWriter implements Closeable {
 
     private final PrintWriter writer;
     private final List<String> colNames;
+    private final StringBuilder line;
+    private char[] chars;
+    private long offset;
 
     /**
      * Creates the csv writer
@@ -45,9 +70,28 @@ public class CSVWriter implements Closeable {
     public CSVWriter(PrintWriter writer, List<String> colNames) {
         this.writer = writer;
         this.colNames = colNames;
-        writer.println(colNames.stream()
+        this.line = new StringBuilder();
+        this.chars = new char[0];
+        String header = colNames.stream()
                 .map(name -> "\"" + name + "\"")
-                .collect(Collectors.joining(",")));
+                .collect(Collectors.joining(","));
+        writer.println(header);
+        this.offset = header.length() + System.lineSeparator().length();
+    }
+
+    /**
+     * Creates the csv writer without header
+     *
+     * @param writer   the writer
+     * @param colNames the list of columns
+     * @param offset   the offset of writer
+     */
+    private CSVWriter(PrintWriter writer, List<String> colNames, long offset) {
+        this.writer = writer;
+        this.colNames = colNames;
+        this.line = new StringBuilder();
+        this.chars = new char[0];
+        this.offset = offset;
     }
 
     @Override
@@ -55,6 +99,50 @@ public class CSVWriter implements Closeable {
         writer.close();
     }
 
+    @Override
+    public void flush() {
+        writer.flush();
+    }
+
+    /**
+     * Returns the number of bytes written by the header and the value rows (the csv text is ascii)
+     */
+    @Override
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * Writes a row of values ordered as columns
+     * The not a number values are written as empty cells and the integer values without decimals
+     *
+     * @param row the row
+     */
+    @Override
+    public void write(double[] row) {
+        // Formats the line in the reused builder to write it at once
+        line.setLength(0);
+        for (int i = 0; i < colNames.size(); i++) {
+            if (i > 0) {
+                line.append(',');
+            }
+            double value = row[i];
+            if (value == (long) value) {
+                line.append((long) value);
+            } else if (!Double.isNaN(value)) {
+                line.append(value);
+            }
+        }
+        line.append(System.lineSeparator());
+        int n = line.length();
+        if (chars.length < n) {
+            chars = new char[n * 2];
+        }
+        line.getChars(0, n, chars, 0);
+        writer.write(chars, 0, n);
+        offset += n;
+    }
+
     /**
      * Writes a row
      *
@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2023 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ */
+
+package org.mmarini.hilbert.model;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Generates the poisson values by the shared table cache and the other values by the delegated random source
+ */
+public class CachedPoissonRandom implements RandomSource {
+    private final RandomSource random;
+    private final PoissonTableCache cache;
+
+    /**
+     * Creates the random source
+     *
+     * @param random the delegated random source
+     * @param cache  the table cache
+     */
+    public CachedPoissonRandom(RandomSource random, PoissonTableCache cache) {
+        this.random = requireNonNull(random);
+        this.cache = requireNonNull(cache);
+    }
+
+    @Override
+    public long[] getState() {
+        return random.getState();
+    }
+
+    @Override
+    public void setState(long[] state) {
+        random.setState(state);
+    }
+
+    @Override
+    public double nextDouble() {
+        return random.nextDouble();
+    }
+
+    @Override
+    public long nextLong() {
+        return random.nextLong();
+    }
+
+    @Override
+    public double toDouble(long value) {
+        return random.toDouble(value);
+    }
+
+    @Override
+    public long nextPoisson(double lambda) {
+        return cache.nextPoisson(random, lambda);
+    }
+
+    @Override
+    public void setStep(long step) {
+        random.setStep(step);
+    }
+}
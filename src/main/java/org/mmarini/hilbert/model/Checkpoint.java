@@ -0,0 +1,371 @@
+/*
+ * Copyright (c) 2023 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ */
+
+package org.mmarini.hilbert.model;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+import static java.lang.String.format;
+
+/**
+ * The checkpoint of a batch run
+ * <p>
+ * It holds the status, the step counter, the random generator states, the poisson cache status,
+ * the termination detector states and reason and the offset of kpi file,
+ * so that the resumed run produces the same results of the uninterrupted run.
+ * The file contains the magic number "HCKP", the version (int), the rules hash (int), the step (long),
+ * the simulated time (double), the kpi offset (long), the status values (population as long, the occupation and resource names
+ * with their preferences and the technology), the random states, the cache status, the detector states,
+ * the termination reason code (int) and the CRC32 of the previous bytes.
+ * The file is written in a temporary file and then moved atomically over the previous checkpoint.
+ * </p>
+ */
+public class Checkpoint {
+    public static final int MAGIC = 0x48434b50;
+    public static final int VERSION = 5;
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    /**
+     * Returns the checkpoint of a kernel run
+     *
+     * @param rulesHash   the hash of rules
+     * @param kernel      the kernel
+     * @param termination the termination
+     * @param status      the status
+     * @param kpiOffset   the offset of kpi file
+     */
+    public static Checkpoint of(int rulesHash, HilbertKernel kernel, Termination termination, StatusBuffer status, long kpiOffset) {
+        StatusBuffer copy = StatusBuffer.of(status.toStatus());
+        PoissonTableCache cache = kernel.getCache();
+        return new Checkpoint(rulesHash, kernel.getStep(), kernel.getTime(), kpiOffset, copy, kernel.getRandomStates(),
+                cache != null ? cache.getKeys() : null,
+                cache != null ? cache.getHits() : 0,
+                cache != null ? cache.getMisses() : 0,
+                termination.getStates(),
+                Termination.code(termination.getReason()));
+    }
+
+    /**
+     * Returns the checkpoint read from file
+     *
+     * @param file the file
+     * @throws IOException in case of error
+     */
+    public static Checkpoint read(File file) throws IOException {
+        try (CheckedInputStream checked = new CheckedInputStream(new BufferedInputStream(new FileInputStream(file)), new CRC32())) {
+            DataInputStream in = new DataInputStream(checked);
+            int magic = in.readInt();
+            if (magic != MAGIC) {
+                throw new IOException(format("File %s is not a checkpoint (0x%08x)", file, magic));
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException(format("Unsupported checkpoint version (%d)", version));
+            }
+            int rulesHash = in.readInt();
+            long step = in.readLong();
+            double time = in.readDouble();
+            long kpiOffset = in.readLong();
+            long population = in.readLong();
+            List<String> occupations = readNames(in);
+            double[] occupationPrefs = readDoubles(in);
+            List<String> resources = readNames(in);
+            double[] resourcePrefs = readDoubles(in);
+            double technology = in.readDouble();
+            Sectors sectors;
+            try {
+                sectors = Sectors.create(occupations, resources);
+            } catch (IllegalArgumentException ex) {
+                throw new IOException(format("Invalid checkpoint sectors %s", file), ex);
+            }
+            StatusBuffer status = StatusBuffer.of(new Status(sectors, population, occupationPrefs, resourcePrefs, technology));
+            long[][] randomStates = new long[in.readInt()][];
+            for (int i = 0; i < randomStates.length; i++) {
+                randomStates[i] = readLongs(in);
+            }
+            long[] cacheKeys = null;
+            long hits = 0;
+            long misses = 0;
+            if (in.readBoolean()) {
+                hits = in.readLong();
+                misses = in.readLong();
+                cacheKeys = readLongs(in);
+            }
+            double[][] detectorStates = new double[in.readInt()][];
+            for (int i = 0; i < detectorStates.length; i++) {
+                detectorStates[i] = readDoubles(in);
+            }
+            int reasonCode = in.readInt();
+            if (reasonCode < 0 || reasonCode > Termination.REASONS.size()) {
+                throw new IOException(format("Invalid checkpoint termination code (%d)", reasonCode));
+            }
+            int crc = (int) checked.getChecksum().getValue();
+            if (in.readInt() != crc) {
+                throw new IOException(format("Corrupted checkpoint %s", file));
+            }
+            return new Checkpoint(rulesHash, step, time, kpiOffset, status, randomStates, cacheKeys, hits, misses, detectorStates, reasonCode);
+        }
+    }
+
+    /**
+     * Returns the array of double read from stream (length and values)
+     *
+     * @param in the stream
+     * @throws IOException in case of error
+     */
+    private static double[] readDoubles(DataInputStream in) throws IOException {
+        double[] result = new double[in.readInt()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = in.readDouble();
+        }
+        return result;
+    }
+
+    /**
+     * Returns the array of long read from stream (length and values)
+     *
+     * @param in the stream
+     * @throws IOException in case of error
+     */
+    private static long[] readLongs(DataInputStream in) throws IOException {
+        long[] result = new long[in.readInt()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = in.readLong();
+        }
+        return result;
+    }
+
+    /**
+     * Returns the list of names read from stream (length and values)
+     *
+     * @param in the stream
+     * @throws IOException in case of error
+     */
+    private static List<String> readNames(DataInputStream in) throws IOException {
+        String[] result = new String[in.readInt()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = in.readUTF();
+        }
+        return List.of(result);
+    }
+
+    /**
+     * Writes the list of names to stream (length and values)
+     *
+     * @param out   the stream
+     * @param names the names
+     * @throws IOException in case of error
+     */
+    private static void writeNames(DataOutputStream out, List<String> names) throws IOException {
+        out.writeInt(names.size());
+        for (String name : names) {
+            out.writeUTF(name);
+        }
+    }
+
+    /**
+     * Writes the array of double to stream (length and values)
+     *
+     * @param out    the stream
+     * @param values the values
+     * @throws IOException in case of error
+     */
+    private static void writeDoubles(DataOutputStream out, double[] values) throws IOException {
+        out.writeInt(values.length);
+        for (double value : values) {
+            out.writeDouble(value);
+        }
+    }
+
+    /**
+     * Writes the array of long to stream (length and values)
+     *
+     * @param out    the stream
+     * @param values the values
+     * @throws IOException in case of error
+     */
+    private static void writeLongs(DataOutputStream out, long[] values) throws IOException {
+        out.writeInt(values.length);
+        for (long value : values) {
+            out.writeLong(value);
+        }
+    }
+
+    private final int rulesHash;
+    private final long step;
+    private final double time;
+    private final long kpiOffset;
+    private final StatusBuffer status;
+    private final long[][] randomStates;
+    private final long[] cacheKeys;
+    private final long cacheHits;
+    private final long cacheMisses;
+    private final double[][] detectorStates;
+    private final int reasonCode;
+
+    /**
+     * Creates the checkpoint
+     *
+     * @param rulesHash      the hash of rules
+     * @param step           the step
+     * @param time           the simulated time
+     * @param kpiOffset      the offset of kpi file
+     * @param status         the status
+     * @param randomStates   the random states
+     * @param cacheKeys      the poisson cache keys or null if no cache
+     * @param cacheHits      the poisson cache hits
+     * @param cacheMisses    the poisson cache misses
+     * @param detectorStates the termination detector states
+     * @param reasonCode     the code of termination reason (0 if not terminated)
+     */
+    Checkpoint(int rulesHash, long step, double time, long kpiOffset, StatusBuffer status, long[][] randomStates,
+               long[] cacheKeys, long cacheHits, long cacheMisses, double[][] detectorStates, int reasonCode) {
+        this.rulesHash = rulesHash;
+        this.step = step;
+        this.time = time;
+        this.kpiOffset = kpiOffset;
+        this.status = status;
+        this.randomStates = randomStates;
+        this.cacheKeys = cacheKeys;
+        this.cacheHits = cacheHits;
+        this.cacheMisses = cacheMisses;
+        this.detectorStates = detectorStates;
+        this.reasonCode = reasonCode;
+    }
+
+    /**
+     * Returns the offset of kpi file
+     */
+    public long getKpiOffset() {
+        return kpiOffset;
+    }
+
+    /**
+     * Returns the hash of rules
+     */
+    public int getRulesHash() {
+        return rulesHash;
+    }
+
+    /**
+     * Returns the status
+     */
+    public Status getStatus() {
+        return status.toStatus();
+    }
+
+    /**
+     * Returns the step
+     */
+    public long getStep() {
+        return step;
+    }
+
+    /**
+     * Returns the simulated time
+     */
+    public double getTime() {
+        return time;
+    }
+
+    /**
+     * Restores the kernel, the termination and the status
+     *
+     * @param kernel      the kernel
+     * @param termination the termination
+     * @param status      the status
+     */
+    public void restore(HilbertKernel kernel, Termination termination, StatusBuffer status) {
+        PoissonTableCache cache = kernel.getCache();
+        if ((cache != null) != (cacheKeys != null)) {
+            throw new IllegalArgumentException("Checkpoint poisson cache does not match the rules");
+        }
+        kernel.setRandomStates(randomStates);
+        termination.setStates(detectorStates);
+        termination.setReason(Termination.reason(reasonCode));
+        kernel.setStep(step);
+        kernel.setTime(time);
+        if (cache != null) {
+            cache.restore(cacheKeys, cacheHits, cacheMisses);
+        }
+        status.set(this.status.toStatus());
+    }
+
+    /**
+     * Writes atomically the checkpoint to file
+     *
+     * @param file the file
+     * @throws IOException in case of error
+     */
+    public void write(File file) throws IOException {
+        Path target = file.toPath().toAbsolutePath();
+        Path temp = target.resolveSibling(target.getFileName() + TEMP_SUFFIX);
+        try (FileOutputStream fileOut = new FileOutputStream(temp.toFile())) {
+            CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(fileOut), new CRC32());
+            DataOutputStream out = new DataOutputStream(checked);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(rulesHash);
+            out.writeLong(step);
+            out.writeDouble(time);
+            out.writeLong(kpiOffset);
+            out.writeLong(status.population);
+            writeNames(out, status.sectors.getOccupations());
+            writeDoubles(out, status.occupationPrefs);
+            writeNames(out, status.sectors.getResources());
+            writeDoubles(out, status.resourcePrefs);
+            out.writeDouble(status.technology);
+            out.writeInt(randomStates.length);
+            for (long[] state : randomStates) {
+                writeLongs(out, state);
+            }
+            out.writeBoolean(cacheKeys != null);
+            if (cacheKeys != null) {
+                out.writeLong(cacheHits);
+                out.writeLong(cacheMisses);
+                writeLongs(out, cacheKeys);
+            }
+            out.writeInt(detectorStates.length);
+            for (double[] state : detectorStates) {
+                writeDoubles(out, state);
+            }
+            out.writeInt(reasonCode);
+            out.writeInt((int) checked.getChecksum().getValue());
+            out.flush();
+            // Forces the data on disk before replacing the previous checkpoint
+            fileOut.getFD().sync();
+        }
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+}
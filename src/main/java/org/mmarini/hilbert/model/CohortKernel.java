@@ -0,0 +1,511 @@
+/*
+ * Copyright (c) 2023 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ */
+
+package org.mmarini.hilbert.model;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static java.lang.Math.*;
+import static java.lang.String.format;
+import static org.mmarini.hilbert.model.AgentPopulation.OCCUPATIONS;
+
+/**
+ * Computes the hilbert rules on the age cohorts of the society
+ * <p>
+ * The society is the count of individuals by age class of the time interval and by occupation,
+ * in a flat array of counts indexed by class and occupation.
+ * The age classes are a circular buffer: each step moves the index of the first class, so the ageing
+ * is a shift without copies, and the last class holds all the older individuals.
+ * The natural deaths follow the Gompertz law as in {@link AgentKernel}, the over settlement and starvation
+ * deaths have the same probability at any age, the deaths are drawn by cohort from the binomial distribution.
+ * The births of the food rule are produced by the individuals in the fertile ages: the birth rate by fertile
+ * individual is scaled by the fertile fraction of the stationary age distribution, so a stationary society has
+ * the births of the food rule.
+ * The newborns take the occupation by the population preferences.
+ * The cost of a step depends on the number of age classes and not on the population.
+ * </p>
+ */
+public class CohortKernel implements StepKernel {
+    public static final List<String> COHORT_KPI_NAMES = List.of(
+            "meanAge",
+            "fertile"
+    );
+    public static final double DEFAULT_MIN_FERTILE_AGE = 15;
+    public static final double DEFAULT_MAX_FERTILE_AGE = 45;
+    public static final double DEFAULT_MAX_AGE_RATIO = 1.5;
+
+    private final RandomSource[] randoms;
+    private final RandomSource overSettlementRandom;
+    private final RandomSource foodProductionRandom;
+    private final RandomSource healthRandom;
+    private final RandomSource researchRandom;
+    private final RandomSource educationRandom;
+    private final KpiSchema kpiSchema;
+    private final int meanAgeSlot;
+    private final int fertileSlot;
+    private final double dt;
+    private final double mortalityGrowth;
+    private final int ageClasses;
+    private final int minFertileClass;
+    private final int maxFertileClass;
+    private final double resources;
+    private final double minTechnology;
+    private final double maxTechnology;
+    private final double settlementDensity;
+    private final double settlementDeathTimeConstant;
+    private final double foodProductivity;
+    private final double foodDemand;
+    private final double foodDeathTimeConstant;
+    private final double foodBirthTimeConstant;
+    private final double healthProductivity;
+    private final double healthDemand;
+    private final double minimumLifeExpectancy;
+    private final double maximumLifeExpectancy;
+    private final double researchProductivity;
+    private final double researchCost;
+    private final double researchQuantum;
+    private final double educationProductivity;
+    private final double educationDemand;
+    private final double educationTimeConstant;
+    private long[] counts;
+    private long[] occupationCounts;
+    private double[] occupationFractions;
+    private double[] shares;
+    private int occupations;
+    private final double[] deathProbabilities;
+    private final double[] stationary;
+    private long population;
+    private int head;
+    private long step;
+
+    /**
+     * Creates the kernel
+     *
+     * @param randoms               the random sources by rule stream (RulesSerde stream indices)
+     * @param step                  the initial step
+     * @param dt                    the time interval (the age class width)
+     * @param mortalityDoublingTime the age interval doubling the mortality
+     * @param maxAge                the age of the last class
+     * @param minFertileAge         the minimum fertile age
+     * @param maxFertileAge         the maximum fertile age
+     * @param parameters            the rule parameters
+     */
+    CohortKernel(List<RandomSource> randoms, long step,
+                 double dt, double mortalityDoublingTime, double maxAge, double minFertileAge, double maxFertileAge,
+                 RuleParameters parameters) {
+        if (!(dt > 0)) {
+            throw new IllegalArgumentException(format("Time interval must be positive (%g)", dt));
+        }
+        if (!(mortalityDoublingTime > 0)) {
+            throw new IllegalArgumentException(format("Mortality doubling time must be positive (%g)", mortalityDoublingTime));
+        }
+        if (!(parameters.getMinimumLifeExpectancy() > 0)) {
+            throw new IllegalArgumentException(format("Minimum life expectancy must be positive (%g)", parameters.getMinimumLifeExpectancy()));
+        }
+        if (!(maxAge >= dt && maxAge / dt < Integer.MAX_VALUE / OCCUPATIONS)) {
+            throw new IllegalArgumentException(format("Max age must be in the range of age classes (%g)", maxAge));
+        }
+        if (!(minFertileAge >= 0 && minFertileAge <= maxFertileAge)) {
+            throw new IllegalArgumentException(format("Fertile ages must be ordered (%g, %g)", minFertileAge, maxFertileAge));
+        }
+        this.randoms = randoms.toArray(RandomSource[]::new);
+        this.overSettlementRandom = randoms.get(RulesSerde.OVER_SETTLEMENT_STREAM);
+        this.foodProductionRandom = randoms.get(RulesSerde.FOOD_PRODUCTION_STREAM);
+        this.healthRandom = randoms.get(RulesSerde.HEALTH_STREAM);
+        this.researchRandom = randoms.get(RulesSerde.RESEARCH_STREAM);
+        this.educationRandom = randoms.get(RulesSerde.EDUCATION_STREAM);
+        this.kpiSchema = KpiSchema.of(Stream.concat(HilbertKernel.KPI_NAMES.stream(), COHORT_KPI_NAMES.stream())
+                .collect(Collectors.toList()));
+        this.meanAgeSlot = kpiSchema.indexOf(COHORT_KPI_NAMES.get(0));
+        this.fertileSlot = kpiSchema.indexOf(COHORT_KPI_NAMES.get(1));
+        this.step = step;
+        this.dt = dt;
+        this.mortalityGrowth = log(2) / mortalityDoublingTime;
+        this.ageClasses = (int) ceil(maxAge / dt) + 1;
+        this.minFertileClass = (int) min(floor(minFertileAge / dt), ageClasses);
+        this.maxFertileClass = (int) min(ceil(maxFertileAge / dt), ageClasses);
+        this.resources = parameters.getResources();
+        this.minTechnology = parameters.getMinTechnology();
+        this.maxTechnology = parameters.getMaxTechnology();
+        this.settlementDensity = parameters.getSettlementDensity();
+        this.settlementDeathTimeConstant = parameters.getSettlementDeathTimeConstant();
+        this.foodProductivity = parameters.getFoodProductivity();
+        this.foodDemand = parameters.getFoodDemand();
+        this.foodDeathTimeConstant = parameters.getFoodDeathTimeConstant();
+        this.foodBirthTimeConstant = parameters.getFoodBirthTimeConstant();
+        this.healthProductivity = parameters.getHealthProductivity();
+        this.healthDemand = parameters.getHealthDemand();
+        this.minimumLifeExpectancy = parameters.getMinimumLifeExpectancy();
+        this.maximumLifeExpectancy = parameters.getMaximumLifeExpectancy();
+        this.researchProductivity = parameters.getResearchProductivity();
+        this.researchCost = parameters.getResearchCost();
+        this.researchQuantum = parameters.getResearchQuantum();
+        this.educationProductivity = parameters.getEducationProductivity();
+        this.educationDemand = parameters.getEducationDemand();
+        this.educationTimeConstant = parameters.getEducationTimeConstant();
+        this.occupations = OCCUPATIONS;
+        this.counts = new long[ageClasses * OCCUPATIONS];
+        this.occupationCounts = new long[OCCUPATIONS];
+        this.occupationFractions = new double[OCCUPATIONS];
+        this.shares = new double[0];
+        this.deathProbabilities = new double[ageClasses];
+        this.stationary = new double[ageClasses];
+        this.population = -1;
+    }
+
+    /**
+     * Returns a value with binomial distribution of long trials
+     *
+     * @param random the random source
+     * @param n      the number of trials
+     * @param p      the probability
+     */
+    static long binomial(RandomSource random, long n, double p) {
+        return p > 0 ? random.nextBinomial(n, p) : 0;
+    }
+
+    /**
+     * Returns the index of the first count of an age class
+     *
+     * @param ageClass the age class
+     */
+    private int classIndex(int ageClass) {
+        int i = head + ageClass;
+        return (i >= ageClasses ? i - ageClasses : i) * occupations;
+    }
+
+    /**
+     * Tabulates the death probabilities in the time interval by age class and the stationary age distribution
+     *
+     * @param lifeExpectancy the life expectancy
+     * @return the fertile fraction of the stationary age distribution
+     */
+    private double computeDeathProbabilities(double lifeExpectancy) {
+        double a0 = ExtMath.gompertzMortality(lifeExpectancy, mortalityGrowth);
+        // Cumulated mortality of the class k is a0 / b exp(b k dt) (exp(b dt) - 1)
+        double hazard = a0 / mortalityGrowth * expm1(mortalityGrowth * dt);
+        double growth = exp(mortalityGrowth * dt);
+        double survival = 1;
+        double total = 0;
+        double fertile = 0;
+        for (int k = 0; k < ageClasses; k++) {
+            double p = -expm1(-hazard);
+            deathProbabilities[k] = p;
+            // The last class holds the survivors of all the older ages
+            double weight = k < ageClasses - 1 ? survival : p > 0 ? survival / p : survival;
+            stationary[k] = weight;
+            total += weight;
+            if (k >= minFertileClass && k < maxFertileClass) {
+                fertile += weight;
+            }
+            survival *= 1 - p;
+            hazard *= growth;
+        }
+        for (int k = 0; k < ageClasses; k++) {
+            stationary[k] /= total;
+        }
+        return fertile / total;
+    }
+
+    /**
+     * Creates the cohorts with the stationary age distribution and the expected occupations
+     *
+     * @param n the population
+     */
+    private void createCohorts(long n) {
+        head = 0;
+        long remaining = n;
+        double mass = 1;
+        for (int k = 0; k < ageClasses; k++) {
+            long classCount = binomial(healthRandom, remaining, mass > 0 ? min(stationary[k] / mass, 1) : 1);
+            remaining -= classCount;
+            mass -= stationary[k];
+            split(healthRandom, classCount, classIndex(k));
+        }
+        // Rounding residuals go to the last class
+        split(healthRandom, remaining, classIndex(ageClasses - 1));
+        population = n;
+    }
+
+    /**
+     * Returns the count of a cohort
+     *
+     * @param ageClass   the age class
+     * @param occupation the occupation
+     */
+    public long getCount(int ageClass, int occupation) {
+        return counts[classIndex(ageClass) + occupation];
+    }
+
+    /**
+     * Returns the number of occupations
+     */
+    public int getOccupations() {
+        return occupations;
+    }
+
+    /**
+     * Returns the number of age classes
+     */
+    public int getAgeClasses() {
+        return ageClasses;
+    }
+
+    @Override
+    public KpiSchema getKpiSchema() {
+        return kpiSchema;
+    }
+
+    /**
+     * Returns the population of cohorts
+     */
+    public long getPopulation() {
+        return population;
+    }
+
+    /**
+     * Returns the current step
+     */
+    public long getStep() {
+        return step;
+    }
+
+    /**
+     * Sets the current step
+     *
+     * @param step the step
+     */
+    public void setStep(long step) {
+        this.step = step;
+    }
+
+    /**
+     * Sets the number of occupations clearing the cohorts
+     *
+     * @param occupations the number of occupations
+     */
+    private void setOccupations(int occupations) {
+        if (ageClasses > Integer.MAX_VALUE / occupations) {
+            throw new IllegalArgumentException(format("Too many cohorts (%d x %d)", ageClasses, occupations));
+        }
+        this.occupations = occupations;
+        this.counts = new long[ageClasses * occupations];
+        this.occupationCounts = new long[occupations];
+        this.occupationFractions = new double[occupations];
+        this.population = -1;
+    }
+
+    /**
+     * Adds the individuals to the occupations of a class by the occupation fractions (multinomial)
+     *
+     * @param random the random source
+     * @param n      the number of individuals
+     * @param index  the index of the class
+     */
+    private void split(RandomSource random, long n, int index) {
+        double mass = 1;
+        for (int o = 0; o < occupations - 1 && n > 0; o++) {
+            long k = binomial(random, n, mass > 0 ? min(occupationFractions[o] / mass, 1) : 1);
+            counts[index + o] += k;
+            n -= k;
+            mass -= occupationFractions[o];
+        }
+        counts[index + occupations - 1] += n;
+    }
+
+    @Override
+    public void step(StatusBuffer status, double[] kpis) {
+        // Positions the generators at the current step
+        for (RandomSource random : randoms) {
+            random.setStep(step);
+        }
+        step++;
+
+        double technology = status.technology;
+
+        // Computes the shared values as the stochastic kernel does
+        Sectors sectors = status.sectors;
+        if (occupations != status.occupationPrefs.length) {
+            setOccupations(status.occupationPrefs.length);
+        }
+        if (shares.length != status.resourcePrefs.length) {
+            shares = new double[status.resourcePrefs.length];
+        }
+        ExtMath.softmax(status.occupationPrefs, occupationFractions);
+        status.resources(shares);
+        double foodRatio = shares[sectors.getFood()];
+        double researchRatio = shares[sectors.getResearch()];
+        double educationRatio = shares[sectors.getEducation()];
+        double healthRatio = shares[sectors.getHealth()];
+        double settlementRatio = shares[sectors.getSettlement()];
+
+        double efficiency = -expm1(-technology);
+
+        // Creates the cohorts if the status has been changed
+        if (status.population != population) {
+            Arrays.fill(counts, 0);
+            long n = status.population;
+            double kh = efficiency * min(occupationFractions[sectors.getDoctor()] * healthProductivity, resources * healthRatio / n) / healthDemand;
+            computeDeathProbabilities((maximumLifeExpectancy - minimumLifeExpectancy) * min(kh, 1) + minimumLifeExpectancy);
+            createCohorts(n);
+        }
+
+        // Sums the cohorts
+        Arrays.fill(occupationCounts, 0);
+        long fertile = 0;
+        double sumAges = 0;
+        for (int k = 0; k < ageClasses; k++) {
+            int index = classIndex(k);
+            long classCount = 0;
+            for (int o = 0; o < occupations; o++) {
+                long count = counts[index + o];
+                occupationCounts[o] += count;
+                classCount += count;
+            }
+            if (k >= minFertileClass && k < maxFertileClass) {
+                fertile += classCount;
+            }
+            sumAges += classCount * (k + 0.5) * dt;
+        }
+        long population = this.population;
+        double farmers = occupationCounts[sectors.getFarmer()];
+        double researchers = occupationCounts[sectors.getResearcher()];
+        double educators = occupationCounts[sectors.getEducator()];
+        double doctors = occupationCounts[sectors.getDoctor()];
+
+        // Over settlement rule
+        double maxPopO = settlementRatio * resources * settlementDensity / settlementDeathTimeConstant * dt;
+        double popO = population / settlementDeathTimeConstant * dt;
+        double lambdaO = max(0, popO - maxPopO);
+
+        // Food production rule
+        double kfPop = efficiency * foodProductivity * farmers / population / foodDemand;
+        double kfRes = efficiency * foodRatio * resources / population / foodDemand;
+        double kf = min(kfPop, kfRes);
+        double lambdaS = max(0, population * (1 - kf)) * dt / foodDeathTimeConstant;
+
+        // Health rule by age
+        double kh = efficiency * min(doctors * healthProductivity, resources * healthRatio) / population / healthDemand;
+        double lifeExpectancy = (maximumLifeExpectancy - minimumLifeExpectancy) * min(kh, 1) + minimumLifeExpectancy;
+        double fertileFraction = population > 0 ? computeDeathProbabilities(lifeExpectancy) : 0;
+
+        // Births by fertile individuals
+        double lambdaB = fertileFraction > 0
+                ? max(0, fertile * (kf - 1)) * dt / foodBirthTimeConstant / fertileFraction
+                : 0;
+
+        // Research rule
+        double lambdaR = efficiency * min(researchers * researchProductivity, researchRatio * resources) * dt / researchCost;
+
+        // Education rule
+        double ke = efficiency * min(educators * educationProductivity / population, educationRatio * resources) / educationDemand;
+        double lambdaE = max(0, (1 - ke)) * population * dt / educationTimeConstant;
+
+        // Draws the deaths by cohort
+        double probabilityO = population > 0 ? -expm1(-lambdaO / population) : 0;
+        double probabilityS = population > 0 ? -expm1(-lambdaS / population) : 0;
+        long deathsH = 0;
+        long deathsO = 0;
+        long deathsS = 0;
+        double lambdaH = 0;
+        for (int k = 0; k < ageClasses; k++) {
+            int index = classIndex(k);
+            double p = deathProbabilities[k];
+            for (int o = 0; o < occupations; o++) {
+                long n = counts[index + o];
+                if (n > 0) {
+                    lambdaH += n * p;
+                    long h = binomial(healthRandom, n, p);
+                    n -= h;
+                    long ov = binomial(overSettlementRandom, n, probabilityO);
+                    n -= ov;
+                    long s = binomial(foodProductionRandom, n, probabilityS);
+                    counts[index + o] = n - s;
+                    deathsH += h;
+                    deathsO += ov;
+                    deathsS += s;
+                }
+            }
+        }
+        long births = lambdaB > 0 ? foodProductionRandom.nextPoisson(lambdaB) : 0;
+        long researchSteps = lambdaR > 0 ? researchRandom.nextPoisson(lambdaR) : 0;
+        double deltaTR = researchSteps * researchQuantum;
+        long ne = lambdaE > 0 ? educationRandom.nextPoisson(lambdaE) : 0;
+        double deltaTE = -technology * min((double) ne / population, 1);
+
+        // Ages the cohorts moving the first class, the last class keeps the older individuals
+        int last = classIndex(ageClasses - 1);
+        int beforeLast = classIndex(ageClasses - 2);
+        for (int o = 0; o < occupations; o++) {
+            counts[beforeLast + o] += counts[last + o];
+            counts[last + o] = 0;
+        }
+        head = head > 0 ? head - 1 : ageClasses - 1;
+        split(foodProductionRandom, births, classIndex(0));
+        this.population = population - deathsH - deathsO - deathsS + births;
+
+        // Sums the changes (0 + value normalizes the negative zeros as Status.sum does)
+        double newTechnology = 0d + technology;
+        if (researchSteps != 0) {
+            newTechnology += deltaTR;
+        }
+        newTechnology += deltaTE;
+        status.population = this.population;
+        status.technology = min(max(minTechnology, newTechnology), maxTechnology);
+        StatusBuffer.center(status.occupationPrefs);
+        StatusBuffer.center(status.resourcePrefs);
+
+        // Writes the kpis
+        kpis[HilbertKernel.POPULATION_KPI] = population;
+        kpis[HilbertKernel.TECHNOLOGY_KPI] = technology;
+        kpis[HilbertKernel.DEATHS_O_KPI] = -deathsO;
+        kpis[HilbertKernel.LAMBDA_O_KPI] = lambdaO;
+        kpis[HilbertKernel.MAX_POP_O_KPI] = maxPopO;
+        kpis[HilbertKernel.POP_O_KPI] = popO;
+        kpis[HilbertKernel.DEATHS_S_KPI] = -deathsS;
+        kpis[HilbertKernel.BIRTHS_KPI] = births;
+        kpis[HilbertKernel.KF_KPI] = kf;
+        kpis[HilbertKernel.KF_POP_KPI] = kfPop;
+        kpis[HilbertKernel.KF_RES_KPI] = kfRes;
+        kpis[HilbertKernel.LAMBDA_S_KPI] = lambdaS;
+        kpis[HilbertKernel.LAMBDA_B_KPI] = lambdaB;
+        kpis[HilbertKernel.DELTA_TR_KPI] = deltaTR;
+        kpis[HilbertKernel.LAMBDA_R_KPI] = lambdaR;
+        kpis[HilbertKernel.DELTA_TE_KPI] = deltaTE;
+        kpis[HilbertKernel.LAMBDA_E_KPI] = lambdaE;
+        kpis[HilbertKernel.KE_KPI] = ke;
+        kpis[HilbertKernel.DEATHS_H_KPI] = -deathsH;
+        kpis[HilbertKernel.KH_KPI] = kh;
+        kpis[HilbertKernel.LIFE_EXPECTANCY_KPI] = lifeExpectancy;
+        kpis[HilbertKernel.LAMBDA_H_KPI] = lambdaH;
+        kpis[meanAgeSlot] = population > 0 ? sumAges / population : 0;
+        kpis[fertileSlot] = fertile;
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2023 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ */
+
+package org.mmarini.hilbert.model;
+
+import java.util.StringJoiner;
+
+/**
+ * Counts the events and sums their values by type
+ */
+public class CounterEventSink implements EventSink {
+    private final long[] counts;
+    private final double[] sums;
+
+    /**
+     * Creates the counter
+     */
+    public CounterEventSink() {
+        this.counts = new long[EventType.values().length];
+        this.sums = new double[counts.length];
+    }
+
+    @Override
+    public void accept(EventType type, long step, double value) {
+        counts[type.ordinal()]++;
+        sums[type.ordinal()] += value;
+    }
+
+    /**
+     * Returns the number of events of a type
+     *
+     * @param type the event type
+     */
+    public long getCount(EventType type) {
+        return counts[type.ordinal()];
+    }
+
+    /**
+     * Returns the sum of event values of a type
+     *
+     * @param type the event type
+     */
+    public double getSum(EventType type) {
+        return sums[type.ordinal()];
+    }
+
+    @Override
+    public String toString() {
+        StringJoiner joiner = new StringJoiner(", ", CounterEventSink.class.getSimpleName() + "[", "]");
+        for (EventType type : EventType.values()) {
+            joiner.add(type.name() + "=" + counts[type.ordinal()] + "/" + sums[type.ordinal()]);
+        }
+        return joiner.toString();
+    }
+}
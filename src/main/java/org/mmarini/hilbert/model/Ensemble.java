@@ -0,0 +1,344 @@
+/*
+ * Copyright (c) 2023 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ */
+
+package org.mmarini.hilbert.model;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+import static java.lang.String.format;
+
+/**
+ * Runs the replicas of a simulation in lockstep on a fork join pool
+ * <p>
+ * The replicas advance by blocks of steps in parallel writing their kpis in a bounded row buffer,
+ * then the kpis of each step are aggregated by column in parallel and the statistics rows are written.
+ * The memory does not depend on the number of steps and no trajectory is stored.
+ * Each replica draws from its own random substreams, so the results do not depend on the number of threads.
+ * A replica stops at the step its termination holds and the following kpis are not a number,
+ * so the statistics are computed over the running replicas.
+ * </p>
+ * <p>
+ * The replicas of the stochastic engine may run on batch kernels ({@link #ofColumns}):
+ * each block of replicas is a batch kernel stepping its columns with the running mask of the replicas,
+ * and the blocks run in parallel.
+ * The trajectories are the same of the step kernels of replicas.
+ * </p>
+ */
+public class Ensemble {
+    public static final int DEFAULT_BLOCK_SIZE = 64;
+
+    /**
+     * Returns the ensemble running the replicas on batch kernels
+     * The replicas are the replicas of the kernels in order
+     *
+     * @param kernels      the batch kernels of the blocks of replicas
+     * @param terminations the terminations of replicas
+     * @param status       the initial status of replicas
+     * @param quantiles    the quantile probabilities
+     * @param pool         the fork join pool
+     * @param blockSize    the number of steps run in parallel between aggregations
+     */
+    public static Ensemble ofColumns(List<EnsembleKernel> kernels, List<Termination> terminations, Status status,
+                                     double[] quantiles, ForkJoinPool pool, int blockSize) {
+        if (kernels.isEmpty()) {
+            throw new IllegalArgumentException("Ensemble must have at least a replica");
+        }
+        return new Ensemble(null, kernels.toArray(EnsembleKernel[]::new),
+                kernels.get(0).getKpiSchema(), terminations, status, quantiles, pool, blockSize);
+    }
+
+    private final StepKernel[] kernels;
+    private final EnsembleKernel[] columnKernels;
+    private final EnsembleBuffer[] buffers;
+    private final double[][][] columns;
+    private final boolean[][] running;
+    private final StatusBuffer[] statuses;
+    private final Termination[] terminations;
+    private final long[] terminationSteps;
+    private final EnsembleStats stats;
+    private final ForkJoinPool pool;
+    private final double[][][] rows;
+    private final double[][] statsRows;
+    private long step;
+
+    /**
+     * Creates the ensemble
+     *
+     * @param kernels      the kernels of replicas (same kpi schema)
+     * @param terminations the terminations of replicas
+     * @param status       the initial status of replicas
+     * @param quantiles    the quantile probabilities
+     * @param pool         the fork join pool
+     * @param blockSize    the number of steps run in parallel between aggregations
+     */
+    public Ensemble(List<? extends StepKernel> kernels, List<Termination> terminations, Status status,
+                    double[] quantiles, ForkJoinPool pool, int blockSize) {
+        this(kernels.toArray(StepKernel[]::new), null,
+                kernels.isEmpty() ? null : kernels.get(0).getKpiSchema(),
+                terminations, status, quantiles, pool, blockSize);
+    }
+
+    /**
+     * Creates the ensemble
+     *
+     * @param kernels       the kernels of replicas (same kpi schema) or null if batch kernels
+     * @param columnKernels the batch kernels of the blocks of replicas or null if replica kernels
+     * @param schema        the kpi schema
+     * @param terminations  the terminations of replicas
+     * @param status        the initial status of replicas
+     * @param quantiles     the quantile probabilities
+     * @param pool          the fork join pool
+     * @param blockSize     the number of steps run in parallel between aggregations
+     */
+    private Ensemble(StepKernel[] kernels, EnsembleKernel[] columnKernels, KpiSchema schema,
+                     List<Termination> terminations, Status status,
+                     double[] quantiles, ForkJoinPool pool, int blockSize) {
+        int replicas = kernels != null
+                ? kernels.length
+                : Arrays.stream(columnKernels).mapToInt(EnsembleKernel::getReplicas).sum();
+        if (replicas == 0) {
+            throw new IllegalArgumentException("Ensemble must have at least a replica");
+        }
+        if (terminations.size() != replicas) {
+            throw new IllegalArgumentException(format("Terminations must be %d (%d)", replicas, terminations.size()));
+        }
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException(format("Block size must be positive (%d)", blockSize));
+        }
+        this.kernels = kernels;
+        this.columnKernels = columnKernels;
+        this.terminations = terminations.toArray(Termination[]::new);
+        this.terminationSteps = new long[replicas];
+        Arrays.fill(terminationSteps, -1);
+        this.pool = pool;
+        this.stats = new EnsembleStats(schema, quantiles);
+        this.statuses = new StatusBuffer[replicas];
+        this.rows = new double[blockSize][replicas][];
+        for (int i = 0; i < replicas; i++) {
+            statuses[i] = StatusBuffer.of(status);
+            for (int j = 0; j < blockSize; j++) {
+                rows[j][i] = schema.newRow();
+            }
+        }
+        if (columnKernels != null) {
+            this.buffers = new EnsembleBuffer[columnKernels.length];
+            this.columns = new double[columnKernels.length][][];
+            this.running = new boolean[columnKernels.length][];
+            int first = 0;
+            for (int k = 0; k < columnKernels.length; k++) {
+                int n = columnKernels[k].getReplicas();
+                buffers[k] = EnsembleBuffer.of(status, n);
+                columns[k] = columnKernels[k].newKpis();
+                running[k] = new boolean[n];
+                for (int r = 0; r < n; r++) {
+                    running[k][r] = !this.terminations[first + r].isTerminated();
+                }
+                first += n;
+            }
+        } else {
+            this.buffers = null;
+            this.columns = null;
+            this.running = null;
+        }
+        this.statsRows = new double[blockSize][];
+        for (int j = 0; j < blockSize; j++) {
+            statsRows[j] = stats.getStatsSchema().newRow();
+        }
+    }
+
+    /**
+     * Aggregates the kpis of a block
+     *
+     * @param n the number of steps in the block
+     */
+    private void aggregate(int n) {
+        int replicas = statuses.length;
+        pool.submit(() -> IntStream.range(0, stats.getSchema().size()).parallel().forEach(column -> {
+            for (int j = 0; j < n; j++) {
+                stats.reset(column);
+                double[][] stepRows = rows[j];
+                for (int i = 0; i < replicas; i++) {
+                    stats.add(column, stepRows[i][column]);
+                }
+                stats.fill(column, statsRows[j]);
+            }
+        })).join();
+    }
+
+    /**
+     * Returns the number of replicas
+     */
+    public int getReplicas() {
+        return statuses.length;
+    }
+
+    /**
+     * Returns the status of a replica
+     *
+     * @param replica the replica index
+     */
+    public StatusBuffer getStatus(int replica) {
+        return statuses[replica];
+    }
+
+    /**
+     * Returns the schema of statistics rows
+     */
+    public KpiSchema getStatsSchema() {
+        return stats.getStatsSchema();
+    }
+
+    /**
+     * Returns the number of steps run
+     */
+    public long getStep() {
+        return step;
+    }
+
+    /**
+     * Returns the termination of a replica
+     *
+     * @param replica the replica index
+     */
+    public Termination getTermination(int replica) {
+        return terminations[replica];
+    }
+
+    /**
+     * Returns the termination step of a replica or -1 if running
+     *
+     * @param replica the replica index
+     */
+    public long getTerminationStep(int replica) {
+        return terminationSteps[replica];
+    }
+
+    /**
+     * Returns true if all the replicas are terminated
+     */
+    public boolean isTerminated() {
+        for (Termination termination : terminations) {
+            if (!termination.isTerminated()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Runs the replicas up to the given number of steps or the termination of all replicas
+     * and returns the number of steps run
+     *
+     * @param n      the maximum number of steps
+     * @param writer the writer of statistics rows or null if none
+     * @throws IOException in case of error
+     */
+    public long run(long n, KpiWriter writer) throws IOException {
+        long done = 0;
+        while (done < n && !isTerminated()) {
+            int blockSteps = (int) Math.min(rows.length, n - done);
+            long blockStep = step;
+            if (columnKernels != null) {
+                pool.submit(() -> IntStream.range(0, columnKernels.length).parallel()
+                        .forEach(k -> runColumns(k, blockSteps, blockStep))).join();
+            } else {
+                pool.submit(() -> IntStream.range(0, kernels.length).parallel().forEach(i -> {
+                    for (int j = 0; j < blockSteps; j++) {
+                        if (terminations[i].isTerminated()) {
+                            Arrays.fill(rows[j][i], Double.NaN);
+                        } else {
+                            kernels[i].step(statuses[i], rows[j][i]);
+                            if (terminations[i].test(statuses[i])) {
+                                terminationSteps[i] = blockStep + j + 1;
+                            }
+                        }
+                    }
+                })).join();
+            }
+            int runSteps = blockSteps;
+            if (isTerminated()) {
+                // Discards the steps after the termination of the last replica
+                runSteps = 0;
+                for (long terminationStep : terminationSteps) {
+                    runSteps = (int) Math.max(runSteps, terminationStep - blockStep);
+                }
+            }
+            aggregate(runSteps);
+            if (writer != null) {
+                for (int j = 0; j < runSteps; j++) {
+                    writer.write(statsRows[j]);
+                }
+            }
+            done += runSteps;
+            step += runSteps;
+        }
+        return done;
+    }
+
+    /**
+     * Runs the steps of a batch kernel writing the kpi rows of its replicas
+     * The terminated replicas are frozen by the running mask
+     *
+     * @param kernel    the batch kernel index
+     * @param n         the number of steps
+     * @param blockStep the step at the block start
+     */
+    private void runColumns(int kernel, int n, long blockStep) {
+        EnsembleKernel columnKernel = columnKernels[kernel];
+        EnsembleBuffer buffer = buffers[kernel];
+        double[][] kpis = columns[kernel];
+        boolean[] mask = running[kernel];
+        int first = 0;
+        for (int k = 0; k < kernel; k++) {
+            first += columnKernels[k].getReplicas();
+        }
+        for (int j = 0; j < n; j++) {
+            columnKernel.step(buffer, kpis, mask);
+            double[][] stepRows = rows[j];
+            for (int r = 0; r < mask.length; r++) {
+                int i = first + r;
+                double[] row = stepRows[i];
+                if (!mask[r]) {
+                    Arrays.fill(row, Double.NaN);
+                } else {
+                    for (int c = 0; c < row.length; c++) {
+                        row[c] = kpis[c][r];
+                    }
+                    buffer.copy(r, statuses[i]);
+                    if (terminations[i].test(statuses[i])) {
+                        terminationSteps[i] = blockStep + j + 1;
+                        mask[r] = false;
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,333 @@
+/*
+ * Copyright (c) 2023 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ */
+
+package org.mmarini.hilbert.model;
+
+import java.util.StringJoiner;
+
+import static java.lang.Math.exp;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.lang.String.format;
+
+/**
+ * The mutable status of the replicas of an ensemble in parallel columns (struct of arrays)
+ * <p>
+ * Each value of {@link StatusBuffer} is a column indexed by replica:
+ * the population, the technology and a column for the preferences of each sector,
+ * so the batch kernels run a single pass over contiguous memory for all the replicas.
+ * All the replicas share the same sectors.
+ * </p>
+ */
+public class EnsembleBuffer {
+    /**
+     * Returns the buffer with all the replicas set to the status
+     *
+     * @param status   the status
+     * @param replicas the number of replicas
+     */
+    public static EnsembleBuffer of(Status status, int replicas) {
+        EnsembleBuffer buffer = new EnsembleBuffer(status.getSectors(), replicas);
+        for (int i = 0; i < replicas; i++) {
+            buffer.set(i, status);
+        }
+        return buffer;
+    }
+
+    /**
+     * Centers in place the preferences of each running replica ((max + min) / 2) as {@link StatusBuffer} does
+     *
+     * @param prefs   the preferences by sector and replica
+     * @param minimum the minimum preferences by replica (work column)
+     * @param maximum the maximum preferences by replica (work column)
+     * @param running the running mask by replica (false to keep the preferences)
+     */
+    static void center(double[][] prefs, double[] minimum, double[] maximum, boolean[] running) {
+        int n = minimum.length;
+        double[] first = prefs[0];
+        for (int j = 0; j < n; j++) {
+            double value = 0d + first[j];
+            minimum[j] = value;
+            maximum[j] = value;
+        }
+        for (int i = 1; i < prefs.length; i++) {
+            double[] column = prefs[i];
+            for (int j = 0; j < n; j++) {
+                double value = 0d + column[j];
+                minimum[j] = min(minimum[j], value);
+                maximum[j] = max(maximum[j], value);
+            }
+        }
+        for (int j = 0; j < n; j++) {
+            minimum[j] = running[j] ? (maximum[j] + minimum[j]) / 2 : 0;
+        }
+        for (double[] column : prefs) {
+            for (int j = 0; j < n; j++) {
+                column[j] = (0d + column[j]) - minimum[j];
+            }
+        }
+    }
+
+    final Sectors sectors;
+    final int replicas;
+    final long[] population;
+    final double[][] occupationPrefs;
+    final double[][] resourcePrefs;
+    final double[] technology;
+    private final double[] minimum;
+    private final double[] maximum;
+
+    /**
+     * Creates the buffer with empty replicas
+     *
+     * @param sectors  the sectors
+     * @param replicas the number of replicas
+     */
+    public EnsembleBuffer(Sectors sectors, int replicas) {
+        if (replicas <= 0) {
+            throw new IllegalArgumentException(format("Replicas must be positive (%d)", replicas));
+        }
+        this.sectors = sectors;
+        this.replicas = replicas;
+        this.population = new long[replicas];
+        this.occupationPrefs = new double[sectors.occupationCount()][replicas];
+        this.resourcePrefs = new double[sectors.resourceCount()][replicas];
+        this.technology = new double[replicas];
+        this.minimum = new double[replicas];
+        this.maximum = new double[replicas];
+    }
+
+    /**
+     * Copies the values of a replica in the status buffer
+     *
+     * @param replica the replica index
+     * @param status  the status buffer
+     */
+    void copy(int replica, StatusBuffer status) {
+        if (!sectors.equals(status.sectors)) {
+            status.sectors = sectors;
+            status.occupationPrefs = new double[sectors.occupationCount()];
+            status.resourcePrefs = new double[sectors.resourceCount()];
+        }
+        status.population = population[replica];
+        for (int i = 0; i < occupationPrefs.length; i++) {
+            status.occupationPrefs[i] = occupationPrefs[i][replica];
+        }
+        for (int i = 0; i < resourcePrefs.length; i++) {
+            status.resourcePrefs[i] = resourcePrefs[i][replica];
+        }
+        status.technology = technology[replica];
+    }
+
+    /**
+     * Returns the preferences of an occupation of a replica
+     *
+     * @param occupation the occupation index
+     * @param replica    the replica index
+     */
+    public double getOccupationPrefs(int occupation, int replica) {
+        return occupationPrefs[occupation][replica];
+    }
+
+    /**
+     * Returns the population of a replica
+     *
+     * @param replica the replica index
+     */
+    public long getPopulation(int replica) {
+        return population[replica];
+    }
+
+    /**
+     * Returns the number of replicas
+     */
+    public int getReplicas() {
+        return replicas;
+    }
+
+    /**
+     * Returns the preferences of a resource share of a replica
+     *
+     * @param resource the resource index
+     * @param replica  the replica index
+     */
+    public double getResourcePrefs(int resource, int replica) {
+        return resourcePrefs[resource][replica];
+    }
+
+    public Sectors getSectors() {
+        return sectors;
+    }
+
+    /**
+     * Returns the technology of a replica
+     *
+     * @param replica the replica index
+     */
+    public double getTechnology(int replica) {
+        return technology[replica];
+    }
+
+    /**
+     * Normalizes in place the running replicas as {@link StatusBuffer#normalize(double, double)} does
+     * The population and technology of the frozen replicas are already normalized
+     *
+     * @param minTechnology the minimum level of technology
+     * @param maxTechnology the maximum level of technology
+     * @param running       the running mask by replica (false to keep the preferences)
+     */
+    void normalize(double minTechnology, double maxTechnology, boolean[] running) {
+        for (int j = 0; j < replicas; j++) {
+            population[j] = max(0, population[j]);
+            technology[j] = min(max(minTechnology, technology[j]), maxTechnology);
+        }
+        center(occupationPrefs, minimum, maximum, running);
+        center(resourcePrefs, minimum, maximum, running);
+    }
+
+    /**
+     * Computes the number of individuals by occupation and replica as {@link StatusBuffer} does
+     * The inactive individuals are the complement of the others to the population
+     *
+     * @param individuals the number of individuals by occupation and replica (output)
+     */
+    void occupations(double[][] individuals) {
+        softmax(occupationPrefs, individuals);
+        int inactive = sectors.getInactive();
+        double[] inactives = individuals[inactive];
+        for (int j = 0; j < replicas; j++) {
+            inactives[j] = population[j];
+        }
+        for (int i = 0; i < individuals.length; i++) {
+            if (i != inactive) {
+                double[] column = individuals[i];
+                for (int j = 0; j < replicas; j++) {
+                    column[j] *= population[j];
+                    inactives[j] -= column[j];
+                }
+            }
+        }
+    }
+
+    /**
+     * Computes the resource shares by resource and replica as {@link StatusBuffer} does
+     * The settlement share is the complement of the others to 1
+     *
+     * @param ratios the ratios by resource and replica (output)
+     */
+    void resources(double[][] ratios) {
+        softmax(resourcePrefs, ratios);
+        int settlement = sectors.getSettlement();
+        double[] settlements = ratios[settlement];
+        for (int j = 0; j < replicas; j++) {
+            settlements[j] = 1;
+        }
+        for (int i = 0; i < ratios.length; i++) {
+            if (i != settlement) {
+                double[] column = ratios[i];
+                for (int j = 0; j < replicas; j++) {
+                    settlements[j] -= column[j];
+                }
+            }
+        }
+    }
+
+    /**
+     * Sets the values of a replica
+     *
+     * @param replica the replica index
+     * @param status  the status
+     * @return the buffer
+     */
+    public EnsembleBuffer set(int replica, Status status) {
+        if (!sectors.equals(status.getSectors())) {
+            throw new IllegalArgumentException(format("Status sectors must be the ensemble sectors (%s)", status.getSectors()));
+        }
+        population[replica] = status.getPopulation();
+        for (int i = 0; i < occupationPrefs.length; i++) {
+            occupationPrefs[i][replica] = status.getOccupationPrefs(i);
+        }
+        for (int i = 0; i < resourcePrefs.length; i++) {
+            resourcePrefs[i][replica] = status.getResourcePrefs(i);
+        }
+        technology[replica] = status.getTechnology();
+        return this;
+    }
+
+    /**
+     * Computes in place the softmax ratios by replica as {@link ExtMath#softmax(double[], double[])} does
+     * The total of each replica is accumulated in the order of the sectors
+     *
+     * @param prefs  the preferences by sector and replica
+     * @param ratios the ratios by sector and replica (output)
+     */
+    private void softmax(double[][] prefs, double[][] ratios) {
+        // The minimum column is free out of the normalization
+        double[] tot = minimum;
+        for (int j = 0; j < replicas; j++) {
+            tot[j] = 0;
+        }
+        for (int i = 0; i < prefs.length; i++) {
+            double[] pref = prefs[i];
+            double[] ratio = ratios[i];
+            for (int j = 0; j < replicas; j++) {
+                ratio[j] = exp(pref[j]);
+                tot[j] += ratio[j];
+            }
+        }
+        for (double[] ratio : ratios) {
+            for (int j = 0; j < replicas; j++) {
+                ratio[j] /= tot[j];
+            }
+        }
+    }
+
+    /**
+     * Returns the immutable status of a replica
+     *
+     * @param replica the replica index
+     */
+    public Status toStatus(int replica) {
+        double[] occupations = new double[occupationPrefs.length];
+        for (int i = 0; i < occupations.length; i++) {
+            occupations[i] = occupationPrefs[i][replica];
+        }
+        double[] resources = new double[resourcePrefs.length];
+        for (int i = 0; i < resources.length; i++) {
+            resources[i] = resourcePrefs[i][replica];
+        }
+        return new Status(sectors, population[replica], occupations, resources, technology[replica]);
+    }
+
+    @Override
+    public String toString() {
+        return new StringJoiner(", ", EnsembleBuffer.class.getSimpleName() + "[", "]")
+                .add("replicas=" + replicas)
+                .add("sectors=" + sectors)
+                .toString();
+    }
+}
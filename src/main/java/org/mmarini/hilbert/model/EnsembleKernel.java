@@ -0,0 +1,363 @@
+/*
+ * Copyright (c) 2023 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ */
+
+package org.mmarini.hilbert.model;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static java.lang.Math.*;
+import static java.lang.String.format;
+import static org.mmarini.hilbert.model.HilbertKernel.*;
+import static org.mmarini.hilbert.model.HilbertRules.deaths;
+
+/**
+ * Computes the hilbert rules in place for all the replicas of an ensemble buffer
+ * <p>
+ * The kernel evaluates the arithmetic of {@link HilbertKernel} with fixed interval
+ * as loops over the replica index on the columns of {@link EnsembleBuffer},
+ * drawing from the same random substreams of each replica, so the trajectory of each replica is identical
+ * to the one of the step kernel of the replica with the same seed.
+ * The arithmetic loops do not branch and run on contiguous primitive arrays
+ * so the jit compiler may unroll and vectorize them,
+ * the random draws are the only loops running a replica at a time.
+ * </p>
+ * <p>
+ * The kpis are written in the columns of the kpi schema of step kernel (a column by kpi indexed by replica).
+ * </p>
+ * <p>
+ * The running mask freezes the terminated replicas: they draw no random numbers and keep their status,
+ * as the step kernel of a terminated replica that is not stepped any more.
+ * </p>
+ */
+public class EnsembleKernel {
+    private static final KpiSchema KPI_SCHEMA = KpiSchema.of(KPI_NAMES);
+
+    private final int replicas;
+    private final RandomSource[][] randoms;
+    private final RandomSource[] overSettlementRandoms;
+    private final RandomSource[] foodProductionRandoms;
+    private final RandomSource[] healthRandoms;
+    private final RandomSource[] researchRandoms;
+    private final RandomSource[] educationRandoms;
+    private final boolean binomialDeaths;
+    private final double dt;
+    private final double resources;
+    private final double minTechnology;
+    private final double maxTechnology;
+    private final double settlementDensity;
+    private final double settlementDeathTimeConstant;
+    private final double foodProductivity;
+    private final double foodDemand;
+    private final double foodDeathTimeConstant;
+    private final double foodBirthTimeConstant;
+    private final double healthProductivity;
+    private final double healthDemand;
+    private final double minimumLifeExpectancy;
+    private final double maximumLifeExpectancy;
+    private final double researchProductivity;
+    private final double researchCost;
+    private final double researchQuantum;
+    private final double educationProductivity;
+    private final double educationDemand;
+    private final double educationTimeConstant;
+    private final double[] efficiency;
+    private final long[] deathsO;
+    private final long[] deathsS;
+    private final long[] births;
+    private final long[] deathsH;
+    private final long[] researchSteps;
+    private final long[] ne;
+    private final boolean[] allRunning;
+    private long step;
+    private double[][] individuals = new double[0][];
+    private double[][] shares = new double[0][];
+
+    /**
+     * Creates the kernel
+     *
+     * @param randoms        the random sources of replicas by rule stream (RulesSerde stream indices)
+     * @param step           the initial step
+     * @param binomialDeaths true if deaths have binomial distribution bounded by population
+     * @param dt             the time interval
+     * @param parameters     the rule parameters
+     */
+    EnsembleKernel(List<List<RandomSource>> randoms, long step, boolean binomialDeaths, double dt,
+                   RuleParameters parameters) {
+        if (randoms.isEmpty()) {
+            throw new IllegalArgumentException("Ensemble must have at least a replica");
+        }
+        this.replicas = randoms.size();
+        int streams = randoms.get(0).size();
+        this.randoms = new RandomSource[streams][replicas];
+        for (int j = 0; j < replicas; j++) {
+            List<RandomSource> replicaRandoms = randoms.get(j);
+            if (replicaRandoms.size() != streams) {
+                throw new IllegalArgumentException(format("Random streams must be %d (%d)", streams, replicaRandoms.size()));
+            }
+            for (int i = 0; i < streams; i++) {
+                this.randoms[i][j] = replicaRandoms.get(i);
+            }
+        }
+        this.overSettlementRandoms = this.randoms[RulesSerde.OVER_SETTLEMENT_STREAM];
+        this.foodProductionRandoms = this.randoms[RulesSerde.FOOD_PRODUCTION_STREAM];
+        this.healthRandoms = this.randoms[RulesSerde.HEALTH_STREAM];
+        this.researchRandoms = this.randoms[RulesSerde.RESEARCH_STREAM];
+        this.educationRandoms = this.randoms[RulesSerde.EDUCATION_STREAM];
+        this.step = step;
+        this.binomialDeaths = binomialDeaths;
+        this.dt = dt;
+        this.resources = parameters.getResources();
+        this.minTechnology = parameters.getMinTechnology();
+        this.maxTechnology = parameters.getMaxTechnology();
+        this.settlementDensity = parameters.getSettlementDensity();
+        this.settlementDeathTimeConstant = parameters.getSettlementDeathTimeConstant();
+        this.foodProductivity = parameters.getFoodProductivity();
+        this.foodDemand = parameters.getFoodDemand();
+        this.foodDeathTimeConstant = parameters.getFoodDeathTimeConstant();
+        this.foodBirthTimeConstant = parameters.getFoodBirthTimeConstant();
+        this.healthProductivity = parameters.getHealthProductivity();
+        this.healthDemand = parameters.getHealthDemand();
+        this.minimumLifeExpectancy = parameters.getMinimumLifeExpectancy();
+        this.maximumLifeExpectancy = parameters.getMaximumLifeExpectancy();
+        this.researchProductivity = parameters.getResearchProductivity();
+        this.researchCost = parameters.getResearchCost();
+        this.researchQuantum = parameters.getResearchQuantum();
+        this.educationProductivity = parameters.getEducationProductivity();
+        this.educationDemand = parameters.getEducationDemand();
+        this.educationTimeConstant = parameters.getEducationTimeConstant();
+        this.efficiency = new double[replicas];
+        this.deathsO = new long[replicas];
+        this.deathsS = new long[replicas];
+        this.births = new long[replicas];
+        this.deathsH = new long[replicas];
+        this.researchSteps = new long[replicas];
+        this.ne = new long[replicas];
+        this.allRunning = new boolean[replicas];
+        Arrays.fill(allRunning, true);
+    }
+
+    /**
+     * Returns the kpi schema of the kpi columns
+     */
+    public KpiSchema getKpiSchema() {
+        return KPI_SCHEMA;
+    }
+
+    /**
+     * Returns the number of replicas
+     */
+    public int getReplicas() {
+        return replicas;
+    }
+
+    /**
+     * Returns the current step
+     */
+    public long getStep() {
+        return step;
+    }
+
+    /**
+     * Returns the kpi columns (a column by kpi slot indexed by replica)
+     */
+    public double[][] newKpis() {
+        return new double[KPI_SCHEMA.size()][replicas];
+    }
+
+    /**
+     * Sets the current step
+     *
+     * @param step the step
+     */
+    public void setStep(long step) {
+        this.step = step;
+    }
+
+    /**
+     * Computes the next status of all the replicas
+     *
+     * @param status the status of replicas to update
+     * @param kpis   the kpi columns with the slots of kpi schema
+     */
+    public void step(EnsembleBuffer status, double[][] kpis) {
+        step(status, kpis, allRunning);
+    }
+
+    /**
+     * Computes the next status of the running replicas
+     * The kpis of the frozen replicas are computed but not meaningful
+     *
+     * @param status  the status of replicas to update
+     * @param kpis    the kpi columns with the slots of kpi schema
+     * @param running the running mask by replica (false to freeze the replica)
+     */
+    public void step(EnsembleBuffer status, double[][] kpis, boolean[] running) {
+        if (status.replicas != replicas) {
+            throw new IllegalArgumentException(format("Replicas must be %d (%d)", replicas, status.replicas));
+        }
+        if (running.length != replicas) {
+            throw new IllegalArgumentException(format("Running mask must be %d (%d)", replicas, running.length));
+        }
+        // Positions the generators at the current step
+        for (RandomSource[] streamRandoms : randoms) {
+            for (RandomSource random : streamRandoms) {
+                random.setStep(step);
+            }
+        }
+        step++;
+
+        long[] population = status.population;
+        double[] technology = status.technology;
+
+        // Computes the shared values as StatusBuffer does
+        Sectors sectors = status.sectors;
+        if (individuals.length != status.occupationPrefs.length) {
+            individuals = new double[status.occupationPrefs.length][replicas];
+        }
+        if (shares.length != status.resourcePrefs.length) {
+            shares = new double[status.resourcePrefs.length][replicas];
+        }
+        status.occupations(individuals);
+        status.resources(shares);
+        double[] farmers = individuals[sectors.getFarmer()];
+        double[] researchers = individuals[sectors.getResearcher()];
+        double[] educators = individuals[sectors.getEducator()];
+        double[] doctors = individuals[sectors.getDoctor()];
+        double[] foodRatio = shares[sectors.getFood()];
+        double[] researchRatio = shares[sectors.getResearch()];
+        double[] educationRatio = shares[sectors.getEducation()];
+        double[] healthRatio = shares[sectors.getHealth()];
+        double[] settlementRatio = shares[sectors.getSettlement()];
+
+        for (int j = 0; j < replicas; j++) {
+            efficiency[j] = -expm1(-technology[j]);
+        }
+
+        // Over settlement rule
+        double[] maxPopO = kpis[MAX_POP_O_KPI];
+        double[] popO = kpis[POP_O_KPI];
+        double[] lambdaO = kpis[LAMBDA_O_KPI];
+        for (int j = 0; j < replicas; j++) {
+            maxPopO[j] = settlementRatio[j] * resources * settlementDensity / settlementDeathTimeConstant * dt;
+            popO[j] = population[j] / settlementDeathTimeConstant * dt;
+            lambdaO[j] = max(0, popO[j] - maxPopO[j]);
+        }
+
+        // Food production rule
+        double[] kfPop = kpis[KF_POP_KPI];
+        double[] kfRes = kpis[KF_RES_KPI];
+        double[] kf = kpis[KF_KPI];
+        double[] lambdaS = kpis[LAMBDA_S_KPI];
+        double[] lambdaB = kpis[LAMBDA_B_KPI];
+        for (int j = 0; j < replicas; j++) {
+            long pop = population[j];
+            kfPop[j] = efficiency[j] * foodProductivity * farmers[j] / pop / foodDemand;
+            kfRes[j] = efficiency[j] * foodRatio[j] * resources / pop / foodDemand;
+            kf[j] = min(kfPop[j], kfRes[j]);
+            lambdaS[j] = max(0, pop * (1 - kf[j])) * dt / foodDeathTimeConstant;
+            lambdaB[j] = max(0, pop * (kf[j] - 1)) * dt / foodBirthTimeConstant;
+        }
+
+        // Health rule
+        double[] kh = kpis[KH_KPI];
+        double[] lifeExpectancy = kpis[LIFE_EXPECTANCY_KPI];
+        double[] lambdaH = kpis[LAMBDA_H_KPI];
+        for (int j = 0; j < replicas; j++) {
+            kh[j] = efficiency[j] * min(doctors[j] * healthProductivity, resources * healthRatio[j]) / population[j] / healthDemand;
+            lifeExpectancy[j] = (maximumLifeExpectancy - minimumLifeExpectancy) * min(kh[j], 1) + minimumLifeExpectancy;
+            lambdaH[j] = population[j] * dt / lifeExpectancy[j];
+        }
+
+        // Research rule
+        double[] lambdaR = kpis[LAMBDA_R_KPI];
+        for (int j = 0; j < replicas; j++) {
+            lambdaR[j] = efficiency[j] * min(researchers[j] * researchProductivity, researchRatio[j] * resources) * dt / researchCost;
+        }
+
+        // Education rule
+        double[] ke = kpis[KE_KPI];
+        double[] lambdaE = kpis[LAMBDA_E_KPI];
+        for (int j = 0; j < replicas; j++) {
+            ke[j] = efficiency[j] * min(educators[j] * educationProductivity / population[j], educationRatio[j] * resources) / educationDemand;
+            lambdaE[j] = max(0, (1 - ke[j])) * population[j] * dt / educationTimeConstant;
+        }
+
+        // Draws the events of each rule stream (the streams of a replica are independent)
+        for (int j = 0; j < replicas; j++) {
+            deathsO[j] = running[j] ? deaths(overSettlementRandoms[j], binomialDeaths, population[j], lambdaO[j]) : 0;
+        }
+        for (int j = 0; j < replicas; j++) {
+            RandomSource random = foodProductionRandoms[j];
+            deathsS[j] = running[j] ? deaths(random, binomialDeaths, population[j], lambdaS[j]) : 0;
+            births[j] = running[j] && lambdaB[j] > 0 ? random.nextPoisson(lambdaB[j]) : 0;
+        }
+        for (int j = 0; j < replicas; j++) {
+            deathsH[j] = running[j] ? deaths(healthRandoms[j], binomialDeaths, population[j], lambdaH[j]) : 0;
+        }
+        for (int j = 0; j < replicas; j++) {
+            researchSteps[j] = running[j] && lambdaR[j] > 0 ? researchRandoms[j].nextPoisson(lambdaR[j]) : 0;
+        }
+        for (int j = 0; j < replicas; j++) {
+            ne[j] = running[j] && lambdaE[j] > 0 ? educationRandoms[j].nextPoisson(lambdaE[j]) : 0;
+        }
+
+        // Writes the kpis of the initial status and the events
+        double[] populationKpi = kpis[POPULATION_KPI];
+        double[] technologyKpi = kpis[TECHNOLOGY_KPI];
+        double[] deathsOKpi = kpis[DEATHS_O_KPI];
+        double[] deathsSKpi = kpis[DEATHS_S_KPI];
+        double[] birthsKpi = kpis[BIRTHS_KPI];
+        double[] deathsHKpi = kpis[DEATHS_H_KPI];
+        double[] deltaTR = kpis[DELTA_TR_KPI];
+        double[] deltaTE = kpis[DELTA_TE_KPI];
+        for (int j = 0; j < replicas; j++) {
+            populationKpi[j] = population[j];
+            technologyKpi[j] = technology[j];
+            deathsOKpi[j] = deathsO[j];
+            deathsSKpi[j] = deathsS[j];
+            birthsKpi[j] = births[j];
+            deathsHKpi[j] = deathsH[j];
+            deltaTR[j] = researchSteps[j] * researchQuantum;
+            deltaTE[j] = -technology[j] * min((double) ne[j] / population[j], 1);
+        }
+
+        // Sums the changes (0 + value normalizes the negative zeros as Status.sum does)
+        for (int j = 0; j < replicas; j++) {
+            population[j] += deathsO[j] + births[j] + deathsS[j] + deathsH[j];
+            double newTechnology = 0d + technology[j];
+            if (researchSteps[j] != 0) {
+                newTechnology += deltaTR[j];
+            }
+            // The technology loss of an extinct frozen replica is not a number
+            technology[j] = running[j] ? newTechnology + deltaTE[j] : technology[j];
+        }
+
+        // Normalizes the status
+        status.normalize(minTechnology, maxTechnology, running);
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2023 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ */
+
+package org.mmarini.hilbert.model;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Aggregates the kpis of the ensemble replicas at a step
+ * <p>
+ * For each kpi it computes the mean, the sample variance and the selected quantiles
+ * without storing the values. The not a number values (e.g. kpis of extinct replicas) are skipped.
+ * The columns are independent of each other, so different columns may be aggregated in parallel.
+ * </p>
+ */
+public class EnsembleStats {
+    public static final double[] DEFAULT_QUANTILES = {0.05, 0.5, 0.95};
+    public static final String MEAN_SUFFIX = ".mean";
+    public static final String VARIANCE_SUFFIX = ".var";
+
+    /**
+     * Returns the suffix of the quantile kpi (e.g. ".q5" for 0.05)
+     *
+     * @param p the quantile probability
+     */
+    static String quantileSuffix(double p) {
+        return ".q" + BigDecimal.valueOf(p).movePointRight(2).stripTrailingZeros().toPlainString();
+    }
+
+    private final KpiSchema schema;
+    private final double[] quantiles;
+    private final KpiSchema statsSchema;
+    private final RunningStats[] stats;
+    private final P2Quantile[][] estimators;
+
+    /**
+     * Creates the ensemble statistics
+     *
+     * @param schema    the kpi schema of replicas
+     * @param quantiles the quantile probabilities
+     */
+    public EnsembleStats(KpiSchema schema, double... quantiles) {
+        this.schema = schema;
+        this.quantiles = quantiles.clone();
+        int n = schema.size();
+        this.stats = new RunningStats[n];
+        this.estimators = new P2Quantile[n][quantiles.length];
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            String name = schema.getName(i);
+            names.add(name + MEAN_SUFFIX);
+            names.add(name + VARIANCE_SUFFIX);
+            stats[i] = new RunningStats();
+            for (int j = 0; j < quantiles.length; j++) {
+                names.add(name + quantileSuffix(quantiles[j]));
+                estimators[i][j] = new P2Quantile(quantiles[j]);
+            }
+        }
+        this.statsSchema = KpiSchema.of(names);
+    }
+
+    /**
+     * Adds a value of a kpi
+     *
+     * @param column the kpi slot
+     * @param value  the value
+     */
+    public void add(int column, double value) {
+        if (!Double.isNaN(value)) {
+            stats[column].add(value);
+            for (P2Quantile estimator : estimators[column]) {
+                estimator.add(value);
+            }
+        }
+    }
+
+    /**
+     * Writes the statistics of a kpi in the statistics row
+     *
+     * @param column   the kpi slot
+     * @param statsRow the statistics row with the slots of statistics schema
+     */
+    public void fill(int column, double[] statsRow) {
+        int offset = column * (2 + quantiles.length);
+        statsRow[offset] = stats[column].getMean();
+        statsRow[offset + 1] = stats[column].getVariance();
+        for (int j = 0; j < quantiles.length; j++) {
+            statsRow[offset + 2 + j] = estimators[column][j].getValue();
+        }
+    }
+
+    /**
+     * Returns the kpi schema of replicas
+     */
+    public KpiSchema getSchema() {
+        return schema;
+    }
+
+    /**
+     * Returns the schema of statistics row
+     */
+    public KpiSchema getStatsSchema() {
+        return statsSchema;
+    }
+
+    /**
+     * Resets the statistics of a kpi
+     *
+     * @param column the kpi slot
+     */
+    public void reset(int column) {
+        stats[column].reset();
+        for (P2Quantile estimator : estimators[column]) {
+            estimator.reset();
+        }
+    }
+}
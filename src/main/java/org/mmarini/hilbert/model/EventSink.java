@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2023 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ */
+
+package org.mmarini.hilbert.model;
+
+/**
+ * Receives the simulation events
+ * <p>
+ * The events are passed as primitive values so emitting an event does not allocate objects.
+ * The kernel emits the events only if a sink is set, so the events cost nothing when nobody is listening.
+ * </p>
+ */
+@FunctionalInterface
+public interface EventSink {
+    /**
+     * Returns the sink dispatching the events to all the given sinks
+     *
+     * @param sinks the sinks
+     */
+    static EventSink of(EventSink... sinks) {
+        if (sinks.length == 1) {
+            return sinks[0];
+        }
+        EventSink[] copy = sinks.clone();
+        return (type, step, value) -> {
+            for (EventSink sink : copy) {
+                sink.accept(type, step, value);
+            }
+        };
+    }
+
+    /**
+     * Receives an event
+     *
+     * @param type  the event type
+     * @param step  the step
+     * @param value the event value
+     */
+    void accept(EventType type, long step, double value);
+}
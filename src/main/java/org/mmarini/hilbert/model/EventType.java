@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) 2023 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ */
+
+package org.mmarini.hilbert.model;
+
+/**
+ * The types of simulation events
+ * The event value is the number of births or deaths or the technology change
+ */
+public enum EventType {
+    BIRTH("{} births"),
+    STARVATION_DEATH("{} deaths from starvation"),
+    NATURAL_DEATH("{} natural deaths"),
+    OVER_SETTLEMENT_DEATH("{} deaths for over settlement"),
+    TECHNOLOGY_ENHANCEMENT("{} technology enhancement"),
+    TECHNOLOGY_LOSS("{} technology loss");
+
+    private final String message;
+
+    /**
+     * Creates the event type
+     *
+     * @param message the log message pattern of value
+     */
+    EventType(String message) {
+        this.message = message;
+    }
+
+    /**
+     * Returns the log message pattern of value
+     */
+    public String getMessage() {
+        return message;
+    }
+}
@@ -35,6 +35,15 @@ import static java.lang.Math.*;
  * ExtMath functions
  */
 public interface ExtMath {
+    double[] LOG_GAMMA_COEFFS = {
+            8.333333333333333e-02, -2.777777777777778e-03, 7.936507936507937e-04,
+            -5.952380952380952e-04, 8.417508417508418e-04, -1.917526917526918e-03,
+            6.410256410256410e-03, -2.955065359477124e-02, 1.796443723688307e-01,
+            -1.39243221690590e+00
+    };
+    double HALF_LOG_2PI = 0.5 * log(2 * PI);
+    double EULER_GAMMA = 0.5772156649015329;
+
     /**
      * Returns the upper value with n digits to argument
      *
@@ -65,6 +74,69 @@ public interface ExtMath {
         return floor(value * scale) / scale;
     }
 
+    /**
+     * Returns exp(x) E1(x) where E1 is the exponential integral (x &gt; 0)
+     * The mean lifetime of the Gompertz law with mortality a exp(b age) is exp(a/b) E1(a/b) / b
+     *
+     * @param x the argument
+     */
+    static double expE1(double x) {
+        if (x <= 1) {
+            // Power series
+            double sum = 0;
+            double term = 1;
+            for (int k = 1; k < 100; k++) {
+                term *= -x / k;
+                double delta = term / k;
+                sum -= delta;
+                if (abs(delta) < abs(sum) * 1e-16) {
+                    break;
+                }
+            }
+            return exp(x) * (-EULER_GAMMA - log(x) + sum);
+        }
+        // Continued fraction (modified Lentz)
+        double b = x + 1;
+        double c = 1e300;
+        double d = 1 / b;
+        double h = d;
+        for (int i = 1; i < 1000; i++) {
+            double an = -(double) i * i;
+            b += 2;
+            d = 1 / (an * d + b);
+            c = b + an / c;
+            double delta = c * d;
+            h *= delta;
+            if (abs(delta - 1) < 1e-16) {
+                break;
+            }
+        }
+        return h;
+    }
+
+    /**
+     * Returns the initial mortality (age 0) of the Gompertz law with the given mean lifetime
+     * The mortality at age is a exp(b age)
+     *
+     * @param lifeExpectancy the mean lifetime
+     * @param growth         the growth rate of mortality by age (b)
+     */
+    static double gompertzMortality(double lifeExpectancy, double growth) {
+        // exp(x) E1(x) decreases with x = a/b, bisects log(x)
+        double target = growth * lifeExpectancy;
+        double lo = -700;
+        double hi = 20;
+        for (int i = 0; i < 64; i++) {
+            double mid = (lo + hi) / 2;
+            if (expE1(exp(mid)) > target) {
+                lo = mid;
+            } else {
+                hi = mid;
+            }
+        }
+        return exp((lo + hi) / 2) * growth;
+    }
+
     /**
      * Returns the inverse softmax preferences of arguments
      *
@@ -79,17 +151,57 @@ public interface ExtMath {
         return prefs;
     }
 
+    /**
+     * Returns the logarithm of gamma function (Stirling series)
+     * The value for integer arguments is log((x-1)!)
+     *
+     * @param x the argument (x > 0)
+     */
+    static double logGamma(double x) {
+        if (x == 1 || x == 2) {
+            return 0;
+        }
+        // Shifts the argument above 7 to keep the series accurate
+        int n = x <= 7 ? (int) (7 - x) : 0;
+        double x0 = x + n;
+        double x2 = 1 / (x0 * x0);
+        double gl0 = LOG_GAMMA_COEFFS[9];
+        for (int k = 8; k >= 0; k--) {
+            gl0 = gl0 * x2 + LOG_GAMMA_COEFFS[k];
+        }
+        double gl = gl0 / x0 + HALF_LOG_2PI + (x0 - 0.5) * log(x0) - x0;
+        for (int k = 1; k <= n; k++) {
+            x0 -= 1;
+            gl -= log(x0);
+        }
+        return gl;
+    }
+
     /**
      * Returns the softmax ratios of arguments
      *
      * @param prefs the preferences
      */
     static double[] softmax(double... prefs) {
-        double[] ratios = Arrays.stream(prefs).map(Math::exp).toArray();
-        double tot = Arrays.stream(ratios).sum();
-        for (int i = 0; i < ratios.length; i++) {
+        double[] ratios = new double[prefs.length];
+        softmax(prefs, ratios);
+        return ratios;
+    }
+
+    /**
+     * Computes in place the softmax ratios of preferences
+     *
+     * @param prefs  the preferences
+     * @param ratios the ratios (output)
+     */
+    static void softmax(double[] prefs, double[] ratios) {
+        double tot = 0;
+        for (int i = 0; i < prefs.length; i++) {
+            ratios[i] = exp(prefs[i]);
+            tot += ratios[i];
+        }
+        for (int i = 0; i < prefs.length; i++) {
             ratios[i] /= tot;
         }
-        return ratios;
     }
 }
\ No newline at end of file
@@ -27,76 +27,75 @@
 
 package org.mmarini.hilbert.model;
 
-import java.util.Random;
-
-import static java.lang.Math.exp;
+import static java.lang.String.format;
 
 /**
- * Add the generation of Poisson number
+ * The linear congruential generator of java.util.Random
+ * <p>
+ * It generates the same sequence of java.util.Random with the same seed
+ * without the atomic update of seed and with exportable state.
+ * It is not thread safe.
+ * </p>
  */
-public class ExtRandom extends Random {
-    private static final double STEP = 500;
-    private static final double E_STEP = exp(STEP);
+public class ExtRandom implements RandomSource {
+    private static final long MULTIPLIER = 0x5DEECE66DL;
+    private static final long ADDEND = 0xBL;
+    private static final long MASK = (1L << 48) - 1;
 
+    private long seed;
 
     public ExtRandom() {
-        super();
+        this(RandomSource.randomSeed());
     }
 
     public ExtRandom(long seed) {
-        super(seed);
+        this.seed = (seed ^ MULTIPLIER) & MASK;
+    }
+
+    @Override
+    public long[] getState() {
+        return new long[]{seed};
+    }
+
+    @Override
+    public void setState(long[] state) {
+        if (state.length != 1) {
+            throw new IllegalArgumentException(format("State must have 1 value (%d)", state.length));
+        }
+        this.seed = state[0] & MASK;
     }
 
     /**
-     * Returns a value with poisson distribution (mean = lambda)
+     * Returns the next random bits
      *
-     * @param lambda the lambda parameter
+     * @param bits the number of bits
      */
-    public int nextPoisson(double lambda) {
-        double l = exp(-lambda);
-        int k = -1;
-        double p = 1;
-        do {
-            ++k;
-            double u = nextDouble();
-            p *= u;
-        } while (p > l);
-        return k;
+    private int next(int bits) {
+        seed = (seed * MULTIPLIER + ADDEND) & MASK;
+        return (int) (seed >>> (48 - bits));
+    }
+
+    @Override
+    public double nextDouble() {
+        return (((long) (next(26)) << 27) + next(27)) * 0x1.0p-53;
+    }
+
+    @Override
+    public long nextLong() {
+        return ((long) (next(32)) << 32) + next(32);
     }
 
     /**
-     * Returns a value with poisson distribution (mean = lambda)
+     * Returns the value of nextDouble from the value of nextLong
+     * Both draw two seeds: nextLong has the 32 high bits of the seeds,
+     * nextDouble the 26 and 27 high bits of the seeds
      *
-     * @param lambda the lambda parameter
+     * @param value the nextLong value
      */
-    public int nextPoisson1(double lambda) {
-        if (lambda < 10) {
-            double l = exp(-lambda);
-            int k = -1;
-            double p = 1;
-            do {
-                ++k;
-                double u = nextDouble();
-                p *= u;
-            } while (p > l);
-            return k;
-        } else {
-            double lambdaLeft = lambda;
-            int k = -1;
-            double p = 1;
-            do {
-                k++;
-                while (p < 1 && lambdaLeft > 0) {
-                    if (lambdaLeft > STEP) {
-                        p *= E_STEP;
-                        lambdaLeft -= STEP;
-                    } else {
-                        p *= exp(lambdaLeft);
-                        lambdaLeft = 0;
-                    }
-                }
-            } while (p > 0);
-            return k;
-        }
+    @Override
+    public double toDouble(long value) {
+        int low = (int) value;
+        long high = (value - low) >>> 32;
+        return (((high >>> 6) << 27) + (low >>> 5)) * 0x1.0p-53;
     }
 }
@@ -0,0 +1,605 @@
+/*
+ * Copyright (c) 2023 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ */
+
+package org.mmarini.hilbert.model;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static java.lang.Math.*;
+import static java.lang.String.format;
+import static org.mmarini.hilbert.model.HilbertRules.deaths;
+
+/**
+ * Computes the hilbert rules in place on primitive values
+ * <p>
+ * The kernel evaluates the same arithmetic of {@link HilbertRules} composed by {@link RulesSerde},
+ * drawing from the same random substreams, so the trajectories are identical
+ * to the ones of the functional rules with the same seed.
+ * The values shared by the rules (population distribution, resources distribution and efficiency)
+ * are computed once per step.
+ * The kpis are written in the slots of kpi schema, the poisson cache kpis are in the schema only if
+ * the cache is configured.
+ * </p>
+ * <p>
+ * With a positive tolerance the kernel leaps in time (tau leaping): each step takes the largest interval
+ * keeping the expected relative changes of population and technology and their standard deviations
+ * below the tolerance, within the interval range.
+ * The steps whose changes overshoot three times the tolerance are rejected and drawn again with half interval.
+ * The time and the interval of each step are in the time and dt kpis.
+ * </p>
+ * <p>
+ * Below the ssa population each step is a single event of the exact stochastic simulation (direct method):
+ * the lambdas become the rates of the event channels (deaths by cause, births, research and education),
+ * the interval is the exponential waiting time of the next event and the channel is drawn by its rate.
+ * </p>
+ */
+public class HilbertKernel implements StepKernel {
+    public static final List<String> KPI_NAMES = List.of(
+            "population",
+            "technology",
+            "deathsO",
+            "lambdaO",
+            "maxPopO",
+            "popO",
+            "deathsS",
+            "births",
+            "kf",
+            "kfPop",
+            "kfRes",
+            "lambdaS",
+            "lambdaB",
+            "deltaTR",
+            "lambdaR",
+            "deltaTE",
+            "lambdaE",
+            "ke",
+            "deathsH",
+            "kh",
+            "lifeExpectancy",
+            "lambdaH"
+    );
+    public static final List<String> POISSON_CACHE_KPI_NAMES = List.of(
+            "poissonHits",
+            "poissonMisses"
+    );
+    public static final List<String> TAU_LEAPING_KPI_NAMES = List.of(
+            "time",
+            "dt"
+    );
+    public static final double DEFAULT_TAU_TOLERANCE = 0.03;
+    public static final int POPULATION_KPI = 0;
+    public static final int TECHNOLOGY_KPI = 1;
+    public static final int DEATHS_O_KPI = 2;
+    public static final int LAMBDA_O_KPI = 3;
+    public static final int MAX_POP_O_KPI = 4;
+    public static final int POP_O_KPI = 5;
+    public static final int DEATHS_S_KPI = 6;
+    public static final int BIRTHS_KPI = 7;
+    public static final int KF_KPI = 8;
+    public static final int KF_POP_KPI = 9;
+    public static final int KF_RES_KPI = 10;
+    public static final int LAMBDA_S_KPI = 11;
+    public static final int LAMBDA_B_KPI = 12;
+    public static final int DELTA_TR_KPI = 13;
+    public static final int LAMBDA_R_KPI = 14;
+    public static final int DELTA_TE_KPI = 15;
+    public static final int LAMBDA_E_KPI = 16;
+    public static final int KE_KPI = 17;
+    public static final int DEATHS_H_KPI = 18;
+    public static final int KH_KPI = 19;
+    public static final int LIFE_EXPECTANCY_KPI = 20;
+    public static final int LAMBDA_H_KPI = 21;
+    private static final double OVERSHOOT = 3;
+    private static final KpiSchema DEFAULT_KPI_SCHEMA = KpiSchema.of(KPI_NAMES);
+
+    private final RandomSource[] randoms;
+    private final RandomSource overSettlementRandom;
+    private final RandomSource foodProductionRandom;
+    private final RandomSource healthRandom;
+    private final RandomSource researchRandom;
+    private final RandomSource educationRandom;
+    private final PoissonTableCache cache;
+    private final KpiSchema kpiSchema;
+    private final int poissonHitsSlot;
+    private final int poissonMissesSlot;
+    private final int timeSlot;
+    private final int dtSlot;
+    private final boolean binomialDeaths;
+    private final double dt;
+    private final boolean adaptive;
+    private final double tolerance;
+    private final double minInterval;
+    private final double maxInterval;
+    private final int ssaPopulation;
+    private final double resources;
+    private final double minTechnology;
+    private final double maxTechnology;
+    private final double settlementDensity;
+    private final double settlementDeathTimeConstant;
+    private final double foodProductivity;
+    private final double foodDemand;
+    private final double foodDeathTimeConstant;
+    private final double foodBirthTimeConstant;
+    private final double healthProductivity;
+    private final double healthDemand;
+    private final double minimumLifeExpectancy;
+    private final double maximumLifeExpectancy;
+    private final double researchProductivity;
+    private final double researchCost;
+    private final double researchQuantum;
+    private final double educationProductivity;
+    private final double educationDemand;
+    private final double educationTimeConstant;
+    private long step;
+    private double time;
+    private long rejections;
+    private long ssaEvents;
+    private EventSink eventSink;
+    private double[] individuals = new double[0];
+    private double[] shares = new double[0];
+
+    /**
+     * Creates the kernel
+     *
+     * @param randoms        the random sources by rule stream (RulesSerde stream indices)
+     * @param cache          the poisson table cache or null if none
+     * @param step           the initial step
+     * @param binomialDeaths true if deaths have binomial distribution bounded by population
+     * @param dt             the time interval
+     * @param tolerance      the tolerance of expected relative changes of tau leaping (0 if fixed interval)
+     * @param minInterval    the minimum interval of tau leaping
+     * @param maxInterval    the maximum interval of tau leaping
+     * @param ssaPopulation  the population below which the steps are single events (0 if none)
+     * @param parameters     the rule parameters
+     */
+    HilbertKernel(List<RandomSource> randoms, PoissonTableCache cache, long step, boolean binomialDeaths,
+                  double dt, double tolerance, double minInterval, double maxInterval, int ssaPopulation,
+                  RuleParameters parameters) {
+        this.randoms = randoms.toArray(RandomSource[]::new);
+        this.overSettlementRandom = randoms.get(RulesSerde.OVER_SETTLEMENT_STREAM);
+        this.foodProductionRandom = randoms.get(RulesSerde.FOOD_PRODUCTION_STREAM);
+        this.healthRandom = randoms.get(RulesSerde.HEALTH_STREAM);
+        this.researchRandom = randoms.get(RulesSerde.RESEARCH_STREAM);
+        this.educationRandom = randoms.get(RulesSerde.EDUCATION_STREAM);
+        this.cache = cache;
+        if (tolerance > 0 && !(minInterval > 0 && minInterval <= maxInterval)) {
+            throw new IllegalArgumentException(format("Interval range must be positive (%g, %g)", minInterval, maxInterval));
+        }
+        if (ssaPopulation > 0 && !(tolerance > 0)) {
+            throw new IllegalArgumentException(format("Single event steps require tau leaping (%d)", ssaPopulation));
+        }
+        this.adaptive = tolerance > 0;
+        // The kernels without optional kpis share the schema (e.g. the kernels of regions)
+        this.kpiSchema = cache == null && !adaptive ? DEFAULT_KPI_SCHEMA : KpiSchema.of(Stream.of(
+                        KPI_NAMES.stream(),
+                        cache != null ? POISSON_CACHE_KPI_NAMES.stream() : Stream.<String>empty(),
+                        adaptive ? TAU_LEAPING_KPI_NAMES.stream() : Stream.<String>empty())
+                .flatMap(x -> x)
+                .collect(Collectors.toList()));
+        this.poissonHitsSlot = kpiSchema.indexOf(POISSON_CACHE_KPI_NAMES.get(0));
+        this.poissonMissesSlot = kpiSchema.indexOf(POISSON_CACHE_KPI_NAMES.get(1));
+        this.timeSlot = kpiSchema.indexOf(TAU_LEAPING_KPI_NAMES.get(0));
+        this.dtSlot = kpiSchema.indexOf(TAU_LEAPING_KPI_NAMES.get(1));
+        this.step = step;
+        this.binomialDeaths = binomialDeaths;
+        this.dt = dt;
+        this.tolerance = tolerance;
+        this.minInterval = minInterval;
+        this.maxInterval = maxInterval;
+        this.ssaPopulation = ssaPopulation;
+        this.time = adaptive ? 0 : step * dt;
+        this.resources = parameters.getResources();
+        this.minTechnology = parameters.getMinTechnology();
+        this.maxTechnology = parameters.getMaxTechnology();
+        this.settlementDensity = parameters.getSettlementDensity();
+        this.settlementDeathTimeConstant = parameters.getSettlementDeathTimeConstant();
+        this.foodProductivity = parameters.getFoodProductivity();
+        this.foodDemand = parameters.getFoodDemand();
+        this.foodDeathTimeConstant = parameters.getFoodDeathTimeConstant();
+        this.foodBirthTimeConstant = parameters.getFoodBirthTimeConstant();
+        this.healthProductivity = parameters.getHealthProductivity();
+        this.healthDemand = parameters.getHealthDemand();
+        this.minimumLifeExpectancy = parameters.getMinimumLifeExpectancy();
+        this.maximumLifeExpectancy = parameters.getMaximumLifeExpectancy();
+        this.researchProductivity = parameters.getResearchProductivity();
+        this.researchCost = parameters.getResearchCost();
+        this.researchQuantum = parameters.getResearchQuantum();
+        this.educationProductivity = parameters.getEducationProductivity();
+        this.educationDemand = parameters.getEducationDemand();
+        this.educationTimeConstant = parameters.getEducationTimeConstant();
+    }
+
+    /**
+     * Returns the ratio of bound by value or infinity if the value is not positive
+     *
+     * @param bound the bound
+     * @param value the value
+     */
+    private static double boundRatio(double bound, double value) {
+        return value > 0 ? bound / value : Double.POSITIVE_INFINITY;
+    }
+
+    @Override
+    public KpiSchema getKpiSchema() {
+        return kpiSchema;
+    }
+
+    /**
+     * Returns the poisson table cache or null if none
+     */
+    public PoissonTableCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Returns the event sink or null if none
+     */
+    public EventSink getEventSink() {
+        return eventSink;
+    }
+
+    /**
+     * Returns the states of random sources by rule stream
+     */
+    public long[][] getRandomStates() {
+        long[][] states = new long[randoms.length][];
+        for (int i = 0; i < randoms.length; i++) {
+            states[i] = randoms[i].getState();
+        }
+        return states;
+    }
+
+    /**
+     * Returns the resources
+     */
+    public double getResources() {
+        return resources;
+    }
+
+    /**
+     * Returns the number of rejected tau leaping intervals
+     */
+    public long getRejections() {
+        return rejections;
+    }
+
+    /**
+     * Returns the number of single event steps
+     */
+    public long getSsaEvents() {
+        return ssaEvents;
+    }
+
+    /**
+     * Returns the current step
+     */
+    public long getStep() {
+        return step;
+    }
+
+    /**
+     * Returns the simulated time
+     */
+    public double getTime() {
+        return time;
+    }
+
+    /**
+     * Returns true if the kernel selects the interval of each step (tau leaping)
+     */
+    public boolean isAdaptive() {
+        return adaptive;
+    }
+
+    /**
+     * Sets the event sink
+     *
+     * @param eventSink the event sink or null if none
+     */
+    public void setEventSink(EventSink eventSink) {
+        this.eventSink = eventSink;
+    }
+
+    /**
+     * Sets the states of random sources by rule stream
+     *
+     * @param states the states
+     */
+    public void setRandomStates(long[][] states) {
+        if (states.length != randoms.length) {
+            throw new IllegalArgumentException(format("Random states must be %d (%d)", randoms.length, states.length));
+        }
+        for (int i = 0; i < randoms.length; i++) {
+            randoms[i].setState(states[i]);
+        }
+    }
+
+    /**
+     * Sets the current step
+     * The time of fixed interval follows the step
+     *
+     * @param step the step
+     */
+    public void setStep(long step) {
+        this.step = step;
+        if (!adaptive) {
+            this.time = step * dt;
+        }
+    }
+
+    /**
+     * Sets the simulated time
+     *
+     * @param time the time
+     */
+    public void setTime(double time) {
+        this.time = time;
+    }
+
+    @Override
+    public void step(StatusBuffer status, double[] kpis) {
+        // Positions the generators at the current step
+        for (RandomSource random : randoms) {
+            random.setStep(step);
+        }
+        step++;
+
+        long population = status.population;
+        double technology = status.technology;
+
+        // Computes the shared values as Status does
+        Sectors sectors = status.sectors;
+        if (individuals.length != status.occupationPrefs.length) {
+            individuals = new double[status.occupationPrefs.length];
+        }
+        if (shares.length != status.resourcePrefs.length) {
+            shares = new double[status.resourcePrefs.length];
+        }
+        status.occupations(individuals);
+        status.resources(shares);
+        double farmers = individuals[sectors.getFarmer()];
+        double researchers = individuals[sectors.getResearcher()];
+        double educators = individuals[sectors.getEducator()];
+        double doctors = individuals[sectors.getDoctor()];
+        double foodRatio = shares[sectors.getFood()];
+        double researchRatio = shares[sectors.getResearch()];
+        double educationRatio = shares[sectors.getEducation()];
+        double healthRatio = shares[sectors.getHealth()];
+        double settlementRatio = shares[sectors.getSettlement()];
+
+        double efficiency = -expm1(-technology);
+
+        // Computes the lambdas of the interval (the lambdas are proportional to the interval)
+        double dt = adaptive ? maxInterval : this.dt;
+
+        // Over settlement rule
+        double maxPopO = settlementRatio * resources * settlementDensity / settlementDeathTimeConstant * dt;
+        double popO = population / settlementDeathTimeConstant * dt;
+        double lambdaO = max(0, popO - maxPopO);
+
+        // Food production rule
+        double kfPop = efficiency * foodProductivity * farmers / population / foodDemand;
+        double kfRes = efficiency * foodRatio * resources / population / foodDemand;
+        double kf = min(kfPop, kfRes);
+        double lambdaS = max(0, population * (1 - kf)) * dt / foodDeathTimeConstant;
+        double lambdaB = max(0, population * (kf - 1)) * dt / foodBirthTimeConstant;
+
+        // Health rule
+        double kh = efficiency * min(doctors * healthProductivity, resources * healthRatio) / population / healthDemand;
+        double lifeExpectancy = (maximumLifeExpectancy - minimumLifeExpectancy) * min(kh, 1) + minimumLifeExpectancy;
+        double lambdaH = population * dt / lifeExpectancy;
+
+        // Research rule
+        double lambdaR = efficiency * min(researchers * researchProductivity, researchRatio * resources) * dt / researchCost;
+
+        // Education rule
+        double ke = efficiency * min(educators * educationProductivity / population, educationRatio * resources) / educationDemand;
+        double lambdaE = max(0, (1 - ke)) * population * dt / educationTimeConstant;
+
+        long deathsO;
+        long deathsS;
+        long births;
+        long deathsH;
+        long researchSteps;
+        long ne;
+        double deltaTR;
+        double deltaTE;
+        if (population > 0 && population < ssaPopulation) {
+            // Draws the next event with the direct method from the over settlement stream,
+            // the rates are the lambdas of the maximum interval
+            double rateO = lambdaO / maxInterval;
+            double rateS = lambdaS / maxInterval;
+            double rateB = lambdaB / maxInterval;
+            double rateH = lambdaH / maxInterval;
+            double rateR = lambdaR / maxInterval;
+            double rateE = lambdaE / maxInterval;
+            double totalRate = rateO + rateS + rateB + rateH + rateR + rateE;
+            deathsO = 0;
+            deathsS = 0;
+            births = 0;
+            deathsH = 0;
+            researchSteps = 0;
+            ne = 0;
+            if (totalRate > 0) {
+                dt = -log(1 - overSettlementRandom.nextDouble()) / totalRate;
+                double u = overSettlementRandom.nextDouble() * totalRate;
+                if ((u -= rateO) < 0) {
+                    deathsO = -1;
+                } else if ((u -= rateS) < 0) {
+                    deathsS = -1;
+                } else if ((u -= rateB) < 0) {
+                    births = 1;
+                } else if ((u -= rateH) < 0) {
+                    deathsH = -1;
+                } else if ((u -= rateR) < 0) {
+                    researchSteps = 1;
+                } else {
+                    ne = 1;
+                }
+            } else {
+                dt = maxInterval;
+            }
+            ssaEvents++;
+            deltaTR = researchSteps * researchQuantum;
+            deltaTE = -technology * min((double) ne / population, 1);
+            // The lambdas are the expected events in the waiting time
+            double scale = dt / maxInterval;
+            maxPopO *= scale;
+            popO *= scale;
+            lambdaO *= scale;
+            lambdaS *= scale;
+            lambdaB *= scale;
+            lambdaH *= scale;
+            lambdaR *= scale;
+            lambdaE *= scale;
+        } else {
+            if (adaptive) {
+                // Selects the largest interval keeping the expected relative changes below the tolerance
+                double popBound = max(tolerance * population, 1);
+                double popMean = abs(lambdaB - lambdaO - lambdaS - lambdaH);
+                double popVariance = lambdaB + lambdaO + lambdaS + lambdaH;
+                double techBound = max(tolerance * technology, researchQuantum);
+                double techLoss = population > 0 ? technology / population : 0;
+                double techMean = abs(lambdaR * researchQuantum - lambdaE * techLoss);
+                double techVariance = lambdaR * researchQuantum * researchQuantum + lambdaE * techLoss * techLoss;
+                // The bounds without changes do not limit the interval (e.g. no technology and no research quantum)
+                double scale = min(min(1, min(boundRatio(popBound, popMean), boundRatio(popBound * popBound, popVariance))),
+                        min(boundRatio(techBound, techMean), boundRatio(techBound * techBound, techVariance)));
+                dt = population > 0 ? max(minInterval, maxInterval * scale) : maxInterval;
+                scale = dt / maxInterval;
+                maxPopO *= scale;
+                popO *= scale;
+                lambdaO *= scale;
+                lambdaS *= scale;
+                lambdaB *= scale;
+                lambdaH *= scale;
+                lambdaR *= scale;
+                lambdaE *= scale;
+            }
+
+            for (; ; ) {
+                deathsO = deaths(overSettlementRandom, binomialDeaths, population, lambdaO);
+                deathsS = deaths(foodProductionRandom, binomialDeaths, population, lambdaS);
+                births = lambdaB > 0 ? foodProductionRandom.nextPoisson(lambdaB) : 0;
+                deathsH = deaths(healthRandom, binomialDeaths, population, lambdaH);
+                researchSteps = lambdaR > 0 ? researchRandom.nextPoisson(lambdaR) : 0;
+                deltaTR = researchSteps * researchQuantum;
+                ne = lambdaE > 0 ? educationRandom.nextPoisson(lambdaE) : 0;
+                deltaTE = -technology * min((double) ne / population, 1);
+                if (!adaptive || dt / 2 < minInterval
+                        || (abs(deathsO + births + deathsS + deathsH) <= OVERSHOOT * max(tolerance * population, 1)
+                        && abs(deltaTR + deltaTE) <= OVERSHOOT * max(tolerance * technology, researchQuantum))) {
+                    break;
+                }
+                // Rejects the overshooting changes and retries with half interval
+                rejections++;
+                dt /= 2;
+                maxPopO /= 2;
+                popO /= 2;
+                lambdaO /= 2;
+                lambdaS /= 2;
+                lambdaB /= 2;
+                lambdaH /= 2;
+                lambdaR /= 2;
+                lambdaE /= 2;
+            }
+        }
+        double stepTime = time;
+        time += dt;
+
+        // Sums the changes (0 + value normalizes the negative zeros as Status.sum does)
+        long newPopulation = population + deathsO + births + deathsS + deathsH;
+        double newTechnology = 0d + technology;
+        if (researchSteps != 0) {
+            newTechnology += deltaTR;
+        }
+        newTechnology += deltaTE;
+
+        // Normalizes the status
+        status.population = newPopulation;
+        status.technology = newTechnology;
+        status.normalize(minTechnology, maxTechnology);
+
+        // Writes the kpis
+        kpis[POPULATION_KPI] = population;
+        kpis[TECHNOLOGY_KPI] = technology;
+        kpis[DEATHS_O_KPI] = deathsO;
+        kpis[LAMBDA_O_KPI] = lambdaO;
+        kpis[MAX_POP_O_KPI] = maxPopO;
+        kpis[POP_O_KPI] = popO;
+        kpis[DEATHS_S_KPI] = deathsS;
+        kpis[BIRTHS_KPI] = births;
+        kpis[KF_KPI] = kf;
+        kpis[KF_POP_KPI] = kfPop;
+        kpis[KF_RES_KPI] = kfRes;
+        kpis[LAMBDA_S_KPI] = lambdaS;
+        kpis[LAMBDA_B_KPI] = lambdaB;
+        kpis[DELTA_TR_KPI] = deltaTR;
+        kpis[LAMBDA_R_KPI] = lambdaR;
+        kpis[DELTA_TE_KPI] = deltaTE;
+        kpis[LAMBDA_E_KPI] = lambdaE;
+        kpis[KE_KPI] = ke;
+        kpis[DEATHS_H_KPI] = deathsH;
+        kpis[KH_KPI] = kh;
+        kpis[LIFE_EXPECTANCY_KPI] = lifeExpectancy;
+        kpis[LAMBDA_H_KPI] = lambdaH;
+        if (cache != null) {
+            kpis[poissonHitsSlot] = cache.getHits();
+            kpis[poissonMissesSlot] = cache.getMisses();
+        }
+        if (adaptive) {
+            kpis[timeSlot] = stepTime;
+            kpis[dtSlot] = dt;
+        }
+
+        // Emits the events only if somebody is listening
+        EventSink sink = eventSink;
+        if (sink != null) {
+            long eventStep = step - 1;
+            if (deathsO != 0) {
+                sink.accept(EventType.OVER_SETTLEMENT_DEATH, eventStep, -deathsO);
+            }
+            if (deathsS != 0) {
+                sink.accept(EventType.STARVATION_DEATH, eventStep, -deathsS);
+            }
+            if (births != 0) {
+                sink.accept(EventType.BIRTH, eventStep, births);
+            }
+            if (deathsH != 0) {
+                sink.accept(EventType.NATURAL_DEATH, eventStep, -deathsH);
+            }
+            if (deltaTR != 0) {
+                sink.accept(EventType.TECHNOLOGY_ENHANCEMENT, eventStep, deltaTR);
+            }
+            if (ne != 0) {
+                sink.accept(EventType.TECHNOLOGY_LOSS, eventStep, deltaTE);
+            }
+        }
+    }
+}
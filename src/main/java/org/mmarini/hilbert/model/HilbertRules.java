@@ -36,8 +36,7 @@ import java.util.List;
 import java.util.function.BiFunction;
 import java.util.function.Supplier;
 
-import static java.lang.Math.max;
-import static java.lang.Math.min;
+import static java.lang.Math.*;
 
 /**
  * Creates the hilbert rules
@@ -45,6 +44,25 @@ import static java.lang.Math.min;
 public class HilbertRules {
     private static final Logger logger = LoggerFactory.getLogger(HilbertRules.class);
 
+    /**
+     * Returns the number of deaths (non positive)
+     * The deaths are drawn from the poisson distribution with the given lambda or
+     * from the binomial distribution of population with the death probability in the time interval 1 - exp(-lambda/population)
+     *
+     * @param random     the random number generator
+     * @param binomial   true if binomial distribution
+     * @param population the population
+     * @param lambda     the expected number of deaths
+     */
+    static long deaths(RandomSource random, boolean binomial, long population, double lambda) {
+        if (!(lambda > 0)) {
+            return 0;
+        }
+        return binomial
+                ? -random.nextBinomial(population, -expm1(-lambda / population))
+                : -random.nextPoisson(lambda);
+    }
+
     /**
      * Returns the education rule
      *
@@ -54,10 +72,10 @@ public class HilbertRules {
      * @param demand       education demand by individual by unit time
      * @param timeConstant education ratio
      */
-    public static BiFunction<Status, Double, Tuple2<Status, Supplier<Collection<Tuple2<String, Number>>>>> educationRule(ExtRandom random, double resources, double productivity, double demand, double timeConstant) {
+    public static BiFunction<Status, Double, Tuple2<Status, Supplier<Collection<Tuple2<String, Number>>>>> educationRule(RandomSource random, double resources, double productivity, double demand, double timeConstant) {
         return (status, dt) -> {
 
-            int population = status.getPopulation();
+            long population = status.getPopulation();
             double educators = status.getEducators();
             double educationRatio = status.getEducationRatio();
             double efficiency = status.getEfficiency();
@@ -65,13 +83,13 @@ public class HilbertRules {
 
             double ke = efficiency * min(educators * productivity / population, educationRatio * resources) / demand;
             double lambda = max(0, (1 - ke)) * population * dt / timeConstant;
-            int ne = lambda > 0 ? random.nextPoisson(lambda) : 0;
+            long ne = lambda > 0 ? random.nextPoisson(lambda) : 0;
             double deltaT = -technology * min((double) ne / population, 1);
             logger.atDebug().log("educationRule: lambda={} ke={}",
                     lambda,
                     ke);
             if (ne != 0) {
-                logger.atInfo().log("{} technology loss", deltaT);
+                logger.atDebug().log("{} technology loss", deltaT);
             }
             Supplier<Collection<Tuple2<String, Number>>> kpi = () -> List.of(
                     Tuple2.of("deltaTE", deltaT),
@@ -92,26 +110,41 @@ public class HilbertRules {
      * @param deathTimeConstant death ratio from starvation
      * @param birthTimeConstant the birth ratio
      */
-    public static BiFunction<Status, Double, Tuple2<Status, Supplier<Collection<Tuple2<String, Number>>>>> foodProductionRule(ExtRandom random, double resources, double productivity, double demand, double deathTimeConstant, double birthTimeConstant) {
+    public static BiFunction<Status, Double, Tuple2<Status, Supplier<Collection<Tuple2<String, Number>>>>> foodProductionRule(RandomSource random, double resources, double productivity, double demand, double deathTimeConstant, double birthTimeConstant) {
+        return foodProductionRule(random, resources, productivity, demand, deathTimeConstant, birthTimeConstant, false);
+    }
+
+    /**
+     * Returns the food production rule
+     *
+     * @param random            the random number generator
+     * @param resources         the total amount of resources
+     * @param productivity      productivity by individual by unit time
+     * @param demand            food demand by individual by unit time
+     * @param deathTimeConstant death ratio from starvation
+     * @param birthTimeConstant the birth ratio
+     * @param binomialDeaths    true if deaths have binomial distribution bounded by population
+     */
+    public static BiFunction<Status, Double, Tuple2<Status, Supplier<Collection<Tuple2<String, Number>>>>> foodProductionRule(RandomSource random, double resources, double productivity, double demand, double deathTimeConstant, double birthTimeConstant, boolean binomialDeaths) {
         return (status, dt) -> {
             double eta = status.getEfficiency();
             double farmers = status.getFarmers();
-            int pop = status.getPopulation();
+            long pop = status.getPopulation();
             double foodRatio = status.getFoodRatio();
 
             double kfPop = eta * productivity * farmers / pop / demand;
             double kfRes = eta * foodRatio * resources / pop / demand;
             double kf = min(kfPop, kfRes);
             double lambdaDeaths = max(0, pop * (1 - kf)) * dt / deathTimeConstant;
-            int deaths = lambdaDeaths > 0 ? -random.nextPoisson(lambdaDeaths) : 0;
+            long deaths = deaths(random, binomialDeaths, pop, lambdaDeaths);
 
             double lambdaBirths = max(0, pop * (kf - 1)) * dt / birthTimeConstant;
-            int births = lambdaBirths > 0 ? random.nextPoisson(lambdaBirths) : 0;
+            long births = lambdaBirths > 0 ? random.nextPoisson(lambdaBirths) : 0;
 
             if (deaths != 0) {
-                logger.atInfo().log("{} deaths from starvation", deaths);
+                logger.atDebug().log("{} deaths from starvation", deaths);
             } else if (births != 0) {
-                logger.atInfo().log("{} births", births);
+                logger.atDebug().log("{} births", births);
             }
             Supplier<Collection<Tuple2<String, Number>>> builder = () -> List.of(
                     Tuple2.of("deathsS", deaths),
@@ -137,9 +170,25 @@ public class HilbertRules {
      * @param minimumLifeExpectancy the minimum life expectancy
      * @param maximumLifeExpectancy the maximum life expectancy
      */
-    public static BiFunction<Status, Double, Tuple2<Status, Supplier<Collection<Tuple2<String, Number>>>>> healthRule(ExtRandom random, double resources, double productivity, double demand, double minimumLifeExpectancy, double maximumLifeExpectancy) {
+    public static BiFunction<Status, Double, Tuple2<Status, Supplier<Collection<Tuple2<String, Number>>>>> healthRule(RandomSource random, double resources, double productivity, double demand, double minimumLifeExpectancy, double maximumLifeExpectancy) {
+        return healthRule(random, resources, productivity, demand, minimumLifeExpectancy, maximumLifeExpectancy, false);
+    }
+
+    /**
+     * Returns the health rule
+     * It generates random natural deaths status changes
+     *
+     * @param random                the random number generator
+     * @param resources             the total resources
+     * @param productivity          the health productivity
+     * @param demand                the health demand
+     * @param minimumLifeExpectancy the minimum life expectancy
+     * @param maximumLifeExpectancy the maximum life expectancy
+     * @param binomialDeaths        true if deaths have binomial distribution bounded by population
+     */
+    public static BiFunction<Status, Double, Tuple2<Status, Supplier<Collection<Tuple2<String, Number>>>>> healthRule(RandomSource random, double resources, double productivity, double demand, double minimumLifeExpectancy, double maximumLifeExpectancy, boolean binomialDeaths) {
         return (status, dt) -> {
-            int population = status.getPopulation();
+            long population = status.getPopulation();
             double doctors = status.getDoctors();
             double health = status.getHealthRatio();
             double eff = status.getEfficiency();
@@ -147,10 +196,10 @@ public class HilbertRules {
             double kh = eff * min(doctors * productivity, resources * health) / population / demand;
             double lifeExpectancy = (maximumLifeExpectancy - minimumLifeExpectancy) * min(kh, 1) + minimumLifeExpectancy;
             double lambda = population * dt / lifeExpectancy;
-            int deaths = lambda > 0 ? -random.nextPoisson(lambda) : 0;
+            long deaths = deaths(random, binomialDeaths, population, lambda);
 
             if (deaths != 0) {
-                logger.atInfo().log("{} natural deaths", deaths);
+                logger.atDebug().log("{} natural deaths", deaths);
             }
             Supplier<Collection<Tuple2<String, Number>>> kpi = () -> List.of(
                     Tuple2.of("deathsH", deaths),
@@ -172,10 +221,25 @@ public class HilbertRules {
      * @param density           the preferred population density by settlement resources
      * @param deathTimeConstant the deaths time constant
      */
-    public static BiFunction<Status, Double, Tuple2<Status, Supplier<Collection<Tuple2<String, Number>>>>> overSettlement(ExtRandom random, double resources, double density, double deathTimeConstant) {
+    public static BiFunction<Status, Double, Tuple2<Status, Supplier<Collection<Tuple2<String, Number>>>>> overSettlement(RandomSource random, double resources, double density, double deathTimeConstant) {
+        return overSettlement(random, resources, density, deathTimeConstant, false);
+    }
+
+    /**
+     * Returns the over settlement rule
+     * It generates random over settlement status changes
+     * The over settlement happens when population exceeds the preferred density by settlement resource
+     *
+     * @param random            the random number generator
+     * @param resources         the total resources
+     * @param density           the preferred population density by settlement resources
+     * @param deathTimeConstant the deaths time constant
+     * @param binomialDeaths    true if deaths have binomial distribution bounded by population
+     */
+    public static BiFunction<Status, Double, Tuple2<Status, Supplier<Collection<Tuple2<String, Number>>>>> overSettlement(RandomSource random, double resources, double density, double deathTimeConstant, boolean binomialDeaths) {
         return (status, dt) -> {
             // Computes the over settlement deaths
-            int population = status.getPopulation();
+            long population = status.getPopulation();
             double settlementRatio = status.getSettlementRatio();
             double maxPop = settlementRatio * resources * density / deathTimeConstant * dt;
             double pop = population / deathTimeConstant * dt;
@@ -184,9 +248,9 @@ public class HilbertRules {
                     lambda,
                     maxPop,
                     pop);
-            int deaths = lambda > 0 ? -random.nextPoisson(lambda) : 0;
+            long deaths = deaths(random, binomialDeaths, population, lambda);
             if (deaths != 0) {
-                logger.atInfo().log(
+                logger.atDebug().log(
                         "{} deaths for over settlement",
                         deaths);
             }
@@ -209,7 +273,7 @@ public class HilbertRules {
      * @param cost         cost of quantum
      * @param quantum      the technology quantum step
      */
-    public static BiFunction<Status, Double, Tuple2<Status, Supplier<Collection<Tuple2<String, Number>>>>> researchRule(ExtRandom random, double resources, double productivity, double cost, double quantum) {
+    public static BiFunction<Status, Double, Tuple2<Status, Supplier<Collection<Tuple2<String, Number>>>>> researchRule(RandomSource random, double resources, double productivity, double cost, double quantum) {
         return (status, dt) -> {
             double researchers = status.getResearchers();
             double researchRatio = status.getResearchRatio();
@@ -218,7 +282,7 @@ public class HilbertRules {
             double researchByPop = researchers * productivity;
             double researchByRes = researchRatio * resources;
             double lambda = eta * min(researchByPop, researchByRes) * dt / cost;
-            int steps = lambda > 0 ? random.nextPoisson(lambda) : 0;
+            long steps = lambda > 0 ? random.nextPoisson(lambda) : 0;
             logger.atDebug().log("researchRule: lambda={} popStep={} resStep={}",
                     lambda,
                     researchByPop,
@@ -228,7 +292,7 @@ public class HilbertRules {
                     ? Status.zero()
                     : Status.technology(deltaT);
             if (deltaT != 0) {
-                logger.atInfo().log("{} technology enhancement", deltaT);
+                logger.atDebug().log("{} technology enhancement", deltaT);
             }
             Supplier<Collection<Tuple2<String, Number>>> builder = () -> List.of(
                     Tuple2.of("deltaTR", deltaT),
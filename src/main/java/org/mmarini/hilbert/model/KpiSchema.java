@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2023 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ */
+
+package org.mmarini.hilbert.model;
+
+import java.util.*;
+
+import static java.lang.String.format;
+
+/**
+ * Assigns the fixed slots of kpis in the row buffers
+ * <p>
+ * The slots are assigned when the rules are loaded, so the producers write the kpis
+ * and the consumers read them by index without looking up the names at each step.
+ * The slots of missing kpis in a row hold not a number values.
+ * </p>
+ */
+public class KpiSchema {
+    /**
+     * Returns the schema of the kpi names
+     *
+     * @param names the kpi names in slot order
+     */
+    public static KpiSchema of(List<String> names) {
+        return new KpiSchema(names);
+    }
+
+    /**
+     * Returns the schema of the kpi names
+     *
+     * @param names the kpi names in slot order
+     */
+    public static KpiSchema of(String... names) {
+        return new KpiSchema(List.of(names));
+    }
+
+    private final List<String> names;
+    private final Map<String, Integer> slots;
+
+    /**
+     * Creates the schema
+     *
+     * @param names the kpi names in slot order
+     */
+    protected KpiSchema(List<String> names) {
+        this.names = List.copyOf(names);
+        Map<String, Integer> slots = new HashMap<>();
+        for (int i = 0; i < names.size(); i++) {
+            if (slots.put(names.get(i), i) != null) {
+                throw new IllegalArgumentException(format("Duplicated kpi \"%s\"", names.get(i)));
+            }
+        }
+        this.slots = slots;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        return names.equals(((KpiSchema) o).names);
+    }
+
+    /**
+     * Returns the kpi name of a slot
+     *
+     * @param slot the slot
+     */
+    public String getName(int slot) {
+        return names.get(slot);
+    }
+
+    /**
+     * Returns the kpi names in slot order
+     */
+    public List<String> getNames() {
+        return names;
+    }
+
+    @Override
+    public int hashCode() {
+        return names.hashCode();
+    }
+
+    /**
+     * Returns the slot of a kpi or -1 if the kpi is not in the schema
+     *
+     * @param name the kpi name
+     */
+    public int indexOf(String name) {
+        Integer slot = slots.get(name);
+        return slot != null ? slot : -1;
+    }
+
+    /**
+     * Returns a new row buffer with not a number values
+     */
+    public double[] newRow() {
+        double[] row = new double[names.size()];
+        Arrays.fill(row, Double.NaN);
+        return row;
+    }
+
+    /**
+     * Returns the number of slots
+     */
+    public int size() {
+        return names.size();
+    }
+
+    /**
+     * Returns the map of kpis by name of a row skipping the not a number values
+     *
+     * @param row the row
+     */
+    public Map<String, Number> toMap(double[] row) {
+        Map<String, Number> result = new HashMap<>();
+        for (int i = 0; i < names.size(); i++) {
+            if (!Double.isNaN(row[i])) {
+                result.put(names.get(i), row[i]);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return new StringJoiner(", ", KpiSchema.class.getSimpleName() + "[", "]")
+                .add("names=" + names)
+                .toString();
+    }
+}
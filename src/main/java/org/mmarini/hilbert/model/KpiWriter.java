@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2023 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ */
+
+package org.mmarini.hilbert.model;
+
+import java.io.Closeable;
+import java.io.FileOutputStream;
+import java.io.Flushable;
+import java.io.IOException;
+
+import static java.lang.String.format;
+
+/**
+ * Writes the kpi rows of a schema
+ */
+public interface KpiWriter extends Closeable, Flushable {
+    /**
+     * Returns the kpi writer appending to a file truncated at the given offset
+     * The header is not written, so the file continues as it was written by a single writer
+     *
+     * @param filename the filename
+     * @param schema   the kpi schema
+     * @param offset   the offset in bytes
+     * @throws IOException in case of error
+     */
+    static KpiWriter append(String filename, KpiSchema schema, long offset) throws IOException {
+        FileOutputStream out = new FileOutputStream(filename, true);
+        try {
+            long size = out.getChannel().size();
+            if (size < offset) {
+                throw new IOException(format("Kpi file %s shorter than offset (%d < %d)", filename, size, offset));
+            }
+            out.getChannel().truncate(offset);
+        } catch (IOException ex) {
+            out.close();
+            throw ex;
+        }
+        return filename.endsWith(BinaryKpiWriter.EXTENSION)
+                ? BinaryKpiWriter.append(out, schema, offset)
+                : CSVWriter.append(out, schema, offset);
+    }
+
+    /**
+     * Returns the kpi writer to file
+     * The file with extension .bin is written in binary format, any other file in csv format
+     *
+     * @param filename the filename
+     * @param schema   the kpi schema
+     * @throws IOException in case of error
+     */
+    static KpiWriter create(String filename, KpiSchema schema) throws IOException {
+        return filename.endsWith(BinaryKpiWriter.EXTENSION)
+                ? BinaryKpiWriter.create(filename, schema)
+                : CSVWriter.create(filename, schema);
+    }
+
+    /**
+     * Returns the number of bytes written in the file (header included)
+     */
+    long getOffset();
+
+    /**
+     * Writes a row of kpis
+     *
+     * @param row the row with the slots of schema
+     * @throws IOException in case of error
+     */
+    void write(double[] row) throws IOException;
+}
@@ -0,0 +1,556 @@
+/*
+ * Copyright (c) 2023 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ */
+
+package org.mmarini.hilbert.model;
+
+import static java.lang.Math.*;
+import static java.lang.String.format;
+
+/**
+ * Integrates the expected dynamics of the hilbert rules
+ * <p>
+ * The poisson lambdas of {@link HilbertKernel} become the rates of a system of ordinary differential equations
+ * on population and technology, integrated by an adaptive Dormand-Prince (RK45) method
+ * or by an adaptive Rosenbrock (Shampine ode23s) method for stiff dynamics.
+ * The explicit method takes steps bounded by the fastest time constant of rules,
+ * while the linearly implicit Rosenbrock method solves a 2x2 linear system with the jacobian
+ * of population and technology at each step and takes steps bounded by the tolerance only,
+ * so it runs long output intervals near the equilibrium with few steps.
+ * Each step advances the time of the output interval with as many internal steps as the tolerance requires,
+ * so the cost per simulated time falls with the interval.
+ * The kpis have the same schema of the stochastic kernel: the rule values and the lambdas are computed
+ * at the status of step begin over the output interval, the deaths, births and technology changes are the
+ * expected values integrated over the interval.
+ * The population of status is the rounded value of the continuous population kept by the kernel.
+ * </p>
+ */
+public class MeanFieldKernel implements StepKernel {
+    public static final double DEFAULT_TOLERANCE = 1e-6;
+    public static final String RK45_METHOD = "rk45";
+    public static final String ROSENBROCK_METHOD = "rosenbrock";
+    static final int POPULATION = 0;
+    static final int TECHNOLOGY = 1;
+    static final int DEATHS_O = 2;
+    static final int DEATHS_S = 3;
+    static final int BIRTHS = 4;
+    static final int DEATHS_H = 5;
+    static final int DELTA_TR = 6;
+    static final int DELTA_TE = 7;
+    static final int SIZE = 8;
+    private static final double MIN_FACTOR = 0.2;
+    private static final double MAX_FACTOR = 5;
+    private static final double SAFETY = 0.9;
+    private static final double A21 = 1d / 5;
+    private static final double A31 = 3d / 40, A32 = 9d / 40;
+    private static final double A41 = 44d / 45, A42 = -56d / 15, A43 = 32d / 9;
+    private static final double A51 = 19372d / 6561, A52 = -25360d / 2187, A53 = 64448d / 6561, A54 = -212d / 729;
+    private static final double A61 = 9017d / 3168, A62 = -355d / 33, A63 = 46732d / 5247, A64 = 49d / 176, A65 = -5103d / 18656;
+    private static final double B1 = 35d / 384, B3 = 500d / 1113, B4 = 125d / 192, B5 = -2187d / 6784, B6 = 11d / 84;
+    private static final double E1 = 71d / 57600, E3 = -71d / 16695, E4 = 71d / 1920, E5 = -17253d / 339200, E6 = 22d / 525, E7 = -1d / 40;
+    private static final double ROS_D = 1 / (2 + sqrt(2));
+    private static final double ROS_E32 = 6 + sqrt(2);
+    private static final double JACOBIAN_EPSILON = sqrt(Math.ulp(1d));
+
+    private final KpiSchema kpiSchema;
+    private final double interval;
+    private final double tolerance;
+    private final boolean rosenbrock;
+    private final double resources;
+    private final double minTechnology;
+    private final double maxTechnology;
+    private final double settlementDensity;
+    private final double settlementDeathTimeConstant;
+    private final double foodProductivity;
+    private final double foodDemand;
+    private final double foodDeathTimeConstant;
+    private final double foodBirthTimeConstant;
+    private final double healthProductivity;
+    private final double healthDemand;
+    private final double minimumLifeExpectancy;
+    private final double maximumLifeExpectancy;
+    private final double researchProductivity;
+    private final double researchCost;
+    private final double researchQuantum;
+    private final double educationProductivity;
+    private final double educationDemand;
+    private final double educationTimeConstant;
+    private final double[] y;
+    private final double[] yNew;
+    private final double[] yTmp;
+    private final double[][] k;
+    private double maxPopO;
+    private double kfPopCoefficient;
+    private double kfResCoefficient;
+    private double khPopCoefficient;
+    private double khResCoefficient;
+    private double researchPopCoefficient;
+    private double researchResCoefficient;
+    private double keCoefficient;
+    private double[] fractions = new double[0];
+    private double[] shares = new double[0];
+    private double population;
+    private long roundedPopulation;
+    private double h;
+    private long step;
+    private long evaluations;
+
+    /**
+     * Creates the kernel
+     *
+     * @param interval   the output interval
+     * @param tolerance  the relative and absolute tolerance of population and technology
+     * @param rosenbrock true if integrated by the Rosenbrock method
+     * @param parameters the rule parameters
+     */
+    MeanFieldKernel(double interval, double tolerance, boolean rosenbrock, RuleParameters parameters) {
+        if (!(interval > 0)) {
+            throw new IllegalArgumentException(format("Interval must be positive (%g)", interval));
+        }
+        if (!(tolerance > 0)) {
+            throw new IllegalArgumentException(format("Tolerance must be positive (%g)", tolerance));
+        }
+        this.kpiSchema = KpiSchema.of(HilbertKernel.KPI_NAMES);
+        this.interval = interval;
+        this.tolerance = tolerance;
+        this.rosenbrock = rosenbrock;
+        this.resources = parameters.getResources();
+        this.minTechnology = parameters.getMinTechnology();
+        this.maxTechnology = parameters.getMaxTechnology();
+        this.settlementDensity = parameters.getSettlementDensity();
+        this.settlementDeathTimeConstant = parameters.getSettlementDeathTimeConstant();
+        this.foodProductivity = parameters.getFoodProductivity();
+        this.foodDemand = parameters.getFoodDemand();
+        this.foodDeathTimeConstant = parameters.getFoodDeathTimeConstant();
+        this.foodBirthTimeConstant = parameters.getFoodBirthTimeConstant();
+        this.healthProductivity = parameters.getHealthProductivity();
+        this.healthDemand = parameters.getHealthDemand();
+        this.minimumLifeExpectancy = parameters.getMinimumLifeExpectancy();
+        this.maximumLifeExpectancy = parameters.getMaximumLifeExpectancy();
+        this.researchProductivity = parameters.getResearchProductivity();
+        this.researchCost = parameters.getResearchCost();
+        this.researchQuantum = parameters.getResearchQuantum();
+        this.educationProductivity = parameters.getEducationProductivity();
+        this.educationDemand = parameters.getEducationDemand();
+        this.educationTimeConstant = parameters.getEducationTimeConstant();
+        this.y = new double[SIZE];
+        this.yNew = new double[SIZE];
+        this.yTmp = new double[SIZE];
+        this.k = new double[9][SIZE];
+        this.roundedPopulation = -1;
+        this.h = interval;
+    }
+
+    /**
+     * Computes the rates of state and optionally the kpis of rules over the output interval
+     * The coefficients of rules depending on the preferences must be computed at step begin
+     *
+     * @param state the state
+     * @param rates the rates
+     * @param kpis  the kpis or null if none
+     */
+    private void evaluate(double[] state, double[] rates, double[] kpis) {
+        evaluations++;
+        double p = max(0, state[POPULATION]);
+        double t = min(max(minTechnology, state[TECHNOLOGY]), maxTechnology);
+        double efficiency = -expm1(-t);
+        double invPop = 1 / p;
+
+        // Over settlement rule
+        double popO = p / settlementDeathTimeConstant;
+        double rateO = max(0, popO - maxPopO);
+
+        // Food production rule
+        double kfPop = efficiency * kfPopCoefficient;
+        double kfRes = efficiency * kfResCoefficient * invPop;
+        double kf = min(kfPop, kfRes);
+        double rateS = p > 0 ? max(0, p * (1 - kf)) / foodDeathTimeConstant : 0;
+        double rateB = p > 0 ? max(0, p * (kf - 1)) / foodBirthTimeConstant : 0;
+
+        // Health rule
+        double kh = efficiency * min(khPopCoefficient, khResCoefficient * invPop);
+        double lifeExpectancy = (maximumLifeExpectancy - minimumLifeExpectancy) * min(kh, 1) + minimumLifeExpectancy;
+        double rateH = p > 0 ? p / lifeExpectancy : 0;
+
+        // Research rule
+        double lambdaR = efficiency * min(researchPopCoefficient * p, researchResCoefficient);
+        double rateR = lambdaR * researchQuantum;
+
+        // Education rule
+        double ke = efficiency * keCoefficient;
+        double lossRate = max(0, 1 - ke) / educationTimeConstant;
+        double rateE = p > 0 ? t * lossRate : 0;
+
+        // The technology stops at the limits
+        double rateT = rateR - rateE;
+        if ((t >= maxTechnology && rateT > 0) || (t <= minTechnology && rateT < 0)) {
+            rateT = 0;
+        }
+        rates[POPULATION] = p > 0 ? rateB - rateO - rateS - rateH : 0;
+        rates[TECHNOLOGY] = rateT;
+        rates[DEATHS_O] = -rateO;
+        rates[DEATHS_S] = -rateS;
+        rates[BIRTHS] = rateB;
+        rates[DEATHS_H] = -rateH;
+        rates[DELTA_TR] = rateR;
+        rates[DELTA_TE] = -rateE;
+
+        if (kpis != null) {
+            kpis[HilbertKernel.LAMBDA_O_KPI] = rateO * interval;
+            kpis[HilbertKernel.MAX_POP_O_KPI] = maxPopO * interval;
+            kpis[HilbertKernel.POP_O_KPI] = popO * interval;
+            kpis[HilbertKernel.KF_KPI] = kf;
+            kpis[HilbertKernel.KF_POP_KPI] = kfPop;
+            kpis[HilbertKernel.KF_RES_KPI] = kfRes;
+            kpis[HilbertKernel.LAMBDA_S_KPI] = rateS * interval;
+            kpis[HilbertKernel.LAMBDA_B_KPI] = rateB * interval;
+            kpis[HilbertKernel.LAMBDA_R_KPI] = lambdaR * interval;
+            kpis[HilbertKernel.LAMBDA_E_KPI] = lossRate * p * interval;
+            kpis[HilbertKernel.KE_KPI] = ke;
+            kpis[HilbertKernel.KH_KPI] = kh;
+            kpis[HilbertKernel.LIFE_EXPECTANCY_KPI] = lifeExpectancy;
+            kpis[HilbertKernel.LAMBDA_H_KPI] = rateH * interval;
+        }
+    }
+
+    /**
+     * Returns the number of rate evaluations
+     */
+    public long getEvaluations() {
+        return evaluations;
+    }
+
+    /**
+     * Returns the output interval
+     */
+    public double getInterval() {
+        return interval;
+    }
+
+    @Override
+    public KpiSchema getKpiSchema() {
+        return kpiSchema;
+    }
+
+    /**
+     * Returns the continuous population
+     */
+    public double getPopulation() {
+        return population;
+    }
+
+    /**
+     * Returns the current step
+     */
+    public long getStep() {
+        return step;
+    }
+
+    /**
+     * Returns the tolerance
+     */
+    public double getTolerance() {
+        return tolerance;
+    }
+
+    /**
+     * Integrates the state over the output interval
+     * The first rates must be computed at the state of step begin
+     */
+    private void integrate() {
+        double[] k1 = k[0], k2 = k[1], k3 = k[2], k4 = k[3], k5 = k[4], k6 = k[5], k7 = k[6];
+        double time = 0;
+        double minStep = interval * 1e-12;
+        while (time < interval) {
+            double remaining = interval - time;
+            boolean last = h >= remaining;
+            double hh = last ? remaining : h;
+            for (int i = 0; i < SIZE; i++) {
+                yTmp[i] = y[i] + hh * A21 * k1[i];
+            }
+            evaluate(yTmp, k2, null);
+            for (int i = 0; i < SIZE; i++) {
+                yTmp[i] = y[i] + hh * (A31 * k1[i] + A32 * k2[i]);
+            }
+            evaluate(yTmp, k3, null);
+            for (int i = 0; i < SIZE; i++) {
+                yTmp[i] = y[i] + hh * (A41 * k1[i] + A42 * k2[i] + A43 * k3[i]);
+            }
+            evaluate(yTmp, k4, null);
+            for (int i = 0; i < SIZE; i++) {
+                yTmp[i] = y[i] + hh * (A51 * k1[i] + A52 * k2[i] + A53 * k3[i] + A54 * k4[i]);
+            }
+            evaluate(yTmp, k5, null);
+            for (int i = 0; i < SIZE; i++) {
+                yTmp[i] = y[i] + hh * (A61 * k1[i] + A62 * k2[i] + A63 * k3[i] + A64 * k4[i] + A65 * k5[i]);
+            }
+            evaluate(yTmp, k6, null);
+            for (int i = 0; i < SIZE; i++) {
+                yNew[i] = y[i] + hh * (B1 * k1[i] + B3 * k3[i] + B4 * k4[i] + B5 * k5[i] + B6 * k6[i]);
+            }
+            evaluate(yNew, k7, null);
+
+            // Error norm of population and technology
+            double error = 0;
+            for (int i = POPULATION; i <= TECHNOLOGY; i++) {
+                double e = hh * (E1 * k1[i] + E3 * k3[i] + E4 * k4[i] + E5 * k5[i] + E6 * k6[i] + E7 * k7[i]);
+                double scale = tolerance * (1 + max(abs(y[i]), abs(yNew[i])));
+                error += (e / scale) * (e / scale);
+            }
+            error = sqrt(error / 2);
+            double factor = error == 0
+                    ? MAX_FACTOR
+                    : min(MAX_FACTOR, max(MIN_FACTOR, SAFETY * pow(error, -0.2)));
+            if (error <= 1 || hh <= minStep) {
+                // Accepts the step, the last rates are the first ones of next step
+                time = last ? interval : time + hh;
+                System.arraycopy(yNew, 0, y, 0, SIZE);
+                y[POPULATION] = max(0, y[POPULATION]);
+                y[TECHNOLOGY] = min(max(minTechnology, y[TECHNOLOGY]), maxTechnology);
+                System.arraycopy(k7, 0, k1, 0, SIZE);
+                // The step truncated by the interval end does not reduce the step size
+                h = last ? max(h, hh * factor) : hh * factor;
+            } else {
+                h = hh * min(1, factor);
+            }
+        }
+    }
+
+    /**
+     * Integrates the state over the output interval by the Rosenbrock method (Shampine ode23s)
+     * The first rates must be computed at the state of step begin.
+     * The rates depend on population and technology only, so the jacobian has two non zero columns
+     * and the linear systems reduce to a 2x2 system and a substitution.
+     */
+    private void integrateStiff() {
+        double[] f0 = k[0], j0 = k[1], j1 = k[2], k1 = k[3], k2 = k[4], k3 = k[5], f1 = k[6], f2 = k[7], b = k[8];
+        double time = 0;
+        double minStep = interval * 1e-12;
+        while (time < interval) {
+            double remaining = interval - time;
+            boolean last = h >= remaining;
+            double hh = last ? remaining : h;
+
+            // Snaps the technology moving to a limit within the tolerance:
+            // the stages beyond the limit have no technology rate, so the steps would not reach it
+            double t = y[TECHNOLOGY];
+            double bound = f0[TECHNOLOGY] > 0 ? maxTechnology : minTechnology;
+            if (f0[TECHNOLOGY] != 0 && t != bound
+                    && abs(bound - t) <= 2 * tolerance * (1 + abs(bound))) {
+                y[TECHNOLOGY] = bound;
+                evaluate(y, f0, null);
+            }
+
+            // Jacobian columns of population and technology by forward differences
+            jacobianColumn(POPULATION, f0, j0);
+            jacobianColumn(TECHNOLOGY, f0, j1);
+            double hd = hh * ROS_D;
+            double a00 = 1 - hd * j0[POPULATION];
+            double a01 = -hd * j1[POPULATION];
+            double a10 = -hd * j0[TECHNOLOGY];
+            double a11 = 1 - hd * j1[TECHNOLOGY];
+            double det = a00 * a11 - a01 * a10;
+
+            // k1 = W^-1 f0
+            solve(f0, k1, hd, a00, a01, a10, a11, det);
+            for (int i = 0; i < SIZE; i++) {
+                yTmp[i] = y[i] + 0.5 * hh * k1[i];
+            }
+            evaluate(yTmp, f1, null);
+            // k2 = W^-1 (f1 - k1) + k1
+            for (int i = 0; i < SIZE; i++) {
+                b[i] = f1[i] - k1[i];
+            }
+            solve(b, k2, hd, a00, a01, a10, a11, det);
+            for (int i = 0; i < SIZE; i++) {
+                k2[i] += k1[i];
+                yNew[i] = y[i] + hh * k2[i];
+            }
+            evaluate(yNew, f2, null);
+            // k3 = W^-1 (f2 - e32 (k2 - f1) - 2 (k1 - f0))
+            for (int i = 0; i < SIZE; i++) {
+                b[i] = f2[i] - ROS_E32 * (k2[i] - f1[i]) - 2 * (k1[i] - f0[i]);
+            }
+            solve(b, k3, hd, a00, a01, a10, a11, det);
+
+            // Error norm of population and technology
+            double error = 0;
+            for (int i = POPULATION; i <= TECHNOLOGY; i++) {
+                double e = hh / 6 * (k1[i] - 2 * k2[i] + k3[i]);
+                double scale = tolerance * (1 + max(abs(y[i]), abs(yNew[i])));
+                error += (e / scale) * (e / scale);
+            }
+            error = sqrt(error / 2);
+            double factor = error == 0
+                    ? MAX_FACTOR
+                    : min(MAX_FACTOR, max(MIN_FACTOR, SAFETY * pow(error, -1d / 3)));
+            if (error <= 1 || hh <= minStep) {
+                // Accepts the step, the last rates are the first ones of next step
+                time = last ? interval : time + hh;
+                System.arraycopy(yNew, 0, y, 0, SIZE);
+                y[POPULATION] = max(0, y[POPULATION]);
+                y[TECHNOLOGY] = min(max(minTechnology, y[TECHNOLOGY]), maxTechnology);
+                System.arraycopy(f2, 0, f0, 0, SIZE);
+                // The step truncated by the interval end does not reduce the step size
+                h = last ? max(h, hh * factor) : hh * factor;
+            } else {
+                h = hh * min(1, factor);
+            }
+        }
+    }
+
+    /**
+     * Computes a jacobian column of the rates by finite difference
+     * The difference is backward at the maximum technology, where the technology rate stops
+     *
+     * @param column the state column (population or technology)
+     * @param rates  the rates at the state
+     * @param result the jacobian column (output)
+     */
+    private void jacobianColumn(int column, double[] rates, double[] result) {
+        double delta = JACOBIAN_EPSILON * max(abs(y[column]), 1);
+        if (column == TECHNOLOGY && y[column] + delta >= maxTechnology) {
+            delta = -delta;
+        }
+        System.arraycopy(y, 0, yTmp, 0, SIZE);
+        yTmp[column] += delta;
+        evaluate(yTmp, result, null);
+        for (int i = 0; i < SIZE; i++) {
+            result[i] = (result[i] - rates[i]) / delta;
+        }
+    }
+
+    /**
+     * Solves the linear system (I - hd J) x = b
+     * The jacobian J has the population and technology columns only, so the system is block lower triangular
+     *
+     * @param b   the known terms
+     * @param x   the solution (output)
+     * @param hd  the step size by the method coefficient
+     * @param a00 the population, population coefficient
+     * @param a01 the population, technology coefficient
+     * @param a10 the technology, population coefficient
+     * @param a11 the technology, technology coefficient
+     * @param det the determinant of 2x2 system
+     */
+    private void solve(double[] b, double[] x, double hd, double a00, double a01, double a10, double a11, double det) {
+        double[] j0 = k[1], j1 = k[2];
+        double x0 = (a11 * b[POPULATION] - a01 * b[TECHNOLOGY]) / det;
+        double x1 = (a00 * b[TECHNOLOGY] - a10 * b[POPULATION]) / det;
+        x[POPULATION] = x0;
+        x[TECHNOLOGY] = x1;
+        for (int i = DEATHS_O; i < SIZE; i++) {
+            x[i] = b[i] + hd * (j0[i] * x0 + j1[i] * x1);
+        }
+    }
+
+    /**
+     * Returns true if integrated by the Rosenbrock method
+     */
+    public boolean isRosenbrock() {
+        return rosenbrock;
+    }
+
+    /**
+     * Sets the current step
+     *
+     * @param step the step
+     */
+    public void setStep(long step) {
+        this.step = step;
+    }
+
+    @Override
+    public void step(StatusBuffer status, double[] kpis) {
+        step++;
+        // Keeps the continuous population unless the status has been changed
+        if (status.population != roundedPopulation) {
+            population = status.population;
+        }
+        double technology = status.technology;
+
+        // Computes the shared values as the stochastic kernel does
+        Sectors sectors = status.sectors;
+        if (fractions.length != status.occupationPrefs.length) {
+            fractions = new double[status.occupationPrefs.length];
+        }
+        if (shares.length != status.resourcePrefs.length) {
+            shares = new double[status.resourcePrefs.length];
+        }
+        ExtMath.softmax(status.occupationPrefs, fractions);
+        status.resources(shares);
+        double farmerFraction = fractions[sectors.getFarmer()];
+        double researcherFraction = fractions[sectors.getResearcher()];
+        double educatorFraction = fractions[sectors.getEducator()];
+        double doctorFraction = fractions[sectors.getDoctor()];
+        double foodRatio = shares[sectors.getFood()];
+        double researchRatio = shares[sectors.getResearch()];
+        double educationRatio = shares[sectors.getEducation()];
+        double healthRatio = shares[sectors.getHealth()];
+        double settlementRatio = shares[sectors.getSettlement()];
+
+        // The preferences do not change during the interval
+        maxPopO = settlementRatio * resources * settlementDensity / settlementDeathTimeConstant;
+        kfPopCoefficient = foodProductivity * farmerFraction / foodDemand;
+        kfResCoefficient = foodRatio * resources / foodDemand;
+        khPopCoefficient = doctorFraction * healthProductivity / healthDemand;
+        khResCoefficient = resources * healthRatio / healthDemand;
+        researchPopCoefficient = researcherFraction * researchProductivity / researchCost;
+        researchResCoefficient = researchRatio * resources / researchCost;
+        keCoefficient = min(educatorFraction * educationProductivity, educationRatio * resources) / educationDemand;
+
+        y[POPULATION] = population;
+        y[TECHNOLOGY] = technology;
+        for (int i = DEATHS_O; i < SIZE; i++) {
+            y[i] = 0;
+        }
+        evaluate(y, k[0], kpis);
+        kpis[HilbertKernel.POPULATION_KPI] = population;
+        kpis[HilbertKernel.TECHNOLOGY_KPI] = technology;
+
+        if (rosenbrock) {
+            integrateStiff();
+        } else {
+            integrate();
+        }
+
+        // Writes the expected changes over the interval
+        kpis[HilbertKernel.DEATHS_O_KPI] = y[DEATHS_O];
+        kpis[HilbertKernel.DEATHS_S_KPI] = y[DEATHS_S];
+        kpis[HilbertKernel.BIRTHS_KPI] = y[BIRTHS];
+        kpis[HilbertKernel.DEATHS_H_KPI] = y[DEATHS_H];
+        kpis[HilbertKernel.DELTA_TR_KPI] = y[DELTA_TR];
+        kpis[HilbertKernel.DELTA_TE_KPI] = y[DELTA_TE];
+
+        // Normalizes the status
+        population = y[POPULATION];
+        roundedPopulation = round(population);
+        status.population = roundedPopulation;
+        status.technology = y[TECHNOLOGY];
+        StatusBuffer.center(status.occupationPrefs);
+        StatusBuffer.center(status.resourcePrefs);
+    }
+}
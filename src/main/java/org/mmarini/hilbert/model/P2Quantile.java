@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2023 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ */
+
+package org.mmarini.hilbert.model;
+
+import java.util.Arrays;
+
+import static java.lang.String.format;
+
+/**
+ * Estimates a quantile of values without storing them (P-square algorithm, Jain and Chlamtac 1985)
+ * <p>
+ * The estimator keeps five markers whose heights approximate the minimum, the quantile p/2,
+ * the quantile p, the quantile (1+p)/2 and the maximum of values.
+ * The quantile is exact up to five values.
+ * </p>
+ */
+public class P2Quantile {
+    private final double p;
+    private final double[] heights;
+    private final double[] positions;
+    private final double[] desired;
+    private final double[] increments;
+    private final double[] sorted;
+    private int count;
+
+    /**
+     * Creates the estimator
+     *
+     * @param p the quantile probability
+     */
+    public P2Quantile(double p) {
+        if (!(p >= 0 && p <= 1)) {
+            throw new IllegalArgumentException(format("Quantile probability must be in range [0, 1] (%g)", p));
+        }
+        this.p = p;
+        this.heights = new double[5];
+        this.positions = new double[5];
+        this.desired = new double[5];
+        this.increments = new double[]{0, p / 2, p, (1 + p) / 2, 1};
+        this.sorted = new double[5];
+    }
+
+    /**
+     * Adds a value
+     *
+     * @param x the value
+     */
+    public void add(double x) {
+        if (count < 5) {
+            heights[count++] = x;
+            if (count == 5) {
+                Arrays.sort(heights);
+                for (int i = 0; i < 5; i++) {
+                    positions[i] = i + 1;
+                }
+                desired[0] = 1;
+                desired[1] = 1 + 2 * p;
+                desired[2] = 1 + 4 * p;
+                desired[3] = 3 + 2 * p;
+                desired[4] = 5;
+            }
+            return;
+        }
+        // Finds the cell of value
+        int k;
+        if (x < heights[0]) {
+            heights[0] = x;
+            k = 0;
+        } else if (x < heights[1]) {
+            k = 0;
+        } else if (x < heights[2]) {
+            k = 1;
+        } else if (x < heights[3]) {
+            k = 2;
+        } else if (x <= heights[4]) {
+            k = 3;
+        } else {
+            heights[4] = x;
+            k = 3;
+        }
+        for (int i = k + 1; i < 5; i++) {
+            positions[i]++;
+        }
+        for (int i = 0; i < 5; i++) {
+            desired[i] += increments[i];
+        }
+        count++;
+        // Adjusts the heights of the middle markers
+        for (int i = 1; i <= 3; i++) {
+            double d = desired[i] - positions[i];
+            if ((d >= 1 && positions[i + 1] - positions[i] > 1)
+                    || (d <= -1 && positions[i - 1] - positions[i] < -1)) {
+                int ds = d >= 0 ? 1 : -1;
+                double qp = parabolic(i, ds);
+                heights[i] = heights[i - 1] < qp && qp < heights[i + 1]
+                        ? qp
+                        : linear(i, ds);
+                positions[i] += ds;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of values
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the quantile probability
+     */
+    public double getP() {
+        return p;
+    }
+
+    /**
+     * Returns the estimated quantile (NaN if no values)
+     */
+    public double getValue() {
+        if (count >= 5) {
+            return heights[2];
+        }
+        if (count == 0) {
+            return Double.NaN;
+        }
+        System.arraycopy(heights, 0, sorted, 0, count);
+        Arrays.sort(sorted, 0, count);
+        return sorted[(int) Math.round(p * (count - 1))];
+    }
+
+    /**
+     * Returns the linear prediction of marker height
+     *
+     * @param i  the marker index
+     * @param ds the direction
+     */
+    private double linear(int i, int ds) {
+        return heights[i] + ds * (heights[i + ds] - heights[i]) / (positions[i + ds] - positions[i]);
+    }
+
+    /**
+     * Returns the parabolic prediction of marker height
+     *
+     * @param i  the marker index
+     * @param ds the direction
+     */
+    private double parabolic(int i, int ds) {
+        return heights[i] + ds / (positions[i + 1] - positions[i - 1])
+                * ((positions[i] - positions[i - 1] + ds) * (heights[i + 1] - heights[i]) / (positions[i + 1] - positions[i])
+                + (positions[i + 1] - positions[i] - ds) * (heights[i] - heights[i - 1]) / (positions[i] - positions[i - 1]));
+    }
+
+    /**
+     * Resets the estimator
+     */
+    public void reset() {
+        count = 0;
+    }
+}
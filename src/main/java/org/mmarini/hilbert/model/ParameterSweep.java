@@ -0,0 +1,312 @@
+/*
+ * Copyright (c) 2023 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ */
+
+package org.mmarini.hilbert.model;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static java.lang.String.format;
+
+/**
+ * Runs the simulation over a set of points of the parameter space
+ * <p>
+ * The points are the cartesian product of parameter values (grid) or a latin hypercube sample (lhs).
+ * The rules and status templates are validated once: the schema constraints are checked at the extreme values
+ * of parameters, so the documents of points are patched copies of the templates that are not validated again.
+ * The values of integer fields (multiple of an integer in the schema) are rounded to the nearest multiple,
+ * so the points and the summary hold the simulated values.
+ * All the points use the same seed and random substreams (common random numbers),
+ * so the differences between points are due to the parameters only, unless the seed of rules is swept.
+ * The points run in parallel on a work stealing fork join pool and
+ * the summary table has a row for each point with the parameter values and the final results.
+ * Each point terminates at the step the termination of rules holds and the reason is coded in the table
+ * (see {@link Termination#code(String)}).
+ * </p>
+ */
+public class ParameterSweep {
+    public static final String SWEEP_SCHEMA = "/sweep-schema.yml";
+    public static final String GRID_METHOD = "grid";
+    public static final String LHS_METHOD = "lhs";
+    public static final int DEFAULT_SAMPLES = 10;
+    public static final List<String> RESULT_NAMES = List.of("steps", "termination", "population", "technology", "meanPopulation");
+    private static final Logger logger = LoggerFactory.getLogger(ParameterSweep.class);
+
+    /**
+     * Returns the sweep from json nodes
+     *
+     * @param spec   the sweep specification node
+     * @param rules  the rules template node
+     * @param status the status template node
+     */
+    public static ParameterSweep fromJson(JsonNode spec, JsonNode rules, JsonNode status) {
+        logger.atDebug().log("sweep from json");
+        JsonSchemas.instance().validateOrThrow(spec, SWEEP_SCHEMA);
+        List<SweepParameter> parameters = StreamSupport.stream(spec.path("parameters").spliterator(), false)
+                .map(SweepParameter::fromJson)
+                .collect(Collectors.toList());
+        String method = spec.path("method").asText(GRID_METHOD);
+        double[][] points = LHS_METHOD.equals(method)
+                ? lhsPoints(parameters, spec.path("samples").asInt(DEFAULT_SAMPLES), spec.path("seed").asLong(0))
+                : gridPoints(parameters);
+        return new ParameterSweep(parameters, points, rules, status);
+    }
+
+    /**
+     * Returns the points of cartesian product of parameter values
+     * The last parameter changes faster
+     *
+     * @param parameters the parameters
+     */
+    static double[][] gridPoints(List<SweepParameter> parameters) {
+        double[][] values = parameters.stream()
+                .map(SweepParameter::getGridValues)
+                .toArray(double[][]::new);
+        long n = 1;
+        for (double[] v : values) {
+            n = Math.multiplyExact(n, v.length);
+        }
+        if (n > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(format("Too many grid points (%d)", n));
+        }
+        double[][] points = new double[(int) n][values.length];
+        for (int i = 0; i < n; i++) {
+            int k = i;
+            for (int j = values.length - 1; j >= 0; j--) {
+                points[i][j] = values[j][k % values[j].length];
+                k /= values[j].length;
+            }
+        }
+        return points;
+    }
+
+    /**
+     * Returns the latin hypercube sample of the parameter space
+     * Each parameter range is divided into n strata and each stratum is sampled once
+     *
+     * @param parameters the parameters
+     * @param n          the number of samples
+     * @param seed       the seed (random seed if 0)
+     */
+    static double[][] lhsPoints(List<SweepParameter> parameters, int n, long seed) {
+        RandomSource random = RandomSource.create(RandomSource.SPLIT_MIX, seed != 0 ? seed : RandomSource.randomSeed());
+        double[][] points = new double[n][parameters.size()];
+        int[] strata = new int[n];
+        for (int j = 0; j < parameters.size(); j++) {
+            for (int i = 0; i < n; i++) {
+                strata[i] = i;
+            }
+            // Fisher-Yates shuffle of strata
+            for (int i = n - 1; i > 0; i--) {
+                int k = (int) (random.nextDouble() * (i + 1));
+                int t = strata[i];
+                strata[i] = strata[k];
+                strata[k] = t;
+            }
+            SweepParameter parameter = parameters.get(j);
+            for (int i = 0; i < n; i++) {
+                points[i][j] = parameter.getLhsValue((strata[i] + random.nextDouble()) / n);
+            }
+        }
+        return points;
+    }
+
+    /**
+     * Returns the point with the values rounded to the nearest multiple of quanta
+     *
+     * @param point  the point
+     * @param quanta the quanta of parameters (0 if real)
+     */
+    static double[] round(double[] point, double[] quanta) {
+        double[] result = point.clone();
+        for (int j = 0; j < result.length; j++) {
+            if (quanta[j] > 0) {
+                result[j] = Math.rint(result[j] / quanta[j]) * quanta[j];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the document node
+     *
+     * @param document the document (rules, status)
+     * @param rules    the rules node
+     * @param status   the status node
+     */
+    private static JsonNode select(String document, JsonNode rules, JsonNode status) {
+        switch (document) {
+            case SweepParameter.RULES_DOCUMENT:
+                return rules;
+            case SweepParameter.STATUS_DOCUMENT:
+                return status;
+            default:
+                throw new IllegalArgumentException(format("Unknown document \"%s\"", document));
+        }
+    }
+
+    private final List<SweepParameter> parameters;
+    private final double[][] points;
+    private final JsonNode rules;
+    private final JsonNode status;
+    private final long seed;
+    private final KpiSchema summarySchema;
+
+    /**
+     * Creates the sweep
+     *
+     * @param parameters the parameters
+     * @param points     the parameter values of points
+     * @param rules      the rules template
+     * @param status     the status template
+     */
+    public ParameterSweep(List<SweepParameter> parameters, double[][] points, JsonNode rules, JsonNode status) {
+        this.parameters = parameters;
+        this.rules = rules;
+        this.status = status;
+        for (SweepParameter parameter : parameters) {
+            parameter.validate(select(parameter.getDocument(), rules, status));
+        }
+        JsonNode rulesSchema;
+        JsonNode statusSchema;
+        try {
+            rulesSchema = JsonSchemas.instance().get(RulesSerde.RULES_SCHEMA).getSchemaNode();
+            statusSchema = JsonSchemas.instance().get(StatusSerde.STATUS_SCHEMA).getSchemaNode();
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+        double[] quanta = parameters.stream()
+                .mapToDouble(parameter -> parameter.getQuantum(
+                        select(parameter.getDocument(), rulesSchema, statusSchema)))
+                .toArray();
+        this.points = Arrays.stream(points)
+                .map(point -> round(point, quanta))
+                .toArray(double[][]::new);
+        // Validates the templates at the extreme values of parameters
+        for (boolean lower : new boolean[]{true, false}) {
+            JsonNode rulesCorner = rules.deepCopy();
+            JsonNode statusCorner = status.deepCopy();
+            double[] corner = new double[parameters.size()];
+            for (int j = 0; j < corner.length; j++) {
+                SweepParameter parameter = parameters.get(j);
+                corner[j] = lower ? parameter.getMin() : parameter.getMax();
+            }
+            corner = round(corner, quanta);
+            for (int j = 0; j < corner.length; j++) {
+                SweepParameter parameter = parameters.get(j);
+                parameter.apply(select(parameter.getDocument(), rulesCorner, statusCorner), corner[j]);
+            }
+            JsonSchemas.instance().validateOrThrow(rulesCorner, RulesSerde.RULES_SCHEMA);
+            JsonSchemas.instance().validateOrThrow(statusCorner, StatusSerde.STATUS_SCHEMA);
+        }
+        this.seed = RulesSerde.loadSeed(rules);
+        this.summarySchema = KpiSchema.of(Stream.concat(
+                        parameters.stream().map(SweepParameter::getName),
+                        RESULT_NAMES.stream())
+                .collect(Collectors.toList()));
+    }
+
+    /**
+     * Returns the parameter values of points
+     */
+    public double[][] getPoints() {
+        return points;
+    }
+
+    /**
+     * Returns the schema of summary rows
+     */
+    public KpiSchema getSummarySchema() {
+        return summarySchema;
+    }
+
+    /**
+     * Runs a point and returns the summary row
+     *
+     * @param index the point index
+     * @param n     the maximum number of steps
+     */
+    double[] runPoint(int index, long n) {
+        double[] point = points[index];
+        JsonNode rulesNode = rules.deepCopy();
+        JsonNode statusNode = status.deepCopy();
+        for (int j = 0; j < point.length; j++) {
+            SweepParameter parameter = parameters.get(j);
+            parameter.apply(select(parameter.getDocument(), rulesNode, statusNode), point[j]);
+        }
+        // The swept seed replaces the common seed
+        long pointSeed = rulesNode.path("seed").asLong(0);
+        StepKernel kernel = RulesSerde.createStepKernel(rulesNode, pointSeed != 0 ? pointSeed : seed, 0);
+        Termination termination = RulesSerde.loadTermination(rulesNode);
+        StatusBuffer buffer = StatusBuffer.of(StatusSerde.createStatus(statusNode, Sectors.fromJson(rulesNode)));
+        double[] kpis = kernel.getKpiSchema().newRow();
+        double populationSum = 0;
+        long steps = 0;
+        while (steps < n && !termination.isTerminated()) {
+            kernel.step(buffer, kpis);
+            populationSum += buffer.getPopulation();
+            steps++;
+            termination.test(buffer);
+        }
+        double[] row = summarySchema.newRow();
+        System.arraycopy(point, 0, row, 0, point.length);
+        row[point.length] = steps;
+        row[point.length + 1] = Termination.code(termination.getReason());
+        row[point.length + 2] = buffer.getPopulation();
+        row[point.length + 3] = buffer.getTechnology();
+        row[point.length + 4] = steps > 0 ? populationSum / steps : Double.NaN;
+        return row;
+    }
+
+    /**
+     * Runs all the points and writes the summary rows in point order
+     *
+     * @param n      the maximum number of steps of each point
+     * @param pool   the fork join pool
+     * @param writer the summary writer
+     * @throws IOException in case of error
+     */
+    public void run(long n, ForkJoinPool pool, KpiWriter writer) throws IOException {
+        double[][] rows = new double[points.length][];
+        pool.submit(() -> IntStream.range(0, points.length).parallel()
+                        .forEach(i -> rows[i] = runPoint(i, n)))
+                .join();
+        for (double[] row : rows) {
+            writer.write(row);
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2023 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ */
+
+package org.mmarini.hilbert.model;
+
+import static java.lang.String.format;
+
+/**
+ * The counter based Philox4x32-10 generator by J. K. Salmon et al.,
+ * "Parallel random numbers: as easy as 1, 2, 3", 2011
+ * <p>
+ * The values are the encryption of the counter (step, draw) with the key (seed),
+ * so any value of any step is computed directly without generating the previous values.
+ * The generator is positioned at the first draw of a step by {@link #setStep(long)}.
+ * It is not thread safe.
+ * </p>
+ */
+public class PhiloxRandom implements RandomSource {
+    private static final long M0 = 0xD2511F53L;
+    private static final long M1 = 0xCD9E8D57L;
+    private static final int W0 = 0x9E3779B9;
+    private static final int W1 = 0xBB67AE85;
+    private static final int ROUNDS = 10;
+
+    /**
+     * Encrypts the counter with the key
+     *
+     * @param ctr the counter (4 values) replaced by the result
+     * @param k0  the first key value
+     * @param k1  the second key value
+     */
+    static void philox(int[] ctr, int k0, int k1) {
+        int c0 = ctr[0];
+        int c1 = ctr[1];
+        int c2 = ctr[2];
+        int c3 = ctr[3];
+        for (int i = 0; i < ROUNDS; i++) {
+            if (i > 0) {
+                k0 += W0;
+                k1 += W1;
+            }
+            long p0 = M0 * (c0 & 0xffffffffL);
+            long p1 = M1 * (c2 & 0xffffffffL);
+            c0 = (int) (p1 >>> 32) ^ c1 ^ k0;
+            c1 = (int) p1;
+            c2 = (int) (p0 >>> 32) ^ c3 ^ k1;
+            c3 = (int) p0;
+        }
+        ctr[0] = c0;
+        ctr[1] = c1;
+        ctr[2] = c2;
+        ctr[3] = c3;
+    }
+
+    private final int[] block;
+    private long key;
+    private long step;
+    private long draw;
+
+    /**
+     * Creates the generator
+     *
+     * @param key the key (seed)
+     */
+    public PhiloxRandom(long key) {
+        this.key = key;
+        this.block = new int[4];
+    }
+
+    /**
+     * Returns the state (key, step, number of drawn values)
+     */
+    @Override
+    public long[] getState() {
+        return new long[]{key, step, draw};
+    }
+
+    @Override
+    public void setState(long[] state) {
+        if (state.length != 3) {
+            throw new IllegalArgumentException(format("State must have 3 values (%d)", state.length));
+        }
+        this.key = state[0];
+        this.step = state[1];
+        this.draw = state[2];
+        if ((draw & 1) != 0) {
+            computeBlock();
+        }
+    }
+
+    /**
+     * Computes the block of the current draw
+     */
+    private void computeBlock() {
+        long idx = draw >>> 1;
+        block[0] = (int) idx;
+        block[1] = (int) (idx >>> 32);
+        block[2] = (int) step;
+        block[3] = (int) (step >>> 32);
+        philox(block, (int) key, (int) (key >>> 32));
+    }
+
+    @Override
+    public long nextLong() {
+        long result;
+        if ((draw & 1) == 0) {
+            computeBlock();
+            result = ((long) block[0] << 32) | (block[1] & 0xffffffffL);
+        } else {
+            result = ((long) block[2] << 32) | (block[3] & 0xffffffffL);
+        }
+        draw++;
+        return result;
+    }
+
+    /**
+     * Positions the generator at the first draw of the step
+     *
+     * @param step the step
+     */
+    @Override
+    public void setStep(long step) {
+        this.step = step;
+        this.draw = 0;
+    }
+}
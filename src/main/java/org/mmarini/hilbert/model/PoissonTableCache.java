@@ -0,0 +1,231 @@
+/*
+ * Copyright (c) 2023 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ */
+
+package org.mmarini.hilbert.model;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.StringJoiner;
+
+import static java.lang.Math.*;
+import static java.lang.String.format;
+
+/**
+ * Caches the poisson sampling tables by quantized lambda
+ * <p>
+ * Each table holds the cumulative distribution of poisson(lambda) with lambda rounded to the quantum,
+ * and the guide table (Chen and Asau) to find the inverse of a uniform value with O(1) expected comparisons.
+ * The cache holds at most the given number of tables evicting the least recently used.
+ * It is not thread safe.
+ * </p>
+ */
+public class PoissonTableCache {
+    public static final double DEFAULT_QUANTUM = 1e-3;
+    public static final int DEFAULT_SIZE = 256;
+    public static final double DEFAULT_MAX_LAMBDA = 30;
+    private static final double TAIL_EPSILON = 1e-15;
+
+    private final double quantum;
+    private final double maxLambda;
+    private final LinkedHashMap<Long, Table> tables;
+    private long hits;
+    private long misses;
+    private Table last;
+
+    /**
+     * Creates the cache
+     *
+     * @param size      the maximum number of tables
+     * @param quantum   the quantum of lambda
+     * @param maxLambda the maximum lambda sampled by tables
+     */
+    public PoissonTableCache(int size, double quantum, double maxLambda) {
+        if (size <= 0) {
+            throw new IllegalArgumentException(format("Size must be positive (%d)", size));
+        }
+        if (!(quantum > 0)) {
+            throw new IllegalArgumentException(format("Quantum must be positive (%e)", quantum));
+        }
+        this.quantum = quantum;
+        this.maxLambda = maxLambda;
+        this.tables = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Table> eldest) {
+                return size() > size;
+            }
+        };
+    }
+
+    /**
+     * Returns the number of draws with table found in cache
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * Returns the number of draws with table created
+     */
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Returns the quantized lambda keys of cached tables from the least to the most recently used
+     */
+    public long[] getKeys() {
+        return tables.keySet().stream().mapToLong(Long::longValue).toArray();
+    }
+
+    /**
+     * Returns the number of cached tables
+     */
+    public int getSize() {
+        return tables.size();
+    }
+
+    /**
+     * Returns a value with poisson distribution
+     * The values with lambda over the maximum lambda are generated by the random source
+     *
+     * @param random the random source
+     * @param lambda the lambda parameter
+     */
+    public long nextPoisson(RandomSource random, double lambda) {
+        if (lambda > maxLambda) {
+            return random.nextPoisson(lambda);
+        }
+        Table table = table(round(lambda / quantum));
+        double u = random.nextDouble();
+        int[] guide = table.guide;
+        double[] cdf = table.cdf;
+        int k = guide[(int) (u * guide.length)];
+        while (k < cdf.length && u >= cdf[k]) {
+            k++;
+        }
+        return k < cdf.length
+                ? k
+                // Truncated tail (probability lower than 1e-15)
+                : random.nextPoisson(table.lambda);
+    }
+
+    /**
+     * Restores the cache status
+     * The tables are rebuilt from the keys, so the following hits and misses are the same of the saved cache
+     *
+     * @param keys   the quantized lambda keys from the least to the most recently used
+     * @param hits   the number of hits
+     * @param misses the number of misses
+     */
+    public void restore(long[] keys, long hits, long misses) {
+        tables.clear();
+        last = null;
+        for (long key : keys) {
+            last = new Table(key, key * quantum);
+            tables.put(key, last);
+        }
+        this.hits = hits;
+        this.misses = misses;
+    }
+
+    /**
+     * Returns the table of quantized lambda
+     *
+     * @param key the quantized lambda
+     */
+    private Table table(long key) {
+        if (last != null && last.key == key) {
+            hits++;
+            return last;
+        }
+        Table table = tables.get(key);
+        if (table != null) {
+            hits++;
+        } else {
+            misses++;
+            table = new Table(key, key * quantum);
+            tables.put(key, table);
+        }
+        last = table;
+        return table;
+    }
+
+    @Override
+    public String toString() {
+        return new StringJoiner(", ", PoissonTableCache.class.getSimpleName() + "[", "]")
+                .add("hits=" + hits)
+                .add("misses=" + misses)
+                .add("size=" + tables.size())
+                .toString();
+    }
+
+    /**
+     * The sampling table of a lambda
+     */
+    static class Table {
+        final long key;
+        final double lambda;
+        final double[] cdf;
+        final int[] guide;
+
+        /**
+         * Creates the table
+         *
+         * @param key    the quantized lambda
+         * @param lambda the lambda
+         */
+        Table(long key, double lambda) {
+            this.key = key;
+            this.lambda = lambda;
+            int n = (int) ceil(lambda + 20 * sqrt(lambda) + 20);
+            double[] cdf = new double[n];
+            double p = exp(-lambda);
+            double acc = 0;
+            int len = 0;
+            for (int k = 0; k < n; k++) {
+                acc += p;
+                cdf[k] = acc;
+                len = k + 1;
+                if (acc >= 1 - TAIL_EPSILON && k >= lambda) {
+                    break;
+                }
+                p *= lambda / (k + 1);
+            }
+            this.cdf = len < n ? Arrays.copyOf(cdf, len) : cdf;
+            this.guide = new int[len];
+            int k = 0;
+            for (int i = 0; i < len; i++) {
+                double u = (double) i / len;
+                while (k < len - 1 && cdf[k] <= u) {
+                    k++;
+                }
+                guide[i] = k;
+            }
+        }
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2023 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ */
+
+package org.mmarini.hilbert.model;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Fills the ring buffers of the buffered random sources in a background daemon thread
+ * <p>
+ * The thread stops after an idle interval with all the buffers full and is restarted
+ * by the consumers when they find an empty buffer, so no thread is left running
+ * when the sources are no longer used.
+ * </p>
+ */
+public class RandomProducer {
+    private static final int BATCH_SIZE = 256;
+    private static final long PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    private static final long IDLE_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final Logger logger = LoggerFactory.getLogger(RandomProducer.class);
+
+    private final List<BufferedRandom> buffers;
+    private final AtomicBoolean running;
+
+    /**
+     * Creates the producer
+     */
+    public RandomProducer() {
+        this.buffers = new CopyOnWriteArrayList<>();
+        this.running = new AtomicBoolean();
+    }
+
+    /**
+     * Returns the buffered random source filled by this producer
+     *
+     * @param random   the delegated random source (used only by the producer thread)
+     * @param capacity the capacity of ring buffer (power of 2)
+     */
+    public BufferedRandom buffered(RandomSource random, int capacity) {
+        BufferedRandom result = new BufferedRandom(random, this, capacity);
+        buffers.add(result);
+        ensureRunning();
+        return result;
+    }
+
+    /**
+     * Starts the producer thread if not running
+     */
+    void ensureRunning() {
+        if (running.compareAndSet(false, true)) {
+            Thread thread = new Thread(this::run, "random-producer");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Returns true if all the buffers are full
+     */
+    private boolean isAllFull() {
+        for (BufferedRandom buffer : buffers) {
+            if (!buffer.isFull()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns true if the producer thread is running
+     */
+    boolean isRunning() {
+        return running.get();
+    }
+
+    /**
+     * Runs the production loop
+     */
+    private void run() {
+        logger.atDebug().log("Random producer started");
+        try {
+            long idleSince = System.nanoTime();
+            for (; ; ) {
+                boolean produced = false;
+                for (BufferedRandom buffer : buffers) {
+                    produced |= buffer.fill(BATCH_SIZE);
+                }
+                if (produced) {
+                    idleSince = System.nanoTime();
+                } else if (System.nanoTime() - idleSince >= IDLE_TIMEOUT_NANOS) {
+                    running.set(false);
+                    // A consumer may have emptied a buffer before the running flag was cleared
+                    if (isAllFull() || !running.compareAndSet(false, true)) {
+                        break;
+                    }
+                    idleSince = System.nanoTime();
+                } else {
+                    LockSupport.parkNanos(PARK_NANOS);
+                }
+            }
+        } catch (RuntimeException | Error ex) {
+            // Lets the consumers restart the producer
+            running.set(false);
+            throw ex;
+        }
+        logger.atDebug().log("Random producer stopped");
+    }
+}
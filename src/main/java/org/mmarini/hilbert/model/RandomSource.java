@@ -0,0 +1,405 @@
+/*
+ * Copyright (c) 2023 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ */
+
+package org.mmarini.hilbert.model;
+
+import java.util.SplittableRandom;
+
+import static java.lang.Math.*;
+import static java.lang.String.format;
+import static org.mmarini.hilbert.model.ExtMath.logGamma;
+
+/**
+ * Generates the random variates used by the rules
+ * <p>
+ * The implementations provide the uniform long values and the exportable status of generator,
+ * the distributions are generated by the default methods consuming only uniform double values.
+ * </p>
+ * <p>
+ * Binomial values are generated by inversion when n p &le; {@link #BTPE_THRESHOLD}
+ * otherwise by the triangle, parallelogram, exponential method (BTPE)
+ * by V. Kachitvichyanukul and B. W. Schmeiser, "Binomial random variate generation", 1988,
+ * whose cost is O(1).
+ * </p>
+ * <p>
+ * Small lambda poisson values are generated by inversion (Knuth multiplication), whose cost is O(lambda);
+ * lambda values above {@link #PTRS_THRESHOLD} are generated by the transformed rejection method with squeeze (PTRS)
+ * by W. Hormann, "The transformed rejection method for generating Poisson random variables", 1993,
+ * whose cost is O(1).
+ * </p>
+ */
+public interface RandomSource {
+    /**
+     * The lambda threshold to switch from inversion to transformed rejection
+     */
+    double PTRS_THRESHOLD = 10;
+    /**
+     * The mean threshold to switch from inversion to BTPE
+     */
+    double BTPE_THRESHOLD = 30;
+    String RANDOM = "random";
+    String SPLIT_MIX = "splitMix";
+    String XOSHIRO256 = "xoshiro256";
+    String PHILOX = "philox";
+
+    /**
+     * Returns the random source
+     *
+     * @param type the type of generator (random, splitMix, xoshiro256, philox)
+     * @param seed the seed
+     */
+    static RandomSource create(String type, long seed) {
+        switch (type) {
+            case RANDOM:
+                return new ExtRandom(seed);
+            case SPLIT_MIX:
+                return new SplitMixRandom(seed);
+            case XOSHIRO256:
+                return new XoshiroRandom(seed);
+            case PHILOX:
+                return new PhiloxRandom(seed);
+            default:
+                throw new IllegalArgumentException(format("Unknown random generator \"%s\"", type));
+        }
+    }
+
+    /**
+     * Returns the random source of a substream
+     * The substreams are independent of each other and identified by the replica and the stream index
+     *
+     * @param type    the type of generator (random, splitMix, xoshiro256, philox)
+     * @param seed    the seed
+     * @param replica the replica index
+     * @param stream  the stream index
+     */
+    static RandomSource create(String type, long seed, long replica, long stream) {
+        return create(type, substreamSeed(seed, replica, stream));
+    }
+
+    /**
+     * Returns the seed of a substream
+     * The seed is the SplitMix64 hashing of seed, replica and stream index
+     * so that the substreams do not depend on the creation order
+     *
+     * @param seed    the seed
+     * @param replica the replica index
+     * @param stream  the stream index
+     */
+    static long substreamSeed(long seed, long replica, long stream) {
+        long z = SplitMixRandom.mix64(seed + SplitMixRandom.GOLDEN_GAMMA);
+        z = SplitMixRandom.mix64(z + (replica + 1) * SplitMixRandom.GOLDEN_GAMMA);
+        return SplitMixRandom.mix64(z + (stream + 1) * SplitMixRandom.GOLDEN_GAMMA);
+    }
+
+    /**
+     * Returns the Stirling series correction of log factorial used by BTPE
+     *
+     * @param x the argument
+     */
+    private static double stirlingCorrection(double x) {
+        double x2 = x * x;
+        return (13680. - (462. - (132. - (99. - 140. / x2) / x2) / x2) / x2) / x / 166320.;
+    }
+
+    /**
+     * Returns a random seed
+     */
+    static long randomSeed() {
+        return new SplittableRandom().nextLong();
+    }
+
+    /**
+     * Returns the status of generator
+     */
+    long[] getState();
+
+    /**
+     * Sets the status of generator
+     *
+     * @param state the status returned by getState
+     */
+    void setState(long[] state);
+
+    /**
+     * Positions the generator at the first draw of a simulation step
+     * The sequential generators ignore the step, the counter based generators
+     * generate the values of a step independently of the previous steps
+     *
+     * @param step the step
+     */
+    default void setStep(long step) {
+    }
+
+    /**
+     * Returns a value with binomial distribution
+     *
+     * @param n the number of trials
+     * @param p the success probability of each trial
+     */
+    default int nextBinomial(int n, double p) {
+        return (int) nextBinomial((long) n, p);
+    }
+
+    /**
+     * Returns a value with binomial distribution of long trials
+     * The cost is O(1) for any number of trials
+     *
+     * @param n the number of trials
+     * @param p the success probability of each trial
+     */
+    default long nextBinomial(long n, double p) {
+        if (n <= 0 || p <= 0) {
+            return 0;
+        }
+        if (p >= 1) {
+            return n;
+        }
+        if (p <= 0.5) {
+            return n * p <= BTPE_THRESHOLD
+                    ? nextBinomialInversion(n, p)
+                    : nextBinomialBtpe(n, p);
+        } else {
+            double q = 1 - p;
+            return n - (n * q <= BTPE_THRESHOLD
+                    ? nextBinomialInversion(n, q)
+                    : nextBinomialBtpe(n, q));
+        }
+    }
+
+    /**
+     * Returns a value with binomial distribution by BTPE
+     *
+     * @param n the number of trials
+     * @param p the success probability of each trial (p &le; 0.5, n p &gt; 30)
+     */
+    default long nextBinomialBtpe(long n, double p) {
+        // Setup
+        double q = 1 - p;
+        double nrq = n * p * q;
+        double fm = n * p + p;
+        long m = (long) floor(fm);
+        double p1 = floor(2.195 * sqrt(nrq) - 4.6 * q) + 0.5;
+        double xm = m + 0.5;
+        double xl = xm - p1;
+        double xr = xm + p1;
+        double c = 0.134 + 20.5 / (15.3 + m);
+        double al = (fm - xl) / (fm - xl * p);
+        double lambdaL = al * (1 + al / 2);
+        double ar = (xr - fm) / (xr * q);
+        double lambdaR = ar * (1 + ar / 2);
+        double p2 = p1 * (1 + 2 * c);
+        double p3 = p2 + c / lambdaL;
+        double p4 = p3 + c / lambdaR;
+        for (; ; ) {
+            double u = nextDouble() * p4;
+            double v = nextDouble();
+            long y;
+            if (u <= p1) {
+                // Triangular region: immediate acceptance
+                return (long) floor(xm - p1 * v + u);
+            } else if (u <= p2) {
+                // Parallelogram region
+                double x = xl + (u - p1) / c;
+                v = v * c + 1 - abs(m - x + 0.5) / p1;
+                if (v > 1) {
+                    continue;
+                }
+                y = (long) floor(x);
+            } else if (u <= p3) {
+                // Left exponential tail
+                double x = floor(xl + log(v) / lambdaL);
+                if (x < 0 || v == 0) {
+                    continue;
+                }
+                y = (long) x;
+                v = v * (u - p2) * lambdaL;
+            } else {
+                // Right exponential tail
+                double x = floor(xr - log(v) / lambdaR);
+                if (x > n || v == 0) {
+                    continue;
+                }
+                y = (long) x;
+                v = v * (u - p3) * lambdaR;
+            }
+            long k = abs(y - m);
+            if (k <= 20 || k >= nrq / 2 - 1) {
+                // Explicit evaluation of f(y) / f(m)
+                double s = p / q;
+                double a = s * (n + 1);
+                double f = 1;
+                if (m < y) {
+                    for (long i = m + 1; i <= y; i++) {
+                        f *= a / i - s;
+                    }
+                } else if (m > y) {
+                    for (long i = y + 1; i <= m; i++) {
+                        f /= a / i - s;
+                    }
+                }
+                if (v <= f) {
+                    return y;
+                }
+            } else {
+                // Squeezing with the normal approximation bounds
+                double rho = (k / nrq) * ((k * (k / 3.0 + 0.625) + 0.16666666666666666) / nrq + 0.5);
+                double t = -(double) k * k / (2 * nrq);
+                double logV = log(v);
+                if (logV < t - rho) {
+                    return y;
+                }
+                if (logV > t + rho) {
+                    continue;
+                }
+                // Final acceptance with Stirling approximation
+                double x1 = y + 1;
+                double f1 = m + 1;
+                double z = n + 1 - m;
+                double w = n - y + 1;
+                if (logV <= xm * log(f1 / x1)
+                        + (n - m + 0.5) * log(z / w)
+                        + (y - m) * log(w * p / (x1 * q))
+                        + stirlingCorrection(f1) + stirlingCorrection(z)
+                        + stirlingCorrection(x1) + stirlingCorrection(w)) {
+                    return y;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns a value with binomial distribution by inversion
+     *
+     * @param n the number of trials
+     * @param p the success probability of each trial (p &le; 0.5)
+     */
+    default long nextBinomialInversion(long n, double p) {
+        double q = 1 - p;
+        double qn = exp(n * log1p(-p));
+        double np = n * p;
+        long bound = (long) min(n, np + 10 * sqrt(np * q + 1));
+        long x = 0;
+        double px = qn;
+        double u = nextDouble();
+        while (u > px) {
+            x++;
+            if (x > bound) {
+                // Restarts on numerical underflow
+                x = 0;
+                px = qn;
+                u = nextDouble();
+            } else {
+                u -= px;
+                px = ((n - x + 1) * p * px) / (x * q);
+            }
+        }
+        return x;
+    }
+
+    /**
+     * Returns an uniform value in range [0, 1)
+     */
+    default double nextDouble() {
+        return toDouble(nextLong());
+    }
+
+    /**
+     * Returns the uniform value in range [0, 1) generated by nextDouble instead of the given nextLong value
+     * The sources drawing the same state for nextDouble and nextLong can be buffered as 64 bit values
+     *
+     * @param value the nextLong value
+     */
+    default double toDouble(long value) {
+        return (value >>> 11) * 0x1.0p-53;
+    }
+
+    /**
+     * Returns an uniform long value
+     */
+    long nextLong();
+
+    /**
+     * Returns a value with poisson distribution (mean = lambda)
+     *
+     * @param lambda the lambda parameter
+     */
+    default long nextPoisson(double lambda) {
+        return lambda >= PTRS_THRESHOLD
+                ? nextPoissonPtrs(lambda)
+                : nextPoissonInversion(lambda);
+    }
+
+    /**
+     * Returns a value with poisson distribution (mean = lambda) by multiplication of uniform values
+     * The cost is O(lambda), lambda should be lower than 700 to avoid underflow
+     *
+     * @param lambda the lambda parameter
+     */
+    default long nextPoissonInversion(double lambda) {
+        double l = exp(-lambda);
+        long k = -1;
+        double p = 1;
+        do {
+            ++k;
+            double u = nextDouble();
+            p *= u;
+        } while (p > l);
+        return k;
+    }
+
+    /**
+     * Returns a value with poisson distribution (mean = lambda) by transformed rejection (PTRS)
+     * The expected number of uniform values is lower than 2.5 for any lambda &ge; 10.
+     *
+     * @param lambda the lambda parameter (lambda &ge; 10)
+     */
+    default long nextPoissonPtrs(double lambda) {
+        double sLambda = sqrt(lambda);
+        double logLambda = log(lambda);
+        double b = 0.931 + 2.53 * sLambda;
+        double a = -0.059 + 0.02483 * b;
+        double logInvAlpha = log(1.1239 + 1.1328 / (b - 3.4));
+        double vr = 0.9277 - 3.6224 / (b - 2);
+        for (; ; ) {
+            double u = nextDouble() - 0.5;
+            double v = nextDouble();
+            double us = 0.5 - abs(u);
+            double k = floor((2 * a / us + b) * u + lambda + 0.43);
+            if (us >= 0.07 && v <= vr) {
+                // Fast acceptance in the squeeze region
+                return (long) k;
+            }
+            if (k < 0 || (us < 0.013 && v > us)) {
+                // Fast rejection
+                continue;
+            }
+            if (log(v) + logInvAlpha - log(a / (us * us) + b) <= -lambda + k * logLambda - logGamma(k + 1)) {
+                return (long) k;
+            }
+        }
+    }
+}
@@ -0,0 +1,422 @@
+/*
+ * Copyright (c) 2023 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ */
+
+package org.mmarini.hilbert.model;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.lang.String.format;
+
+/**
+ * Simulates a grid of societies with migration between neighbours
+ * <p>
+ * Each region has its own resources, status and step kernel drawing from independent random substreams
+ * (the region index is the replica index).
+ * The regions are partitioned in blocks of contiguous regions and the blocks run on a fork join pool
+ * in bulk synchronous phases: the local rules, the emigration flows computed from the populations
+ * after the local rules and the exchange of migrants.
+ * Each phase reads only the values written by the previous phase and the block kpis are summed in block order,
+ * so the results do not depend on the number of threads.
+ * </p>
+ * <p>
+ * The emigrants from a region to each of its (up to four) neighbours are the rounded value of
+ * <code>migrationRate dt population (1 - density neighbour / density) / neighbours</code>
+ * when the neighbour has a lower population density (population by resources).
+ * The immigrants bring their technology, so the technology of a region becomes the population weighted mean
+ * of residents and immigrants.
+ * The empty regions do not apply the local rules.
+ * </p>
+ */
+public class RegionModel {
+    public static final String REGIONS_SCHEMA = "/regions-schema.yml";
+    public static final List<String> KPI_NAMES = List.of("population", "technology", "migrants", "inhabited");
+    public static final List<String> REGION_KPI_NAMES = List.of("x", "y", "resources", "population", "technology");
+    public static final int DEFAULT_BLOCK_SIZE = 1024;
+    private static final int POPULATION_KPI = 0;
+    private static final int TECHNOLOGY_KPI = 1;
+    private static final int MIGRANTS_KPI = 2;
+    private static final int INHABITED_KPI = 3;
+    private static final int NORTH = 0;
+    private static final int SOUTH = 1;
+    private static final int WEST = 2;
+    private static final int EAST = 3;
+    private static final int DIRECTIONS = 4;
+    private static final Logger logger = LoggerFactory.getLogger(RegionModel.class);
+
+    /**
+     * Returns the region model from json nodes
+     * The rules must have the stochastic engine with fixed time interval
+     *
+     * @param spec      the regions specification node
+     * @param rules     the rules node
+     * @param status    the initial status of regions
+     * @param pool      the fork join pool
+     * @param blockSize the number of regions by block
+     */
+    public static RegionModel fromJson(JsonNode spec, JsonNode rules, Status status, ForkJoinPool pool, int blockSize) {
+        logger.atDebug().log("regions from json");
+        JsonSchemas.instance().validateOrThrow(spec, REGIONS_SCHEMA);
+        JsonSchemas.instance().validateOrThrow(rules, RulesSerde.RULES_SCHEMA);
+        String engine = RulesSerde.loadEngine(rules);
+        if (!RulesSerde.STOCHASTIC_ENGINE.equals(engine)) {
+            throw new IllegalArgumentException(format("Regions require the stochastic engine (%s)", engine));
+        }
+        // Each region would own a producer thread and a table cache
+        int bufferCapacity = RulesSerde.loadRandomBufferCapacity(rules);
+        if (bufferCapacity > 0) {
+            throw new IllegalArgumentException(format("Regions cannot buffer the random generators (%d)", bufferCapacity));
+        }
+        if (rules.has("poissonCache")) {
+            throw new IllegalArgumentException("Regions cannot cache the poisson tables");
+        }
+        int width = spec.path("width").asInt();
+        int height = spec.path("height").asInt();
+        long n = (long) width * height;
+        if (n > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(format("Too many regions (%d)", n));
+        }
+        JsonNode resourcesNode = spec.path("resources");
+        JsonNode populationsNode = spec.path("populations");
+        if (!resourcesNode.isMissingNode() && resourcesNode.size() != n) {
+            throw new IllegalArgumentException(format("Resources must be %d (%d)", n, resourcesNode.size()));
+        }
+        if (!populationsNode.isMissingNode() && populationsNode.size() != n) {
+            throw new IllegalArgumentException(format("Populations must be %d (%d)", n, populationsNode.size()));
+        }
+        long seed = RulesSerde.loadSeed(rules);
+        RuleParameters parameters = RulesSerde.loadRuleParameters(rules);
+        HilbertKernel[] kernels = new HilbertKernel[(int) n];
+        StatusBuffer[] statuses = new StatusBuffer[(int) n];
+        for (int i = 0; i < n; i++) {
+            RuleParameters regionParameters = resourcesNode.isMissingNode()
+                    ? parameters
+                    : parameters.setResources(resourcesNode.get(i).asDouble());
+            kernels[i] = RulesSerde.createKernel(rules, seed, i, 0, regionParameters);
+            statuses[i] = StatusBuffer.of(status);
+            if (!populationsNode.isMissingNode()) {
+                statuses[i].population = populationsNode.get(i).asLong();
+            }
+        }
+        return new RegionModel(width, height, kernels, statuses,
+                spec.path("migrationRate").asDouble(), rules.path("timeInterval").asDouble(),
+                pool, blockSize);
+    }
+
+    private final int width;
+    private final int height;
+    private final HilbertKernel[] kernels;
+    private final StatusBuffer[] statuses;
+    private final double[] resources;
+    private final double migration;
+    private final long[] outflows;
+    private final double[] technologies;
+    private final double[][] blockKpis;
+    private final double[][] rows;
+    private final int blockSize;
+    private final int blocks;
+    private final ForkJoinPool pool;
+    private final KpiSchema kpiSchema;
+    private long step;
+
+    /**
+     * Creates the region model
+     *
+     * @param width         the grid width
+     * @param height        the grid height
+     * @param kernels       the kernels of regions in row major order
+     * @param statuses      the statuses of regions in row major order
+     * @param migrationRate the migration rate (fraction of density gap per unit time)
+     * @param dt            the time interval
+     * @param pool          the fork join pool
+     * @param blockSize     the number of regions by block
+     */
+    RegionModel(int width, int height, HilbertKernel[] kernels, StatusBuffer[] statuses,
+                double migrationRate, double dt, ForkJoinPool pool, int blockSize) {
+        int n = width * height;
+        if (kernels.length != n || statuses.length != n) {
+            throw new IllegalArgumentException(format("Regions must be %d (%d, %d)", n, kernels.length, statuses.length));
+        }
+        if (migrationRate * dt > 1) {
+            throw new IllegalArgumentException(format("Migration by step must not exceed the population (%g)", migrationRate * dt));
+        }
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException(format("Block size must be positive (%d)", blockSize));
+        }
+        this.width = width;
+        this.height = height;
+        this.kernels = kernels;
+        this.statuses = statuses;
+        this.migration = migrationRate * dt;
+        this.pool = pool;
+        this.blockSize = blockSize;
+        this.blocks = (n + blockSize - 1) / blockSize;
+        this.resources = new double[n];
+        for (int i = 0; i < n; i++) {
+            resources[i] = kernels[i].getResources();
+        }
+        this.outflows = new long[n * DIRECTIONS];
+        this.technologies = new double[n];
+        this.kpiSchema = KpiSchema.of(KPI_NAMES);
+        this.blockKpis = new double[blocks][KPI_NAMES.size()];
+        this.rows = new double[blocks][];
+        for (int i = 0; i < blocks; i++) {
+            rows[i] = kernels[0].getKpiSchema().newRow();
+        }
+    }
+
+    /**
+     * Computes the emigrants of the regions of a block
+     *
+     * @param block the block index
+     */
+    private void emigrate(int block) {
+        int end = min((block + 1) * blockSize, statuses.length);
+        for (int i = block * blockSize; i < end; i++) {
+            long population = statuses[i].population;
+            technologies[i] = statuses[i].technology;
+            int base = i * DIRECTIONS;
+            if (population == 0) {
+                outflows[base + NORTH] = 0;
+                outflows[base + SOUTH] = 0;
+                outflows[base + WEST] = 0;
+                outflows[base + EAST] = 0;
+                continue;
+            }
+            int x = i % width;
+            int y = i / width;
+            int neighbours = (y > 0 ? 1 : 0) + (y < height - 1 ? 1 : 0) + (x > 0 ? 1 : 0) + (x < width - 1 ? 1 : 0);
+            double flow = migration * population / neighbours;
+            double density = population / resources[i];
+            long north = y > 0 ? flow(flow, density, i - width, population) : 0;
+            long south = y < height - 1 ? flow(flow, density, i + width, population - north) : 0;
+            long west = x > 0 ? flow(flow, density, i - 1, population - north - south) : 0;
+            long east = x < width - 1 ? flow(flow, density, i + 1, population - north - south - west) : 0;
+            outflows[base + NORTH] = north;
+            outflows[base + SOUTH] = south;
+            outflows[base + WEST] = west;
+            outflows[base + EAST] = east;
+        }
+    }
+
+    /**
+     * Returns the emigrants to a neighbour
+     *
+     * @param flow      the maximum flow to each neighbour
+     * @param density   the population density of region
+     * @param neighbour the neighbour index
+     * @param remaining the remaining population
+     */
+    private long flow(double flow, double density, int neighbour, long remaining) {
+        double neighbourDensity = statuses[neighbour].population / resources[neighbour];
+        return neighbourDensity < density
+                ? min(Math.round(flow * (1 - neighbourDensity / density)), remaining)
+                : 0;
+    }
+
+    /**
+     * Returns the kpi schema of steps
+     */
+    public KpiSchema getKpiSchema() {
+        return kpiSchema;
+    }
+
+    /**
+     * Returns the grid height
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Returns the schema of region rows
+     */
+    public KpiSchema getRegionSchema() {
+        return KpiSchema.of(REGION_KPI_NAMES);
+    }
+
+    /**
+     * Returns the status of a region
+     *
+     * @param index the region index (row major)
+     */
+    public StatusBuffer getStatus(int index) {
+        return statuses[index];
+    }
+
+    /**
+     * Returns the current step
+     */
+    public long getStep() {
+        return step;
+    }
+
+    /**
+     * Returns the grid width
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Exchanges the migrants of the regions of a block and computes the block kpis
+     *
+     * @param block the block index
+     */
+    private void immigrate(int block) {
+        int end = min((block + 1) * blockSize, statuses.length);
+        double[] kpis = blockKpis[block];
+        double population = 0;
+        double technology = 0;
+        double migrants = 0;
+        int inhabited = 0;
+        for (int i = block * blockSize; i < end; i++) {
+            StatusBuffer status = statuses[i];
+            int x = i % width;
+            int y = i / width;
+            int base = i * DIRECTIONS;
+            long emigrants = outflows[base + NORTH] + outflows[base + SOUTH] + outflows[base + WEST] + outflows[base + EAST];
+            long residents = status.population - emigrants;
+            long immigrants = 0;
+            double immigrantTechnology = 0;
+            if (y > 0) {
+                long flow = outflows[(i - width) * DIRECTIONS + SOUTH];
+                immigrants += flow;
+                immigrantTechnology += flow * technologies[i - width];
+            }
+            if (y < height - 1) {
+                long flow = outflows[(i + width) * DIRECTIONS + NORTH];
+                immigrants += flow;
+                immigrantTechnology += flow * technologies[i + width];
+            }
+            if (x > 0) {
+                long flow = outflows[(i - 1) * DIRECTIONS + EAST];
+                immigrants += flow;
+                immigrantTechnology += flow * technologies[i - 1];
+            }
+            if (x < width - 1) {
+                long flow = outflows[(i + 1) * DIRECTIONS + WEST];
+                immigrants += flow;
+                immigrantTechnology += flow * technologies[i + 1];
+            }
+            if (immigrants > 0) {
+                status.technology = (residents * status.technology + immigrantTechnology) / (residents + immigrants);
+            }
+            status.population = residents + immigrants;
+            population += status.population;
+            technology += status.population * status.technology;
+            migrants += emigrants;
+            if (status.population > 0) {
+                inhabited++;
+            }
+        }
+        kpis[POPULATION_KPI] = population;
+        kpis[TECHNOLOGY_KPI] = technology;
+        kpis[MIGRANTS_KPI] = migrants;
+        kpis[INHABITED_KPI] = inhabited;
+    }
+
+    /**
+     * Applies the local rules to the regions of a block
+     *
+     * @param block the block index
+     */
+    private void localRules(int block) {
+        int end = min((block + 1) * blockSize, statuses.length);
+        double[] row = rows[block];
+        for (int i = block * blockSize; i < end; i++) {
+            if (statuses[i].population > 0) {
+                kernels[i].step(statuses[i], row);
+            }
+        }
+    }
+
+    /**
+     * Runs a phase on all the blocks and waits for its completion
+     *
+     * @param phase the phase
+     */
+    private void runPhase(IntConsumer phase) {
+        pool.submit(() -> IntStream.range(0, blocks).parallel().forEach(phase)).join();
+    }
+
+    /**
+     * Computes the next step of all the regions
+     * The kpis are the total population, the population weighted mean technology,
+     * the number of migrants and the number of inhabited regions after the step
+     *
+     * @param kpis the kpis row buffer
+     */
+    public void step(double[] kpis) {
+        runPhase(this::localRules);
+        runPhase(this::emigrate);
+        runPhase(this::immigrate);
+        // Sums the block kpis in block order so the result does not depend on the threads
+        double population = 0;
+        double technology = 0;
+        double migrants = 0;
+        double inhabited = 0;
+        for (double[] blockKpi : blockKpis) {
+            population += blockKpi[POPULATION_KPI];
+            technology += blockKpi[TECHNOLOGY_KPI];
+            migrants += blockKpi[MIGRANTS_KPI];
+            inhabited += blockKpi[INHABITED_KPI];
+        }
+        kpis[POPULATION_KPI] = population;
+        kpis[TECHNOLOGY_KPI] = population > 0 ? technology / population : Double.NaN;
+        kpis[MIGRANTS_KPI] = migrants;
+        kpis[INHABITED_KPI] = inhabited;
+        step++;
+    }
+
+    /**
+     * Writes the final rows of regions
+     *
+     * @param writer the writer
+     * @throws IOException in case of error
+     */
+    public void writeRegions(KpiWriter writer) throws IOException {
+        double[] row = getRegionSchema().newRow();
+        for (int i = 0; i < statuses.length; i++) {
+            row[0] = i % width;
+            row[1] = i / width;
+            row[2] = resources[i];
+            row[3] = statuses[i].population;
+            row[4] = statuses[i].technology;
+            writer.write(row);
+        }
+    }
+}
@@ -0,0 +1,256 @@
+/*
+ * Copyright (c) 2023 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ */
+
+package org.mmarini.hilbert.model;
+
+/**
+ * The parameters of the rules shared by all the engines
+ * <p>
+ * The parameters are loaded once from the rules document (see {@link RulesSerde#loadRuleParameters})
+ * and the kernels copy them at construction.
+ * </p>
+ */
+public class RuleParameters {
+    private final double resources;
+    private final double minTechnology;
+    private final double maxTechnology;
+    private final double settlementDensity;
+    private final double settlementDeathTimeConstant;
+    private final double foodProductivity;
+    private final double foodDemand;
+    private final double foodDeathTimeConstant;
+    private final double foodBirthTimeConstant;
+    private final double healthProductivity;
+    private final double healthDemand;
+    private final double minimumLifeExpectancy;
+    private final double maximumLifeExpectancy;
+    private final double researchProductivity;
+    private final double researchCost;
+    private final double researchQuantum;
+    private final double educationProductivity;
+    private final double educationDemand;
+    private final double educationTimeConstant;
+
+    /**
+     * Creates the parameters
+     *
+     * @param resources                   the total resources
+     * @param minTechnology               the minimum level of technology
+     * @param maxTechnology               the maximum level of technology
+     * @param settlementDensity           the preferred population density by settlement resources
+     * @param settlementDeathTimeConstant the over settlement deaths time constant
+     * @param foodProductivity            the food productivity by individual by unit time
+     * @param foodDemand                  the food demand by individual by unit time
+     * @param foodDeathTimeConstant       the starvation deaths time constant
+     * @param foodBirthTimeConstant       the births time constant
+     * @param healthProductivity          the health productivity
+     * @param healthDemand                the health demand
+     * @param minimumLifeExpectancy       the minimum life expectancy
+     * @param maximumLifeExpectancy       the maximum life expectancy
+     * @param researchProductivity        the research productivity by individual by unit time
+     * @param researchCost                the cost of technology quantum
+     * @param researchQuantum             the technology quantum step
+     * @param educationProductivity       the education productivity by individual by unit time
+     * @param educationDemand             the education demand by individual by unit time
+     * @param educationTimeConstant       the technology loss time constant
+     */
+    public RuleParameters(double resources, double minTechnology, double maxTechnology,
+                          double settlementDensity, double settlementDeathTimeConstant,
+                          double foodProductivity, double foodDemand, double foodDeathTimeConstant, double foodBirthTimeConstant,
+                          double healthProductivity, double healthDemand, double minimumLifeExpectancy, double maximumLifeExpectancy,
+                          double researchProductivity, double researchCost, double researchQuantum,
+                          double educationProductivity, double educationDemand, double educationTimeConstant) {
+        this.resources = resources;
+        this.minTechnology = minTechnology;
+        this.maxTechnology = maxTechnology;
+        this.settlementDensity = settlementDensity;
+        this.settlementDeathTimeConstant = settlementDeathTimeConstant;
+        this.foodProductivity = foodProductivity;
+        this.foodDemand = foodDemand;
+        this.foodDeathTimeConstant = foodDeathTimeConstant;
+        this.foodBirthTimeConstant = foodBirthTimeConstant;
+        this.healthProductivity = healthProductivity;
+        this.healthDemand = healthDemand;
+        this.minimumLifeExpectancy = minimumLifeExpectancy;
+        this.maximumLifeExpectancy = maximumLifeExpectancy;
+        this.researchProductivity = researchProductivity;
+        this.researchCost = researchCost;
+        this.researchQuantum = researchQuantum;
+        this.educationProductivity = educationProductivity;
+        this.educationDemand = educationDemand;
+        this.educationTimeConstant = educationTimeConstant;
+    }
+
+    /**
+     * Returns the total resources
+     */
+    public double getResources() {
+        return resources;
+    }
+
+    /**
+     * Returns the parameters with the given resources
+     *
+     * @param resources the total resources
+     */
+    public RuleParameters setResources(double resources) {
+        return resources != this.resources
+                ? new RuleParameters(resources, minTechnology, maxTechnology,
+                settlementDensity, settlementDeathTimeConstant,
+                foodProductivity, foodDemand, foodDeathTimeConstant, foodBirthTimeConstant,
+                healthProductivity, healthDemand, minimumLifeExpectancy, maximumLifeExpectancy,
+                researchProductivity, researchCost, researchQuantum,
+                educationProductivity, educationDemand, educationTimeConstant)
+                : this;
+    }
+
+    /**
+     * Returns the minimum level of technology
+     */
+    public double getMinTechnology() {
+        return minTechnology;
+    }
+
+    /**
+     * Returns the maximum level of technology
+     */
+    public double getMaxTechnology() {
+        return maxTechnology;
+    }
+
+    /**
+     * Returns the preferred population density by settlement resources
+     */
+    public double getSettlementDensity() {
+        return settlementDensity;
+    }
+
+    /**
+     * Returns the over settlement deaths time constant
+     */
+    public double getSettlementDeathTimeConstant() {
+        return settlementDeathTimeConstant;
+    }
+
+    /**
+     * Returns the food productivity by individual by unit time
+     */
+    public double getFoodProductivity() {
+        return foodProductivity;
+    }
+
+    /**
+     * Returns the food demand by individual by unit time
+     */
+    public double getFoodDemand() {
+        return foodDemand;
+    }
+
+    /**
+     * Returns the starvation deaths time constant
+     */
+    public double getFoodDeathTimeConstant() {
+        return foodDeathTimeConstant;
+    }
+
+    /**
+     * Returns the births time constant
+     */
+    public double getFoodBirthTimeConstant() {
+        return foodBirthTimeConstant;
+    }
+
+    /**
+     * Returns the health productivity
+     */
+    public double getHealthProductivity() {
+        return healthProductivity;
+    }
+
+    /**
+     * Returns the health demand
+     */
+    public double getHealthDemand() {
+        return healthDemand;
+    }
+
+    /**
+     * Returns the minimum life expectancy
+     */
+    public double getMinimumLifeExpectancy() {
+        return minimumLifeExpectancy;
+    }
+
+    /**
+     * Returns the maximum life expectancy
+     */
+    public double getMaximumLifeExpectancy() {
+        return maximumLifeExpectancy;
+    }
+
+    /**
+     * Returns the research productivity by individual by unit time
+     */
+    public double getResearchProductivity() {
+        return researchProductivity;
+    }
+
+    /**
+     * Returns the cost of technology quantum
+     */
+    public double getResearchCost() {
+        return researchCost;
+    }
+
+    /**
+     * Returns the technology quantum step
+     */
+    public double getResearchQuantum() {
+        return researchQuantum;
+    }
+
+    /**
+     * Returns the education productivity by individual by unit time
+     */
+    public double getEducationProductivity() {
+        return educationProductivity;
+    }
+
+    /**
+     * Returns the education demand by individual by unit time
+     */
+    public double getEducationDemand() {
+        return educationDemand;
+    }
+
+    /**
+     * Returns the technology loss time constant
+     */
+    public double getEducationTimeConstant() {
+        return educationTimeConstant;
+    }
+}
@@ -35,6 +35,7 @@ import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
@@ -43,13 +44,31 @@ import java.util.function.Function;
 import java.util.function.Supplier;
 import java.util.function.UnaryOperator;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import java.util.stream.IntStream;
+
+import static java.lang.String.format;
 
 /**
  * Loads the society from yaml resources
  */
 public class RulesSerde {
     public static final String RULES_SCHEMA = "/rules-schema.yml";
+    public static final int OVER_SETTLEMENT_STREAM = 0;
+    public static final int FOOD_PRODUCTION_STREAM = 1;
+    public static final int HEALTH_STREAM = 2;
+    public static final int RESEARCH_STREAM = 3;
+    public static final int EDUCATION_STREAM = 4;
+    public static final String POISSON_MORTALITY = "poisson";
+    public static final String BINOMIAL_MORTALITY = "binomial";
+    public static final String STOCHASTIC_ENGINE = "stochastic";
+    public static final String MEAN_FIELD_ENGINE = "meanField";
+    public static final String TAU_LEAPING_ENGINE = "tauLeaping";
+    public static final String HYBRID_ENGINE = "hybrid";
+    public static final String AGENT_ENGINE = "agent";
+    public static final String COHORT_ENGINE = "cohort";
+    public static final int DEFAULT_SSA_POPULATION = 50;
+    private static final double MIN_INTERVAL_RATIO = 1e-3;
+    private static final double MAX_INTERVAL_RATIO = 100;
     private static final Logger logger = LoggerFactory.getLogger(RulesSerde.class);
 
     /**
@@ -78,45 +97,382 @@ public class RulesSerde {
      * @param node the json node
      */
     public static Function<Status, Tuple2<Status, Supplier<Map<String, Number>>>> fromJson(JsonNode node) {
+        return fromJson(node, 0);
+    }
+
+    /**
+     * Returns the society and the ule engine of a replica from json node
+     * Each rule of each replica draws from an independent random substream derived from the seed,
+     * so the trajectories do not depend on the rules evaluation order
+     *
+     * @param node    the json node
+     * @param replica the replica index
+     */
+    public static Function<Status, Tuple2<Status, Supplier<Map<String, Number>>>> fromJson(JsonNode node, int replica) {
+        return fromJson(node, replica, 0);
+    }
+
+    /**
+     * Returns the society and the ule engine of a replica from json node starting at the given step
+     * With counter based generator (philox) the engine computes the same changes of the step
+     * as the engine started at step 0 after the given number of steps
+     * The rules are compiled into a single step kernel sharing the intermediate values of rules
+     * The mean field, agent and cohort engines start only at step 0
+     *
+     * @param node    the json node
+     * @param replica the replica index
+     * @param step    the initial step
+     */
+    public static Function<Status, Tuple2<Status, Supplier<Map<String, Number>>>> fromJson(JsonNode node, int replica, long step) {
         logger.atDebug().log("from json");
-        // Validates the document
         JsonSchemas.instance().validateOrThrow(node, RULES_SCHEMA);
-        // Loads all the rules
-        long seed = node.path("seed").asLong(0);
-        ExtRandom random = seed != 0 ? new ExtRandom(seed) : new ExtRandom();
-        List<BiFunction<Status, Double, Tuple2<Status, Supplier<Collection<Tuple2<String, Number>>>>>> rules = List.of(
-                loadOverSettlementRule(node, random),
-                loadFoodProductionRule(node, random),
-                loadHealthRule(node, random),
-                loadResearchRule(node, random),
-                loadEducationRule(node, random)
-        );
-        UnaryOperator<Status> normalize = loadNormalizationRule(node);
-        double dt = loadTimeInterval(node);
+        String engine = loadEngine(node);
+        if (!isHilbertEngine(engine) && step != 0) {
+            throw new IllegalArgumentException(format("The %s engine starts at step 0 (%d)", engine, step));
+        }
+        // Compiles the rules
+        StepKernel kernel = isHilbertEngine(engine)
+                ? createKernel(node, loadSeed(node), replica, step)
+                : createStepKernel(node, loadSeed(node), replica);
+        KpiSchema schema = kernel.getKpiSchema();
+        StatusBuffer buffer = new StatusBuffer();
         return status -> {
-            // Apply the rules
-            Supplier<Collection<Tuple2<String, Number>>> initKpi = status::getKpi;
-            List<Tuple2<Status, Supplier<Collection<Tuple2<String, Number>>>>> partials = Stream.concat(
-                            Stream.of(Tuple2.of(status, initKpi)),
-                            rules.stream()
-                                    .map(f -> f.apply(status, dt)))
-                    .collect(Collectors.toList());
-
-            Status newStatus = normalize.apply(Status.sum(partials.stream().map(Tuple2::getV1).toArray(Status[]::new)));
-            Supplier<Map<String, Number>> kpi = () -> partials.stream()
-                    .flatMap(t -> t._2.get().stream())
-                    .collect(Tuple2.toMap());
-            return Tuple2.of(newStatus, kpi);
+            double[] kpis = schema.newRow();
+            kernel.step(buffer.set(status), kpis);
+            return Tuple2.of(buffer.toStatus(), () -> schema.toMap(kpis));
         };
     }
 
+    /**
+     * Returns the step kernel from yaml file
+     *
+     * @param file the yaml file
+     * @throws IOException in case of error
+     */
+    public static HilbertKernel kernelFromFile(String file) throws IOException {
+        return kernelFromJson(Utils.fromFile(file), 0, 0);
+    }
+
+    /**
+     * Returns the step kernel of a replica from json node starting at the given step
+     * The kernel generates the same trajectories of the rule engine with the same seed
+     * The mean field, agent and cohort engines have their own kernels (see {@link #createStepKernel})
+     *
+     * @param node    the json node
+     * @param replica the replica index
+     * @param step    the initial step
+     * @throws IllegalArgumentException if the engine is mean field, agent or cohort
+     */
+    public static HilbertKernel kernelFromJson(JsonNode node, int replica, long step) {
+        logger.atDebug().log("kernel from json");
+        JsonSchemas.instance().validateOrThrow(node, RULES_SCHEMA);
+        String engine = loadEngine(node);
+        if (!isHilbertEngine(engine)) {
+            throw new IllegalArgumentException(format("The %s engine has no stochastic step kernel", engine));
+        }
+        return createKernel(node, loadSeed(node), replica, step);
+    }
+
+    /**
+     * Returns the step kernels of the replicas from json node
+     * The rules are validated once and all the replicas share the same seed with independent substreams
+     * and the producer of buffered generators
+     *
+     * @param node     the json node
+     * @param replicas the number of replicas
+     */
+    public static List<HilbertKernel> kernelsFromJson(JsonNode node, int replicas) {
+        logger.atDebug().log("kernels from json");
+        JsonSchemas.instance().validateOrThrow(node, RULES_SCHEMA);
+        long seed = loadSeed(node);
+        RuleParameters parameters = loadRuleParameters(node);
+        RandomProducer producer = loadRandomProducer(node);
+        List<HilbertKernel> kernels = new ArrayList<>(replicas);
+        for (int i = 0; i < replicas; i++) {
+            kernels.add(createKernel(node, seed, i, 0, parameters, producer));
+        }
+        return kernels;
+    }
+
+    /**
+     * Returns the batch kernel of the replicas from json node
+     * Each replica generates the same trajectory of the step kernel of the replica with the same seed
+     *
+     * @param node     the json node
+     * @param replicas the number of replicas
+     */
+    public static EnsembleKernel ensembleKernelFromJson(JsonNode node, int replicas) {
+        logger.atDebug().log("ensemble kernel from json");
+        JsonSchemas.instance().validateOrThrow(node, RULES_SCHEMA);
+        return createEnsembleKernel(node, loadSeed(node), replicas);
+    }
+
+    /**
+     * Returns the batch kernels of the replicas partitioned in contiguous blocks from json node
+     * The kernels run in parallel: each kernel has its own poisson table cache
+     * and the kernels share the producer of buffered generators if configured
+     *
+     * @param node     the json node
+     * @param replicas the number of replicas
+     * @param blocks   the number of blocks
+     */
+    public static List<EnsembleKernel> ensembleKernelsFromJson(JsonNode node, int replicas, int blocks) {
+        logger.atDebug().log("ensemble kernels from json");
+        JsonSchemas.instance().validateOrThrow(node, RULES_SCHEMA);
+        if (replicas <= 0) {
+            throw new IllegalArgumentException(format("Replicas must be positive (%d)", replicas));
+        }
+        if (blocks <= 0) {
+            throw new IllegalArgumentException(format("Blocks must be positive (%d)", blocks));
+        }
+        long seed = loadSeed(node);
+        RuleParameters parameters = loadRuleParameters(node);
+        RandomProducer producer = loadRandomProducer(node);
+        int n = Math.min(blocks, replicas);
+        List<EnsembleKernel> kernels = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            int first = (int) ((long) replicas * i / n);
+            int last = (int) ((long) replicas * (i + 1) / n);
+            kernels.add(createEnsembleKernel(node, seed, first, last - first, parameters, producer));
+        }
+        return kernels;
+    }
+
+    /**
+     * Returns the batch kernel of the replicas from validated json node
+     * The replicas share the poisson table cache and the producer of buffered generators if configured
+     *
+     * @param node     the json node
+     * @param seed     the seed
+     * @param replicas the number of replicas
+     */
+    static EnsembleKernel createEnsembleKernel(JsonNode node, long seed, int replicas) {
+        return createEnsembleKernel(node, seed, 0, replicas, loadRuleParameters(node), loadRandomProducer(node));
+    }
+
+    /**
+     * Returns the batch kernel of a block of replicas from validated json node
+     * The replicas share the poisson table cache and the producer of buffered generators if configured
+     *
+     * @param node       the json node
+     * @param seed       the seed
+     * @param first      the index of the first replica
+     * @param replicas   the number of replicas
+     * @param parameters the rule parameters
+     * @param producer   the producer of buffered generators or null if not buffered
+     */
+    static EnsembleKernel createEnsembleKernel(JsonNode node, long seed, int first, int replicas, RuleParameters parameters,
+                                               RandomProducer producer) {
+        String engine = loadEngine(node);
+        if (!STOCHASTIC_ENGINE.equals(engine)) {
+            throw new IllegalArgumentException(format("The ensemble kernel runs the %s engine (%s)", STOCHASTIC_ENGINE, engine));
+        }
+        if (replicas <= 0) {
+            throw new IllegalArgumentException(format("Replicas must be positive (%d)", replicas));
+        }
+        PoissonTableCache cache = loadPoissonTableCache(node);
+        List<List<RandomSource>> randoms = new ArrayList<>(replicas);
+        for (int i = 0; i < replicas; i++) {
+            randoms.add(loadRandoms(node, seed, first + i, cache, producer));
+        }
+        return new EnsembleKernel(randoms, 0, loadBinomialDeaths(node),
+                loadTimeInterval(node),
+                parameters);
+    }
+
+    /**
+     * Returns the step kernel of a replica from validated json node
+     * The tau leaping engine has the interval range in time intervals by default (0.001 - 100),
+     * the hybrid engine is the tau leaping engine with single event steps for small populations
+     *
+     * @param node    the json node
+     * @param seed    the seed
+     * @param replica the replica index
+     * @param step    the initial step
+     */
+    static HilbertKernel createKernel(JsonNode node, long seed, int replica, long step) {
+        return createKernel(node, seed, replica, step, loadRuleParameters(node));
+    }
+
+    /**
+     * Returns the step kernel of a replica with the given rule parameters from validated json node
+     *
+     * @param node       the json node
+     * @param seed       the seed
+     * @param replica    the replica index
+     * @param step       the initial step
+     * @param parameters the rule parameters
+     */
+    static HilbertKernel createKernel(JsonNode node, long seed, int replica, long step, RuleParameters parameters) {
+        return createKernel(node, seed, replica, step, parameters, loadRandomProducer(node));
+    }
+
+    /**
+     * Returns the step kernel of a replica with the given rule parameters and producer from validated json node
+     *
+     * @param node       the json node
+     * @param seed       the seed
+     * @param replica    the replica index
+     * @param step       the initial step
+     * @param parameters the rule parameters
+     * @param producer   the producer of buffered generators or null if not buffered
+     */
+    static HilbertKernel createKernel(JsonNode node, long seed, int replica, long step, RuleParameters parameters,
+                                      RandomProducer producer) {
+        PoissonTableCache cache = loadPoissonTableCache(node);
+        List<RandomSource> randoms = loadRandoms(node, seed, replica, cache, producer);
+        double dt = loadTimeInterval(node);
+        String engine = loadEngine(node);
+        boolean hybrid = HYBRID_ENGINE.equals(engine);
+        boolean tauLeaping = hybrid || TAU_LEAPING_ENGINE.equals(engine);
+        JsonNode tauNode = node.path("tauLeaping");
+        return new HilbertKernel(randoms, cache, step, loadBinomialDeaths(node),
+                dt,
+                tauLeaping ? tauNode.path("tolerance").asDouble(HilbertKernel.DEFAULT_TAU_TOLERANCE) : 0,
+                tauNode.path("minInterval").asDouble(dt * MIN_INTERVAL_RATIO),
+                tauNode.path("maxInterval").asDouble(dt * MAX_INTERVAL_RATIO),
+                hybrid ? node.path("hybrid").path("ssaPopulation").asInt(DEFAULT_SSA_POPULATION) : 0,
+                parameters);
+    }
+
+    /**
+     * Returns the agent kernel of a replica from validated json node
+     *
+     * @param node    the json node
+     * @param seed    the seed
+     * @param replica the replica index
+     */
+    static AgentKernel createAgentKernel(JsonNode node, long seed, int replica) {
+        List<RandomSource> randoms = loadRandoms(node, seed, replica, null, loadRandomProducer(node));
+        return new AgentKernel(randoms, 0, loadBinomialDeaths(node),
+                loadTimeInterval(node),
+                node.path("agent").path("mortalityDoublingTime").asDouble(AgentKernel.DEFAULT_MORTALITY_DOUBLING_TIME),
+                loadRuleParameters(node));
+    }
+
+    /**
+     * Returns the cohort kernel of a replica from validated json node
+     * The age of the last class defaults to 1.5 times the maximum life expectancy
+     *
+     * @param node    the json node
+     * @param seed    the seed
+     * @param replica the replica index
+     */
+    static CohortKernel createCohortKernel(JsonNode node, long seed, int replica) {
+        List<RandomSource> randoms = loadRandoms(node, seed, replica, null, loadRandomProducer(node));
+        JsonNode cohortNode = node.path("cohort");
+        RuleParameters parameters = loadRuleParameters(node);
+        return new CohortKernel(randoms, 0,
+                loadTimeInterval(node),
+                cohortNode.path("mortalityDoublingTime").asDouble(AgentKernel.DEFAULT_MORTALITY_DOUBLING_TIME),
+                cohortNode.path("maxAge").asDouble(parameters.getMaximumLifeExpectancy() * CohortKernel.DEFAULT_MAX_AGE_RATIO),
+                cohortNode.path("minFertileAge").asDouble(CohortKernel.DEFAULT_MIN_FERTILE_AGE),
+                cohortNode.path("maxFertileAge").asDouble(CohortKernel.DEFAULT_MAX_FERTILE_AGE),
+                parameters);
+    }
+
+    /**
+     * Returns the mean field kernel from validated json node
+     * The output interval defaults to the time interval
+     *
+     * @param node the json node
+     */
+    static MeanFieldKernel createMeanFieldKernel(JsonNode node) {
+        JsonNode meanFieldNode = node.path("meanField");
+        return new MeanFieldKernel(
+                meanFieldNode.path("interval").asDouble(loadTimeInterval(node)),
+                meanFieldNode.path("tolerance").asDouble(MeanFieldKernel.DEFAULT_TOLERANCE),
+                MeanFieldKernel.ROSENBROCK_METHOD.equals(meanFieldNode.path("method").asText(MeanFieldKernel.RK45_METHOD)),
+                loadRuleParameters(node));
+    }
+
+    /**
+     * Returns the step kernel of the engine selected by the rules (engine) from validated json node
+     *
+     * @param node    the json node
+     * @param seed    the seed
+     * @param replica the replica index
+     */
+    static StepKernel createStepKernel(JsonNode node, long seed, int replica) {
+        String engine = loadEngine(node);
+        return MEAN_FIELD_ENGINE.equals(engine)
+                ? createMeanFieldKernel(node)
+                : AGENT_ENGINE.equals(engine)
+                ? createAgentKernel(node, seed, replica)
+                : COHORT_ENGINE.equals(engine)
+                ? createCohortKernel(node, seed, replica)
+                : createKernel(node, seed, replica, 0);
+    }
+
+    /**
+     * Returns true if the engine runs on the stochastic step kernel (stochastic, tauLeaping or hybrid)
+     *
+     * @param engine the engine
+     */
+    static boolean isHilbertEngine(String engine) {
+        return !MEAN_FIELD_ENGINE.equals(engine)
+                && !AGENT_ENGINE.equals(engine)
+                && !COHORT_ENGINE.equals(engine);
+    }
+
+    /**
+     * Returns the engine from json node (stochastic, tauLeaping, hybrid, meanField, agent or cohort)
+     *
+     * @param node the json main node
+     */
+    public static String loadEngine(JsonNode node) {
+        return node.path("engine").asText(STOCHASTIC_ENGINE);
+    }
+
+    /**
+     * Returns the agent kernel from json node
+     *
+     * @param node the json node
+     */
+    public static AgentKernel agentKernelFromJson(JsonNode node) {
+        logger.atDebug().log("agent kernel from json");
+        JsonSchemas.instance().validateOrThrow(node, RULES_SCHEMA);
+        return createAgentKernel(node, loadSeed(node), 0);
+    }
+
+    /**
+     * Returns the cohort kernel from json node
+     *
+     * @param node the json node
+     */
+    public static CohortKernel cohortKernelFromJson(JsonNode node) {
+        logger.atDebug().log("cohort kernel from json");
+        JsonSchemas.instance().validateOrThrow(node, RULES_SCHEMA);
+        return createCohortKernel(node, loadSeed(node), 0);
+    }
+
+    /**
+     * Returns the mean field kernel from json node
+     *
+     * @param node the json node
+     */
+    public static MeanFieldKernel meanFieldKernelFromJson(JsonNode node) {
+        logger.atDebug().log("mean field kernel from json");
+        JsonSchemas.instance().validateOrThrow(node, RULES_SCHEMA);
+        return createMeanFieldKernel(node);
+    }
+
+    /**
+     * Returns true if the deaths have binomial distribution (mortality: binomial)
+     *
+     * @param node the json main node
+     */
+    static boolean loadBinomialDeaths(JsonNode node) {
+        return BINOMIAL_MORTALITY.equals(node.path("mortality").asText(POISSON_MORTALITY));
+    }
+
     /**
      * Returns the food production rule
      *
      * @param node   the json main node
      * @param random the random number generator
      */
-    static BiFunction<Status, Double, Tuple2<Status, Supplier<Collection<Tuple2<String, Number>>>>> loadEducationRule(JsonNode node, ExtRandom random) {
+    static BiFunction<Status, Double, Tuple2<Status, Supplier<Collection<Tuple2<String, Number>>>>> loadEducationRule(JsonNode node, RandomSource random) {
         JsonNode foodNode = node.path("education");
         double productivity = foodNode.path("productivity").asDouble();
         double demand = foodNode.path("demand").asDouble();
@@ -130,14 +486,14 @@ public class RulesSerde {
      * @param node   the json main node
      * @param random the random number generator
      */
-    static BiFunction<Status, Double, Tuple2<Status, Supplier<Collection<Tuple2<String, Number>>>>> loadFoodProductionRule(JsonNode node, ExtRandom random) {
+    static BiFunction<Status, Double, Tuple2<Status, Supplier<Collection<Tuple2<String, Number>>>>> loadFoodProductionRule(JsonNode node, RandomSource random) {
         JsonNode foodNode = node.path("foodProduction");
         double productivity = foodNode.path("productivity").asDouble();
         double demand = foodNode.path("demand").asDouble();
         double deathTimeConstant = foodNode.path("deathTimeConstant").asDouble();
         double birthTimeConstant = foodNode.path("birthTimeConstant").asDouble();
         double resources = loadResources(node);
-        return HilbertRules.foodProductionRule(random, resources, productivity, demand, deathTimeConstant, birthTimeConstant);
+        return HilbertRules.foodProductionRule(random, resources, productivity, demand, deathTimeConstant, birthTimeConstant, loadBinomialDeaths(node));
     }
 
 
@@ -147,14 +503,14 @@ public class RulesSerde {
      * @param node   the json main node
      * @param random the random number generator
      */
-    static BiFunction<Status, Double, Tuple2<Status, Supplier<Collection<Tuple2<String, Number>>>>> loadHealthRule(JsonNode node, ExtRandom random) {
+    static BiFunction<Status, Double, Tuple2<Status, Supplier<Collection<Tuple2<String, Number>>>>> loadHealthRule(JsonNode node, RandomSource random) {
         JsonNode healthNode = node.path("health");
         double productivity = healthNode.path("productivity").asDouble();
         double demand = healthNode.path("demand").asDouble();
         double minimumLifeExpectancy = healthNode.path("minimumLifeExpectancy").asDouble();
         double maximumLifeExpectancy = healthNode.path("maximumLifeExpectancy").asDouble();
         double resources = loadResources(node);
-        return HilbertRules.healthRule(random, resources, productivity, demand, minimumLifeExpectancy, maximumLifeExpectancy);
+        return HilbertRules.healthRule(random, resources, productivity, demand, minimumLifeExpectancy, maximumLifeExpectancy, loadBinomialDeaths(node));
     }
 
     static UnaryOperator<Status> loadNormalizationRule(JsonNode node) {
@@ -169,11 +525,11 @@ public class RulesSerde {
      * @param node   the json main node
      * @param random the random number generator
      */
-    static BiFunction<Status, Double, Tuple2<Status, Supplier<Collection<Tuple2<String, Number>>>>> loadOverSettlementRule(JsonNode node, ExtRandom random) {
+    static BiFunction<Status, Double, Tuple2<Status, Supplier<Collection<Tuple2<String, Number>>>>> loadOverSettlementRule(JsonNode node, RandomSource random) {
         JsonNode settlementNode = node.path("overSettlement");
         double density = settlementNode.path("density").asDouble();
         double deadTimeConstant = settlementNode.path("deathTimeConstant").asDouble();
-        return HilbertRules.overSettlement(random, loadResources(node), density, deadTimeConstant);
+        return HilbertRules.overSettlement(random, loadResources(node), density, deadTimeConstant, loadBinomialDeaths(node));
     }
 
     /**
@@ -182,7 +538,7 @@ public class RulesSerde {
      * @param node   the json main node
      * @param random the random number generator
      */
-    static BiFunction<Status, Double, Tuple2<Status, Supplier<Collection<Tuple2<String, Number>>>>> loadResearchRule(JsonNode node, ExtRandom random) {
+    static BiFunction<Status, Double, Tuple2<Status, Supplier<Collection<Tuple2<String, Number>>>>> loadResearchRule(JsonNode node, RandomSource random) {
         JsonNode researchNode = node.path("research");
         double productivity = researchNode.path("productivity").asDouble();
         double cost = researchNode.path("cost").asDouble();
@@ -190,6 +546,88 @@ public class RulesSerde {
         return HilbertRules.researchRule(random, loadResources(node), productivity, cost, quantum);
     }
 
+    /**
+     * Returns the poisson table cache or null if not configured (poissonCache key)
+     *
+     * @param node the json node
+     */
+    static PoissonTableCache loadPoissonTableCache(JsonNode node) {
+        JsonNode cacheNode = node.path("poissonCache");
+        if (cacheNode.isMissingNode()) {
+            return null;
+        }
+        int size = cacheNode.path("size").asInt(PoissonTableCache.DEFAULT_SIZE);
+        double quantum = cacheNode.path("quantum").asDouble(PoissonTableCache.DEFAULT_QUANTUM);
+        double maxLambda = cacheNode.path("maxLambda").asDouble(PoissonTableCache.DEFAULT_MAX_LAMBDA);
+        return new PoissonTableCache(size, quantum, maxLambda);
+    }
+
+    /**
+     * Returns the random generator of a rule substream
+     * The generator is selected by rng key (default random)
+     *
+     * @param node    the json node
+     * @param seed    the seed
+     * @param replica the replica index
+     * @param stream  the rule stream index
+     */
+    static RandomSource loadRandom(JsonNode node, long seed, int replica, int stream) {
+        String type = node.path("rng").asText(RandomSource.RANDOM);
+        return RandomSource.create(type, seed, replica, stream);
+    }
+
+    /**
+     * Returns the capacity of random ring buffers or 0 if not configured (rngBuffer key)
+     * The capacity is rounded up to a power of 2.
+     * Counter based generators (philox) cannot be buffered because they are positioned at each step.
+     *
+     * @param node the json node
+     */
+    static int loadRandomBufferCapacity(JsonNode node) {
+        int size = node.path("rngBuffer").asInt(0);
+        if (size <= 0) {
+            return 0;
+        }
+        String type = node.path("rng").asText(RandomSource.RANDOM);
+        if (RandomSource.PHILOX.equals(type)) {
+            throw new IllegalArgumentException(format("Random generator \"%s\" cannot be buffered", type));
+        }
+        return size <= 1 ? 1 : Integer.highestOneBit(size - 1) << 1;
+    }
+
+    /**
+     * Returns the producer of buffered generators or null if not configured (rngBuffer key)
+     * The producer runs a single thread filling the buffers of all the random sources of a run
+     *
+     * @param node the json node
+     */
+    static RandomProducer loadRandomProducer(JsonNode node) {
+        return loadRandomBufferCapacity(node) > 0 ? new RandomProducer() : null;
+    }
+
+    /**
+     * Returns the random sources of rules indexed by stream
+     * The sources are buffered (rngBuffer key) and cached (poisson cache) if configured
+     *
+     * @param node     the json node
+     * @param seed     the seed
+     * @param replica  the replica index
+     * @param cache    the poisson table cache or null if none
+     * @param producer the producer of buffered generators or null if not buffered
+     */
+    static List<RandomSource> loadRandoms(JsonNode node, long seed, int replica, PoissonTableCache cache, RandomProducer producer) {
+        int bufferCapacity = loadRandomBufferCapacity(node);
+        return IntStream.of(OVER_SETTLEMENT_STREAM, FOOD_PRODUCTION_STREAM, HEALTH_STREAM, RESEARCH_STREAM, EDUCATION_STREAM)
+                .mapToObj(stream -> {
+                    RandomSource random = loadRandom(node, seed, replica, stream);
+                    if (producer != null && bufferCapacity > 0) {
+                        random = producer.buffered(random, bufferCapacity);
+                    }
+                    return cache != null ? new CachedPoissonRandom(random, cache) : random;
+                })
+                .collect(Collectors.toList());
+    }
+
     /**
      * Returns the demography rule
      *
@@ -199,6 +637,74 @@ public class RulesSerde {
         return node.path("resources").asDouble();
     }
 
+    /**
+     * Returns the rule parameters from json node
+     * The maximum technology is unbounded by default
+     *
+     * @param node the json main node
+     */
+    static RuleParameters loadRuleParameters(JsonNode node) {
+        JsonNode settlementNode = node.path("overSettlement");
+        JsonNode foodNode = node.path("foodProduction");
+        JsonNode healthNode = node.path("health");
+        JsonNode researchNode = node.path("research");
+        JsonNode educationNode = node.path("education");
+        return new RuleParameters(
+                loadResources(node),
+                node.path("minTechnology").asDouble(),
+                node.path("maxTechnology").asDouble(Double.POSITIVE_INFINITY),
+                settlementNode.path("density").asDouble(),
+                settlementNode.path("deathTimeConstant").asDouble(),
+                foodNode.path("productivity").asDouble(),
+                foodNode.path("demand").asDouble(),
+                foodNode.path("deathTimeConstant").asDouble(),
+                foodNode.path("birthTimeConstant").asDouble(),
+                healthNode.path("productivity").asDouble(),
+                healthNode.path("demand").asDouble(),
+                healthNode.path("minimumLifeExpectancy").asDouble(),
+                healthNode.path("maximumLifeExpectancy").asDouble(),
+                researchNode.path("productivity").asDouble(),
+                researchNode.path("cost").asDouble(),
+                researchNode.path("quantum").asDouble(),
+                educationNode.path("productivity").asDouble(),
+                educationNode.path("demand").asDouble(),
+                educationNode.path("timeConstant").asDouble());
+    }
+
+    /**
+     * Returns the seed from json node (random seed if missing or 0)
+     *
+     * @param node the json node
+     */
+    static long loadSeed(JsonNode node) {
+        long seed = node.path("seed").asLong(0);
+        return seed != 0 ? seed : RandomSource.randomSeed();
+    }
+
+    /**
+     * Returns the termination of a run from json node (extinction only if missing)
+     * Each run must have its own termination because the detectors hold the state of previous steps
+     *
+     * @param node the json main node
+     */
+    public static Termination loadTermination(JsonNode node) {
+        JsonNode terminationNode = node.path("termination");
+        List<TerminationDetector> detectors = new ArrayList<>();
+        if (terminationNode.path("extinction").asBoolean(true)) {
+            detectors.add(new ExtinctionDetector());
+        }
+        if (terminationNode.has("technologyCap")) {
+            detectors.add(new TechnologyCapDetector(terminationNode.path("technologyCap").asDouble()));
+        }
+        JsonNode steadyNode = terminationNode.path("steadyState");
+        if (!steadyNode.isMissingNode()) {
+            detectors.add(new SteadyStateDetector(
+                    steadyNode.path("window").asInt(),
+                    steadyNode.path("tolerance").asDouble()));
+        }
+        return new Termination(detectors);
+    }
+
     /**
      * Returns the time interval from json node
      *
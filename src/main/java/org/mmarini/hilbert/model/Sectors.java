@@ -0,0 +1,274 @@
+/*
+ * Copyright (c) 2023 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ */
+
+package org.mmarini.hilbert.model;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.StringJoiner;
+
+import static java.lang.String.format;
+
+/**
+ * The occupations of population and the shares of resources of the society
+ * <p>
+ * The status holds a preference (softmax) by occupation and by resource share in the order of sectors.
+ * The rules use the standard occupations (farmer, researcher, educator, doctor, inactive) and
+ * resource shares (food, research, education, health, settlement), the other sectors declared in the rules
+ * take their share of population and resources without producing anything.
+ * </p>
+ */
+public class Sectors {
+    public static final List<String> DEFAULT_OCCUPATIONS = List.of("farmer", "researcher", "educator", "doctor", "inactive");
+    public static final List<String> DEFAULT_RESOURCES = List.of("food", "research", "education", "health", "settlement");
+    public static final int MAX_OCCUPATIONS = Byte.MAX_VALUE;
+    public static final Sectors DEFAULT = new Sectors(DEFAULT_OCCUPATIONS, DEFAULT_RESOURCES);
+
+    /**
+     * Returns the sectors with the given names
+     *
+     * @param occupations the occupation names
+     * @param resources   the resource share names
+     */
+    public static Sectors create(List<String> occupations, List<String> resources) {
+        if (occupations.equals(DEFAULT_OCCUPATIONS) && resources.equals(DEFAULT_RESOURCES)) {
+            return DEFAULT;
+        }
+        if (occupations.size() > MAX_OCCUPATIONS) {
+            throw new IllegalArgumentException(format("Occupations must be at most %d (%d)",
+                    MAX_OCCUPATIONS, occupations.size()));
+        }
+        validate(occupations, DEFAULT_OCCUPATIONS, "occupation");
+        validate(resources, DEFAULT_RESOURCES, "resource");
+        return new Sectors(List.copyOf(occupations), List.copyOf(resources));
+    }
+
+    /**
+     * Returns the sectors declared in the rules (sectors) or the default sectors if none
+     *
+     * @param node the json main node of rules
+     */
+    public static Sectors fromJson(JsonNode node) {
+        JsonNode sectorsNode = node.path("sectors");
+        if (sectorsNode.isMissingNode()) {
+            return DEFAULT;
+        }
+        return create(names(sectorsNode.path("occupations"), DEFAULT_OCCUPATIONS),
+                names(sectorsNode.path("resources"), DEFAULT_RESOURCES));
+    }
+
+    /**
+     * Returns the names of a json array or the default names if missing
+     *
+     * @param node         the json array
+     * @param defaultNames the default names
+     */
+    private static List<String> names(JsonNode node, List<String> defaultNames) {
+        if (node.isMissingNode()) {
+            return defaultNames;
+        }
+        List<String> names = new ArrayList<>();
+        node.forEach(item -> names.add(item.asText()));
+        return names;
+    }
+
+    /**
+     * Validates the names
+     *
+     * @param names         the names
+     * @param requiredNames the required names
+     * @param type          the type of names
+     */
+    private static void validate(List<String> names, List<String> requiredNames, String type) {
+        Set<String> unique = new HashSet<>(names);
+        if (unique.size() != names.size()) {
+            throw new IllegalArgumentException(format("Duplicated %s names %s", type, names));
+        }
+        for (String name : requiredNames) {
+            if (!unique.contains(name)) {
+                throw new IllegalArgumentException(format("Missing %s \"%s\" in %s", type, name, names));
+            }
+        }
+    }
+
+    private final List<String> occupations;
+    private final List<String> resources;
+    private final int farmer;
+    private final int researcher;
+    private final int educator;
+    private final int doctor;
+    private final int inactive;
+    private final int food;
+    private final int research;
+    private final int education;
+    private final int health;
+    private final int settlement;
+
+    /**
+     * Creates the sectors
+     *
+     * @param occupations the occupation names
+     * @param resources   the resource share names
+     */
+    private Sectors(List<String> occupations, List<String> resources) {
+        this.occupations = occupations;
+        this.resources = resources;
+        this.farmer = occupations.indexOf("farmer");
+        this.researcher = occupations.indexOf("researcher");
+        this.educator = occupations.indexOf("educator");
+        this.doctor = occupations.indexOf("doctor");
+        this.inactive = occupations.indexOf("inactive");
+        this.food = resources.indexOf("food");
+        this.research = resources.indexOf("research");
+        this.education = resources.indexOf("education");
+        this.health = resources.indexOf("health");
+        this.settlement = resources.indexOf("settlement");
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        Sectors sectors = (Sectors) o;
+        return occupations.equals(sectors.occupations) && resources.equals(sectors.resources);
+    }
+
+    /**
+     * Returns the index of doctors
+     */
+    public int getDoctor() {
+        return doctor;
+    }
+
+    /**
+     * Returns the index of education share
+     */
+    public int getEducation() {
+        return education;
+    }
+
+    /**
+     * Returns the index of educators
+     */
+    public int getEducator() {
+        return educator;
+    }
+
+    /**
+     * Returns the index of farmers
+     */
+    public int getFarmer() {
+        return farmer;
+    }
+
+    /**
+     * Returns the index of food share
+     */
+    public int getFood() {
+        return food;
+    }
+
+    /**
+     * Returns the index of health share
+     */
+    public int getHealth() {
+        return health;
+    }
+
+    /**
+     * Returns the index of inactive individuals
+     */
+    public int getInactive() {
+        return inactive;
+    }
+
+    /**
+     * Returns the occupation names
+     */
+    public List<String> getOccupations() {
+        return occupations;
+    }
+
+    /**
+     * Returns the index of research share
+     */
+    public int getResearch() {
+        return research;
+    }
+
+    /**
+     * Returns the index of researchers
+     */
+    public int getResearcher() {
+        return researcher;
+    }
+
+    /**
+     * Returns the resource share names
+     */
+    public List<String> getResources() {
+        return resources;
+    }
+
+    /**
+     * Returns the index of settlement share
+     */
+    public int getSettlement() {
+        return settlement;
+    }
+
+    @Override
+    public int hashCode() {
+        return occupations.hashCode() * 31 + resources.hashCode();
+    }
+
+    /**
+     * Returns the number of occupations
+     */
+    public int occupationCount() {
+        return occupations.size();
+    }
+
+    /**
+     * Returns the number of resource shares
+     */
+    public int resourceCount() {
+        return resources.size();
+    }
+
+    @Override
+    public String toString() {
+        return new StringJoiner(", ", Sectors.class.getSimpleName() + "[", "]")
+                .add("occupations=" + occupations)
+                .add("resources=" + resources)
+                .toString();
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) 2023 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ */
+
+package org.mmarini.hilbert.model;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Logs the events at info level
+ * The enabled level is checked before formatting, so the events cost little when the logger is disabled.
+ */
+public class Slf4jEventSink implements EventSink {
+    private static final Logger logger = LoggerFactory.getLogger(Slf4jEventSink.class);
+
+    private final String[] patterns;
+
+    /**
+     * Creates the sink
+     */
+    public Slf4jEventSink() {
+        EventType[] types = EventType.values();
+        this.patterns = new String[types.length];
+        for (EventType type : types) {
+            patterns[type.ordinal()] = "Step {} " + type.getMessage();
+        }
+    }
+
+    @Override
+    public void accept(EventType type, long step, double value) {
+        if (logger.isInfoEnabled()) {
+            logger.info(patterns[type.ordinal()], step, value);
+        }
+    }
+}
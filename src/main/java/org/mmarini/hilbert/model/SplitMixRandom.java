@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2023 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ */
+
+package org.mmarini.hilbert.model;
+
+import static java.lang.String.format;
+
+/**
+ * The SplitMix64 generator of java.util.SplittableRandom
+ * <p>
+ * It generates the same sequence of java.util.SplittableRandom with the same seed
+ * with exportable state.
+ * It is not thread safe.
+ * </p>
+ */
+public class SplitMixRandom implements RandomSource {
+    public static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+    /**
+     * Returns the mixed bits of value (Stafford variant 13)
+     *
+     * @param z the value
+     */
+    static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    private long seed;
+
+    /**
+     * Creates the generator
+     *
+     * @param seed the seed
+     */
+    public SplitMixRandom(long seed) {
+        this.seed = seed;
+    }
+
+    @Override
+    public long[] getState() {
+        return new long[]{seed};
+    }
+
+    @Override
+    public void setState(long[] state) {
+        if (state.length != 1) {
+            throw new IllegalArgumentException(format("State must have 1 value (%d)", state.length));
+        }
+        this.seed = state[0];
+    }
+
+    @Override
+    public long nextLong() {
+        seed += GOLDEN_GAMMA;
+        return mix64(seed);
+    }
+}
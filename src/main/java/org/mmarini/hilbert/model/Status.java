@@ -31,7 +31,6 @@ import org.mmarini.LazyValue;
 import org.mmarini.Tuple2;
 
 import java.util.*;
-import java.util.stream.DoubleStream;
 
 import static java.lang.Math.*;
 import static java.lang.String.format;
@@ -40,8 +39,12 @@ import static org.mmarini.hilbert.model.ExtMath.softmax;
 
 /**
  * Represents the society status with the population,
- * the population distribution preferences (softmax)
- * and the resources' distribution preferences (softmax)
+ * the population distribution preferences (softmax) by occupation
+ * and the resources' distribution preferences (softmax) by resource share
+ * <p>
+ * The preferences are arrays in the order of the {@link Sectors} of status,
+ * the named getters return the values of the standard sectors used by the rules.
+ * </p>
  */
 public class Status {
     public static final Status ZERO = new Status(0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0);
@@ -91,12 +94,10 @@ public class Status {
         if (settlement <= 0) {
             throw new IllegalArgumentException(format("Settlement must be positive (%e)", settlement));
         }
-        int population = farmers + researchers + educators + doctors + inactive;
+        long population = (long) farmers + researchers + educators + doctors + inactive;
         double[] popPrefs = invSoftmax(farmers, researchers, educators, doctors, inactive);
         double[] resPrefs = invSoftmax(food, research, education, health, settlement);
-        return new Status(population, popPrefs[0], popPrefs[1], popPrefs[2], popPrefs[3], popPrefs[4],
-                resPrefs[0], resPrefs[1], resPrefs[2], resPrefs[3], resPrefs[4],
-                technology);
+        return new Status(Sectors.DEFAULT, population, popPrefs, resPrefs, technology);
     }
 
     /**
@@ -104,44 +105,40 @@ public class Status {
      *
      * @param population the number of change individuals
      */
-    public static Status population(int population) {
+    public static Status population(long population) {
         return new Status(population, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0);
     }
 
     /**
      * Returns the sum of states
+     * The result has the sectors of the state with more sectors, the states with fewer sectors
+     * add their preferences to the first ones (the changes of population and technology have no preferences)
      *
      * @param states the states
      */
     public static Status sum(Status... states) {
-        int population = 0;
-        double farmerPrefs = 0;
-        double researcherPrefs = 0;
-        double educatorPrefs = 0;
-        double doctorPrefs = 0;
-        double inactivePrefs = 0;
-        double foodPrefs = 0;
-        double researchPrefs = 0;
-        double educationPrefs = 0;
-        double healthPrefs = 0;
-        double settlementPrefs = 0;
+        Sectors sectors = Sectors.DEFAULT;
+        for (Status state : states) {
+            if (state.occupationPrefs.length > sectors.occupationCount()
+                    || state.resourcePrefs.length > sectors.resourceCount()) {
+                sectors = state.sectors;
+            }
+        }
+        long population = 0;
+        double[] occupationPrefs = new double[sectors.occupationCount()];
+        double[] resourcePrefs = new double[sectors.resourceCount()];
         double technology = 0;
         for (Status state : states) {
             population += state.population;
-            farmerPrefs += state.farmerPrefs;
-            researcherPrefs += state.researcherPrefs;
-            educatorPrefs += state.educatorPrefs;
-            doctorPrefs += state.doctorPrefs;
-            inactivePrefs += state.inactivePrefs;
-            foodPrefs += state.foodPrefs;
-            researchPrefs += state.researchPrefs;
-            educationPrefs += state.educationPrefs;
-            healthPrefs += state.healthPrefs;
-            settlementPrefs += state.settlementPrefs;
+            for (int i = 0; i < state.occupationPrefs.length; i++) {
+                occupationPrefs[i] += state.occupationPrefs[i];
+            }
+            for (int i = 0; i < state.resourcePrefs.length; i++) {
+                resourcePrefs[i] += state.resourcePrefs[i];
+            }
             technology += state.technology;
         }
-        return new Status(population, farmerPrefs, researcherPrefs, educatorPrefs, doctorPrefs, inactivePrefs,
-                foodPrefs, researchPrefs, educationPrefs, healthPrefs, settlementPrefs, technology);
+        return new Status(sectors, population, occupationPrefs, resourcePrefs, technology, false);
     }
 
     /**
@@ -160,23 +157,16 @@ public class Status {
         return ZERO;
     }
 
-    private final int population;
-    private final double farmerPrefs;
-    private final double researcherPrefs;
-    private final double educatorPrefs;
-    private final double doctorPrefs;
-    private final double inactivePrefs;
-    private final double foodPrefs;
-    private final double researchPrefs;
-    private final double educationPrefs;
-    private final double healthPrefs;
-    private final double settlementPrefs;
+    private final Sectors sectors;
+    private final long population;
+    private final double[] occupationPrefs;
+    private final double[] resourcePrefs;
     private final double technology;
     private final LazyValue<double[]> individuals;
     private final LazyValue<double[]> betas;
 
     /**
-     * Creates the status
+     * Creates the status of default sectors
      *
      * @param population      the number of individual
      * @param farmerPrefs     the farmer preferences
@@ -191,30 +181,64 @@ public class Status {
      * @param settlementPrefs the settlement preferences
      * @param technology      the technology level
      */
-    public Status(int population, double farmerPrefs, double researcherPrefs, double educatorPrefs, double doctorPrefs, double inactivePrefs,
+    public Status(long population, double farmerPrefs, double researcherPrefs, double educatorPrefs, double doctorPrefs, double inactivePrefs,
                   double foodPrefs, double researchPrefs, double educationPrefs, double healthPrefs, double settlementPrefs, double technology) {
+        this(Sectors.DEFAULT, population,
+                new double[]{farmerPrefs, researcherPrefs, educatorPrefs, doctorPrefs, inactivePrefs},
+                new double[]{foodPrefs, researchPrefs, educationPrefs, healthPrefs, settlementPrefs},
+                technology, false);
+    }
+
+    /**
+     * Creates the status
+     *
+     * @param sectors         the sectors
+     * @param population      the number of individual
+     * @param occupationPrefs the preferences by occupation
+     * @param resourcePrefs   the preferences by resource share
+     * @param technology      the technology level
+     */
+    public Status(Sectors sectors, long population, double[] occupationPrefs, double[] resourcePrefs, double technology) {
+        this(sectors, population, occupationPrefs.clone(), resourcePrefs.clone(), technology, false);
+        if (occupationPrefs.length != sectors.occupationCount()) {
+            throw new IllegalArgumentException(format("Occupation preferences must be %d (%d)",
+                    sectors.occupationCount(), occupationPrefs.length));
+        }
+        if (resourcePrefs.length != sectors.resourceCount()) {
+            throw new IllegalArgumentException(format("Resource preferences must be %d (%d)",
+                    sectors.resourceCount(), resourcePrefs.length));
+        }
+    }
+
+    /**
+     * Creates the status owning the preference arrays
+     *
+     * @param sectors         the sectors
+     * @param population      the number of individual
+     * @param occupationPrefs the preferences by occupation
+     * @param resourcePrefs   the preferences by resource share
+     * @param technology      the technology level
+     * @param unused          distinguishes the constructor
+     */
+    private Status(Sectors sectors, long population, double[] occupationPrefs, double[] resourcePrefs, double technology, boolean unused) {
+        this.sectors = sectors;
         this.population = population;
-        this.farmerPrefs = farmerPrefs;
-        this.researcherPrefs = researcherPrefs;
-        this.educatorPrefs = educatorPrefs;
-        this.doctorPrefs = doctorPrefs;
-        this.inactivePrefs = inactivePrefs;
-        this.foodPrefs = foodPrefs;
-        this.researchPrefs = researchPrefs;
-        this.educationPrefs = educationPrefs;
-        this.healthPrefs = healthPrefs;
-        this.settlementPrefs = settlementPrefs;
+        this.occupationPrefs = occupationPrefs;
+        this.resourcePrefs = resourcePrefs;
         this.technology = technology;
-        this.individuals = new LazyValue<>(() ->
-                Arrays.stream(softmax(farmerPrefs, researcherPrefs, educatorPrefs, doctorPrefs, inactivePrefs))
-                        .limit(4)
-                        .map(a -> a * population)
-                        .toArray());
-        this.betas = new LazyValue<>(() ->
-                Arrays.stream(softmax(foodPrefs, researchPrefs, educationPrefs, healthPrefs, settlementPrefs))
-                        .limit(4)
-                        .toArray()
-        );
+        this.individuals = new LazyValue<>(() -> {
+            double[] result = new double[occupationPrefs.length];
+            softmax(occupationPrefs, result);
+            for (int i = 0; i < result.length; i++) {
+                result[i] *= population;
+            }
+            return result;
+        });
+        this.betas = new LazyValue<>(() -> {
+            double[] result = new double[resourcePrefs.length];
+            softmax(resourcePrefs, result);
+            return result;
+        });
     }
 
     @Override
@@ -222,40 +246,44 @@ public class Status {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         Status status = (Status) o;
-        return population == status.population && Double.compare(status.farmerPrefs, farmerPrefs) == 0 && Double.compare(status.researcherPrefs, researcherPrefs) == 0 && Double.compare(status.educatorPrefs, educatorPrefs) == 0 && Double.compare(status.doctorPrefs, doctorPrefs) == 0 && Double.compare(status.inactivePrefs, inactivePrefs) == 0 && Double.compare(status.foodPrefs, foodPrefs) == 0 && Double.compare(status.researchPrefs, researchPrefs) == 0 && Double.compare(status.educationPrefs, educationPrefs) == 0 && Double.compare(status.healthPrefs, healthPrefs) == 0 && Double.compare(status.settlementPrefs, settlementPrefs) == 0 && Double.compare(status.technology, technology) == 0;
+        return population == status.population
+                && Double.compare(status.technology, technology) == 0
+                && sectors.equals(status.sectors)
+                && Arrays.equals(occupationPrefs, status.occupationPrefs)
+                && Arrays.equals(resourcePrefs, status.resourcePrefs);
     }
 
     public double getDoctorPrefs() {
-        return doctorPrefs;
+        return occupationPrefs[sectors.getDoctor()];
     }
 
     /**
      * Returns the number of doctors
      */
     public double getDoctors() {
-        return individuals.get()[3];
+        return individuals.get()[sectors.getDoctor()];
     }
 
     public double getEducationPrefs() {
-        return educationPrefs;
+        return resourcePrefs[sectors.getEducation()];
     }
 
     /**
      * Returns the research ratio
      */
     public double getEducationRatio() {
-        return betas.get()[2];
+        return betas.get()[sectors.getEducation()];
     }
 
     public double getEducatorPrefs() {
-        return educatorPrefs;
+        return occupationPrefs[sectors.getEducator()];
     }
 
     /**
      * Returns the number of farmers
      */
     public double getEducators() {
-        return individuals.get()[2];
+        return individuals.get()[sectors.getEducator()];
     }
 
     /**
@@ -266,47 +294,59 @@ public class Status {
     }
 
     public double getFarmerPrefs() {
-        return farmerPrefs;
+        return occupationPrefs[sectors.getFarmer()];
     }
 
     /**
      * Returns the number of farmers
      */
     public double getFarmers() {
-        return individuals.get()[0];
+        return individuals.get()[sectors.getFarmer()];
     }
 
     public double getFoodPrefs() {
-        return foodPrefs;
+        return resourcePrefs[sectors.getFood()];
     }
 
     /**
      * Returns the food ratio
      */
     public double getFoodRatio() {
-        return betas.get()[0];
+        return betas.get()[sectors.getFood()];
     }
 
     public double getHealthPrefs() {
-        return healthPrefs;
+        return resourcePrefs[sectors.getHealth()];
     }
 
     /**
      * Returns the health ratio
      */
     public double getHealthRatio() {
-        return betas.get()[3];
+        return betas.get()[sectors.getHealth()];
     }
 
     public double getInactivePrefs() {
-        return inactivePrefs;
+        return occupationPrefs[sectors.getInactive()];
     }
 
     /**
      * Returns the inactive number of individuals
      */
     public double getInactives() {
-        return population - getFarmers() - getResearchers() - getEducators() - getDoctors();
+        return complement(population, individuals.get(), sectors.getInactive());
+    }
+
+    /**
+     * Returns the number of individuals of an occupation
+     * The inactive individuals are the complement of the others to the population
+     *
+     * @param occupation the occupation index
+     */
+    public double getIndividuals(int occupation) {
+        return occupation == sectors.getInactive()
+                ? getInactives()
+                : individuals.get()[occupation];
     }
 
     /**
@@ -319,41 +359,77 @@ public class Status {
         );
     }
 
-    public int getPopulation() {
+    /**
+     * Returns the preferences of an occupation
+     *
+     * @param occupation the occupation index
+     */
+    public double getOccupationPrefs(int occupation) {
+        return occupationPrefs[occupation];
+    }
+
+    public long getPopulation() {
         return population;
     }
 
     public double getResearchPrefs() {
-        return researchPrefs;
+        return resourcePrefs[sectors.getResearch()];
     }
 
     /**
      * Returns the research ratio
      */
     public double getResearchRatio() {
-        return betas.get()[1];
+        return betas.get()[sectors.getResearch()];
     }
 
     public double getResearcherPrefs() {
-        return researcherPrefs;
+        return occupationPrefs[sectors.getResearcher()];
     }
 
     /**
      * Returns the number of farmers
      */
     public double getResearchers() {
-        return individuals.get()[1];
+        return individuals.get()[sectors.getResearcher()];
+    }
+
+    /**
+     * Returns the preferences of a resource share
+     *
+     * @param resource the resource index
+     */
+    public double getResourcePrefs(int resource) {
+        return resourcePrefs[resource];
+    }
+
+    /**
+     * Returns the ratio of a resource share
+     *
+     * @param resource the resource index
+     */
+    public double getResourceRatio(int resource) {
+        return resource == sectors.getSettlement()
+                ? getSettlementRatio()
+                : betas.get()[resource];
+    }
+
+    /**
+     * Returns the sectors
+     */
+    public Sectors getSectors() {
+        return sectors;
     }
 
     public double getSettlementPrefs() {
-        return settlementPrefs;
+        return resourcePrefs[sectors.getSettlement()];
     }
 
     /**
      * Returns the research ratio
      */
     public double getSettlementRatio() {
-        return 1 - betas.get()[0] - betas.get()[1] - betas.get()[2] - betas.get()[3];
+        return complement(1, betas.get(), sectors.getSettlement());
     }
 
     public double getTechnology() {
@@ -367,63 +443,87 @@ public class Status {
      */
     public Status setTechnology(double technology) {
         return technology != this.technology
-                ? new Status(population, farmerPrefs, researcherPrefs, educatorPrefs, doctorPrefs, inactivePrefs,
-                foodPrefs, researchPrefs, educationPrefs, healthPrefs, settlementPrefs, technology)
+                ? new Status(sectors, population, occupationPrefs, resourcePrefs, technology, false)
                 : this;
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(population, farmerPrefs, researcherPrefs, educatorPrefs, doctorPrefs, inactivePrefs, foodPrefs, researchPrefs, educationPrefs, healthPrefs, settlementPrefs, technology);
+        return Objects.hash(sectors, population, Arrays.hashCode(occupationPrefs), Arrays.hashCode(resourcePrefs), technology);
+    }
+
+    /**
+     * Returns the complement of the values but the excluded one to the total
+     *
+     * @param total    the total
+     * @param values   the values
+     * @param excluded the excluded index
+     */
+    private static double complement(double total, double[] values, int excluded) {
+        double result = total;
+        for (int i = 0; i < values.length; i++) {
+            if (i != excluded) {
+                result -= values[i];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the offset centering the preferences ((max + min) / 2)
+     *
+     * @param prefs the preferences
+     */
+    static double offset(double[] prefs) {
+        double min = prefs[0];
+        double max = prefs[0];
+        for (int i = 1; i < prefs.length; i++) {
+            min = min(min, prefs[i]);
+            max = max(max, prefs[i]);
+        }
+        return (max + min) / 2;
     }
 
     /**
      * Returns the normalized status
+     * The preferences are centered (the softmax ratios do not change)
      *
      * @param minTechnology the minimum level of technology
      * @param maxTechnology the maximum level of technology
      */
     public Status normalize(double minTechnology, double maxTechnology) {
-        double minPopPrefs = DoubleStream.of(farmerPrefs, researcherPrefs, educatorPrefs, inactivePrefs).min().orElseThrow();
-        double maxPopPrefs = DoubleStream.of(farmerPrefs, researcherPrefs, educatorPrefs, inactivePrefs).max().orElseThrow();
-        double minResPrefs = DoubleStream.of(foodPrefs, researchPrefs, educationPrefs, settlementPrefs).min().orElseThrow();
-        double maxResPrefs = DoubleStream.of(foodPrefs, researchPrefs, educationPrefs, settlementPrefs).max().orElseThrow();
-        double popRefsOffset = (maxPopPrefs + minPopPrefs) / 2;
-        double resRefsOffset = (maxResPrefs + minResPrefs) / 2;
-        int newPopulation = max(0, population);
+        double popRefsOffset = offset(occupationPrefs);
+        double resRefsOffset = offset(resourcePrefs);
+        long newPopulation = max(0, population);
         double newTechnology = min(max(minTechnology, technology), maxTechnology);
-        return newPopulation != population
-                || newTechnology != technology
-                || popRefsOffset != 0
-                || resRefsOffset != 0
-                ? new Status(newPopulation,
-                farmerPrefs - popRefsOffset,
-                researcherPrefs - popRefsOffset,
-                educatorPrefs - popRefsOffset,
-                doctorPrefs, inactivePrefs - popRefsOffset,
-                foodPrefs - resRefsOffset,
-                researchPrefs - resRefsOffset,
-                educationPrefs - resRefsOffset,
-                healthPrefs, settlementPrefs - resRefsOffset,
-                newTechnology)
-                : this;
+        if (newPopulation == population
+                && newTechnology == technology
+                && popRefsOffset == 0
+                && resRefsOffset == 0) {
+            return this;
+        }
+        double[] newOccupationPrefs = new double[occupationPrefs.length];
+        for (int i = 0; i < occupationPrefs.length; i++) {
+            newOccupationPrefs[i] = occupationPrefs[i] - popRefsOffset;
+        }
+        double[] newResourcePrefs = new double[resourcePrefs.length];
+        for (int i = 0; i < resourcePrefs.length; i++) {
+            newResourcePrefs[i] = resourcePrefs[i] - resRefsOffset;
+        }
+        return new Status(sectors, newPopulation, newOccupationPrefs, newResourcePrefs, newTechnology, false);
     }
 
     @Override
     public String toString() {
-        return new StringJoiner(", ", Status.class.getSimpleName() + "[", "]")
-                .add("population=" + population)
-                .add("farmerPrefs=" + farmerPrefs)
-                .add("researcherPrefs=" + researcherPrefs)
-                .add("educatorPrefs=" + educatorPrefs)
-                .add("doctorPrefs=" + doctorPrefs)
-                .add("inactivePrefs=" + inactivePrefs)
-                .add("foodPrefs=" + foodPrefs)
-                .add("researchPrefs=" + researchPrefs)
-                .add("educationPrefs=" + educationPrefs)
-                .add("healthPrefs=" + healthPrefs)
-                .add("settlementPrefs=" + settlementPrefs)
-                .add("technology=" + technology)
+        StringJoiner joiner = new StringJoiner(", ", Status.class.getSimpleName() + "[", "]")
+                .add("population=" + population);
+        for (int i = 0; i < occupationPrefs.length; i++) {
+            joiner.add(sectors.getOccupations().get(i) + "Prefs=" + occupationPrefs[i]);
+        }
+        for (int i = 0; i < resourcePrefs.length; i++) {
+            joiner.add(sectors.getResources().get(i) + "Prefs=" + resourcePrefs[i]);
+        }
+        return joiner.add("technology=" + technology)
                 .toString();
     }
 }
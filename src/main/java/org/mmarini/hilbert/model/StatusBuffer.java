@@ -0,0 +1,236 @@
+/*
+ * Copyright (c) 2023 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ */
+
+package org.mmarini.hilbert.model;
+
+import java.util.StringJoiner;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+/**
+ * The mutable status of society updated in place by the step kernels
+ * <p>
+ * It holds the same values of {@link Status} in primitive fields and arrays
+ * in the order of the sectors.
+ * </p>
+ */
+public class StatusBuffer {
+    /**
+     * Returns the buffer with the values of status
+     *
+     * @param status the status
+     */
+    public static StatusBuffer of(Status status) {
+        return new StatusBuffer().set(status);
+    }
+
+    /**
+     * Centers in place the preferences ((max + min) / 2)
+     * The softmax ratios do not change (0 + value normalizes the negative zeros as Status.sum does)
+     *
+     * @param prefs the preferences
+     */
+    static void center(double[] prefs) {
+        double minPrefs = 0d + prefs[0];
+        double maxPrefs = minPrefs;
+        for (int i = 1; i < prefs.length; i++) {
+            double value = 0d + prefs[i];
+            minPrefs = min(minPrefs, value);
+            maxPrefs = max(maxPrefs, value);
+        }
+        double offset = (maxPrefs + minPrefs) / 2;
+        for (int i = 0; i < prefs.length; i++) {
+            prefs[i] = (0d + prefs[i]) - offset;
+        }
+    }
+
+    Sectors sectors = Sectors.DEFAULT;
+    long population;
+    double[] occupationPrefs = new double[Sectors.DEFAULT.occupationCount()];
+    double[] resourcePrefs = new double[Sectors.DEFAULT.resourceCount()];
+    double technology;
+
+    public double getDoctorPrefs() {
+        return occupationPrefs[sectors.getDoctor()];
+    }
+
+    public double getEducationPrefs() {
+        return resourcePrefs[sectors.getEducation()];
+    }
+
+    public double getEducatorPrefs() {
+        return occupationPrefs[sectors.getEducator()];
+    }
+
+    public double getFarmerPrefs() {
+        return occupationPrefs[sectors.getFarmer()];
+    }
+
+    public double getFoodPrefs() {
+        return resourcePrefs[sectors.getFood()];
+    }
+
+    public double getHealthPrefs() {
+        return resourcePrefs[sectors.getHealth()];
+    }
+
+    public double getInactivePrefs() {
+        return occupationPrefs[sectors.getInactive()];
+    }
+
+    /**
+     * Returns the preferences of an occupation
+     *
+     * @param occupation the occupation index
+     */
+    public double getOccupationPrefs(int occupation) {
+        return occupationPrefs[occupation];
+    }
+
+    public long getPopulation() {
+        return population;
+    }
+
+    public double getResearchPrefs() {
+        return resourcePrefs[sectors.getResearch()];
+    }
+
+    public double getResearcherPrefs() {
+        return occupationPrefs[sectors.getResearcher()];
+    }
+
+    /**
+     * Returns the preferences of a resource share
+     *
+     * @param resource the resource index
+     */
+    public double getResourcePrefs(int resource) {
+        return resourcePrefs[resource];
+    }
+
+    public Sectors getSectors() {
+        return sectors;
+    }
+
+    public double getSettlementPrefs() {
+        return resourcePrefs[sectors.getSettlement()];
+    }
+
+    public double getTechnology() {
+        return technology;
+    }
+
+    /**
+     * Normalizes in place the status as {@link Status#normalize(double, double)} does
+     *
+     * @param minTechnology the minimum level of technology
+     * @param maxTechnology the maximum level of technology
+     */
+    void normalize(double minTechnology, double maxTechnology) {
+        population = max(0, population);
+        technology = min(max(minTechnology, technology), maxTechnology);
+        center(occupationPrefs);
+        center(resourcePrefs);
+    }
+
+    /**
+     * Computes the number of individuals by occupation as {@link Status} does
+     * The inactive individuals are the complement of the others to the population
+     *
+     * @param individuals the number of individuals (output)
+     */
+    void occupations(double[] individuals) {
+        ExtMath.softmax(occupationPrefs, individuals);
+        int inactive = sectors.getInactive();
+        double inactives = population;
+        for (int i = 0; i < occupationPrefs.length; i++) {
+            if (i != inactive) {
+                individuals[i] *= population;
+                inactives -= individuals[i];
+            }
+        }
+        individuals[inactive] = inactives;
+    }
+
+    /**
+     * Computes the resource shares as {@link Status} does
+     * The settlement share is the complement of the others to 1
+     *
+     * @param ratios the ratios (output)
+     */
+    void resources(double[] ratios) {
+        ExtMath.softmax(resourcePrefs, ratios);
+        int settlement = sectors.getSettlement();
+        double settlementRatio = 1;
+        for (int i = 0; i < resourcePrefs.length; i++) {
+            if (i != settlement) {
+                settlementRatio -= ratios[i];
+            }
+        }
+        ratios[settlement] = settlementRatio;
+    }
+
+    /**
+     * Sets the values of status
+     *
+     * @param status the status
+     * @return the buffer
+     */
+    public StatusBuffer set(Status status) {
+        Sectors sectors = status.getSectors();
+        if (!sectors.equals(this.sectors)) {
+            this.sectors = sectors;
+            this.occupationPrefs = new double[sectors.occupationCount()];
+            this.resourcePrefs = new double[sectors.resourceCount()];
+        }
+        this.population = status.getPopulation();
+        for (int i = 0; i < occupationPrefs.length; i++) {
+            occupationPrefs[i] = status.getOccupationPrefs(i);
+        }
+        for (int i = 0; i < resourcePrefs.length; i++) {
+            resourcePrefs[i] = status.getResourcePrefs(i);
+        }
+        this.technology = status.getTechnology();
+        return this;
+    }
+
+    /**
+     * Returns the immutable status with the buffer values
+     */
+    public Status toStatus() {
+        return new Status(sectors, population, occupationPrefs, resourcePrefs, technology);
+    }
+
+    @Override
+    public String toString() {
+        return new StringJoiner(", ", StatusBuffer.class.getSimpleName() + "[", "]")
+                .add("population=" + population)
+                .add("technology=" + technology)
+                .toString();
+    }
+}
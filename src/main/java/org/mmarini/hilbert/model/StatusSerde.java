@@ -35,6 +35,7 @@ import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.List;
 
 import static org.mmarini.yaml.Utils.objectMapper;
 
@@ -44,7 +45,7 @@ import static org.mmarini.yaml.Utils.objectMapper;
 public class StatusSerde {
     public static final String VERSION = "1.0";
     private static final Logger logger = LoggerFactory.getLogger(StatusSerde.class);
-    private static final String STATUS_SCHEMA = "/status-schema.yml";
+    static final String STATUS_SCHEMA = "/status-schema.yml";
 
     /**
      * Returns the society from yaml resource
@@ -56,6 +57,28 @@ public class StatusSerde {
         return fromJson(Utils.fromFile(file));
     }
 
+    /**
+     * Returns the society with the sectors from yaml resource
+     *
+     * @param file    the yaml resource
+     * @param sectors the sectors
+     * @throws IOException in case of error
+     */
+    public static Status fromFile(String file, Sectors sectors) throws IOException {
+        return fromJson(Utils.fromFile(file), sectors);
+    }
+
+    /**
+     * Returns the society with the sectors from yaml resource
+     *
+     * @param file    the yaml resource
+     * @param sectors the sectors
+     * @throws IOException in case of error
+     */
+    public static Status fromFile(File file, Sectors sectors) throws IOException {
+        return fromJson(Utils.fromFile(file), sectors);
+    }
+
     /**
      * Returns the society from yaml resource
      *
@@ -72,19 +95,48 @@ public class StatusSerde {
      * @param node the json node
      */
     public static Status fromJson(JsonNode node) {
+        return fromJson(node, Sectors.DEFAULT);
+    }
+
+    /**
+     * Returns the society with the sectors from json node
+     *
+     * @param node    the json node
+     * @param sectors the sectors
+     */
+    public static Status fromJson(JsonNode node, Sectors sectors) {
         JsonSchemas.instance().validateOrThrow(node, STATUS_SCHEMA);
-        return new Status(
-                node.path("population").asInt(),
-                node.path("farmerPrefs").asDouble(),
-                node.path("researcherPrefs").asDouble(),
-                node.path("educatorPrefs").asDouble(),
-                node.path("doctorPrefs").asDouble(),
-                node.path("inactivePrefs").asDouble(),
-                node.path("foodPrefs").asDouble(),
-                node.path("researchPrefs").asDouble(),
-                node.path("educationPrefs").asDouble(),
-                node.path("healthPrefs").asDouble(),
-                node.path("settlementPrefs").asDouble(),
+        return createStatus(node, sectors);
+    }
+
+    /**
+     * Returns the society from validated json node
+     *
+     * @param node the json node
+     */
+    static Status createStatus(JsonNode node) {
+        return createStatus(node, Sectors.DEFAULT);
+    }
+
+    /**
+     * Returns the society with the sectors from validated json node
+     * The preferences of sector are the "&lt;name&gt;Prefs" properties (default 0)
+     *
+     * @param node    the json node
+     * @param sectors the sectors
+     */
+    static Status createStatus(JsonNode node, Sectors sectors) {
+        List<String> occupations = sectors.getOccupations();
+        double[] occupationPrefs = new double[occupations.size()];
+        for (int i = 0; i < occupationPrefs.length; i++) {
+            occupationPrefs[i] = node.path(occupations.get(i) + "Prefs").asDouble();
+        }
+        List<String> resources = sectors.getResources();
+        double[] resourcePrefs = new double[resources.size()];
+        for (int i = 0; i < resourcePrefs.length; i++) {
+            resourcePrefs[i] = node.path(resources.get(i) + "Prefs").asDouble();
+        }
+        return new Status(sectors, node.path("population").asLong(), occupationPrefs, resourcePrefs,
                 node.path("technology").asDouble());
     }
 
@@ -97,16 +149,13 @@ public class StatusSerde {
         ObjectNode node = objectMapper.createObjectNode();
         node.put("version", VERSION);
         node.put("population", status.getPopulation());
-        node.put("farmerPrefs", status.getFarmerPrefs());
-        node.put("researcherPrefs", status.getResearcherPrefs());
-        node.put("educatorPrefs", status.getEducatorPrefs());
-        node.put("doctorPrefs", status.getDoctorPrefs());
-        node.put("inactivePrefs", status.getInactivePrefs());
-        node.put("foodPrefs", status.getFoodPrefs());
-        node.put("researchPrefs", status.getResearchPrefs());
-        node.put("educationPrefs", status.getEducationPrefs());
-        node.put("healthPrefs", status.getHealthPrefs());
-        node.put("settlementPrefs", status.getSettlementPrefs());
+        Sectors sectors = status.getSectors();
+        for (int i = 0; i < sectors.occupationCount(); i++) {
+            node.put(sectors.getOccupations().get(i) + "Prefs", status.getOccupationPrefs(i));
+        }
+        for (int i = 0; i < sectors.resourceCount(); i++) {
+            node.put(sectors.getResources().get(i) + "Prefs", status.getResourcePrefs(i));
+        }
         node.put("technology", status.getTechnology());
         return node;
     }
@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2023 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ */
+
+package org.mmarini.hilbert.model;
+
+import static java.lang.Math.abs;
+import static java.lang.Math.max;
+import static java.lang.String.format;
+
+/**
+ * Terminates the run when population and technology are stationary
+ * <p>
+ * The detector keeps the moving window of the last steps and compares the mean of the older half
+ * with the mean of the newer half. The values are stationary when the change of means is not greater
+ * than the tolerance relative to the larger mean.
+ * The half sums are updated at each step, so the test costs O(1) without allocations.
+ * </p>
+ */
+public class SteadyStateDetector implements TerminationDetector {
+    private final int window;
+    private final double tolerance;
+    private final double[] populations;
+    private final double[] technologies;
+    private long count;
+    private int index;
+    private double oldPopulation;
+    private double newPopulation;
+    private double oldTechnology;
+    private double newTechnology;
+
+    /**
+     * Creates the detector
+     *
+     * @param window    the number of steps of window (even)
+     * @param tolerance the relative tolerance of the change of means
+     */
+    public SteadyStateDetector(int window, double tolerance) {
+        if (window < 2 || window % 2 != 0) {
+            throw new IllegalArgumentException(format("Window must be even and at least 2 (%d)", window));
+        }
+        this.window = window;
+        this.tolerance = tolerance;
+        this.populations = new double[window];
+        this.technologies = new double[window];
+    }
+
+    @Override
+    public String getReason() {
+        return Termination.STEADY_STATE;
+    }
+
+    @Override
+    public double[] getState() {
+        double[] state = new double[6 + 2 * window];
+        state[0] = count;
+        state[1] = index;
+        state[2] = oldPopulation;
+        state[3] = newPopulation;
+        state[4] = oldTechnology;
+        state[5] = newTechnology;
+        System.arraycopy(populations, 0, state, 6, window);
+        System.arraycopy(technologies, 0, state, 6 + window, window);
+        return state;
+    }
+
+    @Override
+    public void setState(double[] state) {
+        if (state.length != 6 + 2 * window) {
+            throw new IllegalArgumentException(format("State must have %d values (%d)", 6 + 2 * window, state.length));
+        }
+        count = (long) state[0];
+        index = (int) state[1];
+        oldPopulation = state[2];
+        newPopulation = state[3];
+        oldTechnology = state[4];
+        newTechnology = state[5];
+        System.arraycopy(state, 6, populations, 0, window);
+        System.arraycopy(state, 6 + window, technologies, 0, window);
+    }
+
+    /**
+     * Returns true if the means of halves are equal within the tolerance
+     *
+     * @param oldSum the sum of older half
+     * @param newSum the sum of newer half
+     */
+    private boolean isStationary(double oldSum, double newSum) {
+        return abs(newSum - oldSum) <= tolerance * max(abs(oldSum), abs(newSum));
+    }
+
+    @Override
+    public boolean test(StatusBuffer status) {
+        int half = window / 2;
+        if (count >= window) {
+            // Drops the oldest values
+            oldPopulation -= populations[index];
+            oldTechnology -= technologies[index];
+        }
+        if (count >= half) {
+            // Moves the values of half window ago from the newer to the older half
+            int mid = (index + half) % window;
+            newPopulation -= populations[mid];
+            oldPopulation += populations[mid];
+            newTechnology -= technologies[mid];
+            oldTechnology += technologies[mid];
+        }
+        populations[index] = status.getPopulation();
+        technologies[index] = status.getTechnology();
+        newPopulation += populations[index];
+        newTechnology += technologies[index];
+        index = (index + 1) % window;
+        count++;
+        return count >= window
+                && isStationary(oldPopulation, newPopulation)
+                && isStationary(oldTechnology, newTechnology);
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright (c) 2023 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ */
+
+package org.mmarini.hilbert.model;
+
+import com.fasterxml.jackson.core.JsonPointer;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.util.stream.StreamSupport;
+
+import static java.lang.String.format;
+
+/**
+ * A swept field of the rules or status document
+ * <p>
+ * The field is identified by a json pointer and takes either the listed values
+ * or the values in the range [min, max].
+ * </p>
+ */
+public class SweepParameter {
+    public static final String RULES_DOCUMENT = "rules";
+    public static final String STATUS_DOCUMENT = "status";
+    public static final int DEFAULT_COUNT = 2;
+
+    /**
+     * Returns the parameter from json node
+     *
+     * @param node the parameter node
+     */
+    static SweepParameter fromJson(JsonNode node) {
+        String document = node.path("document").asText(RULES_DOCUMENT);
+        String path = node.path("path").asText();
+        JsonNode valuesNode = node.path("values");
+        double[] values = valuesNode.isArray()
+                ? StreamSupport.stream(valuesNode.spliterator(), false)
+                .mapToDouble(JsonNode::asDouble)
+                .toArray()
+                : null;
+        double min = node.path("min").asDouble();
+        double max = node.path("max").asDouble();
+        if (values == null && min > max) {
+            throw new IllegalArgumentException(format("Parameter \"%s\" min must not be greater than max (%g > %g)",
+                    path, min, max));
+        }
+        return new SweepParameter(document, path, values, min, max, node.path("count").asInt(DEFAULT_COUNT));
+    }
+
+    private final String document;
+    private final String path;
+    private final JsonPointer pointer;
+    private final double[] values;
+    private final double min;
+    private final double max;
+    private final int count;
+
+    /**
+     * Creates the parameter
+     *
+     * @param document the document (rules, status)
+     * @param path     the json pointer of field
+     * @param values   the values or null if range
+     * @param min      the minimum value of range
+     * @param max      the maximum value of range
+     * @param count    the number of grid values in the range
+     */
+    public SweepParameter(String document, String path, double[] values, double min, double max, int count) {
+        this.document = document;
+        this.path = path;
+        this.pointer = JsonPointer.compile(path);
+        this.values = values;
+        this.min = min;
+        this.max = max;
+        this.count = count;
+    }
+
+    /**
+     * Sets the field value in the document
+     *
+     * @param root  the document root
+     * @param value the value
+     */
+    void apply(JsonNode root, double value) {
+        JsonNode parent = root.at(pointer.head());
+        if (!(parent instanceof ObjectNode)) {
+            throw new IllegalArgumentException(format("Missing parent of \"%s\"", path));
+        }
+        String field = pointer.last().getMatchingProperty();
+        if (value == (long) value) {
+            ((ObjectNode) parent).put(field, (long) value);
+        } else {
+            ((ObjectNode) parent).put(field, value);
+        }
+    }
+
+    /**
+     * Returns the document (rules, status)
+     */
+    public String getDocument() {
+        return document;
+    }
+
+    /**
+     * Returns the integer quantum of the field values (multipleOf of the field schema) or 0 if real
+     *
+     * @param schema the document schema
+     */
+    double getQuantum(JsonNode schema) {
+        JsonNode node = schema;
+        for (JsonPointer p = pointer; !p.matches(); p = p.tail()) {
+            node = node.path("properties").path(p.getMatchingProperty());
+        }
+        double quantum = node.path("multipleOf").asDouble(0);
+        return quantum >= 1 && quantum == Math.rint(quantum) ? quantum
+                : "integer".equals(node.path("type").asText()) ? 1
+                : 0;
+    }
+
+    /**
+     * Returns the grid values
+     */
+    public double[] getGridValues() {
+        if (values != null) {
+            return values.clone();
+        }
+        if (count == 1) {
+            return new double[]{min};
+        }
+        double[] result = new double[count];
+        for (int i = 0; i < count; i++) {
+            result[i] = min + (max - min) * i / (count - 1);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the value of a latin hypercube stratum coordinate
+     *
+     * @param u the coordinate in range [0, 1)
+     */
+    public double getLhsValue(double u) {
+        return values != null
+                ? values[Math.min((int) (u * values.length), values.length - 1)]
+                : min + (max - min) * u;
+    }
+
+    /**
+     * Returns the maximum value
+     */
+    public double getMax() {
+        if (values == null) {
+            return max;
+        }
+        double result = values[0];
+        for (double value : values) {
+            result = Math.max(result, value);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the minimum value
+     */
+    public double getMin() {
+        if (values == null) {
+            return min;
+        }
+        double result = values[0];
+        for (double value : values) {
+            result = Math.min(result, value);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the name of summary column (document and path)
+     */
+    public String getName() {
+        return document + path;
+    }
+
+    /**
+     * Returns the json pointer path
+     */
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * Throws exception if the field is not a number of the document
+     *
+     * @param root the document root
+     */
+    void validate(JsonNode root) {
+        if (!root.at(pointer).isNumber()) {
+            throw new IllegalArgumentException(format("Missing numeric field \"%s\" in %s", path, document));
+        }
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2023 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ */
+
+package org.mmarini.hilbert.model;
+
+import java.util.List;
+
+import static java.lang.String.format;
+
+/**
+ * Tests the termination detectors of a run
+ * <p>
+ * The run terminates at the first step any detector holds.
+ * The reasons are coded as integer in the numeric tables (0 for no termination).
+ * </p>
+ */
+public class Termination {
+    public static final String EXTINCTION = "extinction";
+    public static final String TECHNOLOGY_CAP = "technologyCap";
+    public static final String STEADY_STATE = "steadyState";
+    public static final List<String> REASONS = List.of(EXTINCTION, TECHNOLOGY_CAP, STEADY_STATE);
+
+    /**
+     * Returns the code of termination reason (0 if null)
+     *
+     * @param reason the reason or null if not terminated
+     */
+    public static int code(String reason) {
+        return reason != null ? REASONS.indexOf(reason) + 1 : 0;
+    }
+
+    /**
+     * Returns the termination reason of a code (null if 0)
+     *
+     * @param code the code of termination reason
+     */
+    public static String reason(int code) {
+        if (code < 0 || code > REASONS.size()) {
+            throw new IllegalArgumentException(format("Invalid termination code (%d)", code));
+        }
+        return code > 0 ? REASONS.get(code - 1) : null;
+    }
+
+    /**
+     * Returns the termination by extinction only
+     */
+    public static Termination extinction() {
+        return new Termination(List.of(new ExtinctionDetector()));
+    }
+
+    private final TerminationDetector[] detectors;
+    private String reason;
+
+    /**
+     * Creates the termination
+     *
+     * @param detectors the detectors
+     */
+    public Termination(List<? extends TerminationDetector> detectors) {
+        this.detectors = detectors.toArray(TerminationDetector[]::new);
+    }
+
+    /**
+     * Returns the reason of termination or null if not terminated
+     */
+    public String getReason() {
+        return reason;
+    }
+
+    /**
+     * Returns the states of detectors
+     */
+    public double[][] getStates() {
+        double[][] states = new double[detectors.length][];
+        for (int i = 0; i < detectors.length; i++) {
+            states[i] = detectors[i].getState();
+        }
+        return states;
+    }
+
+    /**
+     * Returns true if the run is terminated
+     */
+    public boolean isTerminated() {
+        return reason != null;
+    }
+
+    /**
+     * Sets the reason of termination
+     *
+     * @param reason the reason or null if not terminated
+     */
+    public void setReason(String reason) {
+        if (reason != null && !REASONS.contains(reason)) {
+            throw new IllegalArgumentException(format("Invalid termination reason \"%s\"", reason));
+        }
+        this.reason = reason;
+    }
+
+    /**
+     * Sets the states of detectors
+     *
+     * @param states the states
+     */
+    public void setStates(double[][] states) {
+        if (states.length != detectors.length) {
+            throw new IllegalArgumentException(format("Detector states must be %d (%d)", detectors.length, states.length));
+        }
+        for (int i = 0; i < detectors.length; i++) {
+            detectors[i].setState(states[i]);
+        }
+    }
+
+    /**
+     * Returns true if the run must terminate after the step
+     * All the detectors are tested so they keep their window up to date
+     *
+     * @param status the status after the step
+     */
+    public boolean test(StatusBuffer status) {
+        for (TerminationDetector detector : detectors) {
+            if (detector.test(status) && reason == null) {
+                reason = detector.getReason();
+            }
+        }
+        return reason != null;
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2023 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ */
+
+package org.mmarini.hilbert.model;
+
+/**
+ * Detects the condition to terminate a run
+ * <p>
+ * The detector is tested after each step and may hold the state of previous steps.
+ * The state is exported to resume the detection from a checkpoint.
+ * </p>
+ */
+public interface TerminationDetector {
+    /**
+     * Returns the termination reason
+     */
+    String getReason();
+
+    /**
+     * Returns the state of detector
+     */
+    default double[] getState() {
+        return new double[0];
+    }
+
+    /**
+     * Sets the state of detector
+     *
+     * @param state the state
+     */
+    default void setState(double[] state) {
+    }
+
+    /**
+     * Returns true if the run must terminate after the step
+     *
+     * @param status the status after the step
+     */
+    boolean test(StatusBuffer status);
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2023 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ */
+
+package org.mmarini.hilbert.model;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.lang.String.format;
+
+/**
+ * Forwards a sample of the events with a maximum rate
+ * <p>
+ * The sink forwards one event every given number of events of the same type,
+ * then the forwarded events are limited by a token bucket refilled at the maximum rate (events per second).
+ * The bucket holds at least an event, so the rates below one event per second forward an event from time to time.
+ * The discarded events are counted.
+ * </p>
+ */
+public class ThrottledEventSink implements EventSink {
+    private final EventSink sink;
+    private final int sampling;
+    private final double maxRate;
+    private final double capacity;
+    private final long[] counts;
+    private double tokens;
+    private long lastTime;
+    private long dropped;
+
+    /**
+     * Creates the sink
+     *
+     * @param sink     the forwarded sink
+     * @param sampling the number of events by forwarded event of each type
+     * @param maxRate  the maximum number of forwarded events per second (0 if unlimited)
+     */
+    public ThrottledEventSink(EventSink sink, int sampling, double maxRate) {
+        if (sampling <= 0) {
+            throw new IllegalArgumentException(format("Sampling must be positive (%d)", sampling));
+        }
+        if (maxRate < 0) {
+            throw new IllegalArgumentException(format("Max rate must not be negative (%g)", maxRate));
+        }
+        this.sink = sink;
+        this.sampling = sampling;
+        this.maxRate = maxRate;
+        this.counts = new long[EventType.values().length];
+        this.capacity = max(1, maxRate);
+        this.tokens = capacity;
+        this.lastTime = System.nanoTime();
+    }
+
+    @Override
+    public void accept(EventType type, long step, double value) {
+        if (counts[type.ordinal()]++ % sampling != 0) {
+            dropped++;
+            return;
+        }
+        if (maxRate > 0) {
+            long now = System.nanoTime();
+            tokens = min(capacity, tokens + (now - lastTime) * maxRate * 1e-9);
+            lastTime = now;
+            if (tokens < 1) {
+                dropped++;
+                return;
+            }
+            tokens--;
+        }
+        sink.accept(type, step, value);
+    }
+
+    /**
+     * Returns the number of discarded events
+     */
+    public long getDropped() {
+        return dropped;
+    }
+}
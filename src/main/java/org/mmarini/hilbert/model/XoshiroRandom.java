@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2023 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ */
+
+package org.mmarini.hilbert.model;
+
+import static java.lang.String.format;
+
+/**
+ * The xoshiro256** generator by D. Blackman and S. Vigna
+ * <p>
+ * The state is initialized from the seed by SplitMix64 generator.
+ * It is not thread safe.
+ * </p>
+ */
+public class XoshiroRandom implements RandomSource {
+    private long s0;
+    private long s1;
+    private long s2;
+    private long s3;
+
+    /**
+     * Creates the generator
+     *
+     * @param seed the seed
+     */
+    public XoshiroRandom(long seed) {
+        SplitMixRandom init = new SplitMixRandom(seed);
+        this.s0 = init.nextLong();
+        this.s1 = init.nextLong();
+        this.s2 = init.nextLong();
+        this.s3 = init.nextLong();
+    }
+
+    @Override
+    public long[] getState() {
+        return new long[]{s0, s1, s2, s3};
+    }
+
+    @Override
+    public void setState(long[] state) {
+        if (state.length != 4) {
+            throw new IllegalArgumentException(format("State must have 4 values (%d)", state.length));
+        }
+        if (state[0] == 0 && state[1] == 0 && state[2] == 0 && state[3] == 0) {
+            throw new IllegalArgumentException("State must not be all zeros");
+        }
+        this.s0 = state[0];
+        this.s1 = state[1];
+        this.s2 = state[2];
+        this.s3 = state[3];
+    }
+
+    @Override
+    public long nextLong() {
+        long result = Long.rotateLeft(s1 * 5, 7) * 9;
+        long t = s1 << 17;
+        s2 ^= s0;
+        s3 ^= s1;
+        s1 ^= s2;
+        s0 ^= s3;
+        s2 ^= t;
+        s3 = Long.rotateLeft(s3, 45);
+        return result;
+    }
+}
@@ -0,0 +1,312 @@
+/*
+ * Copyright (c) 2023 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ */
+
+package org.mmarini.hilbert.apps;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import net.sourceforge.argparse4j.inf.ArgumentParser;
+import net.sourceforge.argparse4j.inf.ArgumentParserException;
+import net.sourceforge.argparse4j.inf.Namespace;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mmarini.hilbert.model.BinaryEventSink;
+import org.mmarini.hilbert.model.Status;
+import org.mmarini.yaml.Utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BatchTest {
+
+    @Test
+    void headless(@TempDir Path dir) throws IOException, InterruptedException {
+        // Given ...
+        File output = dir.resolve("output.yml").toFile();
+        File kpis = dir.resolve("kpis.csv").toFile();
+        String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+        Process process = new ProcessBuilder(java,
+                "-verbose:class",
+                "-cp", System.getProperty("java.class.path"),
+                Batch.class.getName(),
+                "-n", "10",
+                "-o", output.getPath(),
+                "-k", kpis.getPath())
+                .redirectErrorStream(true)
+                .start();
+
+        // When ...
+        String log = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+        assertTrue(process.waitFor(60, TimeUnit.SECONDS));
+
+        // Then ...
+        assertEquals(0, process.exitValue(), log);
+        assertThat(log, containsString("Cold start to first step"));
+        assertThat(log, not(containsString(" java.awt.")));
+        assertThat(log, not(containsString(" javax.swing.")));
+        assertTrue(output.exists());
+        List<String> lines = Files.readAllLines(kpis.toPath());
+        assertThat(lines, hasSize(11));
+        assertThat(lines.get(0), startsWith("\"population\",\"technology\""));
+    }
+
+    @Test
+    void ensemble(@TempDir Path dir) throws IOException, ArgumentParserException {
+        // Given ...
+        File output = dir.resolve("output.yml").toFile();
+        File stats = dir.resolve("stats.csv").toFile();
+        Namespace args = Batch.createParser().parseArgs(new String[]{
+                "-n", "10",
+                "-o", output.getPath(),
+                "--replicas", "4",
+                "--threads", "2",
+                "--stats", stats.getPath(),
+                "--quantiles", "0.1,0.9"
+        });
+
+        // When ...
+        new Batch().run(args);
+
+        // Then ...
+        JsonNode outputNode = Utils.fromFile(output);
+        assertEquals(4, outputNode.path("replicas").size());
+        assertEquals(10, outputNode.path("replicas").path(0).path("step").asLong());
+        List<String> lines = Files.readAllLines(stats.toPath());
+        assertThat(lines, hasSize(11));
+        assertThat(lines.get(0), startsWith("\"population.mean\",\"population.var\",\"population.q10\",\"population.q90\""));
+    }
+
+    @Test
+    void resume(@TempDir Path dir) throws IOException, ArgumentParserException {
+        // Given ...
+        String expectedOutput = dir.resolve("expected.yml").toString();
+        String expectedKpis = dir.resolve("expected.csv").toString();
+        String output = dir.resolve("output.yml").toString();
+        String kpis = dir.resolve("kpis.csv").toString();
+        String checkpoint = dir.resolve("checkpoint.bin").toString();
+        ArgumentParser parser = Batch.createParser();
+        new Batch().run(parser.parseArgs(new String[]{
+                "-n", "50", "-o", expectedOutput, "-k", expectedKpis
+        }));
+        // The interrupted run writes the kpis after the last checkpoint
+        new Batch().run(parser.parseArgs(new String[]{
+                "-n", "35", "-o", output, "-k", kpis,
+                "-c", checkpoint, "--checkpoint-steps", "10"
+        }));
+
+        // When ...
+        new Batch().run(parser.parseArgs(new String[]{
+                "-n", "50", "-o", output, "-k", kpis,
+                "-c", checkpoint, "--checkpoint-steps", "10", "--resume"
+        }));
+
+        // Then ...
+        assertArrayEquals(Files.readAllBytes(Path.of(expectedKpis)), Files.readAllBytes(Path.of(kpis)));
+        assertArrayEquals(Files.readAllBytes(Path.of(expectedOutput)), Files.readAllBytes(Path.of(output)));
+    }
+
+    @Test
+    void resumeEvents(@TempDir Path dir) throws IOException, ArgumentParserException {
+        // Given ...
+        String output = dir.resolve("output.yml").toString();
+        String checkpoint = dir.resolve("checkpoint.bin").toString();
+        String events = dir.resolve("events.bin").toString();
+        ArgumentParser parser = Batch.createParser();
+        new Batch().run(parser.parseArgs(new String[]{
+                "-n", "20", "-o", output, "-e", events,
+                "-c", checkpoint, "--checkpoint-steps", "10"
+        }));
+        long size = Files.size(Path.of(events));
+
+        // When ...
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class, () -> new Batch().run(parser.parseArgs(new String[]{
+                "-n", "50", "-o", output, "-e", events,
+                "-c", checkpoint, "--resume"
+        })));
+
+        // Then ...
+        assertEquals("The events file cannot be resumed", ex.getMessage());
+        assertEquals(size, Files.size(Path.of(events)));
+    }
+
+    @Test
+    void ensembleCheckpoint(@TempDir Path dir) throws ArgumentParserException {
+        // Given ...
+        Namespace args = Batch.createParser().parseArgs(new String[]{
+                "-n", "10",
+                "-o", dir.resolve("output.yml").toString(),
+                "--replicas", "4",
+                "-c", dir.resolve("checkpoint.bin").toString()
+        });
+
+        // When ...
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class, () -> new Batch().run(args));
+
+        // Then ...
+        assertEquals("The ensemble of 4 replicas has no checkpoints", ex.getMessage());
+    }
+
+    @Test
+    void ensembleEvents(@TempDir Path dir) throws ArgumentParserException {
+        // Given ...
+        Namespace args = Batch.createParser().parseArgs(new String[]{
+                "-n", "10",
+                "-o", dir.resolve("output.yml").toString(),
+                "--replicas", "4",
+                "-e", dir.resolve("events.bin").toString()
+        });
+
+        // When ...
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class, () -> new Batch().run(args));
+
+        // Then ...
+        assertEquals("The ensemble of 4 replicas has no events", ex.getMessage());
+    }
+
+    @Test
+    void events(@TempDir Path dir) throws IOException, ArgumentParserException {
+        // Given ...
+        Path events = dir.resolve("events.bin");
+        Namespace args = Batch.createParser().parseArgs(new String[]{
+                "-n", "20",
+                "-o", dir.resolve("output.yml").toString(),
+                "-e", events.toString(),
+                "--event-counts"
+        });
+
+        // When ...
+        new Batch().run(args);
+
+        // Then ...
+        byte[] bytes = Files.readAllBytes(events);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        assertEquals(BinaryEventSink.MAGIC, in.readInt());
+        assertEquals(BinaryEventSink.VERSION, in.readInt());
+        int types = in.readInt();
+        for (int i = 0; i < types; i++) {
+            in.readUTF();
+        }
+        int records = in.available() / BinaryEventSink.RECORD_SIZE;
+        assertThat(records, greaterThan(0));
+        assertEquals(0, in.available() % BinaryEventSink.RECORD_SIZE);
+    }
+
+    @Test
+    void meanField(@TempDir Path dir) throws IOException, ArgumentParserException {
+        // Given ...
+        File rules = dir.resolve("rules.yml").toFile();
+        Files.writeString(rules.toPath(), Files.readString(Path.of("rules.yml"))
+                + "engine: meanField\nmeanField:\n  interval: 1\n");
+        File output = dir.resolve("output.yml").toFile();
+        File kpis = dir.resolve("kpis.csv").toFile();
+        Namespace args = Batch.createParser().parseArgs(new String[]{
+                "-n", "20",
+                "-r", rules.getPath(),
+                "-o", output.getPath(),
+                "-k", kpis.getPath()
+        });
+
+        // When ...
+        Status status = new Batch().run(args);
+
+        // Then ...
+        assertEquals(20, Utils.fromFile(output).path("step").asLong());
+        assertThat(status.getPopulation(), greaterThan(0L));
+        List<String> lines = Files.readAllLines(kpis.toPath());
+        assertThat(lines, hasSize(21));
+        assertThat(lines.get(0), startsWith("\"population\",\"technology\""));
+        assertThrows(IllegalArgumentException.class, () -> new Batch().run(Batch.createParser().parseArgs(new String[]{
+                "-n", "20", "-r", rules.getPath(), "-o", output.getPath(), "--replicas", "2"
+        })));
+    }
+
+    @Test
+    void agent(@TempDir Path dir) throws IOException, ArgumentParserException {
+        // Given ...
+        File rules = dir.resolve("rules.yml").toFile();
+        Files.writeString(rules.toPath(), Files.readString(Path.of("rules.yml")) + "engine: agent\n");
+        File output = dir.resolve("output.yml").toFile();
+        File kpis = dir.resolve("kpis.csv").toFile();
+        Namespace args = Batch.createParser().parseArgs(new String[]{
+                "-n", "20",
+                "-r", rules.getPath(),
+                "-o", output.getPath(),
+                "-k", kpis.getPath()
+        });
+
+        // When ...
+        Status status = new Batch().run(args);
+
+        // Then ...
+        assertEquals(20, Utils.fromFile(output).path("step").asLong());
+        assertThat(status.getPopulation(), greaterThan(0L));
+        List<String> lines = Files.readAllLines(kpis.toPath());
+        assertThat(lines, hasSize(21));
+        assertThat(lines.get(0), endsWith("\"meanAge\",\"educated\""));
+        assertThrows(IllegalArgumentException.class, () -> new Batch().run(Batch.createParser().parseArgs(new String[]{
+                "-n", "20", "-r", rules.getPath(), "-o", output.getPath(), "--replicas", "2"
+        })));
+    }
+
+    @Test
+    void cohort(@TempDir Path dir) throws IOException, ArgumentParserException {
+        // Given ...
+        File rules = dir.resolve("rules.yml").toFile();
+        Files.writeString(rules.toPath(), Files.readString(Path.of("rules.yml")) + "engine: cohort\n");
+        File output = dir.resolve("output.yml").toFile();
+        File kpis = dir.resolve("kpis.csv").toFile();
+        Namespace args = Batch.createParser().parseArgs(new String[]{
+                "-n", "20",
+                "-r", rules.getPath(),
+                "-o", output.getPath(),
+                "-k", kpis.getPath()
+        });
+
+        // When ...
+        Status status = new Batch().run(args);
+
+        // Then ...
+        assertEquals(20, Utils.fromFile(output).path("step").asLong());
+        assertThat(status.getPopulation(), greaterThan(0L));
+        List<String> lines = Files.readAllLines(kpis.toPath());
+        assertThat(lines, hasSize(21));
+        assertThat(lines.get(0), endsWith("\"meanAge\",\"fertile\""));
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2023 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ */
+
+package org.mmarini.hilbert.model;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.mmarini.yaml.Utils;
+
+import java.io.IOException;
+
+import static java.lang.String.format;
+
+/**
+ * Measures the cost of a step of the agent kernel with increasing number of individuals.
+ * <p>
+ * The technology is frozen so the population stays near the initial individuals.
+ * The individuals are about 6 bytes each, 10^8 individuals require about 1GB of heap
+ * (2GB while the columns grow).
+ * Run with<br>
+ * <code>java -Xmx4g -cp target/classes:target/test-classes:... org.mmarini.hilbert.model.AgentBenchmark [maxIndividuals [rules.yml [status.yml]]]</code>
+ * </p>
+ */
+public class AgentBenchmark {
+    public static final int WARMUP = 3;
+    public static final int STEPS = 10;
+
+    public static void main(String[] args) throws IOException {
+        int maxIndividuals = args.length > 0 ? Integer.parseInt(args[0]) : 10_000_000;
+        ObjectNode rules = (ObjectNode) Utils.fromFile(args.length > 1 ? args[1] : "rules.yml");
+        Status status = StatusSerde.fromFile(args.length > 2 ? args[2] : "status.yml");
+        rules.put("engine", RulesSerde.AGENT_ENGINE);
+        // Freezes the technology (minimum research productivity) to keep the society near the initial population
+        ((ObjectNode) rules.path("research")).put("productivity", Double.MIN_VALUE);
+        double resources = rules.path("resources").asDouble();
+
+        System.out.println("individuals, ms/step, ms/step/million individuals");
+        for (int n = 10_000; n <= maxIndividuals; n *= 10) {
+            // Scales the resources with the individuals
+            rules.put("resources", resources * n / status.getPopulation());
+            AgentKernel kernel = RulesSerde.agentKernelFromJson(rules);
+            StatusBuffer buffer = StatusBuffer.of(status);
+            buffer.population = n;
+            double[] kpis = kernel.getKpiSchema().newRow();
+            for (int i = 0; i < WARMUP; i++) {
+                kernel.step(buffer, kpis);
+            }
+            long agentSteps = kernel.getAgentSteps();
+            long t0 = System.nanoTime();
+            for (int i = 0; i < STEPS; i++) {
+                kernel.step(buffer, kpis);
+            }
+            double ms = (System.nanoTime() - t0) / 1e6;
+            agentSteps = kernel.getAgentSteps() - agentSteps;
+            System.out.println(format("%d, %.2f, %.2f", n, ms / STEPS, ms * 1e6 / agentSteps));
+        }
+    }
+}
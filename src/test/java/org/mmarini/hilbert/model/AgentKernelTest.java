@@ -0,0 +1,194 @@
+/*
+ * Copyright (c) 2023 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ */
+
+package org.mmarini.hilbert.model;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.mmarini.yaml.Utils;
+
+import java.io.IOException;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mmarini.hilbert.model.RulesSerdeTest.RULES_YAML;
+import static org.mmarini.hilbert.model.RulesSerdeTest.STATUS_YAML;
+
+class AgentKernelTest {
+    public static final int STEPS = 200;
+
+    /**
+     * Returns the agent rules
+     */
+    static JsonNode agent() throws IOException {
+        ObjectNode node = (ObjectNode) Utils.fromText(RULES_YAML);
+        node.put("engine", RulesSerde.AGENT_ENGINE);
+        return node;
+    }
+
+    @Test
+    void balance() throws IOException {
+        // Given ...
+        AgentKernel kernel = RulesSerde.agentKernelFromJson(agent());
+        StatusBuffer buffer = StatusBuffer.of(StatusSerde.fromJson(Utils.fromText(STATUS_YAML)));
+        double[] kpis = kernel.getKpiSchema().newRow();
+
+        for (int i = 0; i < STEPS; i++) {
+            // When ...
+            kernel.step(buffer, kpis);
+
+            // Then ...
+            double changes = kpis[HilbertKernel.DEATHS_O_KPI] + kpis[HilbertKernel.DEATHS_S_KPI]
+                    + kpis[HilbertKernel.BIRTHS_KPI] + kpis[HilbertKernel.DEATHS_H_KPI];
+            assertEquals(kpis[HilbertKernel.POPULATION_KPI] + changes, buffer.getPopulation());
+            AgentPopulation agents = kernel.getAgents();
+            assertEquals(buffer.getPopulation(), agents.getSize());
+            int occupations = 0;
+            for (int j = 0; j < AgentPopulation.OCCUPATIONS; j++) {
+                occupations += agents.getOccupationCount(j);
+            }
+            assertEquals(agents.getSize(), occupations);
+        }
+        assertEquals(STEPS, kernel.getStep());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {RandomSource.RANDOM, RandomSource.XOSHIRO256})
+    void randomBuffer(String type) throws IOException {
+        // Given the agent rules with buffered generators
+        ObjectNode node = (ObjectNode) agent();
+        node.put("rng", type);
+        ObjectNode bufferedNode = node.deepCopy();
+        bufferedNode.put("rngBuffer", 1024);
+        AgentKernel kernel = RulesSerde.agentKernelFromJson(node);
+        AgentKernel bufferedKernel = RulesSerde.agentKernelFromJson(bufferedNode);
+        Status status = StatusSerde.fromJson(Utils.fromText(STATUS_YAML));
+        StatusBuffer buffer = StatusBuffer.of(status);
+        StatusBuffer bufferedBuffer = StatusBuffer.of(status);
+        double[] kpis = kernel.getKpiSchema().newRow();
+        double[] bufferedKpis = bufferedKernel.getKpiSchema().newRow();
+
+        for (int i = 0; i < STEPS; i++) {
+            // When ...
+            kernel.step(buffer, kpis);
+            bufferedKernel.step(bufferedBuffer, bufferedKpis);
+
+            // Then ...
+            assertEquals(buffer.toStatus(), bufferedBuffer.toStatus());
+            assertArrayEquals(kpis, bufferedKpis);
+        }
+    }
+
+    @Test
+    void engine() throws IOException {
+        // Given ...
+        ObjectNode wrong = (ObjectNode) agent();
+        wrong.putObject("agent").put("mortalityDoublingTime", 0);
+
+        // When ...
+        StepKernel kernel = RulesSerde.createStepKernel(agent(), 1234, 0);
+
+        // Then ...
+        assertThat(kernel, instanceOf(AgentKernel.class));
+        assertThat(kernel.getKpiSchema().indexOf("population"), equalTo(HilbertKernel.POPULATION_KPI));
+        assertThat(kernel.getKpiSchema().indexOf("meanAge"), greaterThanOrEqualTo(HilbertKernel.KPI_NAMES.size()));
+        assertThat(kernel.getKpiSchema().indexOf("educated"), greaterThanOrEqualTo(HilbertKernel.KPI_NAMES.size()));
+        assertThrows(IllegalArgumentException.class, () -> RulesSerde.agentKernelFromJson(wrong));
+    }
+
+    @Test
+    void extraSectors() throws IOException {
+        // Given ...
+        AgentKernel kernel = RulesSerde.agentKernelFromJson(agent());
+        StatusBuffer buffer = StatusBuffer.of(new Status(StatusTest.EXTRA_SECTORS, 1000,
+                new double[]{0, 0, 0, 0, 0, 0},
+                new double[]{0, 0, 0, 0, 0, 0},
+                1));
+        double[] kpis = kernel.getKpiSchema().newRow();
+
+        // When ...
+        kernel.step(buffer, kpis);
+
+        // Then ...
+        AgentPopulation agents = kernel.getAgents();
+        assertEquals(6, agents.getOccupations());
+        assertEquals(buffer.getPopulation(), agents.getSize());
+        assertThat(agents.getOccupationCount(4), greaterThan(0));
+        assertEquals(StatusTest.EXTRA_SECTORS, buffer.toStatus().getSectors());
+    }
+
+    @Test
+    void naturalDeaths() throws IOException {
+        // Given a large population
+        AgentKernel kernel = RulesSerde.agentKernelFromJson(agent());
+        StatusBuffer buffer = StatusBuffer.of(StatusSerde.fromJson(Utils.fromText(STATUS_YAML)));
+        buffer.population = 100000;
+        double[] kpis = kernel.getKpiSchema().newRow();
+
+        // When ...
+        kernel.step(buffer, kpis);
+
+        // Then the expected deaths of the stationary ages are the deaths of life expectancy
+        double lambdaH = kpis[HilbertKernel.LAMBDA_H_KPI];
+        double lifeExpectancy = kpis[HilbertKernel.LIFE_EXPECTANCY_KPI];
+        assertThat(lambdaH, closeTo(100000 * 0.25 / lifeExpectancy, lambdaH * 0.05));
+        assertThat(-kpis[HilbertKernel.DEATHS_H_KPI], closeTo(lambdaH, 4 * Math.sqrt(lambdaH)));
+        assertThat(kpis[kernel.getKpiSchema().indexOf("meanAge")], both(greaterThan(0d)).and(lessThan(lifeExpectancy)));
+        assertEquals(100000, kernel.getAgentSteps());
+    }
+
+    @Test
+    void resync() throws IOException {
+        // Given ...
+        AgentKernel kernel = RulesSerde.agentKernelFromJson(agent());
+        StatusBuffer buffer = StatusBuffer.of(StatusSerde.fromJson(Utils.fromText(STATUS_YAML)));
+        double[] kpis = kernel.getKpiSchema().newRow();
+        kernel.step(buffer, kpis);
+
+        // When the status population changes
+        buffer.population = 500;
+        kernel.step(buffer, kpis);
+
+        // Then the individuals are created again
+        assertEquals(500, kpis[HilbertKernel.POPULATION_KPI]);
+        assertEquals(buffer.getPopulation(), kernel.getAgents().getSize());
+
+        // When the society is extinct
+        buffer.population = 0;
+        kernel.step(buffer, kpis);
+
+        // Then ...
+        assertEquals(0, buffer.getPopulation());
+        assertEquals(0, kernel.getAgents().getSize());
+    }
+}
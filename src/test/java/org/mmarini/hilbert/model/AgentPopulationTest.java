@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2023 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ */
+
+package org.mmarini.hilbert.model;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mmarini.hilbert.model.AgentPopulation.*;
+
+class AgentPopulationTest {
+
+    @Test
+    void add() {
+        // Given ...
+        AgentPopulation agents = new AgentPopulation(0);
+
+        // When ...
+        for (int i = 0; i < 100; i++) {
+            agents.add(i, i % OCCUPATIONS, i % 2 == 0);
+        }
+        agents.age(0.5f);
+
+        // Then ...
+        assertEquals(100, agents.getSize());
+        assertEquals(50, agents.getEducatedCount());
+        for (int i = 0; i < OCCUPATIONS; i++) {
+            assertEquals(20, agents.getOccupationCount(i));
+        }
+        assertEquals(10.5f, agents.getAge(10));
+        assertEquals(DOCTOR, agents.getOccupation(13));
+        assertTrue(agents.isEducated(14));
+        assertFalse(agents.isEducated(15));
+    }
+
+    @Test
+    void clear() {
+        // Given ...
+        AgentPopulation agents = new AgentPopulation(10);
+        agents.add(1, FARMER, true);
+        agents.add(2, DOCTOR, false);
+
+        // When ...
+        agents.clear();
+
+        // Then ...
+        assertEquals(0, agents.getSize());
+        assertEquals(0, agents.getEducatedCount());
+        assertEquals(0, agents.getOccupationCount(FARMER));
+        assertEquals(0, agents.getOccupationCount(DOCTOR));
+    }
+
+    @Test
+    void remove() {
+        // Given ...
+        AgentPopulation agents = new AgentPopulation(10);
+        agents.add(1, FARMER, true);
+        agents.add(2, RESEARCHER, false);
+        agents.add(3, EDUCATOR, true);
+
+        // When ...
+        agents.remove(0);
+
+        // Then the last individual replaces the removed one
+        assertEquals(2, agents.getSize());
+        assertEquals(3f, agents.getAge(0));
+        assertEquals(EDUCATOR, agents.getOccupation(0));
+        assertTrue(agents.isEducated(0));
+        assertEquals(2f, agents.getAge(1));
+        assertEquals(0, agents.getOccupationCount(FARMER));
+        assertEquals(1, agents.getEducatedCount());
+    }
+
+    @Test
+    void removeAll() {
+        // Given ...
+        AgentPopulation agents = new AgentPopulation(10);
+        for (int i = 0; i < 10; i++) {
+            agents.add(i, INACTIVE, false);
+        }
+
+        // When removing the individuals including the last ones
+        agents.removeAll(new int[]{0, 3, 8, 9}, 4);
+
+        // Then ...
+        assertEquals(6, agents.getSize());
+        float sum = 0;
+        for (int i = 0; i < agents.getSize(); i++) {
+            sum += agents.getAge(i);
+        }
+        assertEquals(1 + 2 + 4 + 5 + 6 + 7, sum);
+        assertEquals(6, agents.getOccupationCount(INACTIVE));
+    }
+}
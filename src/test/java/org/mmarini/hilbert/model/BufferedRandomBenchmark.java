@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2023 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ */
+
+package org.mmarini.hilbert.model;
+
+import java.util.function.DoubleSupplier;
+
+import static java.lang.String.format;
+
+/**
+ * Compares the cost of poisson generation with and without the background producer.
+ * <p>
+ * The consumer time per sample drops when the producer runs on a spare core,
+ * the total cpu time does not.
+ * Run with<br>
+ * <code>java -cp target/classes:target/test-classes org.mmarini.hilbert.model.BufferedRandomBenchmark</code>
+ * </p>
+ */
+public class BufferedRandomBenchmark {
+    public static final int WARMUP = 1000000;
+    public static final int SAMPLES = 2000000;
+    private static final double[] LAMBDAS = {1, 10, 100, 1e4};
+    private static final int[] CAPACITIES = {1 << 10, 1 << 14, 1 << 18};
+    private static final String[] TYPES = {RandomSource.RANDOM, RandomSource.XOSHIRO256};
+
+    /**
+     * Returns the ns per sample
+     *
+     * @param supplier the sample supplier
+     */
+    private static double measure(DoubleSupplier supplier) {
+        double check = 0;
+        for (int i = 0; i < WARMUP; i++) {
+            check += supplier.getAsDouble();
+        }
+        long t0 = System.nanoTime();
+        for (int i = 0; i < SAMPLES; i++) {
+            check += supplier.getAsDouble();
+        }
+        long elapsed = System.nanoTime() - t0;
+        if (check == -1) {
+            System.out.println("unexpected checksum");
+        }
+        return (double) elapsed / SAMPLES;
+    }
+
+    public static void main(String[] args) {
+        System.out.println("generator, capacity, lambda, poisson ns/sample");
+        for (String type : TYPES) {
+            for (double lambda : LAMBDAS) {
+                RandomSource source = RandomSource.create(type, 1234);
+                System.out.println(format("%s, 0, %g, %.1f", type, lambda, measure(() -> source.nextPoisson(lambda))));
+                for (int capacity : CAPACITIES) {
+                    RandomSource buffered = new RandomProducer().buffered(RandomSource.create(type, 1234), capacity);
+                    System.out.println(format("%s, %d, %g, %.1f", type, capacity, lambda, measure(() -> buffered.nextPoisson(lambda))));
+                }
+            }
+        }
+    }
+}
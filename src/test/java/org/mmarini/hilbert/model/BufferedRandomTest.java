@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2023 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ */
+
+package org.mmarini.hilbert.model;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BufferedRandomTest {
+
+    @ParameterizedTest
+    @ValueSource(strings = {RandomSource.RANDOM, RandomSource.SPLIT_MIX, RandomSource.XOSHIRO256})
+    void nextDouble(String type) {
+        // Given ...
+        RandomSource random = RandomSource.create(type, 1234);
+        RandomProducer producer = new RandomProducer();
+        BufferedRandom buffered = producer.buffered(RandomSource.create(type, 1234), 16);
+
+        // When ...
+        for (int i = 0; i < 100000; i++) {
+            // Then ...
+            assertEquals(random.nextDouble(), buffered.nextDouble());
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {RandomSource.RANDOM, RandomSource.SPLIT_MIX, RandomSource.XOSHIRO256})
+    void nextLong(String type) {
+        // Given ...
+        RandomSource random = RandomSource.create(type, 1234);
+        RandomProducer producer = new RandomProducer();
+        BufferedRandom buffered = producer.buffered(RandomSource.create(type, 1234), 16);
+
+        // When ...
+        for (int i = 0; i < 100000; i++) {
+            // Then ...
+            assertEquals(random.nextLong(), buffered.nextLong());
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {RandomSource.RANDOM, RandomSource.SPLIT_MIX, RandomSource.XOSHIRO256})
+    void nextPoissonBinomial(String type) {
+        // Given ...
+        RandomSource random = RandomSource.create(type, 1234);
+        RandomProducer producer = new RandomProducer();
+        BufferedRandom buffered = producer.buffered(RandomSource.create(type, 1234), 64);
+
+        // When ...
+        for (int i = 0; i < 10000; i++) {
+            double lambda = i % 100 * 10.3;
+            // Then ...
+            assertEquals(random.nextPoisson(lambda), buffered.nextPoisson(lambda));
+            assertEquals(random.nextBinomial(i, 0.3), buffered.nextBinomial(i, 0.3));
+        }
+    }
+
+    @Test
+    void multipleConsumers() throws Exception {
+        // Given ...
+        RandomProducer producer = new RandomProducer();
+        BufferedRandom buffered0 = producer.buffered(RandomSource.create(RandomSource.SPLIT_MIX, 1), 32);
+        BufferedRandom buffered1 = producer.buffered(RandomSource.create(RandomSource.SPLIT_MIX, 2), 32);
+        RandomSource random0 = RandomSource.create(RandomSource.SPLIT_MIX, 1);
+        RandomSource random1 = RandomSource.create(RandomSource.SPLIT_MIX, 2);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+
+        try {
+            // When ...
+            Future<double[]> values0 = executor.submit(() -> draw(buffered0, 100000));
+            Future<double[]> values1 = executor.submit(() -> draw(buffered1, 100000));
+
+            // Then ...
+            assertArrayEquals(draw(random0, 100000), values0.get());
+            assertArrayEquals(draw(random1, 100000), values1.get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void state() {
+        // Given a buffered source with pending values
+        RandomProducer producer = new RandomProducer();
+        BufferedRandom buffered = producer.buffered(RandomSource.create(RandomSource.XOSHIRO256, 1234), 64);
+        draw(buffered, 1000);
+
+        // When ...
+        long[] state = buffered.getState();
+        double[] expected = draw(buffered, 1000);
+        BufferedRandom restored = producer.buffered(RandomSource.create(RandomSource.XOSHIRO256, 1), 64);
+        restored.setState(state);
+
+        // Then ...
+        assertArrayEquals(expected, draw(restored, 1000));
+    }
+
+    @Test
+    void invalidState() {
+        // Given ...
+        BufferedRandom buffered = new RandomProducer().buffered(RandomSource.create(RandomSource.RANDOM, 1234), 16);
+
+        // When ...
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class, () -> buffered.setState(new long[]{17, 1}));
+
+        // Then ...
+        assertEquals("Invalid buffered random state (2)", ex.getMessage());
+    }
+
+    @Test
+    void capacity() {
+        // Given ...
+        RandomProducer producer = new RandomProducer();
+        RandomSource random = RandomSource.create(RandomSource.RANDOM, 1234);
+
+        // When ...
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class, () -> producer.buffered(random, 10));
+
+        // Then ...
+        assertEquals("Capacity must be a power of 2 (10)", ex.getMessage());
+    }
+
+    private static double[] draw(RandomSource random, int n) {
+        double[] result = new double[n];
+        for (int i = 0; i < n; i++) {
+            result[i] = random.nextDouble();
+        }
+        return result;
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) 2023 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ */
+
+package org.mmarini.hilbert.model;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.mmarini.yaml.Utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mmarini.hilbert.model.RulesSerdeTest.RULES_YAML;
+import static org.mmarini.hilbert.model.RulesSerdeTest.STATUS_YAML;
+
+class CheckpointTest {
+    public static final int STEPS = 100;
+    public static final int CHECKPOINT_STEP = 40;
+
+    public static Stream<JsonNode> configurations() throws IOException {
+        ObjectNode xoshiro = (ObjectNode) Utils.fromText(RULES_YAML);
+        xoshiro.put("rng", RandomSource.XOSHIRO256);
+        ObjectNode philox = (ObjectNode) Utils.fromText(RULES_YAML);
+        philox.put("rng", RandomSource.PHILOX);
+        ObjectNode cached = (ObjectNode) Utils.fromText(RULES_YAML);
+        cached.putObject("poissonCache").put("size", 4);
+        ObjectNode steady = (ObjectNode) Utils.fromText(RULES_YAML);
+        steady.putObject("termination").putObject("steadyState")
+                .put("window", 20)
+                .put("tolerance", 1e-9);
+        ObjectNode tauLeaping = (ObjectNode) Utils.fromText(RULES_YAML);
+        tauLeaping.put("engine", RulesSerde.TAU_LEAPING_ENGINE);
+        return Stream.of(Utils.fromText(RULES_YAML), xoshiro, philox, cached, steady, tauLeaping);
+    }
+
+    @ParameterizedTest
+    @MethodSource("configurations")
+    void resume(JsonNode rules, @TempDir Path dir) throws IOException {
+        // Given ...
+        Status status = StatusSerde.fromJson(Utils.fromText(STATUS_YAML));
+        HilbertKernel kernel = RulesSerde.kernelFromJson(rules, 0, 0);
+        Termination termination = RulesSerde.loadTermination(rules);
+        StatusBuffer buffer = StatusBuffer.of(status);
+        double[] expectedKpis = kernel.getKpiSchema().newRow();
+        File file = dir.resolve("checkpoint.bin").toFile();
+        for (int i = 0; i < STEPS; i++) {
+            if (i == CHECKPOINT_STEP) {
+                Checkpoint.of(rules.hashCode(), kernel, termination, buffer, 123).write(file);
+            }
+            kernel.step(buffer, expectedKpis);
+            termination.test(buffer);
+        }
+
+        // When ...
+        Checkpoint checkpoint = Checkpoint.read(file);
+        HilbertKernel resumed = RulesSerde.kernelFromJson(rules, 0, 0);
+        Termination resumedTermination = RulesSerde.loadTermination(rules);
+        StatusBuffer resumedBuffer = new StatusBuffer();
+        checkpoint.restore(resumed, resumedTermination, resumedBuffer);
+        double[] kpis = resumed.getKpiSchema().newRow();
+        for (int i = CHECKPOINT_STEP; i < STEPS; i++) {
+            resumed.step(resumedBuffer, kpis);
+            resumedTermination.test(resumedBuffer);
+        }
+
+        // Then ...
+        assertEquals(rules.hashCode(), checkpoint.getRulesHash());
+        assertEquals(CHECKPOINT_STEP, checkpoint.getStep());
+        assertEquals(123, checkpoint.getKpiOffset());
+        assertEquals(STEPS, resumed.getStep());
+        assertEquals(kernel.getTime(), resumed.getTime());
+        assertEquals(buffer.toStatus(), resumedBuffer.toStatus());
+        assertArrayEquals(expectedKpis, kpis);
+        assertArrayEquals(termination.getStates(), resumedTermination.getStates());
+        assertFalse(dir.resolve("checkpoint.bin.tmp").toFile().exists());
+    }
+
+    @Test
+    void terminated(@TempDir Path dir) throws IOException {
+        // Given a run terminated at the checkpoint step
+        JsonNode rules = Utils.fromText(RULES_YAML);
+        HilbertKernel kernel = RulesSerde.kernelFromJson(rules, 0, 0);
+        Termination termination = RulesSerde.loadTermination(rules);
+        StatusBuffer buffer = StatusBuffer.of(StatusSerde.fromJson(Utils.fromText(STATUS_YAML)));
+        buffer.population = 0;
+        kernel.step(buffer, kernel.getKpiSchema().newRow());
+        termination.test(buffer);
+        File file = dir.resolve("checkpoint.bin").toFile();
+        Checkpoint.of(rules.hashCode(), kernel, termination, buffer, 0).write(file);
+
+        // When ...
+        Termination resumedTermination = RulesSerde.loadTermination(rules);
+        Checkpoint.read(file).restore(RulesSerde.kernelFromJson(rules, 0, 0), resumedTermination, new StatusBuffer());
+
+        // Then ...
+        assertTrue(termination.isTerminated());
+        assertTrue(resumedTermination.isTerminated());
+        assertEquals(Termination.EXTINCTION, resumedTermination.getReason());
+    }
+
+    @Test
+    void corrupted(@TempDir Path dir) throws IOException {
+        // Given ...
+        HilbertKernel kernel = RulesSerde.kernelFromJson(Utils.fromText(RULES_YAML), 0, 0);
+        StatusBuffer buffer = StatusBuffer.of(StatusSerde.fromJson(Utils.fromText(STATUS_YAML)));
+        File file = dir.resolve("checkpoint.bin").toFile();
+        Checkpoint.of(0, kernel, Termination.extinction(), buffer, 0).write(file);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(30);
+            int b = raf.read();
+            raf.seek(30);
+            raf.write(b ^ 1);
+        }
+
+        // When ...
+        IOException ex = assertThrows(IOException.class, () -> Checkpoint.read(file));
+
+        // Then ...
+        assertEquals("Corrupted checkpoint " + file, ex.getMessage());
+    }
+
+    @Test
+    void cacheMismatch(@TempDir Path dir) throws IOException {
+        // Given ...
+        HilbertKernel kernel = RulesSerde.kernelFromJson(Utils.fromText(RULES_YAML), 0, 0);
+        StatusBuffer buffer = StatusBuffer.of(StatusSerde.fromJson(Utils.fromText(STATUS_YAML)));
+        File file = dir.resolve("checkpoint.bin").toFile();
+        Checkpoint.of(0, kernel, Termination.extinction(), buffer, 0).write(file);
+        ObjectNode cached = (ObjectNode) Utils.fromText(RULES_YAML);
+        cached.putObject("poissonCache");
+        HilbertKernel cachedKernel = RulesSerde.kernelFromJson(cached, 0, 0);
+        Checkpoint checkpoint = Checkpoint.read(file);
+
+        // When ...
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class,
+                () -> checkpoint.restore(cachedKernel, Termination.extinction(), new StatusBuffer()));
+
+        // Then ...
+        assertEquals("Checkpoint poisson cache does not match the rules", ex.getMessage());
+    }
+}
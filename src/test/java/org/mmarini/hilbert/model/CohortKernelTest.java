@@ -0,0 +1,200 @@
+/*
+ * Copyright (c) 2023 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ */
+
+package org.mmarini.hilbert.model;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.jupiter.api.Test;
+import org.mmarini.yaml.Utils;
+
+import java.io.IOException;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mmarini.hilbert.model.RulesSerdeTest.RULES_YAML;
+import static org.mmarini.hilbert.model.RulesSerdeTest.STATUS_YAML;
+
+class CohortKernelTest {
+    public static final int STEPS = 200;
+
+    /**
+     * Returns the cohort rules
+     */
+    static JsonNode cohort() throws IOException {
+        ObjectNode node = (ObjectNode) Utils.fromText(RULES_YAML);
+        node.put("engine", RulesSerde.COHORT_ENGINE);
+        return node;
+    }
+
+    /**
+     * Returns the count of an age class
+     *
+     * @param kernel   the kernel
+     * @param ageClass the age class
+     */
+    static long classCount(CohortKernel kernel, int ageClass) {
+        long count = 0;
+        for (int o = 0; o < kernel.getOccupations(); o++) {
+            count += kernel.getCount(ageClass, o);
+        }
+        return count;
+    }
+
+    @Test
+    void ageing() throws IOException {
+        // Given ...
+        CohortKernel kernel = RulesSerde.cohortKernelFromJson(cohort());
+        StatusBuffer buffer = StatusBuffer.of(StatusSerde.fromJson(Utils.fromText(STATUS_YAML)));
+        buffer.population = 100000;
+        double[] kpis = kernel.getKpiSchema().newRow();
+        kernel.step(buffer, kpis);
+        int n = kernel.getAgeClasses();
+        long[] before = new long[n];
+        for (int k = 0; k < n; k++) {
+            before[k] = classCount(kernel, k);
+        }
+
+        // When ...
+        kernel.step(buffer, kpis);
+
+        // Then each class holds the survivors of the previous one
+        assertEquals((long) kpis[HilbertKernel.BIRTHS_KPI], classCount(kernel, 0));
+        for (int k = 1; k < n - 1; k++) {
+            assertThat(classCount(kernel, k), lessThanOrEqualTo(before[k - 1]));
+        }
+        assertThat(classCount(kernel, 2), greaterThan(0L));
+    }
+
+    @Test
+    void balance() throws IOException {
+        // Given ...
+        CohortKernel kernel = RulesSerde.cohortKernelFromJson(cohort());
+        StatusBuffer buffer = StatusBuffer.of(StatusSerde.fromJson(Utils.fromText(STATUS_YAML)));
+        double[] kpis = kernel.getKpiSchema().newRow();
+
+        for (int i = 0; i < STEPS; i++) {
+            // When ...
+            kernel.step(buffer, kpis);
+
+            // Then ...
+            double changes = kpis[HilbertKernel.DEATHS_O_KPI] + kpis[HilbertKernel.DEATHS_S_KPI]
+                    + kpis[HilbertKernel.BIRTHS_KPI] + kpis[HilbertKernel.DEATHS_H_KPI];
+            assertEquals(kpis[HilbertKernel.POPULATION_KPI] + changes, buffer.getPopulation());
+            long total = 0;
+            for (int k = 0; k < kernel.getAgeClasses(); k++) {
+                total += classCount(kernel, k);
+            }
+            assertEquals(buffer.getPopulation(), total);
+            assertEquals(total, kernel.getPopulation());
+        }
+        assertEquals(STEPS, kernel.getStep());
+    }
+
+    @Test
+    void extraSectors() throws IOException {
+        // Given ...
+        CohortKernel kernel = RulesSerde.cohortKernelFromJson(cohort());
+        StatusBuffer buffer = StatusBuffer.of(new Status(StatusTest.EXTRA_SECTORS, 10000,
+                new double[]{0, 0, 0, 0, 0, 0},
+                new double[]{0, 0, 0, 0, 0, 0},
+                1));
+        double[] kpis = kernel.getKpiSchema().newRow();
+
+        // When ...
+        kernel.step(buffer, kpis);
+
+        // Then ...
+        assertEquals(6, kernel.getOccupations());
+        long total = 0;
+        long artists = 0;
+        for (int k = 0; k < kernel.getAgeClasses(); k++) {
+            total += classCount(kernel, k);
+            artists += kernel.getCount(k, 4);
+        }
+        assertEquals(buffer.getPopulation(), total);
+        assertThat(artists, greaterThan(0L));
+    }
+
+    @Test
+    void binomial() {
+        // Given ...
+        RandomSource random = RandomSource.create(RandomSource.RANDOM, 1234);
+        long n = 10_000_000_000L;
+
+        // When ...
+        long small = CohortKernel.binomial(random, 1000, 0.5);
+        long large = CohortKernel.binomial(random, n, 0.5);
+
+        // Then ...
+        assertThat(small, both(greaterThan(400L)).and(lessThan(600L)));
+        assertThat((double) large, closeTo(n / 2d, 5 * Math.sqrt(n / 4d)));
+        assertEquals(0, CohortKernel.binomial(random, n, 0));
+        assertEquals(n, CohortKernel.binomial(random, n, 1));
+    }
+
+    @Test
+    void engine() throws IOException {
+        // Given ...
+        ObjectNode wrong = (ObjectNode) cohort();
+        ObjectNode cohortNode = wrong.putObject("cohort");
+        cohortNode.put("minFertileAge", 50);
+        cohortNode.put("maxFertileAge", 15);
+
+        // When ...
+        StepKernel kernel = RulesSerde.createStepKernel(cohort(), 1234, 0);
+
+        // Then ...
+        assertThat(kernel, instanceOf(CohortKernel.class));
+        // 1.5 times the maximum life expectancy of 100 by time interval 0.25 and the last class
+        assertEquals(601, ((CohortKernel) kernel).getAgeClasses());
+        assertThat(kernel.getKpiSchema().indexOf("meanAge"), greaterThanOrEqualTo(HilbertKernel.KPI_NAMES.size()));
+        assertThat(kernel.getKpiSchema().indexOf("fertile"), greaterThanOrEqualTo(HilbertKernel.KPI_NAMES.size()));
+        assertThrows(IllegalArgumentException.class, () -> RulesSerde.cohortKernelFromJson(wrong));
+    }
+
+    @Test
+    void naturalDeaths() throws IOException {
+        // Given a large population
+        CohortKernel kernel = RulesSerde.cohortKernelFromJson(cohort());
+        StatusBuffer buffer = StatusBuffer.of(StatusSerde.fromJson(Utils.fromText(STATUS_YAML)));
+        buffer.population = 1000000;
+        double[] kpis = kernel.getKpiSchema().newRow();
+
+        // When ...
+        kernel.step(buffer, kpis);
+
+        // Then the expected deaths of the stationary ages are the deaths of life expectancy
+        double lambdaH = kpis[HilbertKernel.LAMBDA_H_KPI];
+        double lifeExpectancy = kpis[HilbertKernel.LIFE_EXPECTANCY_KPI];
+        assertThat(lambdaH, closeTo(1000000 * 0.25 / lifeExpectancy, lambdaH * 0.05));
+        assertThat(-kpis[HilbertKernel.DEATHS_H_KPI], closeTo(lambdaH, 5 * Math.sqrt(lambdaH)));
+        assertThat(kpis[kernel.getKpiSchema().indexOf("fertile")], both(greaterThan(0d)).and(lessThan(1000000d)));
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2023 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ */
+
+package org.mmarini.hilbert.model;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.mmarini.Tuple2;
+import org.mmarini.yaml.Utils;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import static java.lang.String.format;
+
+/**
+ * Measures the replica steps per second of an ensemble run by independent closure based rules,
+ * by independent step kernels and by the batch kernel on the columns of replicas, on a single thread.
+ * Each engine runs several rounds from the initial status and the best round is reported,
+ * so the first rounds warm up the jit compiler.
+ * <p>
+ * Run with<br>
+ * <code>java -cp target/classes:target/test-classes:... org.mmarini.hilbert.model.EnsembleBenchmark [replicas [rules.yml [status.yml]]]</code>
+ * </p>
+ */
+public class EnsembleBenchmark {
+    public static final int ROUNDS = 10;
+    public static final int STEPS = 1000;
+
+    /**
+     * Returns the replica steps per second of the closure based rules of replicas
+     *
+     * @param rules    the rules
+     * @param status   the initial status
+     * @param replicas the number of replicas
+     * @param steps    the number of steps
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static double measureClosures(JsonNode rules, Status status, int replicas, int steps) {
+        Function<Status, Tuple2<Status, Supplier<Map<String, Number>>>>[] engines = new Function[replicas];
+        Status[] statuses = new Status[replicas];
+        for (int i = 0; i < replicas; i++) {
+            engines[i] = RulesSerde.fromJson(rules, i);
+            statuses[i] = status;
+        }
+        long t0 = System.nanoTime();
+        for (int j = 0; j < steps; j++) {
+            for (int i = 0; i < replicas; i++) {
+                Tuple2<Status, Supplier<Map<String, Number>>> next = engines[i].apply(statuses[i]);
+                next._2.get();
+                statuses[i] = next._1;
+            }
+        }
+        return replicas * (double) steps * 1e9 / (System.nanoTime() - t0);
+    }
+
+    /**
+     * Returns the replica steps per second of the batch kernel
+     *
+     * @param rules    the rules
+     * @param status   the initial status
+     * @param replicas the number of replicas
+     * @param steps    the number of steps
+     */
+    private static double measureEnsemble(JsonNode rules, Status status, int replicas, int steps) {
+        EnsembleKernel kernel = RulesSerde.ensembleKernelFromJson(rules, replicas);
+        EnsembleBuffer buffer = EnsembleBuffer.of(status, replicas);
+        double[][] kpis = kernel.newKpis();
+        long t0 = System.nanoTime();
+        for (int j = 0; j < steps; j++) {
+            kernel.step(buffer, kpis);
+        }
+        return replicas * (double) steps * 1e9 / (System.nanoTime() - t0);
+    }
+
+    /**
+     * Returns the replica steps per second of the step kernels of replicas
+     *
+     * @param rules    the rules
+     * @param status   the initial status
+     * @param replicas the number of replicas
+     * @param steps    the number of steps
+     */
+    private static double measureKernels(JsonNode rules, Status status, int replicas, int steps) {
+        List<HilbertKernel> kernels = RulesSerde.kernelsFromJson(rules, replicas);
+        StatusBuffer[] buffers = new StatusBuffer[replicas];
+        double[][] rows = new double[replicas][];
+        for (int i = 0; i < replicas; i++) {
+            buffers[i] = StatusBuffer.of(status);
+            rows[i] = kernels.get(i).getKpiSchema().newRow();
+        }
+        long t0 = System.nanoTime();
+        for (int j = 0; j < steps; j++) {
+            for (int i = 0; i < replicas; i++) {
+                kernels.get(i).step(buffers[i], rows[i]);
+            }
+        }
+        return replicas * (double) steps * 1e9 / (System.nanoTime() - t0);
+    }
+
+    public static void main(String[] args) throws IOException {
+        int replicas = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        JsonNode rules = Utils.fromFile(args.length > 1 ? args[1] : "rules.yml");
+        Status status = StatusSerde.fromFile(args.length > 2 ? args[2] : "status.yml", Sectors.fromJson(rules));
+
+        double closures = 0;
+        double kernels = 0;
+        double ensemble = 0;
+        for (int i = 0; i < ROUNDS; i++) {
+            closures = Math.max(closures, measureClosures(rules, status, replicas, STEPS));
+            kernels = Math.max(kernels, measureKernels(rules, status, replicas, STEPS));
+            ensemble = Math.max(ensemble, measureEnsemble(rules, status, replicas, STEPS));
+        }
+
+        System.out.println(format("%d replicas", replicas));
+        System.out.println("engine, replica steps/s, speedup");
+        System.out.println(format("closure rules, %.0f, %.2f", closures, 1d));
+        System.out.println(format("step kernels, %.0f, %.2f", kernels, kernels / closures));
+        System.out.println(format("ensemble kernel, %.0f, %.2f", ensemble, ensemble / closures));
+    }
+}
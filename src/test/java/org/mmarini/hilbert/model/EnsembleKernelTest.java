@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2023 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ */
+
+package org.mmarini.hilbert.model;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.mmarini.yaml.Utils;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mmarini.hilbert.model.RulesSerdeTest.RULES_YAML;
+import static org.mmarini.hilbert.model.RulesSerdeTest.STATUS_YAML;
+
+class EnsembleKernelTest {
+    public static final int REPLICAS = 7;
+    public static final int STEPS = 100;
+
+    /**
+     * Asserts the ensemble replicas run as the step kernels of replicas
+     *
+     * @param node   the rules
+     * @param status the initial status
+     */
+    static void assertSameTrajectories(ObjectNode node, Status status) {
+        EnsembleKernel ensembleKernel = RulesSerde.ensembleKernelFromJson(node, REPLICAS);
+        EnsembleBuffer ensemble = EnsembleBuffer.of(status, REPLICAS);
+        double[][] columns = ensembleKernel.newKpis();
+        List<HilbertKernel> kernels = RulesSerde.kernelsFromJson(node, REPLICAS);
+        StatusBuffer[] buffers = new StatusBuffer[REPLICAS];
+        double[][] rows = new double[REPLICAS][];
+        for (int i = 0; i < REPLICAS; i++) {
+            buffers[i] = StatusBuffer.of(status);
+            rows[i] = kernels.get(i).getKpiSchema().newRow();
+        }
+        assertEquals(kernels.get(0).getKpiSchema(), ensembleKernel.getKpiSchema());
+
+        for (int step = 0; step < STEPS; step++) {
+            // When ...
+            ensembleKernel.step(ensemble, columns);
+            for (int i = 0; i < REPLICAS; i++) {
+                kernels.get(i).step(buffers[i], rows[i]);
+            }
+
+            // Then ...
+            for (int i = 0; i < REPLICAS; i++) {
+                assertEquals(buffers[i].toStatus(), ensemble.toStatus(i), "replica " + i);
+                for (int j = 0; j < columns.length; j++) {
+                    assertEquals(rows[i][j], columns[j][i], ensembleKernel.getKpiSchema().getName(j));
+                }
+            }
+        }
+        assertEquals(STEPS, ensembleKernel.getStep());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {RulesSerde.POISSON_MORTALITY, RulesSerde.BINOMIAL_MORTALITY})
+    void step(String mortality) throws IOException {
+        // Given ...
+        ObjectNode node = (ObjectNode) Utils.fromText(RULES_YAML);
+        node.put("mortality", mortality);
+        Status status = StatusSerde.fromJson(Utils.fromText(STATUS_YAML));
+
+        // When ... Then ...
+        assertSameTrajectories(node, status);
+    }
+
+    @Test
+    void extraSectors() throws IOException {
+        // Given ...
+        ObjectNode node = (ObjectNode) Utils.fromText(RULES_YAML);
+        Status status = new Status(StatusTest.EXTRA_SECTORS, 1000,
+                new double[]{1, 0.5, 0.2, 0.1, 0.3, 0},
+                new double[]{1, 0.5, 0.2, 0.1, 0.3, 0},
+                1);
+
+        // When ... Then ...
+        assertSameTrajectories(node, status);
+    }
+
+    @Test
+    void replicasMismatch() throws IOException {
+        // Given ...
+        EnsembleKernel kernel = RulesSerde.ensembleKernelFromJson(Utils.fromText(RULES_YAML), REPLICAS);
+        EnsembleBuffer buffer = EnsembleBuffer.of(StatusSerde.fromJson(Utils.fromText(STATUS_YAML)), REPLICAS + 1);
+        double[][] kpis = kernel.newKpis();
+
+        // When ...
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class, () -> kernel.step(buffer, kpis));
+
+        // Then ...
+        assertEquals("Replicas must be 7 (8)", ex.getMessage());
+    }
+
+    @Test
+    void tauLeaping() throws IOException {
+        // Given ...
+        ObjectNode node = (ObjectNode) Utils.fromText(RULES_YAML);
+        node.put("engine", RulesSerde.TAU_LEAPING_ENGINE);
+
+        // When ...
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class,
+                () -> RulesSerde.ensembleKernelFromJson(node, REPLICAS));
+
+        // Then ...
+        assertEquals("The ensemble kernel runs the stochastic engine (tauLeaping)", ex.getMessage());
+    }
+
+    @Test
+    void sectorsMismatch() throws IOException {
+        // Given ...
+        EnsembleBuffer buffer = EnsembleBuffer.of(StatusSerde.fromJson(Utils.fromText(STATUS_YAML)), REPLICAS);
+        Status status = new Status(StatusTest.EXTRA_SECTORS, 1000,
+                new double[6], new double[6], 1);
+
+        // When ...
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class, () -> buffer.set(0, status));
+
+        // Then ...
+        assertTrue(ex.getMessage().startsWith("Status sectors must be the ensemble sectors"));
+    }
+
+    @Test
+    void runningMask() throws IOException {
+        // Given ...
+        ObjectNode node = (ObjectNode) Utils.fromText(RULES_YAML);
+        Status status = StatusSerde.fromJson(Utils.fromText(STATUS_YAML));
+        EnsembleKernel ensembleKernel = RulesSerde.ensembleKernelFromJson(node, REPLICAS);
+        EnsembleBuffer ensemble = EnsembleBuffer.of(status, REPLICAS);
+        // The extinct replica would have not a number technology if stepped
+        ensemble.set(0, new Status(status.getSectors(), 0,
+                new double[status.getSectors().occupationCount()],
+                new double[status.getSectors().resourceCount()], 0.5));
+        double[][] columns = ensembleKernel.newKpis();
+        List<HilbertKernel> kernels = RulesSerde.kernelsFromJson(node, REPLICAS);
+        StatusBuffer buffer = StatusBuffer.of(status);
+        double[] row = kernels.get(1).getKpiSchema().newRow();
+        boolean[] running = new boolean[REPLICAS];
+        running[1] = true;
+        Status[] frozen = new Status[REPLICAS];
+        for (int i = 0; i < REPLICAS; i++) {
+            frozen[i] = ensemble.toStatus(i);
+        }
+
+        for (int step = 0; step < STEPS; step++) {
+            // When ...
+            ensembleKernel.step(ensemble, columns, running);
+            kernels.get(1).step(buffer, row);
+
+            // Then ...
+            assertEquals(buffer.toStatus(), ensemble.toStatus(1), "step " + step);
+            for (int i = 0; i < REPLICAS; i++) {
+                if (i != 1) {
+                    assertEquals(frozen[i], ensemble.toStatus(i), "replica " + i);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,270 @@
+/*
+ * Copyright (c) 2023 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ */
+
+package org.mmarini.hilbert.model;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.jupiter.api.Test;
+import org.mmarini.yaml.Utils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mmarini.hilbert.model.RulesSerdeTest.RULES_YAML;
+import static org.mmarini.hilbert.model.RulesSerdeTest.STATUS_YAML;
+
+class EnsembleTest {
+    public static final int REPLICAS = 8;
+    public static final int STEPS = 50;
+    public static final double[] QUANTILES = {0.05, 0.5, 0.95};
+
+    /**
+     * Returns the terminations of replicas by extinction
+     *
+     * @param n the number of replicas
+     */
+    static List<Termination> terminations(int n) {
+        return IntStream.range(0, n)
+                .mapToObj(i -> Termination.extinction())
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Returns the writer collecting the rows
+     *
+     * @param rows the rows
+     */
+    static KpiWriter writer(List<double[]> rows) {
+        return new KpiWriter() {
+            @Override
+            public void close() {
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public long getOffset() {
+                return 0;
+            }
+
+            @Override
+            public void write(double[] row) {
+                rows.add(row.clone());
+            }
+        };
+    }
+
+    /**
+     * Returns the statistics rows of an ensemble run
+     *
+     * @param threads   the number of threads
+     * @param blockSize the block size
+     */
+    static double[][] runEnsemble(int threads, int blockSize) throws IOException {
+        List<HilbertKernel> kernels = RulesSerde.kernelsFromJson(Utils.fromText(RULES_YAML), REPLICAS);
+        Status status = StatusSerde.fromJson(Utils.fromText(STATUS_YAML));
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            Ensemble ensemble = new Ensemble(kernels, terminations(kernels.size()), status, QUANTILES, pool, blockSize);
+            double[][] result = new double[STEPS][];
+            int[] i = {0};
+            ensemble.run(STEPS, new KpiWriter() {
+                @Override
+                public void close() {
+                }
+
+                @Override
+                public void flush() {
+                }
+
+                @Override
+                public long getOffset() {
+                    return 0;
+                }
+
+                @Override
+                public void write(double[] row) {
+                    result[i[0]++] = row.clone();
+                }
+            });
+            assertEquals(STEPS, ensemble.getStep());
+            return result;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void statsSchema() throws IOException {
+        // Given ...
+        List<HilbertKernel> kernels = RulesSerde.kernelsFromJson(Utils.fromText(RULES_YAML), 2);
+        Status status = StatusSerde.fromJson(Utils.fromText(STATUS_YAML));
+
+        // When ...
+        Ensemble ensemble = new Ensemble(kernels, terminations(kernels.size()), status, QUANTILES, ForkJoinPool.commonPool(), 4);
+
+        // Then ...
+        KpiSchema schema = ensemble.getStatsSchema();
+        assertEquals(HilbertKernel.KPI_NAMES.size() * 5, schema.size());
+        assertEquals(List.of("population.mean", "population.var", "population.q5", "population.q50", "population.q95"),
+                schema.getNames().subList(0, 5));
+    }
+
+    @Test
+    void threadsIndependence() throws IOException {
+        // Given ...
+        // When ...
+        double[][] single = runEnsemble(1, 16);
+        double[][] parallel = runEnsemble(4, 7);
+
+        // Then ...
+        for (int i = 0; i < STEPS; i++) {
+            assertArrayEquals(single[i], parallel[i], "step " + i);
+        }
+    }
+
+    @Test
+    void meanOfReplicas() throws IOException {
+        // Given ...
+        List<HilbertKernel> references = RulesSerde.kernelsFromJson(Utils.fromText(RULES_YAML), REPLICAS);
+        Status status = StatusSerde.fromJson(Utils.fromText(STATUS_YAML));
+        int populationKpi = references.get(0).getKpiSchema().indexOf("population");
+        double[] kpis = references.get(0).getKpiSchema().newRow();
+        double[] populations = new double[STEPS];
+        for (HilbertKernel reference : references) {
+            StatusBuffer buffer = StatusBuffer.of(status);
+            for (int j = 0; j < STEPS; j++) {
+                reference.step(buffer, kpis);
+                populations[j] += kpis[populationKpi];
+            }
+        }
+
+        // When ...
+        double[][] stats = runEnsemble(2, 8);
+
+        // Then ...
+        int populationMean = new EnsembleStats(references.get(0).getKpiSchema(), QUANTILES)
+                .getStatsSchema().indexOf("population.mean");
+        for (int j = 0; j < STEPS; j++) {
+            assertThat(stats[j][populationMean], closeTo(populations[j] / REPLICAS, 1e-9));
+        }
+    }
+
+    @Test
+    void invalidBlockSize() throws IOException {
+        // Given ...
+        List<HilbertKernel> kernels = RulesSerde.kernelsFromJson(Utils.fromText(RULES_YAML), 2);
+        Status status = StatusSerde.fromJson(Utils.fromText(STATUS_YAML));
+
+        // When ...
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class,
+                () -> new Ensemble(kernels, terminations(kernels.size()), status, QUANTILES, ForkJoinPool.commonPool(), 0));
+
+        // Then ...
+        assertEquals("Block size must be positive (0)", ex.getMessage());
+    }
+
+    @Test
+    void termination() throws IOException {
+        // Given ...
+        ObjectNode rules = (ObjectNode) Utils.fromText(RULES_YAML);
+        rules.putObject("termination").put("technologyCap", 0);
+        List<HilbertKernel> kernels = RulesSerde.kernelsFromJson(rules, REPLICAS);
+        List<Termination> terminations = IntStream.range(0, REPLICAS)
+                .mapToObj(i -> RulesSerde.loadTermination(rules))
+                .collect(Collectors.toList());
+        Status status = StatusSerde.fromJson(Utils.fromText(STATUS_YAML));
+        Ensemble ensemble = new Ensemble(kernels, terminations, status, QUANTILES, ForkJoinPool.commonPool(), 16);
+
+        // When ...
+        long steps = ensemble.run(STEPS, null);
+
+        // Then ...
+        assertTrue(ensemble.isTerminated());
+        assertEquals(1, steps);
+        assertEquals(1, ensemble.getStep());
+        for (int i = 0; i < REPLICAS; i++) {
+            assertEquals(Termination.TECHNOLOGY_CAP, ensemble.getTermination(i).getReason());
+            assertEquals(1, ensemble.getTerminationStep(i));
+        }
+    }
+
+    @Test
+    void columns() throws IOException {
+        // Given ...
+        ObjectNode rules = (ObjectNode) Utils.fromText(RULES_YAML);
+        rules.putObject("termination").put("technologyCap", 0.02);
+        Status status = StatusSerde.fromJson(Utils.fromText(STATUS_YAML));
+        List<Termination> terminations = IntStream.range(0, REPLICAS)
+                .mapToObj(i -> RulesSerde.loadTermination(rules))
+                .collect(Collectors.toList());
+        List<Termination> columnTerminations = IntStream.range(0, REPLICAS)
+                .mapToObj(i -> RulesSerde.loadTermination(rules))
+                .collect(Collectors.toList());
+        Ensemble ensemble = new Ensemble(RulesSerde.kernelsFromJson(rules, REPLICAS), terminations, status,
+                QUANTILES, ForkJoinPool.commonPool(), 16);
+        List<double[]> rows = new ArrayList<>();
+        List<double[]> columnRows = new ArrayList<>();
+
+        // When ...
+        Ensemble columnEnsemble = Ensemble.ofColumns(RulesSerde.ensembleKernelsFromJson(rules, REPLICAS, 3),
+                columnTerminations, status, QUANTILES, ForkJoinPool.commonPool(), 7);
+        long steps = ensemble.run(STEPS, writer(rows));
+        long columnSteps = columnEnsemble.run(STEPS, writer(columnRows));
+
+        // Then ...
+        assertEquals(REPLICAS, columnEnsemble.getReplicas());
+        assertEquals(steps, columnSteps);
+        assertEquals(rows.size(), columnRows.size());
+        for (int i = 0; i < rows.size(); i++) {
+            assertArrayEquals(rows.get(i), columnRows.get(i), "step " + i);
+        }
+        long distinct = IntStream.range(0, REPLICAS)
+                .mapToLong(ensemble::getTerminationStep)
+                .distinct()
+                .count();
+        assertThat(distinct, greaterThan(1L));
+        for (int i = 0; i < REPLICAS; i++) {
+            assertEquals(ensemble.getTerminationStep(i), columnEnsemble.getTerminationStep(i), "replica " + i);
+            assertEquals(ensemble.getTermination(i).getReason(), columnEnsemble.getTermination(i).getReason());
+            assertEquals(ensemble.getStatus(i).toStatus(), columnEnsemble.getStatus(i).toStatus(), "replica " + i);
+        }
+    }
+}
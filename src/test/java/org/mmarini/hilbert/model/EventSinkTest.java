@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2023 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ */
+
+package org.mmarini.hilbert.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class EventSinkTest {
+
+    @Test
+    void counter() {
+        // Given ...
+        CounterEventSink counter = new CounterEventSink();
+
+        // When ...
+        counter.accept(EventType.BIRTH, 0, 3);
+        counter.accept(EventType.BIRTH, 1, 2);
+        counter.accept(EventType.NATURAL_DEATH, 1, 1);
+
+        // Then ...
+        assertEquals(2, counter.getCount(EventType.BIRTH));
+        assertEquals(5d, counter.getSum(EventType.BIRTH));
+        assertEquals(1, counter.getCount(EventType.NATURAL_DEATH));
+        assertEquals(0, counter.getCount(EventType.TECHNOLOGY_LOSS));
+    }
+
+    @Test
+    void composite() {
+        // Given ...
+        CounterEventSink counter1 = new CounterEventSink();
+        CounterEventSink counter2 = new CounterEventSink();
+        EventSink sink = EventSink.of(counter1, counter2);
+
+        // When ...
+        sink.accept(EventType.BIRTH, 0, 3);
+
+        // Then ...
+        assertEquals(1, counter1.getCount(EventType.BIRTH));
+        assertEquals(1, counter2.getCount(EventType.BIRTH));
+    }
+
+    @Test
+    void sampling() {
+        // Given ...
+        List<Long> steps = new ArrayList<>();
+        ThrottledEventSink sink = new ThrottledEventSink((type, step, value) -> steps.add(step), 3, 0);
+
+        // When ...
+        for (int i = 0; i < 10; i++) {
+            sink.accept(EventType.BIRTH, i, 1);
+        }
+        sink.accept(EventType.NATURAL_DEATH, 10, 1);
+
+        // Then ...
+        assertEquals(List.of(0L, 3L, 6L, 9L, 10L), steps);
+        assertEquals(6, sink.getDropped());
+    }
+
+    @Test
+    void rateLimit() {
+        // Given ...
+        CounterEventSink counter = new CounterEventSink();
+        ThrottledEventSink sink = new ThrottledEventSink(counter, 1, 5);
+
+        // When ...
+        for (int i = 0; i < 1000; i++) {
+            sink.accept(EventType.BIRTH, i, 1);
+        }
+
+        // Then ...
+        // The bucket holds 5 events and refills 5 events per second
+        long count = counter.getCount(EventType.BIRTH);
+        assertEquals(1000, count + sink.getDropped());
+        assertEquals(5, count, 1);
+    }
+
+    @Test
+    void slowRateLimit() {
+        // Given ...
+        CounterEventSink counter = new CounterEventSink();
+        ThrottledEventSink sink = new ThrottledEventSink(counter, 1, 0.5);
+
+        // When ...
+        for (int i = 0; i < 1000; i++) {
+            sink.accept(EventType.BIRTH, i, 1);
+        }
+
+        // Then ...
+        // The bucket holds an event and refills an event every 2 seconds
+        long count = counter.getCount(EventType.BIRTH);
+        assertEquals(1000, count + sink.getDropped());
+        assertEquals(1, count);
+    }
+
+    @Test
+    void invalidSampling() {
+        // Given ...
+        // When ...
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class,
+                () -> new ThrottledEventSink(new CounterEventSink(), 0, 0));
+
+        // Then ...
+        assertEquals("Sampling must be positive (0)", ex.getMessage());
+    }
+
+    @Test
+    void binary() throws IOException {
+        // Given ...
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BinaryEventSink sink = new BinaryEventSink(bytes);
+
+        // When ...
+        sink.accept(EventType.NATURAL_DEATH, 12, 3);
+        sink.accept(EventType.TECHNOLOGY_LOSS, 13, -0.5);
+        sink.close();
+
+        // Then ...
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        assertEquals(BinaryEventSink.MAGIC, in.readInt());
+        assertEquals(BinaryEventSink.VERSION, in.readInt());
+        assertEquals(EventType.values().length, in.readInt());
+        for (EventType type : EventType.values()) {
+            assertEquals(type.name(), in.readUTF());
+        }
+        assertEquals(EventType.NATURAL_DEATH.ordinal(), in.readByte());
+        assertEquals(12, in.readLong());
+        assertEquals(3d, in.readDouble());
+        assertEquals(EventType.TECHNOLOGY_LOSS.ordinal(), in.readByte());
+        assertEquals(13, in.readLong());
+        assertEquals(-0.5, in.readDouble());
+        assertEquals(-1, in.read());
+    }
+}
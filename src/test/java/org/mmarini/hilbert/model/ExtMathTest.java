@@ -29,6 +29,7 @@ package org.mmarini.hilbert.model;
 
 import org.junit.jupiter.api.Test;
 
+import static java.lang.Math.PI;
 import static java.lang.Math.log;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.closeTo;
@@ -66,6 +67,34 @@ class ExtMathTest {
         assertThat(num1_23456789e29, closeTo(1.234e29, 1e-10));
     }
 
+    @Test
+    void expE1() {
+        // Given ...
+        // When ...
+        double e01 = ExtMath.expE1(0.1);
+        double e1 = ExtMath.expE1(1);
+        double e5 = ExtMath.expE1(5);
+
+        // Then ...
+        assertThat(e01, closeTo(2.0146425, 1e-6));
+        assertThat(e1, closeTo(0.5963474, 1e-6));
+        assertThat(e5, closeTo(0.1704221, 1e-6));
+    }
+
+    @Test
+    void gompertzMortality() {
+        // Given ...
+        double b = log(2) / 8;
+
+        for (double lifeExpectancy : new double[]{1, 20, 100}) {
+            // When ...
+            double a = ExtMath.gompertzMortality(lifeExpectancy, b);
+
+            // Then the mean lifetime of the Gompertz law is the life expectancy
+            assertThat(ExtMath.expE1(a / b) / b, closeTo(lifeExpectancy, lifeExpectancy * 1e-9));
+        }
+    }
+
     @Test
     void invSoftmax() {
         // Given ...
@@ -80,6 +109,24 @@ class ExtMathTest {
         }, prefs);
     }
 
+    @Test
+    void logGamma() {
+        // Given ...
+        // When ...
+        double lg1 = ExtMath.logGamma(1);
+        double lg2 = ExtMath.logGamma(2);
+        double lg5 = ExtMath.logGamma(5);
+        double lgHalf = ExtMath.logGamma(0.5);
+        double lg101 = ExtMath.logGamma(101);
+
+        // Then ...
+        assertEquals(0d, lg1);
+        assertEquals(0d, lg2);
+        assertThat(lg5, closeTo(log(24), 1e-12));
+        assertThat(lgHalf, closeTo(0.5 * log(PI), 1e-12));
+        assertThat(lg101, closeTo(363.73937555556347, 1e-9));
+    }
+
     @Test
     void softmax() {
         // Given ...
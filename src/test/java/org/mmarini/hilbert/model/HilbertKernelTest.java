@@ -0,0 +1,443 @@
+/*
+ * Copyright (c) 2023 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ */
+
+package org.mmarini.hilbert.model;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.mmarini.Tuple2;
+import org.mmarini.yaml.Utils;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import static org.mmarini.hilbert.model.HilbertKernel.*;
+import static org.mmarini.hilbert.model.RulesSerdeTest.RULES_YAML;
+import static org.mmarini.hilbert.model.RulesSerdeTest.STATUS_YAML;
+
+class HilbertKernelTest {
+    public static final int STEPS = 200;
+
+    /**
+     * Returns the engine composing the functional rules as the reference of the kernel
+     *
+     * @param node    the rules node
+     * @param replica the replica index
+     */
+    static Function<Status, Tuple2<Status, Supplier<Map<String, Number>>>> rulesEngine(JsonNode node, int replica) {
+        long seed = RulesSerde.loadSeed(node);
+        PoissonTableCache cache = RulesSerde.loadPoissonTableCache(node);
+        List<RandomSource> randoms = RulesSerde.loadRandoms(node, seed, replica, cache, RulesSerde.loadRandomProducer(node));
+        List<BiFunction<Status, Double, Tuple2<Status, Supplier<Collection<Tuple2<String, Number>>>>>> rules = List.of(
+                RulesSerde.loadOverSettlementRule(node, randoms.get(RulesSerde.OVER_SETTLEMENT_STREAM)),
+                RulesSerde.loadFoodProductionRule(node, randoms.get(RulesSerde.FOOD_PRODUCTION_STREAM)),
+                RulesSerde.loadHealthRule(node, randoms.get(RulesSerde.HEALTH_STREAM)),
+                RulesSerde.loadResearchRule(node, randoms.get(RulesSerde.RESEARCH_STREAM)),
+                RulesSerde.loadEducationRule(node, randoms.get(RulesSerde.EDUCATION_STREAM))
+        );
+        UnaryOperator<Status> normalize = RulesSerde.loadNormalizationRule(node);
+        double dt = node.path("timeInterval").asDouble();
+        long[] currentStep = {0};
+        return status -> {
+            for (RandomSource random : randoms) {
+                random.setStep(currentStep[0]);
+            }
+            currentStep[0]++;
+            Supplier<Collection<Tuple2<String, Number>>> initKpi = status::getKpi;
+            List<Tuple2<Status, Supplier<Collection<Tuple2<String, Number>>>>> partials = Stream.concat(
+                            Stream.of(Tuple2.of(status, initKpi)),
+                            rules.stream()
+                                    .map(f -> f.apply(status, dt)))
+                    .collect(Collectors.toList());
+            Status newStatus = normalize.apply(Status.sum(partials.stream().map(Tuple2::getV1).toArray(Status[]::new)));
+            List<Tuple2<String, Number>> cacheKpi = cache != null
+                    ? List.of(
+                    Tuple2.of("poissonHits", cache.getHits()),
+                    Tuple2.of("poissonMisses", cache.getMisses()))
+                    : List.of();
+            Supplier<Map<String, Number>> kpi = () -> Stream.concat(
+                            partials.stream().flatMap(t -> t._2.get().stream()),
+                            cacheKpi.stream())
+                    .collect(Tuple2.toMap());
+            return Tuple2.of(newStatus, kpi);
+        };
+    }
+
+    public static Stream<Arguments> configurations() throws IOException {
+        ObjectNode binomial = (ObjectNode) Utils.fromText(RULES_YAML);
+        binomial.put("mortality", RulesSerde.BINOMIAL_MORTALITY);
+        ObjectNode xoshiro = (ObjectNode) Utils.fromText(RULES_YAML);
+        xoshiro.put("rng", RandomSource.XOSHIRO256);
+        ObjectNode philox = (ObjectNode) Utils.fromText(RULES_YAML);
+        philox.put("rng", RandomSource.PHILOX);
+        ObjectNode cached = (ObjectNode) Utils.fromText(RULES_YAML);
+        cached.putObject("poissonCache");
+        return Stream.of(
+                Arguments.of(Utils.fromText(RULES_YAML)),
+                Arguments.of(binomial),
+                Arguments.of(xoshiro),
+                Arguments.of(philox),
+                Arguments.of(cached)
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("configurations")
+    void step(JsonNode node) throws IOException {
+        // Given ...
+        Status status0 = StatusSerde.fromJson(Utils.fromText(STATUS_YAML));
+        Function<Status, Tuple2<Status, Supplier<Map<String, Number>>>> engine = rulesEngine(node, 1);
+        HilbertKernel kernel = RulesSerde.kernelFromJson(node, 1, 0);
+        StatusBuffer buffer = StatusBuffer.of(status0);
+        double[] kpis = kernel.getKpiSchema().newRow();
+        Status status = status0;
+
+        for (int i = 0; i < STEPS; i++) {
+            // When ...
+            Tuple2<Status, Supplier<Map<String, Number>>> next = engine.apply(status);
+            kernel.step(buffer, kpis);
+
+            // Then ...
+            status = next._1;
+            assertEquals(status, buffer.toStatus());
+            Map<String, Number> expectedKpis = next._2.get();
+            List<String> names = kernel.getKpiSchema().getNames();
+            assertEquals(expectedKpis.keySet(), Set.copyOf(names));
+            for (int j = 0; j < names.size(); j++) {
+                Number expected = expectedKpis.get(names.get(j));
+                assertEquals(expected != null ? expected.doubleValue() : Double.NaN, kpis[j], names.get(j));
+            }
+        }
+        assertEquals(STEPS, kernel.getStep());
+    }
+
+    @Test
+    void largePopulation() throws IOException {
+        // Given a population beyond the integer range
+        ObjectNode node = (ObjectNode) Utils.fromText(RULES_YAML);
+        node.put("mortality", RulesSerde.BINOMIAL_MORTALITY);
+        node.put("resources", 4e12);
+        StatusBuffer buffer = StatusBuffer.of(StatusSerde.fromJson(Utils.fromText(STATUS_YAML)));
+        buffer.population = 10_000_000_000L;
+        Status status = buffer.toStatus();
+        Function<Status, Tuple2<Status, Supplier<Map<String, Number>>>> engine = rulesEngine(node, 1);
+        HilbertKernel kernel = RulesSerde.kernelFromJson(node, 1, 0);
+        double[] kpis = kernel.getKpiSchema().newRow();
+
+        for (int i = 0; i < 10; i++) {
+            // When ...
+            Tuple2<Status, Supplier<Map<String, Number>>> next = engine.apply(status);
+            kernel.step(buffer, kpis);
+
+            // Then ...
+            status = next._1;
+            assertEquals(status, buffer.toStatus());
+            assertThat(buffer.getPopulation(), greaterThan((long) Integer.MAX_VALUE));
+            assertEquals(next._2.get().get("deathsH").doubleValue(), kpis[DEATHS_H_KPI]);
+        }
+        assertThat(-kpis[DEATHS_H_KPI], closeTo(kpis[LAMBDA_H_KPI], kpis[LAMBDA_H_KPI] * 0.01));
+    }
+
+    /**
+     * Returns the bytes allocated by step of kernel
+     *
+     * @param kernel the kernel
+     */
+    static double allocatedBytesPerStep(HilbertKernel kernel) throws IOException {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threadBean.isThreadAllocatedMemorySupported());
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+        StatusBuffer buffer = StatusBuffer.of(StatusSerde.fromJson(Utils.fromText(STATUS_YAML)));
+        double[] kpis = kernel.getKpiSchema().newRow();
+        long threadId = Thread.currentThread().getId();
+        for (int i = 0; i < 20000; i++) {
+            kernel.step(buffer, kpis);
+        }
+        long bytes0 = threadBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < 20000; i++) {
+            kernel.step(buffer, kpis);
+        }
+        long bytes1 = threadBean.getThreadAllocatedBytes(threadId);
+        return (double) (bytes1 - bytes0) / 20000;
+    }
+
+    @Test
+    void stepAllocations() throws IOException {
+        // Given ...
+        HilbertKernel kernel = RulesSerde.kernelFromJson(Utils.fromText(RULES_YAML), 0, 0);
+
+        // When ...
+        double bytes = allocatedBytesPerStep(kernel);
+
+        // Then ...
+        assertThat(bytes, lessThan(1d));
+    }
+
+    @Test
+    void stepAllocationsWithEvents() throws IOException {
+        // Given ...
+        HilbertKernel kernel = RulesSerde.kernelFromJson(Utils.fromText(RULES_YAML), 0, 0);
+        CounterEventSink counter = new CounterEventSink();
+        kernel.setEventSink(counter);
+
+        // When ...
+        double bytes = allocatedBytesPerStep(kernel);
+
+        // Then ...
+        assertThat(counter.getCount(EventType.NATURAL_DEATH), greaterThan(0L));
+        assertThat(bytes, lessThan(1d));
+    }
+
+    @Test
+    void events() throws IOException {
+        // Given ...
+        HilbertKernel kernel = RulesSerde.kernelFromJson(Utils.fromText(RULES_YAML), 0, 0);
+        CounterEventSink counter = new CounterEventSink();
+        long[] lastStep = {-1};
+        kernel.setEventSink(EventSink.of(counter, (type, step, value) -> lastStep[0] = step));
+        StatusBuffer buffer = StatusBuffer.of(StatusSerde.fromJson(Utils.fromText(STATUS_YAML)));
+        double[] kpis = kernel.getKpiSchema().newRow();
+        double births = 0;
+        double naturalDeaths = 0;
+        double starvationDeaths = 0;
+        double enhancement = 0;
+
+        // When ...
+        for (int i = 0; i < STEPS; i++) {
+            kernel.step(buffer, kpis);
+            births += kpis[HilbertKernel.BIRTHS_KPI];
+            naturalDeaths -= kpis[HilbertKernel.DEATHS_H_KPI];
+            starvationDeaths -= kpis[HilbertKernel.DEATHS_S_KPI];
+            enhancement += kpis[HilbertKernel.DELTA_TR_KPI];
+        }
+
+        // Then ...
+        assertEquals(births, counter.getSum(EventType.BIRTH));
+        assertEquals(naturalDeaths, counter.getSum(EventType.NATURAL_DEATH));
+        assertEquals(starvationDeaths, counter.getSum(EventType.STARVATION_DEATH));
+        assertThat(counter.getSum(EventType.TECHNOLOGY_ENHANCEMENT), closeTo(enhancement, 1e-9));
+        assertThat(lastStep[0], lessThan((long) STEPS));
+    }
+
+    /**
+     * Returns the tau leaping rules
+     *
+     * @param tolerance the tolerance
+     */
+    static JsonNode tauLeaping(double tolerance) throws IOException {
+        ObjectNode node = (ObjectNode) Utils.fromText(RULES_YAML);
+        node.put("engine", RulesSerde.TAU_LEAPING_ENGINE);
+        node.putObject("tauLeaping").put("tolerance", tolerance);
+        return node;
+    }
+
+    @Test
+    void tauLeaping() throws IOException {
+        // Given ...
+        HilbertKernel kernel = RulesSerde.kernelFromJson(tauLeaping(0.03), 0, 0);
+        HilbertKernel fixed = RulesSerde.kernelFromJson(Utils.fromText(RULES_YAML), 0, 0);
+        StatusBuffer buffer = StatusBuffer.of(StatusSerde.fromJson(Utils.fromText(STATUS_YAML)));
+        StatusBuffer fixedBuffer = StatusBuffer.of(StatusSerde.fromJson(Utils.fromText(STATUS_YAML)));
+        double[] kpis = kernel.getKpiSchema().newRow();
+        double[] fixedKpis = fixed.getKpiSchema().newRow();
+        int timeSlot = kernel.getKpiSchema().indexOf("time");
+        int dtSlot = kernel.getKpiSchema().indexOf("dt");
+        double time = 0;
+
+        // When ...
+        while (kernel.getTime() < 200) {
+            kernel.step(buffer, kpis);
+
+            // Then ...
+            assertEquals(time, kpis[timeSlot]);
+            assertThat(kpis[dtSlot], allOf(greaterThanOrEqualTo(0.25e-3), lessThanOrEqualTo(25d)));
+            time += kpis[dtSlot];
+        }
+        while (fixed.getTime() < 200) {
+            fixed.step(fixedBuffer, fixedKpis);
+        }
+
+        // Then ...
+        assertTrue(kernel.isAdaptive());
+        assertFalse(fixed.isAdaptive());
+        assertEquals(HilbertKernel.TAU_LEAPING_KPI_NAMES, kernel.getKpiSchema().getNames().subList(
+                HilbertKernel.KPI_NAMES.size(), kernel.getKpiSchema().size()));
+        assertEquals(time, kernel.getTime());
+        assertEquals(800, fixed.getStep());
+        assertThat(kernel.getStep(), lessThan(fixed.getStep() / 2));
+    }
+
+    @Test
+    void tauLeapingNoTechnology() throws IOException {
+        // Given no technology and no research quantum
+        ObjectNode node = (ObjectNode) tauLeaping(0.03);
+        node.put("minTechnology", 0);
+        ((ObjectNode) node.path("research")).put("quantum", 0);
+        HilbertKernel kernel = RulesSerde.kernelFromJson(node, 0, 0);
+        StatusBuffer buffer = StatusBuffer.of(StatusSerde.fromJson(Utils.fromText(STATUS_YAML)));
+        buffer.technology = 0;
+        double[] kpis = kernel.getKpiSchema().newRow();
+        int dtSlot = kernel.getKpiSchema().indexOf("dt");
+        long population = buffer.getPopulation();
+
+        for (int i = 0; i < 100; i++) {
+            // When ...
+            kernel.step(buffer, kpis);
+
+            // Then ...
+            assertThat(kpis[dtSlot], allOf(greaterThanOrEqualTo(0.25e-3), lessThanOrEqualTo(25d)));
+        }
+        assertThat(kernel.getTime(), greaterThan(0d));
+        assertThat(buffer.getPopulation(), lessThan(population));
+    }
+
+    @Test
+    void tauLeapingEnsemble() throws IOException {
+        // Given the replicas up to time 10
+        List<HilbertKernel> kernels = RulesSerde.kernelsFromJson(tauLeaping(0.01), 32);
+        ObjectNode fine = (ObjectNode) Utils.fromText(RULES_YAML);
+        fine.put("timeInterval", 0.01);
+        List<HilbertKernel> references = RulesSerde.kernelsFromJson(fine, 32);
+
+        // When ...
+        double population = 0;
+        long rejections = 0;
+        for (HilbertKernel kernel : kernels) {
+            StatusBuffer buffer = StatusBuffer.of(StatusSerde.fromJson(Utils.fromText(STATUS_YAML)));
+            double[] kpis = kernel.getKpiSchema().newRow();
+            while (kernel.getTime() < 10) {
+                kernel.step(buffer, kpis);
+            }
+            population += buffer.getPopulation();
+            rejections += kernel.getRejections();
+        }
+        double referencePopulation = 0;
+        for (HilbertKernel reference : references) {
+            StatusBuffer buffer = StatusBuffer.of(StatusSerde.fromJson(Utils.fromText(STATUS_YAML)));
+            double[] kpis = reference.getKpiSchema().newRow();
+            for (int i = 0; i < 1000; i++) {
+                reference.step(buffer, kpis);
+            }
+            referencePopulation += buffer.getPopulation();
+        }
+
+        // Then the mean population matches the one of fine fixed interval
+        assertThat(population / 32, closeTo(referencePopulation / 32, referencePopulation / 32 * 0.05));
+        assertThat(rejections, greaterThan(0L));
+    }
+
+    @Test
+    void ssaSteps() throws IOException {
+        // Given a small society
+        ObjectNode rules = (ObjectNode) Utils.fromText(RULES_YAML);
+        rules.put("engine", RulesSerde.HYBRID_ENGINE);
+        HilbertKernel kernel = RulesSerde.kernelFromJson(rules, 0, 0);
+        ObjectNode statusNode = (ObjectNode) Utils.fromText(STATUS_YAML);
+        statusNode.put("population", 10);
+        StatusBuffer buffer = StatusBuffer.of(StatusSerde.fromJson(statusNode));
+        double[] kpis = kernel.getKpiSchema().newRow();
+        int dtSlot = kernel.getKpiSchema().indexOf("dt");
+
+        while (buffer.getPopulation() > 0 && buffer.getPopulation() < RulesSerde.DEFAULT_SSA_POPULATION) {
+            // When ...
+            kernel.step(buffer, kpis);
+
+            // Then each step is a single event
+            double events = -kpis[DEATHS_O_KPI] - kpis[DEATHS_S_KPI] + kpis[BIRTHS_KPI] - kpis[DEATHS_H_KPI]
+                    + (kpis[DELTA_TR_KPI] != 0 ? 1 : 0) + (kpis[DELTA_TE_KPI] != 0 ? 1 : 0);
+            assertEquals(1d, events);
+            assertThat(kpis[dtSlot], greaterThan(0d));
+        }
+        assertEquals(kernel.getStep(), kernel.getSsaEvents());
+        assertThat(kernel.getSsaEvents(), greaterThan(0L));
+    }
+
+    @Test
+    void ssaEnsemble() throws IOException {
+        // Given the replicas of a small society up to time 2
+        ObjectNode rules = (ObjectNode) Utils.fromText(RULES_YAML);
+        rules.put("engine", RulesSerde.HYBRID_ENGINE);
+        rules.putObject("hybrid").put("ssaPopulation", 1000);
+        List<HilbertKernel> kernels = RulesSerde.kernelsFromJson(rules, 256);
+        ObjectNode fine = (ObjectNode) Utils.fromText(RULES_YAML);
+        fine.put("timeInterval", 0.01);
+        List<HilbertKernel> references = RulesSerde.kernelsFromJson(fine, 256);
+        ObjectNode statusNode = (ObjectNode) Utils.fromText(STATUS_YAML);
+        statusNode.put("population", 10);
+        Status status = StatusSerde.fromJson(statusNode);
+
+        // When ...
+        double population = 0;
+        long steps = 0;
+        for (HilbertKernel kernel : kernels) {
+            StatusBuffer buffer = StatusBuffer.of(status);
+            double[] kpis = kernel.getKpiSchema().newRow();
+            while (kernel.getTime() < 2 && buffer.getPopulation() > 0) {
+                kernel.step(buffer, kpis);
+            }
+            population += buffer.getPopulation();
+            steps += kernel.getStep();
+        }
+        double referencePopulation = 0;
+        long referenceSteps = 0;
+        for (HilbertKernel reference : references) {
+            StatusBuffer buffer = StatusBuffer.of(status);
+            double[] kpis = reference.getKpiSchema().newRow();
+            for (int i = 0; i < 200; i++) {
+                reference.step(buffer, kpis);
+            }
+            referencePopulation += buffer.getPopulation();
+            referenceSteps += reference.getStep();
+        }
+
+        // Then the exact simulation matches the fine fixed interval with far fewer steps
+        assertThat(population / 256, closeTo(referencePopulation / 256, referencePopulation / 256 * 0.05));
+        assertThat(steps, lessThan(referenceSteps / 10));
+    }
+}
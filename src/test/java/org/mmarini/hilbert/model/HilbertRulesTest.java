@@ -37,6 +37,7 @@ import java.util.Collection;
 import java.util.function.BiFunction;
 import java.util.function.Supplier;
 
+import static java.lang.Math.exp;
 import static java.lang.Math.log;
 import static java.lang.Math.min;
 import static org.hamcrest.MatcherAssert.assertThat;
@@ -62,8 +63,8 @@ class HilbertRulesTest {
                 others, others, educators, others, others,
                 otherRes, otherRes, education, otherRes, otherRes,
                 technology);
-        ExtRandom random = Mockito.mock();
-        when(random.nextPoisson(anyDouble())).thenReturn(200); // 3 dead's
+        RandomSource random = Mockito.mock();
+        when(random.nextPoisson(anyDouble())).thenReturn(200L); // 3 dead's
         double ke = 2;
         // let the education production limited only by educator (epsilonp * educators < epsilonr * education)
         // ka = eff * min(pip * farmers, pis * food)/(pop*rho)
@@ -102,8 +103,8 @@ class HilbertRulesTest {
                 others, others, educators, others, others,
                 otherRes, otherRes, education, otherRes, otherRes,
                 technology);
-        ExtRandom random = Mockito.mock();
-        when(random.nextPoisson(anyDouble())).thenReturn(3); // 3 dead's
+        RandomSource random = Mockito.mock();
+        when(random.nextPoisson(anyDouble())).thenReturn(3L); // 3 dead's
         double ke = 0.5;
         // let the education production limited only by educator (epsilonp * educators < epsilonr * education)
         // ka = eff * min(pip * farmers, pis * food)/(pop*rho)
@@ -145,8 +146,8 @@ class HilbertRulesTest {
                 farmers, others, others, others, others,
                 food, otherRes, otherRes, otherRes, otherRes,
                 technology);
-        ExtRandom random = Mockito.mock();
-        when(random.nextPoisson(anyDouble())).thenReturn(3); // 3 dead's
+        RandomSource random = Mockito.mock();
+        when(random.nextPoisson(anyDouble())).thenReturn(3L); // 3 dead's
         double ka = 2;
         // let the food production limited only by farmers (pip * farmer < pis*food)
         // ka = eff * min(pip * farmers, pis * food)/(pop*rho)
@@ -168,8 +169,8 @@ class HilbertRulesTest {
         assertEquals(Status.population(3), delta._1);
         verify(random, only()).nextPoisson(MockitoHamcrest.doubleThat(closeTo(lambda, 1e-6)));
         assertThat(kpi, containsInAnyOrder(
-                Matchers.<String, Number>tupleOf("deathsS", 0),
-                Matchers.<String, Number>tupleOf("births", 3),
+                Matchers.<String, Number>tupleOf("deathsS", 0L),
+                Matchers.<String, Number>tupleOf("births", 3L),
                 tupleOf("lambdaS", 0d),
                 tupleOf(equalTo("lambdaB"), closeTo(lambda, 1e-6)),
                 tupleOf(equalTo("kf"), closeTo(kf, 1e-6)),
@@ -193,8 +194,8 @@ class HilbertRulesTest {
                 farmers, others, others, others, others,
                 food, otherRes, otherRes, otherRes, otherRes,
                 technology);
-        ExtRandom random = Mockito.mock();
-        when(random.nextPoisson(anyDouble())).thenReturn(3); // 3 dead's
+        RandomSource random = Mockito.mock();
+        when(random.nextPoisson(anyDouble())).thenReturn(3L); // 3 dead's
         double ka = 0.5;
         // let the food production limited only by farmers (pip * farmer < pis*food)
         // ka = eff * min(pip * farmers, pis * food)/(pop*rho)
@@ -216,8 +217,8 @@ class HilbertRulesTest {
         assertEquals(Status.population(-3), delta._1);
         verify(random, only()).nextPoisson(MockitoHamcrest.doubleThat(closeTo(lambda, 1e-6)));
         assertThat(kpi, containsInAnyOrder(
-                Matchers.<String, Number>tupleOf("deathsS", -3),
-                Matchers.<String, Number>tupleOf("births", 0),
+                Matchers.<String, Number>tupleOf("deathsS", -3L),
+                Matchers.<String, Number>tupleOf("births", 0L),
                 tupleOf(equalTo("kf"), closeTo(kf, 1e-6)),
                 tupleOf(equalTo("kfPop"), closeTo(kfPop, 1e-6)),
                 tupleOf(equalTo("kfRes"), closeTo(kfRes, 1e-6)),
@@ -226,6 +227,43 @@ class HilbertRulesTest {
         ));
     }
 
+    @Test
+    void healthRuleBinomialDeaths() {
+        int doctors = 100;
+        int others = 10;
+        int population = doctors + 4 * others;
+        double health = 100;
+        double otherRes = 10;
+        double resources = health + 4 * otherRes;
+        double eff = 0.5; // 1 - exp(-technology)
+
+        double technology = -log(1 - eff); // -log(1-eff)
+        Status status0 = Status.create(
+                others, others, others, doctors, others,
+                otherRes, otherRes, otherRes, health, otherRes,
+                technology);
+
+        double productivity = 1;
+        double demand = eff * productivity * doctors / population / 1.5;
+        double timeInterval = 1;
+        double minimumLifeExpectancy = 20;
+        double maximumLifeExpectancy = 70;
+        double lambda = population * timeInterval / maximumLifeExpectancy;
+        double p = 1 - exp(-lambda / population);
+
+        RandomSource random = Mockito.mock();
+        when(random.nextBinomial(anyLong(), anyDouble())).thenReturn(3L); // 3 dead's
+
+        // When ...
+        BiFunction<Status, Double, Tuple2<Status, Supplier<Collection<Tuple2<String, Number>>>>> rule = HilbertRules.healthRule(random, resources, productivity, demand, minimumLifeExpectancy, maximumLifeExpectancy, true);
+        Tuple2<Status, Supplier<Collection<Tuple2<String, Number>>>> delta = rule.apply(status0, timeInterval);
+
+        // Then ...
+        assertEquals(Status.population(-3), delta._1);
+        verify(random).nextBinomial(eq((long) population), MockitoHamcrest.doubleThat(closeTo(p, 1e-9)));
+        verify(random, never()).nextPoisson(anyDouble());
+    }
+
     @Test
     void healthRuleOverHealth() {
         int doctors = 100;
@@ -253,8 +291,8 @@ class HilbertRulesTest {
         double lifeExpectancy = maximumLifeExpectancy;
         double lambda = population * timeInterval / lifeExpectancy;
 
-        ExtRandom random = Mockito.mock();
-        when(random.nextPoisson(anyDouble())).thenReturn(0); // 0 dead's
+        RandomSource random = Mockito.mock();
+        when(random.nextPoisson(anyDouble())).thenReturn(0L); // 0 dead's
 
         // When ...
         BiFunction<Status, Double, Tuple2<Status, Supplier<Collection<Tuple2<String, Number>>>>> rule = HilbertRules.healthRule(random, resources, productivity, demand, minimumLifeExpectancy, maximumLifeExpectancy);
@@ -266,7 +304,7 @@ class HilbertRulesTest {
         verify(random).nextPoisson(MockitoHamcrest.doubleThat(closeTo(lambda, 1e-6)));
 
         assertThat(kpi, containsInAnyOrder(
-                Matchers.<String, Number>tupleOf("deathsH", 0),
+                Matchers.<String, Number>tupleOf("deathsH", 0L),
                 tupleOf(equalTo("lifeExpectancy"), closeTo(lifeExpectancy, 1e-6)),
                 tupleOf(equalTo("lambdaH"), closeTo(lambda, 1e-6)),
                 tupleOf(equalTo("kh"), closeTo(kh, 1e-6))
@@ -300,8 +338,8 @@ class HilbertRulesTest {
         double lifeExpectancy = (maximumLifeExpectancy - minimumLifeExpectancy) * kh + minimumLifeExpectancy;
         double lambda = population * timeInterval / lifeExpectancy;
 
-        ExtRandom random = Mockito.mock();
-        when(random.nextPoisson(anyDouble())).thenReturn(3); // 3 dead's
+        RandomSource random = Mockito.mock();
+        when(random.nextPoisson(anyDouble())).thenReturn(3L); // 3 dead's
 
         // When ...
         BiFunction<Status, Double, Tuple2<Status, Supplier<Collection<Tuple2<String, Number>>>>> rule = HilbertRules.healthRule(random, resources, productivity, demand, minimumLifeExpectancy, maximumLifeExpectancy);
@@ -313,7 +351,7 @@ class HilbertRulesTest {
         verify(random).nextPoisson(MockitoHamcrest.doubleThat(closeTo(lambda, 1e-6)));
 
         assertThat(kpi, containsInAnyOrder(
-                Matchers.<String, Number>tupleOf("deathsH", -3),
+                Matchers.<String, Number>tupleOf("deathsH", -3L),
                 tupleOf(equalTo("lifeExpectancy"), closeTo(lifeExpectancy, 1e-6)),
                 tupleOf(equalTo("lambdaH"), closeTo(lambda, 1e-6)),
                 tupleOf(equalTo("kh"), closeTo(kh, 1e-6))
@@ -347,7 +385,7 @@ class HilbertRulesTest {
         assertEquals(Status.zero(), delta._1);
 
         assertThat(kpi, containsInAnyOrder(
-                Matchers.<String, Number>tupleOf("deathsO", 0),
+                Matchers.<String, Number>tupleOf("deathsO", 0L),
                 tupleOf(equalTo("maxPopO"), closeTo(maxPop, 1e-6)),
                 tupleOf(equalTo("popO"), closeTo(pop, 1e-6)),
                 tupleOf(equalTo("lambdaO"), closeTo(0, 1e-6))
@@ -370,8 +408,8 @@ class HilbertRulesTest {
                 others, others, others, others, others,
                 otherRes, otherRes, otherRes, otherRes, settlement,
                 0);
-        ExtRandom random = Mockito.mock();
-        when(random.nextPoisson(anyDouble())).thenReturn(3); // 3 dead's
+        RandomSource random = Mockito.mock();
+        when(random.nextPoisson(anyDouble())).thenReturn(3L); // 3 dead's
         double density = 0.9;
         double timeInterval = 1;
         double deathTimeConstant = 2;
@@ -389,7 +427,7 @@ class HilbertRulesTest {
         verify(random).nextPoisson(lambda);
 
         assertThat(kpi, containsInAnyOrder(
-                Matchers.<String, Number>tupleOf("deathsO", -3),
+                Matchers.<String, Number>tupleOf("deathsO", -3L),
                 tupleOf(equalTo("maxPopO"), closeTo(maxPop, 1e-6)),
                 tupleOf(equalTo("popO"), closeTo(pop, 1e-6)),
                 tupleOf(equalTo("lambdaO"), closeTo(lambda, 1e-6))
@@ -409,8 +447,8 @@ class HilbertRulesTest {
 
         double resources = settlement + 4 * otherRes;
 
-        ExtRandom random = Mockito.mock();
-        when(random.nextPoisson(anyDouble())).thenReturn(0); // 0 dead's
+        RandomSource random = Mockito.mock();
+        when(random.nextPoisson(anyDouble())).thenReturn(0L); // 0 dead's
         double density = 10;
         double deathTimeConstant = 2;
         double timeInterval = 1;
@@ -428,7 +466,7 @@ class HilbertRulesTest {
         verify(random, never()).nextPoisson(anyDouble());
 
         assertThat(kpi, containsInAnyOrder(
-                Matchers.<String, Number>tupleOf("deathsO", 0),
+                Matchers.<String, Number>tupleOf("deathsO", 0L),
                 tupleOf(equalTo("maxPopO"), closeTo(maxPop, 1e-6)),
                 tupleOf(equalTo("popO"), closeTo(pop, 1e-6)),
                 tupleOf(equalTo("lambdaO"), closeTo(lambda, 1e-6))
@@ -450,8 +488,8 @@ class HilbertRulesTest {
                 others, researchers, others, others, others,
                 otherRes, research, otherRes, otherRes, otherRes,
                 technology);
-        ExtRandom random = Mockito.mock();
-        when(random.nextPoisson(anyDouble())).thenReturn(3); // 3 dead's
+        RandomSource random = Mockito.mock();
+        when(random.nextPoisson(anyDouble())).thenReturn(3L); // 3 dead's
         double productivity = 1;
         double cost = 1;
         double quantum = 0.01;
@@ -488,8 +526,8 @@ class HilbertRulesTest {
                 others, researchers, others, others, others,
                 otherRes, research, otherRes, otherRes, otherRes,
                 technology);
-        ExtRandom random = Mockito.mock();
-        when(random.nextPoisson(anyDouble())).thenReturn(3); // 3 dead's
+        RandomSource random = Mockito.mock();
+        when(random.nextPoisson(anyDouble())).thenReturn(3L); // 3 dead's
         double productivity = 1;
         double cost = 1;
         double quantum = 0.01;
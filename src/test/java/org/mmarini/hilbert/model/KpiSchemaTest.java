@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2023 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ */
+
+package org.mmarini.hilbert.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class KpiSchemaTest {
+
+    @Test
+    void create() {
+        // Given ...
+        // When ...
+        KpiSchema schema = KpiSchema.of("population", "technology", "kf");
+
+        // Then ...
+        assertEquals(3, schema.size());
+        assertEquals(List.of("population", "technology", "kf"), schema.getNames());
+        assertEquals(0, schema.indexOf("population"));
+        assertEquals(2, schema.indexOf("kf"));
+        assertEquals(-1, schema.indexOf("ke"));
+        assertEquals("technology", schema.getName(1));
+    }
+
+    @Test
+    void duplicated() {
+        // Given ...
+        // When ...
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class,
+                () -> KpiSchema.of("population", "kf", "population"));
+
+        // Then ...
+        assertEquals("Duplicated kpi \"population\"", ex.getMessage());
+    }
+
+    @Test
+    void newRow() {
+        // Given ...
+        KpiSchema schema = KpiSchema.of("population", "technology");
+
+        // When ...
+        double[] row = schema.newRow();
+
+        // Then ...
+        assertArrayEquals(new double[]{Double.NaN, Double.NaN}, row);
+    }
+
+    @Test
+    void toMap() {
+        // Given ...
+        KpiSchema schema = KpiSchema.of("population", "technology", "kf");
+        double[] row = schema.newRow();
+        row[0] = 10;
+        row[2] = 0.5;
+
+        // When ...
+        Map<String, Number> map = schema.toMap(row);
+
+        // Then ...
+        assertEquals(Map.of("population", 10d, "kf", 0.5), map);
+    }
+}
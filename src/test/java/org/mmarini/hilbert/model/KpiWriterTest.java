@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2023 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ */
+
+package org.mmarini.hilbert.model;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.jupiter.api.Assertions.*;
+
+class KpiWriterTest {
+
+    @Test
+    void writeCsv() throws IOException {
+        // Given ...
+        KpiSchema schema = KpiSchema.of("population", "technology", "kf");
+        StringWriter text = new StringWriter();
+        CSVWriter writer = new CSVWriter(new PrintWriter(text), schema.getNames());
+        double[] row = schema.newRow();
+        row[0] = 10;
+        row[1] = 0.25;
+
+        // When ...
+        writer.write(row);
+        row[2] = 2;
+        writer.write(row);
+        writer.close();
+
+        // Then ...
+        String nl = System.lineSeparator();
+        assertEquals("\"population\",\"technology\",\"kf\"" + nl
+                        + "10,0.25," + nl
+                        + "10,0.25,2" + nl,
+                text.toString());
+    }
+
+    @Test
+    void writeBinary() throws IOException {
+        // Given ...
+        KpiSchema schema = KpiSchema.of("population", "technology");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BinaryKpiWriter writer = new BinaryKpiWriter(bytes, schema);
+
+        // When ...
+        writer.write(new double[]{10, 0.25});
+        writer.write(new double[]{11, Double.NaN});
+        writer.close();
+
+        // Then ...
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        assertEquals(BinaryKpiWriter.MAGIC, in.readInt());
+        assertEquals(BinaryKpiWriter.VERSION, in.readInt());
+        assertEquals(2, in.readInt());
+        assertEquals("population", in.readUTF());
+        assertEquals("technology", in.readUTF());
+        assertEquals(10d, in.readDouble());
+        assertEquals(0.25, in.readDouble());
+        assertEquals(11d, in.readDouble());
+        assertEquals(Double.NaN, in.readDouble());
+        assertEquals(-1, in.read());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"kpis.csv", "kpis.bin"})
+    void append(String name, @TempDir Path dir) throws IOException {
+        // Given ...
+        KpiSchema schema = KpiSchema.of("population", "technology");
+        String expectedFile = dir.resolve("expected-" + name).toString();
+        String file = dir.resolve(name).toString();
+        try (KpiWriter writer = KpiWriter.create(expectedFile, schema)) {
+            for (int i = 0; i < 4; i++) {
+                writer.write(new double[]{i, i * 0.25});
+            }
+        }
+        long offset;
+        try (KpiWriter writer = KpiWriter.create(file, schema)) {
+            writer.write(new double[]{0, 0});
+            writer.write(new double[]{1, 0.25});
+            writer.flush();
+            offset = writer.getOffset();
+            // Rows written after the offset are discarded
+            writer.write(new double[]{99, 99});
+        }
+
+        // When ...
+        try (KpiWriter writer = KpiWriter.append(file, schema, offset)) {
+            writer.write(new double[]{2, 0.5});
+            writer.write(new double[]{3, 0.75});
+        }
+
+        // Then ...
+        assertArrayEquals(Files.readAllBytes(Path.of(expectedFile)), Files.readAllBytes(Path.of(file)));
+    }
+
+    @Test
+    void appendShortFile(@TempDir Path dir) throws IOException {
+        // Given ...
+        KpiSchema schema = KpiSchema.of("population", "technology");
+        String file = dir.resolve("kpis.csv").toString();
+        KpiWriter.create(file, schema).close();
+
+        // When ...
+        IOException ex = assertThrows(IOException.class, () -> KpiWriter.append(file, schema, 1000));
+
+        // Then ...
+        assertThat(ex.getMessage(), containsString("shorter than offset"));
+    }
+}
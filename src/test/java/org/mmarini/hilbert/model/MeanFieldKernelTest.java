@@ -0,0 +1,237 @@
+/*
+ * Copyright (c) 2023 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ */
+
+package org.mmarini.hilbert.model;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.jupiter.api.Test;
+import org.mmarini.yaml.Utils;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mmarini.hilbert.model.RulesSerdeTest.RULES_YAML;
+import static org.mmarini.hilbert.model.RulesSerdeTest.STATUS_YAML;
+
+class MeanFieldKernelTest {
+    public static final int STEPS = 200;
+    public static final int REPLICAS = 64;
+
+    /**
+     * Returns the mean field rules
+     *
+     * @param interval  the output interval
+     * @param tolerance the tolerance
+     */
+    static JsonNode meanField(double interval, double tolerance) throws IOException {
+        ObjectNode node = (ObjectNode) Utils.fromText(RULES_YAML);
+        node.put("engine", RulesSerde.MEAN_FIELD_ENGINE);
+        ObjectNode meanFieldNode = node.putObject("meanField");
+        meanFieldNode.put("interval", interval);
+        meanFieldNode.put("tolerance", tolerance);
+        return node;
+    }
+
+    /**
+     * Runs the kernel and returns the final status buffer
+     *
+     * @param kernel the kernel
+     * @param steps  the number of steps
+     */
+    static StatusBuffer run(StepKernel kernel, int steps) throws IOException {
+        StatusBuffer buffer = StatusBuffer.of(StatusSerde.fromJson(Utils.fromText(STATUS_YAML)));
+        double[] kpis = kernel.getKpiSchema().newRow();
+        for (int i = 0; i < steps; i++) {
+            kernel.step(buffer, kpis);
+        }
+        return buffer;
+    }
+
+    @Test
+    void balance() throws IOException {
+        // Given ...
+        MeanFieldKernel kernel = RulesSerde.meanFieldKernelFromJson(meanField(0.25, 1e-8));
+        StatusBuffer buffer = StatusBuffer.of(StatusSerde.fromJson(Utils.fromText(STATUS_YAML)));
+        double[] kpis = kernel.getKpiSchema().newRow();
+        double changes = 0;
+
+        // When ...
+        for (int i = 0; i < STEPS; i++) {
+            kernel.step(buffer, kpis);
+            changes += kpis[HilbertKernel.DEATHS_O_KPI] + kpis[HilbertKernel.DEATHS_S_KPI]
+                    + kpis[HilbertKernel.BIRTHS_KPI] + kpis[HilbertKernel.DEATHS_H_KPI];
+        }
+
+        // Then ...
+        assertThat(kernel.getPopulation(), closeTo(100 + changes, 1e-6));
+        assertEquals(Math.round(kernel.getPopulation()), buffer.getPopulation());
+        assertEquals(STEPS, kernel.getStep());
+    }
+
+    @Test
+    void engine() throws IOException {
+        // Given ...
+        JsonNode meanField = meanField(0.25, 1e-6);
+        ObjectNode wrong = (ObjectNode) Utils.fromText(RULES_YAML);
+        wrong.put("engine", "wrong");
+
+        // When ...
+        StepKernel meanFieldKernel = RulesSerde.createStepKernel(meanField, 1234, 0);
+        StepKernel stochasticKernel = RulesSerde.createStepKernel(Utils.fromText(RULES_YAML), 1234, 0);
+
+        // Then ...
+        assertThat(meanFieldKernel, instanceOf(MeanFieldKernel.class));
+        assertThat(stochasticKernel, instanceOf(HilbertKernel.class));
+        assertEquals(0.25, ((MeanFieldKernel) meanFieldKernel).getInterval());
+        assertThrows(IllegalArgumentException.class, () -> RulesSerde.meanFieldKernelFromJson(wrong));
+    }
+
+    @Test
+    void ensemble() throws IOException {
+        // Given the stochastic replicas with fine time interval up to time 10
+        ObjectNode fine = (ObjectNode) Utils.fromText(RULES_YAML);
+        fine.put("timeInterval", 0.01);
+        List<HilbertKernel> kernels = RulesSerde.kernelsFromJson(fine, REPLICAS);
+        MeanFieldKernel kernel = RulesSerde.meanFieldKernelFromJson(meanField(0.25, 1e-6));
+
+        // When ...
+        run(kernel, 40);
+        double population = 0;
+        for (HilbertKernel replica : kernels) {
+            population += run(replica, 1000).getPopulation();
+        }
+        population /= REPLICAS;
+
+        // Then the expected dynamics matches the mean of replicas
+        assertThat(kernel.getPopulation(), closeTo(population, population * 0.05));
+    }
+
+    @Test
+    void interval() throws IOException {
+        // Given ...
+        MeanFieldKernel kernel = RulesSerde.meanFieldKernelFromJson(meanField(0.25, 1e-8));
+        MeanFieldKernel longKernel = RulesSerde.meanFieldKernelFromJson(meanField(2.5, 1e-8));
+
+        // When ...
+        StatusBuffer buffer = run(kernel, STEPS);
+        StatusBuffer longBuffer = run(longKernel, STEPS / 10);
+
+        // Then ...
+        assertThat(longKernel.getPopulation(), closeTo(kernel.getPopulation(), kernel.getPopulation() * 1e-5));
+        assertThat(longBuffer.getTechnology(), closeTo(buffer.getTechnology(), 1e-5));
+        assertThat(longKernel.getEvaluations(), lessThan(kernel.getEvaluations()));
+    }
+
+    @Test
+    void kpiSchema() throws IOException {
+        // When ...
+        MeanFieldKernel kernel = RulesSerde.meanFieldKernelFromJson(meanField(0.25, 1e-6));
+
+        // Then ...
+        assertEquals(HilbertKernel.KPI_NAMES, kernel.getKpiSchema().getNames());
+    }
+
+    @Test
+    void rates() throws IOException {
+        // Given ...
+        MeanFieldKernel kernel = RulesSerde.meanFieldKernelFromJson(meanField(0.25, 1e-6));
+        HilbertKernel stochastic = RulesSerde.kernelFromJson(Utils.fromText(RULES_YAML), 0, 0);
+        double[] kpis = kernel.getKpiSchema().newRow();
+        double[] expected = stochastic.getKpiSchema().newRow();
+
+        // When ...
+        kernel.step(StatusBuffer.of(StatusSerde.fromJson(Utils.fromText(STATUS_YAML))), kpis);
+        stochastic.step(StatusBuffer.of(StatusSerde.fromJson(Utils.fromText(STATUS_YAML))), expected);
+
+        // Then the lambdas of the interval are the ones of stochastic kernel
+        for (int i : new int[]{
+                HilbertKernel.POPULATION_KPI, HilbertKernel.TECHNOLOGY_KPI,
+                HilbertKernel.LAMBDA_O_KPI, HilbertKernel.MAX_POP_O_KPI, HilbertKernel.POP_O_KPI,
+                HilbertKernel.KF_KPI, HilbertKernel.KF_POP_KPI, HilbertKernel.KF_RES_KPI,
+                HilbertKernel.LAMBDA_S_KPI, HilbertKernel.LAMBDA_B_KPI, HilbertKernel.LAMBDA_R_KPI,
+                HilbertKernel.LAMBDA_E_KPI, HilbertKernel.KE_KPI, HilbertKernel.KH_KPI,
+                HilbertKernel.LIFE_EXPECTANCY_KPI, HilbertKernel.LAMBDA_H_KPI}) {
+            assertThat(kernel.getKpiSchema().getNames().get(i), kpis[i], closeTo(expected[i], Math.abs(expected[i]) * 1e-12));
+        }
+    }
+
+    @Test
+    void tolerance() throws IOException {
+        // Given ...
+        MeanFieldKernel kernel = RulesSerde.meanFieldKernelFromJson(meanField(0.25, 1e-6));
+        MeanFieldKernel reference = RulesSerde.meanFieldKernelFromJson(meanField(0.25, 1e-10));
+
+        // When ...
+        StatusBuffer buffer = run(kernel, STEPS);
+        StatusBuffer referenceBuffer = run(reference, STEPS);
+
+        // Then ...
+        assertThat(kernel.getPopulation(), closeTo(reference.getPopulation(), reference.getPopulation() * 1e-4));
+        assertThat(buffer.getTechnology(), closeTo(referenceBuffer.getTechnology(), 1e-4));
+        assertThat(kernel.getEvaluations(), lessThan(reference.getEvaluations()));
+    }
+
+    @Test
+    void rosenbrock() throws IOException {
+        // Given ...
+        MeanFieldKernel reference = RulesSerde.meanFieldKernelFromJson(meanField(0.25, 1e-10));
+        ObjectNode rules = (ObjectNode) meanField(12.5, 1e-6);
+        ((ObjectNode) rules.path("meanField")).put("method", MeanFieldKernel.ROSENBROCK_METHOD);
+        MeanFieldKernel kernel = RulesSerde.meanFieldKernelFromJson(rules);
+        MeanFieldKernel explicit = RulesSerde.meanFieldKernelFromJson(meanField(12.5, 1e-6));
+        StatusBuffer buffer = StatusBuffer.of(StatusSerde.fromJson(Utils.fromText(STATUS_YAML)));
+        StatusBuffer explicitBuffer = StatusBuffer.of(StatusSerde.fromJson(Utils.fromText(STATUS_YAML)));
+        double[] kpis = kernel.getKpiSchema().newRow();
+        // Runs up to the equilibrium at time 500
+        for (int i = 0; i < 40; i++) {
+            kernel.step(buffer, kpis);
+            explicit.step(explicitBuffer, kpis);
+        }
+        long evaluations = kernel.getEvaluations();
+        long explicitEvaluations = explicit.getEvaluations();
+
+        // When ...
+        StatusBuffer referenceBuffer = run(reference, 4000);
+        for (int i = 0; i < 40; i++) {
+            kernel.step(buffer, kpis);
+            explicit.step(explicitBuffer, kpis);
+        }
+
+        // Then the stiff method takes fewer evaluations near the equilibrium
+        assertTrue(kernel.isRosenbrock());
+        assertThat(kernel.getPopulation(), closeTo(reference.getPopulation(), reference.getPopulation() * 1e-4));
+        assertThat(buffer.getTechnology(), closeTo(referenceBuffer.getTechnology(), referenceBuffer.getTechnology() * 1e-4));
+        assertThat(kernel.getEvaluations() - evaluations,
+                lessThan((explicit.getEvaluations() - explicitEvaluations) / 4));
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2023 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ */
+
+package org.mmarini.hilbert.model;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class P2QuantileTest {
+
+    @Test
+    void invalidProbability() {
+        // Given ...
+        // When ...
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class,
+                () -> new P2Quantile(1.5));
+
+        // Then ...
+        assertEquals("Quantile probability must be in range [0, 1] (1.50000)", ex.getMessage());
+    }
+
+    @Test
+    void empty() {
+        // Given ...
+        P2Quantile quantile = new P2Quantile(0.5);
+
+        // When ...
+        // Then ...
+        assertEquals(0, quantile.getCount());
+        assertEquals(Double.NaN, quantile.getValue());
+    }
+
+    @Test
+    void fewValues() {
+        // Given ...
+        P2Quantile quantile = new P2Quantile(0.5);
+
+        // When ...
+        quantile.add(5);
+        quantile.add(1);
+        quantile.add(3);
+
+        // Then ...
+        assertEquals(3d, quantile.getValue());
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+            "0.05",
+            "0.5",
+            "0.95"
+    })
+    void normal(double p) {
+        // Given ...
+        P2Quantile quantile = new P2Quantile(p);
+        Random random = new Random(1234);
+        double[] values = new double[10000];
+
+        // When ...
+        for (int i = 0; i < values.length; i++) {
+            values[i] = random.nextGaussian();
+            quantile.add(values[i]);
+        }
+
+        // Then ...
+        Arrays.sort(values);
+        double expected = values[(int) Math.round(p * (values.length - 1))];
+        assertEquals(values.length, quantile.getCount());
+        assertThat(quantile.getValue(), closeTo(expected, 0.05));
+    }
+
+    @Test
+    void reset() {
+        // Given ...
+        P2Quantile quantile = new P2Quantile(0.5);
+        for (int i = 0; i < 10; i++) {
+            quantile.add(i);
+        }
+
+        // When ...
+        quantile.reset();
+        quantile.add(7);
+
+        // Then ...
+        assertEquals(1, quantile.getCount());
+        assertEquals(7d, quantile.getValue());
+    }
+}
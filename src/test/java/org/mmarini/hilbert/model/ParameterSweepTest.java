@@ -0,0 +1,301 @@
+/*
+ * Copyright (c) 2023 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ */
+
+package org.mmarini.hilbert.model;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.jupiter.api.Test;
+import org.mmarini.hilbert.TestFunctions;
+import org.mmarini.yaml.Utils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mmarini.hilbert.model.RulesSerdeTest.RULES_YAML;
+import static org.mmarini.hilbert.model.RulesSerdeTest.STATUS_YAML;
+
+class ParameterSweepTest {
+
+    public static final String GRID_YAML = TestFunctions.text(
+            "---",
+            "version: \"1.0\"",
+            "parameters:",
+            "  - path: /resources",
+            "    values: [20000, 40000]",
+            "  - path: /foodProduction/productivity",
+            "    min: 500",
+            "    max: 1500",
+            "    count: 3",
+            "  - document: status",
+            "    path: /population",
+            "    values: [50]"
+    );
+    public static final String LHS_YAML = TestFunctions.text(
+            "---",
+            "version: \"1.0\"",
+            "method: lhs",
+            "samples: 20",
+            "seed: 1234",
+            "parameters:",
+            "  - path: /resources",
+            "    min: 20000",
+            "    max: 40000",
+            "  - path: /research/quantum",
+            "    min: 0",
+            "    max: 0.1"
+    );
+
+    /**
+     * Returns the summary rows of the sweep
+     *
+     * @param sweep   the sweep
+     * @param threads the number of threads
+     */
+    static List<double[]> run(ParameterSweep sweep, int threads) throws IOException {
+        List<double[]> rows = new ArrayList<>();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            sweep.run(20, pool, new KpiWriter() {
+                @Override
+                public void close() {
+                }
+
+                @Override
+                public void flush() {
+                }
+
+                @Override
+                public long getOffset() {
+                    return 0;
+                }
+
+                @Override
+                public void write(double[] row) {
+                    rows.add(row.clone());
+                }
+            });
+        } finally {
+            pool.shutdown();
+        }
+        return rows;
+    }
+
+    @Test
+    void grid() throws IOException {
+        // Given ...
+        JsonNode spec = Utils.fromText(GRID_YAML);
+
+        // When ...
+        ParameterSweep sweep = ParameterSweep.fromJson(spec, Utils.fromText(RULES_YAML), Utils.fromText(STATUS_YAML));
+
+        // Then ...
+        double[][] points = sweep.getPoints();
+        assertEquals(6, points.length);
+        assertArrayEquals(new double[]{20000, 500, 50}, points[0]);
+        assertArrayEquals(new double[]{20000, 1000, 50}, points[1]);
+        assertArrayEquals(new double[]{40000, 1500, 50}, points[5]);
+        assertEquals(List.of("rules/resources", "rules/foodProduction/productivity", "status/population",
+                        "steps", "termination", "population", "technology", "meanPopulation"),
+                sweep.getSummarySchema().getNames());
+    }
+
+    @Test
+    void lhs() throws IOException {
+        // Given ...
+        JsonNode spec = Utils.fromText(LHS_YAML);
+
+        // When ...
+        ParameterSweep sweep = ParameterSweep.fromJson(spec, Utils.fromText(RULES_YAML), Utils.fromText(STATUS_YAML));
+
+        // Then ...
+        double[][] points = sweep.getPoints();
+        assertEquals(20, points.length);
+        // Each stratum of each parameter is sampled once
+        boolean[][] strata = new boolean[2][20];
+        for (double[] point : points) {
+            int i = (int) ((point[0] - 20000) / 20000 * 20);
+            int j = (int) (point[1] / 0.1 * 20);
+            assertFalse(strata[0][i]);
+            assertFalse(strata[1][j]);
+            strata[0][i] = true;
+            strata[1][j] = true;
+        }
+    }
+
+    @Test
+    void missingField() throws IOException {
+        // Given ...
+        JsonNode spec = Utils.fromText(TestFunctions.text(
+                "---",
+                "version: \"1.0\"",
+                "parameters:",
+                "  - path: /foodProduction/missing",
+                "    values: [1]"
+        ));
+        JsonNode rules = Utils.fromText(RULES_YAML);
+        JsonNode status = Utils.fromText(STATUS_YAML);
+
+        // When ...
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class,
+                () -> ParameterSweep.fromJson(spec, rules, status));
+
+        // Then ...
+        assertEquals("Missing numeric field \"/foodProduction/missing\" in rules", ex.getMessage());
+    }
+
+    @Test
+    void invalidRange() throws IOException {
+        // Given ...
+        JsonNode spec = Utils.fromText(TestFunctions.text(
+                "---",
+                "version: \"1.0\"",
+                "parameters:",
+                "  - path: /resources",
+                "    min: 0",
+                "    max: 1000"
+        ));
+        JsonNode rules = Utils.fromText(RULES_YAML);
+        JsonNode status = Utils.fromText(STATUS_YAML);
+
+        // When ...
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class,
+                () -> ParameterSweep.fromJson(spec, rules, status));
+
+        // Then ...
+        assertThat(ex.getMessage(), containsString("resources"));
+    }
+
+    @Test
+    void runPoint() throws IOException {
+        // Given ...
+        ParameterSweep sweep = ParameterSweep.fromJson(Utils.fromText(GRID_YAML),
+                Utils.fromText(RULES_YAML), Utils.fromText(STATUS_YAML));
+        ObjectNode rules = (ObjectNode) Utils.fromText(RULES_YAML);
+        rules.put("resources", 40000);
+        ((ObjectNode) rules.path("foodProduction")).put("productivity", 1000);
+        ObjectNode status = (ObjectNode) Utils.fromText(STATUS_YAML);
+        status.put("population", 50);
+        HilbertKernel kernel = RulesSerde.kernelFromJson(rules, 0, 0);
+        StatusBuffer buffer = StatusBuffer.of(StatusSerde.fromJson(status));
+        double[] kpis = kernel.getKpiSchema().newRow();
+        for (int i = 0; i < 20 && buffer.getPopulation() > 0; i++) {
+            kernel.step(buffer, kpis);
+        }
+
+        // When ...
+        double[] row = sweep.runPoint(4, 20);
+
+        // Then ...
+        assertEquals(40000d, row[0]);
+        assertEquals(1000d, row[1]);
+        assertEquals(50d, row[2]);
+        assertEquals(20d, row[3]);
+        assertEquals(0d, row[4]);
+        assertEquals(buffer.getPopulation(), row[5]);
+        assertEquals(buffer.getTechnology(), row[6]);
+    }
+
+    @Test
+    void threadsIndependence() throws IOException {
+        // Given ...
+        ParameterSweep sweep = ParameterSweep.fromJson(Utils.fromText(LHS_YAML),
+                Utils.fromText(RULES_YAML), Utils.fromText(STATUS_YAML));
+
+        // When ...
+        List<double[]> single = run(sweep, 1);
+        List<double[]> parallel = run(sweep, 3);
+
+        // Then ...
+        assertThat(single, hasSize(20));
+        for (int i = 0; i < single.size(); i++) {
+            assertArrayEquals(single.get(i), parallel.get(i));
+        }
+    }
+
+    @Test
+    void integerRounding() throws IOException {
+        // Given ...
+        JsonNode spec = Utils.fromText(TestFunctions.text(
+                "---",
+                "version: \"1.0\"",
+                "method: lhs",
+                "samples: 10",
+                "seed: 1234",
+                "parameters:",
+                "  - document: status",
+                "    path: /population",
+                "    min: 10",
+                "    max: 100",
+                "  - path: /research/quantum",
+                "    min: 0",
+                "    max: 0.1"
+        ));
+        ParameterSweep sweep = ParameterSweep.fromJson(spec, Utils.fromText(RULES_YAML), Utils.fromText(STATUS_YAML));
+
+        // When ...
+        List<double[]> rows = run(sweep, 1);
+
+        // Then ...
+        boolean fractional = false;
+        for (int i = 0; i < rows.size(); i++) {
+            double[] point = sweep.getPoints()[i];
+            assertEquals(Math.rint(point[0]), point[0]);
+            assertEquals(point[0], rows.get(i)[0]);
+            fractional |= point[1] != Math.rint(point[1]);
+        }
+        assertTrue(fractional);
+    }
+
+    @Test
+    void seedSweep() throws IOException {
+        // Given ...
+        JsonNode spec = Utils.fromText(TestFunctions.text(
+                "---",
+                "version: \"1.0\"",
+                "parameters:",
+                "  - path: /seed",
+                "    values: [1234, 4321, 1234]"
+        ));
+        ObjectNode rules = (ObjectNode) Utils.fromText(RULES_YAML);
+        rules.put("seed", 1);
+        ParameterSweep sweep = ParameterSweep.fromJson(spec, rules, Utils.fromText(STATUS_YAML));
+
+        // When ...
+        List<double[]> rows = run(sweep, 1);
+
+        // Then ...
+        assertArrayEquals(rows.get(0), rows.get(2));
+        assertFalse(Arrays.equals(rows.get(0), rows.get(1)));
+    }
+}
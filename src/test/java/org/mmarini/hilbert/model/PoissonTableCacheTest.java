@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2023 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ */
+
+package org.mmarini.hilbert.model;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static java.lang.Math.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mmarini.hilbert.model.ExtMath.logGamma;
+
+class PoissonTableCacheTest {
+
+    public static final long SEED = 1234;
+    public static final int NUM_SAMPLES = 20000;
+
+    @ParameterizedTest
+    @ValueSource(doubles = {0.01, 0.5, 3, 12.3456, 29.9})
+    void distribution(double lambda) {
+        // Given ...
+        PoissonTableCache cache = new PoissonTableCache(4, 1e-3, 30);
+        RandomSource random = new XoshiroRandom(SEED);
+        double lambdaQ = round(lambda / 1e-3) * 1e-3;
+
+        // When ...
+        int[] samples = new int[NUM_SAMPLES];
+        for (int i = 0; i < NUM_SAMPLES; i++) {
+            samples[i] = (int) cache.nextPoisson(random, lambda);
+        }
+
+        // Then ...
+        int lo = (int) max(0, floor(lambdaQ - 4 * sqrt(lambdaQ)));
+        int hi = (int) ceil(lambdaQ + 4 * sqrt(lambdaQ) + 1);
+        double[] chi2 = RandomSourceTest.chiSquare(samples, k -> exp(-lambdaQ + k * log(lambdaQ) - logGamma(k + 1)), lo, hi);
+        assertThat(chi2[0], lessThan(chi2[1] + 4 * sqrt(2 * chi2[1])));
+        assertEquals(NUM_SAMPLES - 1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    void evictLeastRecentlyUsed() {
+        // Given ...
+        PoissonTableCache cache = new PoissonTableCache(2, 0.1, 30);
+        RandomSource random = new XoshiroRandom(SEED);
+
+        // When ...
+        cache.nextPoisson(random, 1);   // miss (1)
+        cache.nextPoisson(random, 2);   // miss (1, 2)
+        cache.nextPoisson(random, 1);   // hit (2, 1)
+        cache.nextPoisson(random, 3);   // miss evicts 2 (1, 3)
+        cache.nextPoisson(random, 1.01); // hit (quantized to 1)
+        cache.nextPoisson(random, 2);   // miss evicts 3 (1, 2)
+
+        // Then ...
+        assertEquals(2, cache.getHits());
+        assertEquals(4, cache.getMisses());
+        assertEquals(2, cache.getSize());
+    }
+
+    @Test
+    void largeLambda() {
+        // Given ...
+        PoissonTableCache cache = new PoissonTableCache(2, 0.1, 30);
+        RandomSource random = new XoshiroRandom(SEED);
+
+        // When ...
+        long k = cache.nextPoisson(random, 1e6);
+
+        // Then ...
+        assertThat(k, allOf(greaterThan(990000L), lessThan(1010000L)));
+        assertEquals(0, cache.getHits());
+        assertEquals(0, cache.getMisses());
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    void wrongArgs() {
+        IllegalArgumentException ex1 = assertThrows(IllegalArgumentException.class,
+                () -> new PoissonTableCache(0, 0.1, 30));
+        IllegalArgumentException ex2 = assertThrows(IllegalArgumentException.class,
+                () -> new PoissonTableCache(1, 0, 30));
+        assertThat(ex1.getMessage(), matchesRegex("Size must be positive \\(0\\)"));
+        assertThat(ex2.getMessage(), matchesRegex("Quantum must be positive .*"));
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2023 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ */
+
+package org.mmarini.hilbert.model;
+
+import java.util.Random;
+import java.util.function.DoubleSupplier;
+
+import static java.lang.String.format;
+
+/**
+ * Measures the cost of uniform, poisson and binomial generation by generator type and parameters.
+ * <p>
+ * Run with<br>
+ * <code>java -cp target/classes:target/test-classes org.mmarini.hilbert.model.RandomSourceBenchmark</code>
+ * </p>
+ */
+public class RandomSourceBenchmark {
+    public static final int WARMUP = 2000000;
+    public static final int SAMPLES = 5000000;
+    private static final double[] LAMBDAS = {1, 5, 9.9, 10, 100, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9};
+    private static final int[] BINOMIAL_N = {100, 10000, 1000000, 100000000, 2000000000};
+    private static final String[] TYPES = {RandomSource.RANDOM, RandomSource.SPLIT_MIX, RandomSource.XOSHIRO256};
+
+    /**
+     * Returns the ns per sample
+     *
+     * @param samples  the number of samples
+     * @param supplier the sample supplier
+     */
+    private static double measure(int samples, DoubleSupplier supplier) {
+        double check = 0;
+        for (int i = 0; i < WARMUP; i++) {
+            check += supplier.getAsDouble();
+        }
+        long t0 = System.nanoTime();
+        for (int i = 0; i < samples; i++) {
+            check += supplier.getAsDouble();
+        }
+        long elapsed = System.nanoTime() - t0;
+        if (check == -1) {
+            System.out.println("unexpected checksum");
+        }
+        return (double) elapsed / samples;
+    }
+
+    public static void main(String[] args) {
+        System.out.println("generator, uniform ns/sample");
+        Random random = new Random(1234);
+        System.out.println(format("java.util.Random, %.1f", measure(SAMPLES * 10, random::nextDouble)));
+        for (String type : TYPES) {
+            RandomSource source = RandomSource.create(type, 1234);
+            System.out.println(format("%s, %.1f", type, measure(SAMPLES * 10, source::nextDouble)));
+        }
+        System.out.println();
+        System.out.println("generator, lambda, poisson ns/sample");
+        for (String type : TYPES) {
+            RandomSource source = RandomSource.create(type, 1234);
+            for (double lambda : LAMBDAS) {
+                System.out.println(format("%s, %g, %.1f", type, lambda, measure(SAMPLES, () -> source.nextPoisson(lambda))));
+            }
+        }
+        System.out.println();
+        System.out.println("generator, n, binomial(n, 0.01) ns/sample");
+        for (String type : TYPES) {
+            RandomSource source = RandomSource.create(type, 1234);
+            for (int n : BINOMIAL_N) {
+                System.out.println(format("%s, %d, %.1f", type, n, measure(SAMPLES, () -> source.nextBinomial(n, 0.01))));
+            }
+        }
+    }
+}
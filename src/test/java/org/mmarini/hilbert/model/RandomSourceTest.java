@@ -0,0 +1,364 @@
+/*
+ * Copyright (c) 2023 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ */
+
+package org.mmarini.hilbert.model;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.function.IntToDoubleFunction;
+import java.util.stream.DoubleStream;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+import static java.lang.Math.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mmarini.hilbert.model.ExtMath.logGamma;
+
+class RandomSourceTest {
+
+    public static final int NUM_SAMPLES = 20000;
+    public static final long SEED = 1234;
+
+    /**
+     * Returns the chi square statistics and the degrees of freedom of samples against a distribution
+     * The bins are the values in range [lo, hi] with expected frequency of at least 5 samples
+     * and the lumped tails
+     *
+     * @param samples the samples
+     * @param pmf     the probability mass function
+     * @param lo      the lowest value of range
+     * @param hi      the highest value of range
+     */
+    static double[] chiSquare(int[] samples, IntToDoubleFunction pmf, int lo, int hi) {
+        int n = hi - lo + 1;
+        long[] counts = new long[n + 2];
+        for (int k : samples) {
+            int idx = k < lo ? 0 : k > hi ? n + 1 : k - lo + 1;
+            counts[idx]++;
+        }
+        double[] expected = new double[n + 2];
+        double inner = 0;
+        for (int k = lo; k <= hi; k++) {
+            double p = pmf.applyAsDouble(k);
+            expected[k - lo + 1] = p * samples.length;
+            inner += p;
+        }
+        // Lump the tails together
+        double chi2 = 0;
+        int bins = 0;
+        double tailExpected = (1 - inner) * samples.length;
+        long tailCount = counts[0] + counts[n + 1];
+        if (tailExpected >= 5) {
+            chi2 += (tailCount - tailExpected) * (tailCount - tailExpected) / tailExpected;
+            bins++;
+        }
+        for (int i = 1; i <= n; i++) {
+            if (expected[i] >= 5) {
+                chi2 += (counts[i] - expected[i]) * (counts[i] - expected[i]) / expected[i];
+                bins++;
+            }
+        }
+        return new double[]{chi2, bins - 1};
+    }
+
+    static Stream<Arguments> binomialArgs() {
+        return Stream.of(RandomSource.RANDOM, RandomSource.XOSHIRO256, RandomSource.PHILOX)
+                .flatMap(type -> Stream.of(
+                                Arguments.of(type, 10, 0.3),
+                                Arguments.of(type, 59, 0.5),
+                                Arguments.of(type, 100, 0.5),
+                                Arguments.of(type, 1000, 0.9),
+                                Arguments.of(type, 100000, 0.001),
+                                Arguments.of(type, 100000, 0.2),
+                                Arguments.of(type, 10000000, 0.01),
+                                Arguments.of(type, 2000000000, 0.5)));
+    }
+
+    static double binomialPmf(int n, double p, int k) {
+        return exp(logGamma(n + 1d) - logGamma(k + 1d) - logGamma(n - k + 1d) + k * log(p) + (n - k) * log1p(-p));
+    }
+
+    static int[] samples(RandomSource random, double lambda) {
+        int[] result = new int[NUM_SAMPLES];
+        for (int i = 0; i < NUM_SAMPLES; i++) {
+            result[i] = (int) random.nextPoisson(lambda);
+        }
+        return result;
+    }
+
+    static Stream<Arguments> poissonArgs(double... lambdas) {
+        return Stream.of(RandomSource.RANDOM, RandomSource.SPLIT_MIX, RandomSource.XOSHIRO256, RandomSource.PHILOX)
+                .flatMap(type -> DoubleStream.of(lambdas)
+                        .mapToObj(lambda -> Arguments.of(type, lambda)));
+    }
+
+    static Stream<Arguments> chiSquareArgs() {
+        return poissonArgs(3, 9.9, 10, 25, 100, 1000);
+    }
+
+    static Stream<Arguments> meanVarianceArgs() {
+        return poissonArgs(0.1, 1, 9.99, 10, 30, 1e3, 1e4, 1e6, 1e9);
+    }
+
+    @ParameterizedTest
+    @MethodSource("chiSquareArgs")
+    void chiSquareTest(String type, double lambda) {
+        // Given ...
+        RandomSource random = RandomSource.create(type, SEED);
+
+        // When ...
+        int[] samples = samples(random, lambda);
+
+        // Then ...
+        int lo = (int) max(0, floor(lambda - 4 * sqrt(lambda)));
+        int hi = (int) ceil(lambda + 4 * sqrt(lambda));
+        double[] chi2 = chiSquare(samples, k -> exp(-lambda + k * log(lambda) - logGamma(k + 1)), lo, hi);
+        double df = chi2[1];
+        // chi square has mean df and variance 2 df
+        assertThat(chi2[0], lessThan(df + 4 * sqrt(2 * df)));
+    }
+
+    @ParameterizedTest
+    @MethodSource("binomialArgs")
+    void binomial(String type, int n, double p) {
+        // Given ...
+        RandomSource random = RandomSource.create(type, SEED);
+
+        // When ...
+        int[] samples = new int[NUM_SAMPLES];
+        for (int i = 0; i < NUM_SAMPLES; i++) {
+            samples[i] = random.nextBinomial(n, p);
+        }
+
+        // Then ...
+        double mean = 0;
+        for (int k : samples) {
+            assertThat(k, allOf(greaterThanOrEqualTo(0), lessThanOrEqualTo(n)));
+            mean += k;
+        }
+        mean /= NUM_SAMPLES;
+        double var = 0;
+        for (int k : samples) {
+            var += (k - mean) * (k - mean);
+        }
+        var /= NUM_SAMPLES - 1;
+        double expVar = n * p * (1 - p);
+        assertThat(mean, closeTo(n * p, 4 * sqrt(expVar / NUM_SAMPLES)));
+        assertThat(var, closeTo(expVar, 4 * expVar * sqrt(2d / NUM_SAMPLES) + 4 * sqrt(expVar / NUM_SAMPLES)));
+        if (n <= 100000) {
+            int lo = (int) max(0, floor(n * p - 4 * sqrt(expVar)));
+            int hi = (int) min(n, ceil(n * p + 4 * sqrt(expVar)));
+            double[] chi2 = chiSquare(samples, k -> binomialPmf(n, p, k), lo, hi);
+            assertThat(chi2[0], lessThan(chi2[1] + 4 * sqrt(2 * chi2[1])));
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {RandomSource.RANDOM, RandomSource.XOSHIRO256, RandomSource.PHILOX})
+    void largeCounts(String type) {
+        // Given ...
+        RandomSource random = RandomSource.create(type, SEED);
+        long n = 1_000_000_000_000L;
+        double p = 0.3;
+        double lambda = 1e12;
+
+        // When ...
+        double binomialMean = 0;
+        double poissonMean = 0;
+        for (int i = 0; i < NUM_SAMPLES; i++) {
+            long k = random.nextBinomial(n, p);
+            assertThat(k, allOf(greaterThanOrEqualTo(0L), lessThanOrEqualTo(n)));
+            binomialMean += k;
+            poissonMean += random.nextPoisson(lambda);
+        }
+        binomialMean /= NUM_SAMPLES;
+        poissonMean /= NUM_SAMPLES;
+
+        // Then ...
+        assertThat(binomialMean, closeTo(n * p, 4 * sqrt(n * p * (1 - p) / NUM_SAMPLES)));
+        assertThat(poissonMean, closeTo(lambda, 4 * sqrt(lambda / NUM_SAMPLES)));
+        assertEquals(n, random.nextBinomial(n, 1));
+    }
+
+    @Test
+    void binomialLimits() {
+        // Given ...
+        RandomSource random = RandomSource.create(RandomSource.XOSHIRO256, SEED);
+
+        // When ...
+        int zeroN = random.nextBinomial(0, 0.5);
+        int zeroP = random.nextBinomial(100, 0);
+        int oneP = random.nextBinomial(100, 1);
+
+        // Then ...
+        assertEquals(0, zeroN);
+        assertEquals(0, zeroP);
+        assertEquals(100, oneP);
+    }
+
+    @Test
+    void extRandom() {
+        // Given ...
+        ExtRandom random = new ExtRandom(SEED);
+        Random expected = new Random(SEED);
+
+        // When ...
+        for (int i = 0; i < 100; i++) {
+            // Then ...
+            assertEquals(expected.nextLong(), random.nextLong());
+            assertEquals(expected.nextDouble(), random.nextDouble());
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {RandomSource.RANDOM, RandomSource.SPLIT_MIX, RandomSource.XOSHIRO256, RandomSource.PHILOX})
+    void getSetState(String type) {
+        // Given ...
+        RandomSource random = RandomSource.create(type, SEED);
+        random.nextPoisson(100);
+        long[] state = random.getState();
+        double[] expected = DoubleStream.generate(random::nextDouble).limit(10).toArray();
+
+        // When ...
+        RandomSource restored = RandomSource.create(type, 0);
+        restored.setState(state);
+        double[] values = DoubleStream.generate(restored::nextDouble).limit(10).toArray();
+
+        // Then ...
+        assertArrayEquals(expected, values);
+    }
+
+    @ParameterizedTest
+    @MethodSource("meanVarianceArgs")
+    void meanVariance(String type, double lambda) {
+        // Given ...
+        RandomSource random = RandomSource.create(type, SEED);
+
+        // When ...
+        int[] samples = samples(random, lambda);
+
+        // Then ...
+        double mean = 0;
+        for (int k : samples) {
+            mean += k;
+        }
+        mean /= NUM_SAMPLES;
+        double var = 0;
+        for (int k : samples) {
+            var += (k - mean) * (k - mean);
+        }
+        var /= NUM_SAMPLES - 1;
+        // Standard error of mean is sqrt(lambda / n), of variance about lambda * sqrt(2 / n)
+        assertThat(mean, closeTo(lambda, 4 * sqrt(lambda / NUM_SAMPLES)));
+        assertThat(var, closeTo(lambda, 4 * lambda * sqrt(2d / NUM_SAMPLES) + 4 * sqrt(lambda / NUM_SAMPLES)));
+        for (int k : samples) {
+            assertThat(k, greaterThanOrEqualTo(0));
+        }
+    }
+
+    @Test
+    void philox() {
+        // Given ...
+        int[] zero = {0, 0, 0, 0};
+        int[] ones = {-1, -1, -1, -1};
+        int[] pi = {0x243f6a88, 0x85a308d3, 0x13198a2e, 0x03707344};
+
+        // When ...
+        PhiloxRandom.philox(zero, 0, 0);
+        PhiloxRandom.philox(ones, -1, -1);
+        PhiloxRandom.philox(pi, 0xa4093822, 0x299f31d0);
+
+        // Then ... (Random123 known answer vectors)
+        assertArrayEquals(new int[]{0x6627e8d5, 0xe169c58d, 0xbc57ac4c, 0x9b00dbd8}, zero);
+        assertArrayEquals(new int[]{0x408f276d, 0x41c83b0e, 0xa20bc7c6, 0x6d5451fd}, ones);
+        assertArrayEquals(new int[]{0xd16cfe09, 0x94fdcceb, 0x5001e420, 0x24126ea1}, pi);
+    }
+
+    @Test
+    void philoxRandomAccess() {
+        // Given ...
+        PhiloxRandom sequential = new PhiloxRandom(SEED);
+        double[][] expected = new double[10][];
+        for (int step = 0; step < 10; step++) {
+            sequential.setStep(step);
+            expected[step] = DoubleStream.generate(sequential::nextDouble).limit(5).toArray();
+        }
+
+        // When ...
+        PhiloxRandom random = new PhiloxRandom(SEED);
+        random.setStep(7);
+        double[] step7 = DoubleStream.generate(random::nextDouble).limit(5).toArray();
+        random.setStep(3);
+        double[] step3 = DoubleStream.generate(random::nextDouble).limit(5).toArray();
+
+        // Then ...
+        assertArrayEquals(expected[7], step7);
+        assertArrayEquals(expected[3], step3);
+    }
+
+    @Test
+    void splitMixRandom() {
+        // Given ...
+        SplitMixRandom random = new SplitMixRandom(SEED);
+        SplittableRandom expected = new SplittableRandom(SEED);
+
+        // When ...
+        for (int i = 0; i < 100; i++) {
+            // Then ...
+            assertEquals(expected.nextLong(), random.nextLong());
+            assertEquals(expected.nextDouble(), random.nextDouble());
+        }
+    }
+
+    @Test
+    void unknownType() {
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class,
+                () -> RandomSource.create("unknown", SEED));
+        assertThat(ex.getMessage(), matchesRegex("Unknown random generator \"unknown\""));
+    }
+
+    @Test
+    void xoshiroRandom() {
+        // Given ...
+        XoshiroRandom random = new XoshiroRandom(SEED);
+        random.setState(new long[]{1, 2, 3, 4});
+
+        // When ...
+        long[] values = LongStream.generate(random::nextLong).limit(4).toArray();
+
+        // Then ...
+        assertArrayEquals(new long[]{11520L, 0L, 1509978240L, 1215971899390074240L}, values);
+    }
+}
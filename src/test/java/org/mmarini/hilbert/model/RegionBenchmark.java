@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2023 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ */
+
+package org.mmarini.hilbert.model;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.mmarini.yaml.Utils;
+
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+
+import static java.lang.String.format;
+
+/**
+ * Measures the cost of a step of a grid of regions with increasing number of threads.
+ * <p>
+ * Run with<br>
+ * <code>java -Xmx4g -cp target/classes:target/test-classes:... org.mmarini.hilbert.model.RegionBenchmark [side [rules.yml [status.yml]]]</code>
+ * </p>
+ */
+public class RegionBenchmark {
+    public static final int WARMUP = 5;
+    public static final int STEPS = 20;
+
+    public static void main(String[] args) throws IOException {
+        int side = args.length > 0 ? Integer.parseInt(args[0]) : 316;
+        JsonNode rules = Utils.fromFile(args.length > 1 ? args[1] : "rules.yml");
+        Status status = StatusSerde.fromFile(args.length > 2 ? args[2] : "status.yml");
+        ObjectNode spec = Utils.objectMapper.createObjectNode();
+        spec.put("version", "1.0");
+        spec.put("width", side);
+        spec.put("height", side);
+        spec.put("migrationRate", 0.1);
+
+        System.out.println(format("%d regions", side * side));
+        System.out.println("threads, ms/step, speedup");
+        double base = 0;
+        for (int threads = 1; threads <= Runtime.getRuntime().availableProcessors(); threads *= 2) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                RegionModel model = RegionModel.fromJson(spec, rules, status, pool, RegionModel.DEFAULT_BLOCK_SIZE);
+                double[] kpis = model.getKpiSchema().newRow();
+                for (int i = 0; i < WARMUP; i++) {
+                    model.step(kpis);
+                }
+                long t0 = System.nanoTime();
+                for (int i = 0; i < STEPS; i++) {
+                    model.step(kpis);
+                }
+                double ms = (System.nanoTime() - t0) / 1e6 / STEPS;
+                if (threads == 1) {
+                    base = ms;
+                }
+                System.out.println(format("%d, %.1f, %.2f", threads, ms, base / ms));
+            } finally {
+                pool.shutdown();
+            }
+        }
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) 2023 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ */
+
+package org.mmarini.hilbert.model;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.jupiter.api.Test;
+import org.mmarini.yaml.Utils;
+
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mmarini.hilbert.model.RulesSerdeTest.RULES_YAML;
+import static org.mmarini.hilbert.model.RulesSerdeTest.STATUS_YAML;
+
+class RegionModelTest {
+    public static final int STEPS = 50;
+
+    /**
+     * Returns the regions specification
+     *
+     * @param width         the grid width
+     * @param height        the grid height
+     * @param migrationRate the migration rate
+     */
+    static ObjectNode regions(int width, int height, double migrationRate) {
+        ObjectNode node = Utils.objectMapper.createObjectNode();
+        node.put("version", "1.0");
+        node.put("width", width);
+        node.put("height", height);
+        node.put("migrationRate", migrationRate);
+        return node;
+    }
+
+    /**
+     * Runs the regions and returns the final model
+     *
+     * @param spec      the regions specification
+     * @param threads   the number of threads
+     * @param blockSize the block size
+     * @param kpis      the kpis of last step
+     */
+    static RegionModel run(JsonNode spec, int threads, int blockSize, double[] kpis) throws IOException {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            RegionModel model = RegionModel.fromJson(spec, Utils.fromText(RULES_YAML),
+                    StatusSerde.fromJson(Utils.fromText(STATUS_YAML)), pool, blockSize);
+            for (int i = 0; i < STEPS; i++) {
+                model.step(kpis);
+            }
+            return model;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void singleRegion() throws IOException {
+        // Given ...
+        HilbertKernel kernel = RulesSerde.kernelFromJson(Utils.fromText(RULES_YAML), 0, 0);
+        StatusBuffer expected = StatusBuffer.of(StatusSerde.fromJson(Utils.fromText(STATUS_YAML)));
+        double[] expectedKpis = kernel.getKpiSchema().newRow();
+        for (int i = 0; i < STEPS; i++) {
+            kernel.step(expected, expectedKpis);
+        }
+        double[] kpis = new double[RegionModel.KPI_NAMES.size()];
+
+        // When ...
+        RegionModel model = run(regions(1, 1, 1), 1, RegionModel.DEFAULT_BLOCK_SIZE, kpis);
+
+        // Then the region without neighbours is the society of replica 0
+        assertEquals(expected.toStatus(), model.getStatus(0).toStatus());
+        assertEquals(expected.getPopulation(), kpis[0]);
+        assertEquals(expected.getTechnology(), kpis[1]);
+        assertEquals(0d, kpis[2]);
+        assertEquals(1d, kpis[3]);
+    }
+
+    @Test
+    void migration() throws IOException {
+        // Given a populated region near an empty one
+        ObjectNode spec = regions(2, 1, 1);
+        spec.putArray("populations").add(1000).add(0);
+        ForkJoinPool pool = new ForkJoinPool(1);
+        try {
+            RegionModel model = RegionModel.fromJson(spec, Utils.fromText(RULES_YAML),
+                    StatusSerde.fromJson(Utils.fromText(STATUS_YAML)), pool, RegionModel.DEFAULT_BLOCK_SIZE);
+            double[] kpis = model.getKpiSchema().newRow();
+
+            // When ...
+            model.step(kpis);
+
+            // Then ...
+            StatusBuffer region0 = model.getStatus(0);
+            StatusBuffer region1 = model.getStatus(1);
+            assertThat(region1.getPopulation(), greaterThan(0L));
+            assertEquals(region1.getPopulation(), kpis[2]);
+            assertEquals(region0.getPopulation() + region1.getPopulation(), kpis[0]);
+            assertEquals(2d, kpis[3]);
+            // The emigrants bring the technology of the origin
+            assertEquals(region0.getTechnology(), region1.getTechnology());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void threads() throws IOException {
+        // Given a grid with uneven populations
+        ObjectNode spec = regions(7, 5, 0.5);
+        ArrayNode populations = spec.putArray("populations");
+        ArrayNode resources = spec.putArray("resources");
+        for (int i = 0; i < 35; i++) {
+            populations.add(i % 3 == 0 ? 200 : 0);
+            resources.add(20000 + i * 1000);
+        }
+        double[] kpis1 = new double[RegionModel.KPI_NAMES.size()];
+        double[] kpis3 = new double[RegionModel.KPI_NAMES.size()];
+
+        // When ...
+        RegionModel model1 = run(spec, 1, 4, kpis1);
+        RegionModel model3 = run(spec, 3, 4, kpis3);
+
+        // Then the results do not depend on the threads
+        for (int i = 0; i < 35; i++) {
+            assertEquals(model1.getStatus(i).toStatus(), model3.getStatus(i).toStatus(), "region " + i);
+        }
+        assertArrayEquals(kpis1, kpis3);
+        assertThat(kpis1[2], greaterThan(0d));
+    }
+
+    @Test
+    void invalid() throws IOException {
+        // Given ...
+        ObjectNode wrongSize = regions(2, 2, 1);
+        wrongSize.putArray("resources").add(1000);
+        ObjectNode meanField = (ObjectNode) Utils.fromText(RULES_YAML);
+        meanField.put("engine", RulesSerde.MEAN_FIELD_ENGINE);
+        ObjectNode buffered = (ObjectNode) Utils.fromText(RULES_YAML);
+        buffered.put("rng", RandomSource.XOSHIRO256);
+        buffered.put("rngBuffer", 1024);
+        ObjectNode cached = (ObjectNode) Utils.fromText(RULES_YAML);
+        cached.putObject("poissonCache");
+        Status status = StatusSerde.fromJson(Utils.fromText(STATUS_YAML));
+        ForkJoinPool pool = new ForkJoinPool(1);
+        try {
+            // When ... Then ...
+            assertThrows(IllegalArgumentException.class, () ->
+                    RegionModel.fromJson(wrongSize, Utils.fromText(RULES_YAML), status, pool, 16));
+            assertThrows(IllegalArgumentException.class, () ->
+                    RegionModel.fromJson(regions(2, 2, 1), meanField, status, pool, 16));
+            IllegalArgumentException ex = assertThrows(IllegalArgumentException.class, () ->
+                    RegionModel.fromJson(regions(2, 2, 1), buffered, status, pool, 16));
+            assertEquals("Regions cannot buffer the random generators (1024)", ex.getMessage());
+            ex = assertThrows(IllegalArgumentException.class, () ->
+                    RegionModel.fromJson(regions(2, 2, 1), cached, status, pool, 16));
+            assertEquals("Regions cannot cache the poisson tables", ex.getMessage());
+            assertThrows(IllegalArgumentException.class, () ->
+                    RegionModel.fromJson(regions(2, 2, 8), Utils.fromText(RULES_YAML), status, pool, 16));
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -28,25 +28,125 @@
 package org.mmarini.hilbert.model;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
 import org.mmarini.Tuple2;
 import org.mmarini.hilbert.TestFunctions;
 import org.mmarini.yaml.Utils;
 import org.mockito.hamcrest.MockitoHamcrest;
 
 import java.io.IOException;
-import java.util.Collection;
+import java.util.*;
 import java.util.function.BiFunction;
+import java.util.function.Function;
 import java.util.function.Supplier;
+import java.util.stream.IntStream;
 
 import static java.lang.Math.*;
+import static java.lang.String.format;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.closeTo;
-import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.hasKey;
+import static org.hamcrest.Matchers.isA;
+import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
 
 class RulesSerdeTest {
 
+    public static final String RULES_YAML = TestFunctions.text(
+            "---",
+            "version: \"1.0\"",
+            "seed: 1234",
+            "timeInterval: 0.25",
+            "minTechnology: 0.01",
+            "maxTechnology: 40",
+            "resources: 40010",
+            "overSettlement:",
+            "  density: 10",
+            "  deathTimeConstant: 0.4",
+            "foodProduction:",
+            "  productivity: 1000",
+            "  demand: 1",
+            "  deathTimeConstant: 0.4",
+            "  birthTimeConstant: 0.4",
+            "research:",
+            "  productivity: 3.333",
+            "  cost: 1",
+            "  quantum: 0.01",
+            "education:",
+            "  productivity: 3333",
+            "  demand: 1",
+            "  timeConstant: 0.4",
+            "health:",
+            "  productivity: 33.333",
+            "  demand: 1",
+            "  minimumLifeExpectancy: 20",
+            "  maximumLifeExpectancy: 100"
+    );
+    public static final String STATUS_YAML = TestFunctions.text(
+            "---",
+            "version: \"1.0\"",
+            "population: 100",
+            "farmerPrefs: -0.3424",
+            "researcherPrefs: -1.642",
+            "educatorPrefs: -1.642",
+            "doctorPrefs: -1.642",
+            "inactivePrefs: 1.642",
+            "foodPrefs: 3.454",
+            "researchPrefs: -3.454",
+            "educationPrefs: 3.454",
+            "healthPrefs: 3.454",
+            "settlementPrefs: 3.454",
+            "technology: 0.01"
+    );
+
+    /**
+     * Returns the status changes [stream][step] applying the rules in the given stream order
+     *
+     * @param node    the rules node
+     * @param status  the status
+     * @param streams the rule stream indices in order of creation and application
+     * @param steps   the number of steps
+     */
+    static Status[][] ruleDeltas(JsonNode node, Status status, int[] streams, int steps) {
+        long seed = RulesSerde.loadSeed(node);
+        Map<Integer, BiFunction<Status, Double, Tuple2<Status, Supplier<Collection<Tuple2<String, Number>>>>>> rules = new HashMap<>();
+        for (int stream : streams) {
+            RandomSource random = RulesSerde.loadRandom(node, seed, 0, stream);
+            rules.put(stream, stream == RulesSerde.OVER_SETTLEMENT_STREAM ? RulesSerde.loadOverSettlementRule(node, random)
+                    : stream == RulesSerde.FOOD_PRODUCTION_STREAM ? RulesSerde.loadFoodProductionRule(node, random)
+                    : stream == RulesSerde.HEALTH_STREAM ? RulesSerde.loadHealthRule(node, random)
+                    : stream == RulesSerde.RESEARCH_STREAM ? RulesSerde.loadResearchRule(node, random)
+                    : RulesSerde.loadEducationRule(node, random));
+        }
+        Status[][] result = new Status[streams.length][steps];
+        for (int i = 0; i < steps; i++) {
+            for (int stream : streams) {
+                result[stream][i] = rules.get(stream).apply(status, 0.25)._1;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the trajectory of engine
+     *
+     * @param engine the engine
+     * @param status the initial status
+     * @param steps  the number of steps
+     */
+    static List<Status> trajectory(Function<Status, Tuple2<Status, Supplier<Map<String, Number>>>> engine, Status status, int steps) {
+        List<Status> result = new ArrayList<>();
+        for (int i = 0; i < steps; i++) {
+            status = engine.apply(status)._1;
+            result.add(status);
+        }
+        return result;
+    }
+
     @Test
     void loadEducationRule() throws IOException {
         // Given ...
@@ -75,8 +175,8 @@ class RulesSerdeTest {
                 technology
         );
 
-        ExtRandom random = mock();
-        when(random.nextPoisson(anyDouble())).thenReturn(3);
+        RandomSource random = mock();
+        when(random.nextPoisson(anyDouble())).thenReturn(3L);
         double lambda = population / demand - educators * productivity * eff / demand / timeConstant;
 
         // When ...
@@ -127,8 +227,8 @@ class RulesSerdeTest {
         double kf = min(kfPop, kfRes);
         double lambda = max(0, pop * (1 - kf)) * timeInterval / timeConstant;
 
-        ExtRandom random = mock();
-        when(random.nextPoisson(anyDouble())).thenReturn(3);
+        RandomSource random = mock();
+        when(random.nextPoisson(anyDouble())).thenReturn(3L);
 
         // When ...
         BiFunction<Status, Double, Tuple2<Status, Supplier<Collection<Tuple2<String, Number>>>>> rule = RulesSerde.loadFoodProductionRule(jsonNode, random);
@@ -176,8 +276,8 @@ class RulesSerdeTest {
         double lifeExpectancy = (maximumLifeExpectancy - minimumLifeExpectancy) * min(kh, 1) + minimumLifeExpectancy;
         double lambda = population * timeInterval / lifeExpectancy;
 
-        ExtRandom random = mock();
-        when(random.nextPoisson(anyDouble())).thenReturn(3);
+        RandomSource random = mock();
+        when(random.nextPoisson(anyDouble())).thenReturn(3L);
 
         // When ...
         BiFunction<Status, Double, Tuple2<Status, Supplier<Collection<Tuple2<String, Number>>>>> rule = RulesSerde.loadHealthRule(jsonNode, random);
@@ -199,8 +299,8 @@ class RulesSerdeTest {
                 "  deathTimeConstant: 2"
         ));
 
-        ExtRandom random = mock();
-        when(random.nextPoisson(anyDouble())).thenReturn(3);
+        RandomSource random = mock();
+        when(random.nextPoisson(anyDouble())).thenReturn(3L);
 
         int others = 25;
         double otherRes = 20;
@@ -218,6 +318,270 @@ class RulesSerdeTest {
         verify(random).nextPoisson(anyDouble());
     }
 
+    @Test
+    void loadRandom() throws IOException {
+        // Given ...
+        JsonNode defaultNode = Utils.fromText(TestFunctions.text(
+                "---",
+                "seed: 1234"
+        ));
+        JsonNode xoshiroNode = Utils.fromText(TestFunctions.text(
+                "---",
+                "seed: 1234",
+                "rng: xoshiro256"
+        ));
+
+        // When ...
+        RandomSource defaultRandom = RulesSerde.loadRandom(defaultNode, 1234, 0, RulesSerde.HEALTH_STREAM);
+        RandomSource xoshiroRandom = RulesSerde.loadRandom(xoshiroNode, 1234, 1, RulesSerde.HEALTH_STREAM);
+
+        // Then ...
+        assertThat(defaultRandom, isA(ExtRandom.class));
+        assertArrayEquals(new ExtRandom(RandomSource.substreamSeed(1234, 0, RulesSerde.HEALTH_STREAM)).getState(),
+                defaultRandom.getState());
+        assertThat(xoshiroRandom, isA(XoshiroRandom.class));
+        assertArrayEquals(new XoshiroRandom(RandomSource.substreamSeed(1234, 1, RulesSerde.HEALTH_STREAM)).getState(),
+                xoshiroRandom.getState());
+    }
+
+    @Test
+    void loadRuleParameters() throws IOException {
+        // Given ...
+        ObjectNode node = (ObjectNode) Utils.fromText(RULES_YAML);
+        node.remove("maxTechnology");
+
+        // When ...
+        RuleParameters parameters = RulesSerde.loadRuleParameters(node);
+        RuleParameters regionParameters = parameters.setResources(1000);
+
+        // Then ...
+        assertEquals(40010, parameters.getResources());
+        assertEquals(0.01, parameters.getMinTechnology());
+        assertEquals(Double.POSITIVE_INFINITY, parameters.getMaxTechnology());
+        assertEquals(10, parameters.getSettlementDensity());
+        assertEquals(1000, parameters.getFoodProductivity());
+        assertEquals(0.4, parameters.getFoodBirthTimeConstant());
+        assertEquals(20, parameters.getMinimumLifeExpectancy());
+        assertEquals(100, parameters.getMaximumLifeExpectancy());
+        assertEquals(3.333, parameters.getResearchProductivity());
+        assertEquals(0.01, parameters.getResearchQuantum());
+        assertEquals(3333, parameters.getEducationProductivity());
+        assertEquals(0.4, parameters.getEducationTimeConstant());
+        assertSame(parameters, parameters.setResources(40010));
+        assertEquals(1000, regionParameters.getResources());
+        assertEquals(parameters.getFoodDemand(), regionParameters.getFoodDemand());
+        assertEquals(parameters.getEducationTimeConstant(), regionParameters.getEducationTimeConstant());
+    }
+
+    @Test
+    void fromJsonReplicas() throws IOException {
+        // Given ...
+        JsonNode node = Utils.fromText(RULES_YAML);
+        Status status0 = StatusSerde.fromJson(Utils.fromText(STATUS_YAML));
+
+        // When ...
+        Function<Status, Tuple2<Status, Supplier<Map<String, Number>>>> engine0 = RulesSerde.fromJson(node, 0);
+        Function<Status, Tuple2<Status, Supplier<Map<String, Number>>>> engine0bis = RulesSerde.fromJson(node, 0);
+        Function<Status, Tuple2<Status, Supplier<Map<String, Number>>>> engine1 = RulesSerde.fromJson(node, 1);
+        List<Status> trajectory0 = trajectory(engine0, status0, 100);
+        List<Status> trajectory0bis = trajectory(engine0bis, status0, 100);
+        List<Status> trajectory1 = trajectory(engine1, status0, 100);
+
+        // Then ...
+        assertEquals(trajectory0, trajectory0bis);
+        assertNotEquals(trajectory0, trajectory1);
+    }
+
+    @Test
+    void fromJsonCompiled() throws IOException {
+        // Given ...
+        ObjectNode node = (ObjectNode) Utils.fromText(RULES_YAML);
+        node.put("mortality", RulesSerde.BINOMIAL_MORTALITY);
+        Status status0 = StatusSerde.fromJson(Utils.fromText(STATUS_YAML));
+
+        // When ...
+        List<Status> compiled = trajectory(RulesSerde.fromJson(node, 2), status0, 200);
+        List<Status> composed = trajectory(HilbertKernelTest.rulesEngine(node, 2), status0, 200);
+
+        // Then ...
+        assertEquals(composed, compiled);
+    }
+
+    @Test
+    void fromJsonRandomAccess() throws IOException {
+        // Given ...
+        ObjectNode node = (ObjectNode) Utils.fromText(RULES_YAML);
+        node.put("rng", RandomSource.PHILOX);
+        Status status0 = StatusSerde.fromJson(Utils.fromText(STATUS_YAML));
+        List<Status> trajectory = trajectory(RulesSerde.fromJson(node, 0), status0, 60);
+
+        // When ...
+        Function<Status, Tuple2<Status, Supplier<Map<String, Number>>>> engine50 = RulesSerde.fromJson(node, 0, 50);
+        List<Status> trajectory50 = trajectory(engine50, trajectory.get(49), 10);
+
+        // Then ...
+        assertEquals(trajectory.subList(50, 60), trajectory50);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {RandomSource.RANDOM, RandomSource.SPLIT_MIX, RandomSource.XOSHIRO256})
+    void fromJsonRandomBuffer(String type) throws IOException {
+        // Given ...
+        ObjectNode node = (ObjectNode) Utils.fromText(RULES_YAML);
+        node.put("rng", type);
+        ObjectNode bufferedNode = node.deepCopy();
+        bufferedNode.put("rngBuffer", 100);
+        Status status0 = StatusSerde.fromJson(Utils.fromText(STATUS_YAML));
+
+        // When ...
+        List<Status> trajectory = trajectory(RulesSerde.fromJson(node), status0, 100);
+        List<Status> bufferedTrajectory = trajectory(RulesSerde.fromJson(bufferedNode), status0, 100);
+
+        // Then ...
+        assertEquals(128, RulesSerde.loadRandomBufferCapacity(bufferedNode));
+        assertEquals(trajectory, bufferedTrajectory);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {RandomSource.RANDOM, RandomSource.SPLIT_MIX, RandomSource.XOSHIRO256})
+    void kernelsRandomBuffer(String type) throws IOException {
+        // Given ...
+        ObjectNode node = (ObjectNode) Utils.fromText(RULES_YAML);
+        node.put("rng", type);
+        ObjectNode bufferedNode = node.deepCopy();
+        bufferedNode.put("rngBuffer", 64);
+        Status status0 = StatusSerde.fromJson(Utils.fromText(STATUS_YAML));
+        List<HilbertKernel> kernels = RulesSerde.kernelsFromJson(node, 4);
+        List<HilbertKernel> bufferedKernels = RulesSerde.kernelsFromJson(bufferedNode, 4);
+
+        for (int i = 0; i < kernels.size(); i++) {
+            StatusBuffer buffer = StatusBuffer.of(status0);
+            StatusBuffer bufferedBuffer = StatusBuffer.of(status0);
+            double[] kpis = kernels.get(i).getKpiSchema().newRow();
+            double[] bufferedKpis = bufferedKernels.get(i).getKpiSchema().newRow();
+
+            // When ...
+            for (int j = 0; j < 100; j++) {
+                kernels.get(i).step(buffer, kpis);
+                bufferedKernels.get(i).step(bufferedBuffer, bufferedKpis);
+            }
+
+            // Then ...
+            assertEquals(buffer.toStatus(), bufferedBuffer.toStatus());
+            assertArrayEquals(kpis, bufferedKpis);
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {RulesSerde.MEAN_FIELD_ENGINE, RulesSerde.AGENT_ENGINE, RulesSerde.COHORT_ENGINE})
+    void fromJsonStepKernel(String engine) throws IOException {
+        // Given ...
+        ObjectNode node = (ObjectNode) Utils.fromText(RULES_YAML);
+        node.put("engine", engine);
+        Status status0 = StatusSerde.fromJson(Utils.fromText(STATUS_YAML));
+        StepKernel kernel = RulesSerde.createStepKernel(node, RulesSerde.loadSeed(node), 0);
+        StatusBuffer buffer = StatusBuffer.of(status0);
+        double[] kpis = kernel.getKpiSchema().newRow();
+        for (int i = 0; i < 50; i++) {
+            kernel.step(buffer, kpis);
+        }
+
+        // When ...
+        List<Status> trajectory = trajectory(RulesSerde.fromJson(node), status0, 50);
+
+        // Then ...
+        assertEquals(buffer.toStatus(), trajectory.get(49));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {RulesSerde.MEAN_FIELD_ENGINE, RulesSerde.AGENT_ENGINE, RulesSerde.COHORT_ENGINE})
+    void fromJsonStepKernelStep(String engine) throws IOException {
+        // Given ...
+        ObjectNode node = (ObjectNode) Utils.fromText(RULES_YAML);
+        node.put("engine", engine);
+
+        // When ...
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class, () -> RulesSerde.fromJson(node, 0, 10));
+
+        // Then ...
+        assertEquals(format("The %s engine starts at step 0 (10)", engine), ex.getMessage());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {RulesSerde.MEAN_FIELD_ENGINE, RulesSerde.AGENT_ENGINE, RulesSerde.COHORT_ENGINE})
+    void kernelFromJsonStepKernel(String engine) throws IOException {
+        // Given ...
+        ObjectNode node = (ObjectNode) Utils.fromText(RULES_YAML);
+        node.put("engine", engine);
+
+        // When ...
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class, () -> RulesSerde.kernelFromJson(node, 0, 0));
+
+        // Then ...
+        assertEquals(format("The %s engine has no stochastic step kernel", engine), ex.getMessage());
+    }
+
+    @Test
+    void fromJsonRandomBufferPhilox() throws IOException {
+        // Given ...
+        ObjectNode node = (ObjectNode) Utils.fromText(RULES_YAML);
+        node.put("rng", RandomSource.PHILOX);
+        node.put("rngBuffer", 1024);
+
+        // When ...
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class, () -> RulesSerde.fromJson(node));
+
+        // Then ...
+        assertEquals("Random generator \"philox\" cannot be buffered", ex.getMessage());
+    }
+
+    @Test
+    void fromJsonPoissonCache() throws IOException {
+        // Given ...
+        ObjectNode node = (ObjectNode) Utils.fromText(RULES_YAML);
+        node.putObject("poissonCache")
+                .put("size", 16)
+                .put("quantum", 0.01);
+        Status status0 = StatusSerde.fromJson(Utils.fromText(STATUS_YAML));
+        Function<Status, Tuple2<Status, Supplier<Map<String, Number>>>> engine = RulesSerde.fromJson(node);
+
+        // When ...
+        Tuple2<Status, Supplier<Map<String, Number>>> step0 = engine.apply(status0);
+        Tuple2<Status, Supplier<Map<String, Number>>> step1 = engine.apply(step0._1);
+        Map<String, Number> kpi0 = step0._2.get();
+        Map<String, Number> kpi1 = step1._2.get();
+
+        // Then ...
+        assertThat(kpi0, hasKey("poissonHits"));
+        assertThat(kpi0, hasKey("poissonMisses"));
+        assertThat(kpi1.get("poissonHits").longValue() + kpi1.get("poissonMisses").longValue(),
+                greaterThan(kpi0.get("poissonHits").longValue() + kpi0.get("poissonMisses").longValue()));
+    }
+
+    @Test
+    void rulesOrderIndependence() throws IOException {
+        // Given ...
+        JsonNode node = Utils.fromText(RULES_YAML);
+        Status status = StatusSerde.fromJson(Utils.fromText(STATUS_YAML));
+        int[] forward = {
+                RulesSerde.OVER_SETTLEMENT_STREAM,
+                RulesSerde.FOOD_PRODUCTION_STREAM,
+                RulesSerde.HEALTH_STREAM,
+                RulesSerde.RESEARCH_STREAM,
+                RulesSerde.EDUCATION_STREAM
+        };
+        int[] backward = IntStream.range(0, forward.length)
+                .map(i -> forward[forward.length - 1 - i])
+                .toArray();
+
+        // When ...
+        Status[][] forwardDeltas = ruleDeltas(node, status, forward, 10);
+        Status[][] backwardDeltas = ruleDeltas(node, status, backward, 10);
+
+        // Then ...
+        assertArrayEquals(forwardDeltas, backwardDeltas);
+    }
+
     @Test
     void loadResearchRule() throws IOException {
         // Given ...
@@ -244,8 +608,8 @@ class RulesSerdeTest {
                 technology
         );
 
-        ExtRandom random = mock();
-        when(random.nextPoisson(anyDouble())).thenReturn(3);
+        RandomSource random = mock();
+        when(random.nextPoisson(anyDouble())).thenReturn(3L);
 
         // When ...
         BiFunction<Status, Double, Tuple2<Status, Supplier<Collection<Tuple2<String, Number>>>>> rule = RulesSerde.loadResearchRule(jsonNode, random);
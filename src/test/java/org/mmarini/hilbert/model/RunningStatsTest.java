@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2023 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ */
+
+package org.mmarini.hilbert.model;
+
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RunningStatsTest {
+
+    @Test
+    void empty() {
+        // Given ...
+        RunningStats stats = new RunningStats();
+
+        // When ...
+        // Then ...
+        assertEquals(0, stats.getCount());
+        assertEquals(Double.NaN, stats.getMean());
+        assertEquals(Double.NaN, stats.getVariance());
+    }
+
+    @Test
+    void single() {
+        // Given ...
+        RunningStats stats = new RunningStats();
+
+        // When ...
+        stats.add(3);
+
+        // Then ...
+        assertEquals(1, stats.getCount());
+        assertEquals(3d, stats.getMean());
+        assertEquals(Double.NaN, stats.getVariance());
+    }
+
+    @Test
+    void meanVariance() {
+        // Given ...
+        RunningStats stats = new RunningStats();
+
+        // When ...
+        for (double x : new double[]{2, 4, 4, 4, 5, 5, 7, 9}) {
+            stats.add(x);
+        }
+
+        // Then ...
+        assertEquals(8, stats.getCount());
+        assertThat(stats.getMean(), closeTo(5, 1e-12));
+        assertThat(stats.getVariance(), closeTo(32d / 7, 1e-12));
+    }
+
+    @Test
+    void largeOffset() {
+        // Given ...
+        RunningStats stats = new RunningStats();
+
+        // When ...
+        for (double x : new double[]{1e9 + 4, 1e9 + 7, 1e9 + 13, 1e9 + 16}) {
+            stats.add(x);
+        }
+
+        // Then ...
+        assertThat(stats.getMean(), closeTo(1e9 + 10, 1e-6));
+        assertThat(stats.getVariance(), closeTo(30, 1e-6));
+    }
+
+    @Test
+    void reset() {
+        // Given ...
+        RunningStats stats = new RunningStats();
+        stats.add(1);
+        stats.add(2);
+
+        // When ...
+        stats.reset();
+        stats.add(5);
+
+        // Then ...
+        assertEquals(1, stats.getCount());
+        assertEquals(5d, stats.getMean());
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2023 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ */
+
+package org.mmarini.hilbert.model;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.junit.jupiter.api.Test;
+import org.mmarini.hilbert.TestFunctions;
+import org.mmarini.yaml.Utils;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SectorsTest {
+
+    @Test
+    void create() {
+        // When ...
+        Sectors sectors = Sectors.create(
+                List.of("artist", "inactive", "doctor", "educator", "researcher", "farmer"),
+                List.of("settlement", "health", "education", "research", "food", "art"));
+
+        // Then ...
+        assertEquals(6, sectors.occupationCount());
+        assertEquals(6, sectors.resourceCount());
+        assertEquals(5, sectors.getFarmer());
+        assertEquals(4, sectors.getResearcher());
+        assertEquals(3, sectors.getEducator());
+        assertEquals(2, sectors.getDoctor());
+        assertEquals(1, sectors.getInactive());
+        assertEquals(4, sectors.getFood());
+        assertEquals(3, sectors.getResearch());
+        assertEquals(2, sectors.getEducation());
+        assertEquals(1, sectors.getHealth());
+        assertEquals(0, sectors.getSettlement());
+    }
+
+    @Test
+    void createDefault() {
+        // When ...
+        Sectors sectors = Sectors.create(Sectors.DEFAULT_OCCUPATIONS, Sectors.DEFAULT_RESOURCES);
+
+        // Then ...
+        assertThat(sectors, sameInstance(Sectors.DEFAULT));
+        assertEquals(0, sectors.getFarmer());
+        assertEquals(4, sectors.getInactive());
+        assertEquals(0, sectors.getFood());
+        assertEquals(4, sectors.getSettlement());
+    }
+
+    @Test
+    void createError() {
+        // When ... Then ...
+        assertThrows(IllegalArgumentException.class, () -> Sectors.create(
+                List.of("farmer", "researcher", "educator", "doctor"),
+                Sectors.DEFAULT_RESOURCES));
+        assertThrows(IllegalArgumentException.class, () -> Sectors.create(
+                List.of("farmer", "researcher", "educator", "doctor", "inactive", "farmer"),
+                Sectors.DEFAULT_RESOURCES));
+        assertThrows(IllegalArgumentException.class, () -> Sectors.create(
+                Sectors.DEFAULT_OCCUPATIONS,
+                List.of("food", "research", "education", "health")));
+    }
+
+    @Test
+    void fromJson() throws IOException {
+        // Given ...
+        JsonNode node = Utils.fromText(TestFunctions.text(
+                "---",
+                "sectors:",
+                "  occupations:",
+                "    - farmer",
+                "    - researcher",
+                "    - educator",
+                "    - doctor",
+                "    - artist",
+                "    - inactive"
+        ));
+
+        // When ...
+        Sectors sectors = Sectors.fromJson(node);
+
+        // Then ...
+        assertThat(sectors.getOccupations(), contains("farmer", "researcher", "educator", "doctor", "artist", "inactive"));
+        assertEquals(Sectors.DEFAULT_RESOURCES, sectors.getResources());
+        assertEquals(5, sectors.getInactive());
+        assertThat(Sectors.fromJson(Utils.fromText("---\nversion: \"1.0\"")), sameInstance(Sectors.DEFAULT));
+    }
+}
@@ -78,6 +78,36 @@ class StatusSerdeTest {
         assertEquals(0.01, status.getTechnology());
     }
 
+    @Test
+    void loadLargePopulation() throws IOException {
+        // Given ...
+        JsonNode jsonNode = Utils.fromText(TestFunctions.text(
+                "---",
+                "version: \"1.0\"",
+                "population: 10000000000",
+                "farmerPrefs: 0",
+                "researcherPrefs: 0",
+                "educatorPrefs: 0",
+                "doctorPrefs: 0",
+                "inactivePrefs: 0",
+                "foodPrefs: 0",
+                "researchPrefs: 0",
+                "educationPrefs: 0",
+                "healthPrefs: 0",
+                "settlementPrefs: 0",
+                "technology: 0.01"
+        ));
+
+        // When
+        Status status = StatusSerde.fromJson(jsonNode);
+        JsonNode node = StatusSerde.toJson(status);
+
+        // Then ...
+        assertEquals(10_000_000_000L, status.getPopulation());
+        assertEquals(2_000_000_000d, status.getFarmers());
+        assertEquals(10_000_000_000L, node.path("population").asLong());
+    }
+
     @Test
     void saveStatus() throws IOException {
         // Given ...
@@ -103,4 +133,26 @@ class StatusSerdeTest {
         assertEquals(status0, status1);
     }
 
+    @Test
+    void saveExtraSectors() throws IOException {
+        // Given ...
+        Status status0 = new Status(StatusTest.EXTRA_SECTORS, 100,
+                new double[]{1, 2, 3, 4, 5, 6},
+                new double[]{-1, -2, -3, -4, -5, -6},
+                0.5);
+
+        // When ...
+        StatusSerde.write(new File(TEST_YML), status0);
+        Status status1 = StatusSerde.fromFile(TEST_YML, StatusTest.EXTRA_SECTORS);
+        Status status2 = StatusSerde.fromFile(TEST_YML);
+
+        // Then ...
+        assertEquals(status0, status1);
+        assertEquals(5, status1.getOccupationPrefs(4));
+        assertEquals(-5, status1.getResourcePrefs(4));
+        assertEquals(Sectors.DEFAULT, status2.getSectors());
+        assertEquals(6, status2.getInactivePrefs());
+        assertEquals(-6, status2.getSettlementPrefs());
+    }
+
 }
\ No newline at end of file
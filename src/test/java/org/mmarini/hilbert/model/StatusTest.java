@@ -33,12 +33,20 @@ import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
 import org.mmarini.ArgumentsGenerator;
 
+import java.util.List;
 import java.util.stream.Stream;
 
 import static java.lang.Math.E;
+import static java.lang.Math.exp;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
 class StatusTest {
+    static final Sectors EXTRA_SECTORS = Sectors.create(
+            List.of("farmer", "researcher", "educator", "doctor", "artist", "inactive"),
+            List.of("food", "research", "education", "health", "art", "settlement"));
+
     public static Stream<Arguments> statusSum() {
         return ArgumentsGenerator.createStream(10, 1234,
                 ArgumentsGenerator.uniform(-10, 10), // pop
@@ -114,6 +122,55 @@ class StatusTest {
         });
     }
 
+    @Test
+    void extraSectors() {
+        // Given ...
+        Status status = new Status(EXTRA_SECTORS, 100,
+                new double[]{1, 2, 3, 4, 5, 6},
+                new double[]{-1, -2, -3, -4, -5, -6},
+                0.5);
+
+        // When ...
+        Status normalized = status.normalize(0, 1);
+        Status sum = Status.sum(normalized, Status.population(-10));
+
+        // Then ...
+        double population = 0;
+        for (int i = 0; i < 6; i++) {
+            population += status.getIndividuals(i);
+        }
+        assertThat(population, closeTo(100, 1e-9));
+        assertThat(status.getIndividuals(4) / status.getFarmers(), closeTo(exp(4), 1e-9));
+        assertEquals(status.getInactives(), status.getIndividuals(5));
+        assertThat(status.getResourceRatio(4) / status.getFoodRatio(), closeTo(exp(-4), 1e-12));
+        assertEquals(status.getSettlementRatio(), status.getResourceRatio(5));
+
+        assertEquals(-2.5, normalized.getFarmerPrefs());
+        assertEquals(2.5, normalized.getInactivePrefs());
+        assertEquals(1.5, normalized.getOccupationPrefs(4));
+        assertEquals(2.5, normalized.getFoodPrefs());
+        assertEquals(-1.5, normalized.getResourcePrefs(4));
+        assertThat(normalized.getIndividuals(4), closeTo(status.getIndividuals(4), 1e-9));
+
+        assertEquals(EXTRA_SECTORS, sum.getSectors());
+        assertEquals(90, sum.getPopulation());
+        assertEquals(1.5, sum.getOccupationPrefs(4));
+        assertEquals(2.5, sum.getInactivePrefs());
+    }
+
+    @Test
+    void largePopulation() {
+        // Given ...
+        Status status = Status.population(3_000_000_000L);
+
+        // When ...
+        Status sum = Status.sum(status, Status.population(2_000_000_000L), Status.population(-1));
+
+        // Then ...
+        assertEquals(4_999_999_999L, sum.getPopulation());
+        assertEquals(-1, Status.sum(sum, Status.population(-5_000_000_000L)).normalize(0, 1).getPopulation() - 1);
+    }
+
     @Test
     void getEfficiency() {
         // Given ...
@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2023 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ */
+
+package org.mmarini.hilbert.model;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.mmarini.Tuple2;
+import org.mmarini.yaml.Utils;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import static java.lang.String.format;
+
+/**
+ * Measures the cost of a simulation step with the composed functional rules, the compiled rules engine,
+ * the step kernel and the mean field kernel (explicit and Rosenbrock methods), and the cost of a simulated time unit.
+ * <p>
+ * Run with<br>
+ * <code>java -cp target/classes:target/test-classes:... org.mmarini.hilbert.model.StepBenchmark [rules.yml [status.yml]]</code>
+ * </p>
+ */
+public class StepBenchmark {
+    public static final int WARMUP = 200000;
+    public static final int STEPS = 1000000;
+
+    /**
+     * Returns the ns per step of an engine
+     *
+     * @param engine the engine
+     * @param status the initial status
+     * @param steps  the number of steps
+     */
+    private static double measure(Function<Status, Tuple2<Status, Supplier<Map<String, Number>>>> engine, Status status, int steps) {
+        Status s = status;
+        long t0 = System.nanoTime();
+        for (int i = 0; i < steps; i++) {
+            Tuple2<Status, Supplier<Map<String, Number>>> next = engine.apply(s);
+            next._2.get();
+            s = next._1;
+        }
+        return (double) (System.nanoTime() - t0) / steps;
+    }
+
+    /**
+     * Returns the ns per step of the kernel
+     *
+     * @param kernel the kernel
+     * @param status the initial status
+     * @param steps  the number of steps
+     */
+    private static double measure(StepKernel kernel, Status status, int steps) {
+        StatusBuffer buffer = StatusBuffer.of(status);
+        double[] kpis = kernel.getKpiSchema().newRow();
+        long t0 = System.nanoTime();
+        for (int i = 0; i < steps; i++) {
+            kernel.step(buffer, kpis);
+        }
+        return (double) (System.nanoTime() - t0) / steps;
+    }
+
+    public static void main(String[] args) throws IOException {
+        JsonNode rules = Utils.fromFile(args.length > 0 ? args[0] : "rules.yml");
+        Status status = StatusSerde.fromFile(args.length > 1 ? args[1] : "status.yml");
+
+        measure(HilbertKernelTest.rulesEngine(rules, 0), status, WARMUP);
+        double composed = measure(HilbertKernelTest.rulesEngine(rules, 0), status, STEPS);
+        measure(RulesSerde.fromJson(rules), status, WARMUP);
+        double compiled = measure(RulesSerde.fromJson(rules), status, STEPS);
+        measure(RulesSerde.kernelFromJson(rules, 0, 0), status, WARMUP);
+        double kernel = measure(RulesSerde.kernelFromJson(rules, 0, 0), status, STEPS);
+        ObjectNode meanFieldRules = rules.deepCopy();
+        meanFieldRules.put("engine", RulesSerde.MEAN_FIELD_ENGINE);
+        measure(RulesSerde.meanFieldKernelFromJson(meanFieldRules), status, WARMUP);
+        double meanField = measure(RulesSerde.meanFieldKernelFromJson(meanFieldRules), status, STEPS);
+        meanFieldRules.putObject("meanField").put("interval", 10);
+        measure(RulesSerde.meanFieldKernelFromJson(meanFieldRules), status, WARMUP);
+        double meanFieldLong = measure(RulesSerde.meanFieldKernelFromJson(meanFieldRules), status, STEPS);
+        ((ObjectNode) meanFieldRules.path("meanField")).put("method", MeanFieldKernel.ROSENBROCK_METHOD);
+        measure(RulesSerde.meanFieldKernelFromJson(meanFieldRules), status, WARMUP);
+        double rosenbrockLong = measure(RulesSerde.meanFieldKernelFromJson(meanFieldRules), status, STEPS);
+        ((ObjectNode) meanFieldRules.path("meanField")).put("interval", 100);
+        measure(RulesSerde.meanFieldKernelFromJson(meanFieldRules), status, WARMUP);
+        double rosenbrockLonger = measure(RulesSerde.meanFieldKernelFromJson(meanFieldRules), status, STEPS);
+        double dt = rules.path("timeInterval").asDouble();
+
+        System.out.println("engine, ns/step, ns/time unit");
+        System.out.println(format("composed rules, %.1f, %.1f", composed, composed / dt));
+        System.out.println(format("compiled rules, %.1f, %.1f", compiled, compiled / dt));
+        System.out.println(format("step kernel, %.1f, %.1f", kernel, kernel / dt));
+        System.out.println(format("mean field kernel, %.1f, %.1f", meanField, meanField / dt));
+        System.out.println(format("mean field kernel (interval 10), %.1f, %.1f", meanFieldLong, meanFieldLong / 10));
+        System.out.println(format("mean field rosenbrock (interval 10), %.1f, %.1f", rosenbrockLong, rosenbrockLong / 10));
+        System.out.println(format("mean field rosenbrock (interval 100), %.1f, %.1f", rosenbrockLonger, rosenbrockLonger / 100));
+    }
+}
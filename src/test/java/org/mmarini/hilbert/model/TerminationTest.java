@@ -0,0 +1,194 @@
+/*
+ * Copyright (c) 2023 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ */
+
+package org.mmarini.hilbert.model;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.junit.jupiter.api.Test;
+import org.mmarini.hilbert.TestFunctions;
+import org.mmarini.yaml.Utils;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TerminationTest {
+
+    /**
+     * Returns the status buffer with population and technology
+     *
+     * @param population the population
+     * @param technology the technology
+     */
+    static StatusBuffer status(int population, double technology) {
+        return StatusBuffer.of(Status.sum(Status.population(population), Status.technology(technology)));
+    }
+
+    @Test
+    void extinction() {
+        // Given ...
+        Termination termination = Termination.extinction();
+
+        // When ...
+        boolean alive = termination.test(status(1, 1));
+        boolean extinct = termination.test(status(0, 1));
+
+        // Then ...
+        assertFalse(alive);
+        assertTrue(extinct);
+        assertEquals(Termination.EXTINCTION, termination.getReason());
+        assertEquals(1, Termination.code(termination.getReason()));
+        assertEquals(0, Termination.code(null));
+    }
+
+    @Test
+    void reasonCode() {
+        // Given ...
+        Termination termination = Termination.extinction();
+
+        // When ...
+        termination.setReason(Termination.reason(Termination.code(Termination.STEADY_STATE)));
+
+        // Then ...
+        assertTrue(termination.isTerminated());
+        assertEquals(Termination.STEADY_STATE, termination.getReason());
+        assertNull(Termination.reason(0));
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class, () -> Termination.reason(4));
+        assertEquals("Invalid termination code (4)", ex.getMessage());
+    }
+
+    @Test
+    void technologyCap() {
+        // Given ...
+        TechnologyCapDetector detector = new TechnologyCapDetector(2);
+
+        // When ...
+        // Then ...
+        assertFalse(detector.test(status(10, 1.99)));
+        assertTrue(detector.test(status(10, 2)));
+    }
+
+    @Test
+    void steadyState() {
+        // Given ...
+        SteadyStateDetector detector = new SteadyStateDetector(4, 0.01);
+
+        // When ...
+        // Then ...
+        assertFalse(detector.test(status(100, 1)));
+        assertFalse(detector.test(status(101, 1)));
+        assertFalse(detector.test(status(100, 1)));
+        // Old half mean 100.5, new half mean 100.5
+        assertTrue(detector.test(status(101, 1)));
+    }
+
+    @Test
+    void notSteadyState() {
+        // Given ...
+        SteadyStateDetector detector = new SteadyStateDetector(4, 0.01);
+
+        // When ...
+        boolean result = false;
+        for (int i = 0; i < 100; i++) {
+            // The population grows by 5% per step
+            result |= detector.test(status((int) (100 * Math.pow(1.05, i)), 1));
+        }
+
+        // Then ...
+        assertFalse(result);
+    }
+
+    @Test
+    void steadyStateMovingWindow() {
+        // Given ...
+        SteadyStateDetector detector = new SteadyStateDetector(4, 0.01);
+
+        // When ...
+        boolean result = false;
+        for (int i = 0; i < 10; i++) {
+            result |= detector.test(status(10 + 10 * i, 1));
+        }
+
+        // Then ...
+        assertFalse(result);
+        assertFalse(detector.test(status(100, 1)));
+        assertFalse(detector.test(status(100, 1)));
+        assertTrue(detector.test(status(100, 1)));
+    }
+
+    @Test
+    void steadyStateState() {
+        // Given ...
+        SteadyStateDetector detector = new SteadyStateDetector(4, 0.01);
+        detector.test(status(100, 1));
+        detector.test(status(120, 1));
+        detector.test(status(100, 1));
+        SteadyStateDetector restored = new SteadyStateDetector(4, 0.01);
+
+        // When ...
+        restored.setState(detector.getState());
+
+        // Then ...
+        assertArrayEquals(detector.getState(), restored.getState());
+        assertEquals(detector.test(status(120, 1)), restored.test(status(120, 1)));
+        assertEquals(detector.test(status(100, 1)), restored.test(status(100, 1)));
+    }
+
+    @Test
+    void invalidWindow() {
+        // Given ...
+        // When ...
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class,
+                () -> new SteadyStateDetector(3, 0.01));
+
+        // Then ...
+        assertEquals("Window must be even and at least 2 (3)", ex.getMessage());
+    }
+
+    @Test
+    void fromJson() throws IOException {
+        // Given ...
+        JsonNode node = Utils.fromText(TestFunctions.text(
+                "---",
+                "termination:",
+                "  extinction: false",
+                "  technologyCap: 2",
+                "  steadyState:",
+                "    window: 4",
+                "    tolerance: 0.01"
+        ));
+
+        // When ...
+        Termination termination = RulesSerde.loadTermination(node);
+
+        // Then ...
+        assertFalse(termination.test(status(0, 1)));
+        assertTrue(termination.test(status(0, 2)));
+        assertEquals(Termination.TECHNOLOGY_CAP, termination.getReason());
+        assertEquals(2, termination.getStates().length);
+    }
+}